@@ -0,0 +1,575 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.Endpoint;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Pageable;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.ReservedAddr;
+import com.ngrok.definitions.ReservedDomain;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelSession;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * In-memory replica of the tunnels, endpoints, tunnel sessions, reserved domains and reserved addresses
+ * of an account, with indexes for the lookups a control plane makes most often.
+ *
+ * The replica is refreshed periodically once {@link #start()} is called, or on demand with
+ * {@link #refresh()}. Lists are returned newest first, so most refreshes only fetch pages until they
+ * reach resources that are already known, and merge the new head into the replica. Since that cannot
+ * see resources that went away, every list is read in full at a longer interval.
+ *
+ * Each refresh builds a new immutable {@link View} with all of its indexes, and swaps it in at once.
+ * Readers never block and always see a consistent view, at the cost of one extra copy per refresh.
+ */
+public class AccountReplica implements AutoCloseable {
+    /**
+     * An immutable, indexed view of the replica at one point in time. Lookups by key take constant
+     * time.
+     */
+    public static class View {
+        private static final View EMPTY = new View(
+            Optional.empty(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.emptyList()
+        );
+
+        private final Optional<OffsetDateTime> refreshedAt;
+        private final Map<String, Tunnel> tunnels;
+        private final Map<String, Endpoint> endpoints;
+        private final Map<String, TunnelSession> tunnelSessions;
+        private final Map<String, ReservedDomain> reservedDomains;
+        private final Map<String, ReservedAddr> reservedAddrs;
+        private final Map<Map.Entry<String, String>, List<Tunnel>> tunnelsByLabel;
+        private final Map<String, List<Tunnel>> tunnelsByRegion;
+        private final Map<URI, Tunnel> tunnelsByPublicUrl;
+        private final Map<String, List<Endpoint>> endpointsByHostport;
+        private final Map<URI, Endpoint> endpointsByPublicUrl;
+        private final Map<String, List<Endpoint>> endpointsByDomain;
+        private final Map<String, List<Endpoint>> endpointsByRegion;
+        private final Map<String, List<TunnelSession>> tunnelSessionsByRegion;
+        private final Map<String, ReservedDomain> reservedDomainsByDomain;
+        private final Map<String, ReservedAddr> reservedAddrsByAddr;
+
+        private View(final Optional<OffsetDateTime> refreshedAt,
+                     final List<Tunnel> tunnels,
+                     final List<Endpoint> endpoints,
+                     final List<TunnelSession> tunnelSessions,
+                     final List<ReservedDomain> reservedDomains,
+                     final List<ReservedAddr> reservedAddrs)
+        {
+            this.refreshedAt = refreshedAt;
+            this.tunnels = byId(tunnels, Tunnel::getId);
+            this.endpoints = byId(endpoints, Endpoint::getId);
+            this.tunnelSessions = byId(tunnelSessions, TunnelSession::getId);
+            this.reservedDomains = byId(reservedDomains, ReservedDomain::getId);
+            this.reservedAddrs = byId(reservedAddrs, ReservedAddr::getId);
+            this.tunnelsByLabel = group(tunnels, tunnel -> tunnel.getLabels().entrySet().stream()
+                .map(label -> new AbstractMap.SimpleImmutableEntry<>(label.getKey(), label.getValue())));
+            this.tunnelsByRegion = group(tunnels, tunnel -> Stream.of(tunnel.getRegion()));
+            this.tunnelsByPublicUrl = unique(tunnels, Tunnel::getPublicUrl);
+            this.endpointsByHostport = group(endpoints, endpoint -> Stream.of(endpoint.getHostport()));
+            this.endpointsByPublicUrl = unique(endpoints, Endpoint::getPublicUrl);
+            this.endpointsByDomain = group(endpoints, endpoint -> endpoint.getDomain().map(Ref::getId).map(Stream::of).orElseGet(Stream::empty));
+            this.endpointsByRegion = group(endpoints, endpoint -> Stream.of(endpoint.getRegion()));
+            this.tunnelSessionsByRegion = group(tunnelSessions, session -> Stream.of(session.getRegion()));
+            this.reservedDomainsByDomain = unique(reservedDomains, domain -> domain.getDomain().toLowerCase(Locale.ROOT));
+            this.reservedAddrsByAddr = unique(reservedAddrs, ReservedAddr::getAddr);
+        }
+
+        private static <T> Map<String, T> byId(final List<T> items, final Function<T, String> id) {
+            final Map<String, T> map = new LinkedHashMap<>();
+            items.forEach(item -> map.put(id.apply(item), item));
+            return Collections.unmodifiableMap(map);
+        }
+
+        private static <K, T> Map<K, T> unique(final List<T> items, final Function<T, K> key) {
+            final Map<K, T> map = new HashMap<>();
+            items.forEach(item -> map.putIfAbsent(key.apply(item), item));
+            return Collections.unmodifiableMap(map);
+        }
+
+        private static <K, T> Map<K, List<T>> group(final List<T> items, final Function<T, Stream<K>> keys) {
+            final Map<K, List<T>> map = new HashMap<>();
+            items.forEach(item -> keys.apply(item).forEach(key -> map.computeIfAbsent(key, k -> new ArrayList<>()).add(item)));
+            map.replaceAll((key, group) -> Collections.unmodifiableList(group));
+            return Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Fetches the time of the refresh this view was built from.
+         *
+         * @return a timestamp, or empty if the replica has never been refreshed
+         */
+        public Optional<OffsetDateTime> getRefreshedAt() {
+            return this.refreshedAt;
+        }
+
+        /**
+         * Fetches every tunnel, newest first.
+         *
+         * @return an unmodifiable collection of tunnels
+         */
+        public Collection<Tunnel> getTunnels() {
+            return this.tunnels.values();
+        }
+
+        /**
+         * Fetches every endpoint, newest first.
+         *
+         * @return an unmodifiable collection of endpoints
+         */
+        public Collection<Endpoint> getEndpoints() {
+            return this.endpoints.values();
+        }
+
+        /**
+         * Fetches every tunnel session, newest first.
+         *
+         * @return an unmodifiable collection of tunnel sessions
+         */
+        public Collection<TunnelSession> getTunnelSessions() {
+            return this.tunnelSessions.values();
+        }
+
+        /**
+         * Fetches every reserved domain, newest first.
+         *
+         * @return an unmodifiable collection of reserved domains
+         */
+        public Collection<ReservedDomain> getReservedDomains() {
+            return this.reservedDomains.values();
+        }
+
+        /**
+         * Fetches every reserved address, newest first.
+         *
+         * @return an unmodifiable collection of reserved addresses
+         */
+        public Collection<ReservedAddr> getReservedAddrs() {
+            return this.reservedAddrs.values();
+        }
+
+        /**
+         * Looks up a tunnel by ID.
+         *
+         * @param id a tunnel ID
+         * @return the tunnel, if any
+         */
+        public Optional<Tunnel> getTunnel(final String id) {
+            return Optional.ofNullable(this.tunnels.get(id));
+        }
+
+        /**
+         * Looks up an endpoint by ID.
+         *
+         * @param id an endpoint ID
+         * @return the endpoint, if any
+         */
+        public Optional<Endpoint> getEndpoint(final String id) {
+            return Optional.ofNullable(this.endpoints.get(id));
+        }
+
+        /**
+         * Looks up a tunnel session by ID.
+         *
+         * @param id a tunnel session ID
+         * @return the tunnel session, if any
+         */
+        public Optional<TunnelSession> getTunnelSession(final String id) {
+            return Optional.ofNullable(this.tunnelSessions.get(id));
+        }
+
+        /**
+         * Finds the tunnels that carry a label.
+         *
+         * @param key the label key
+         * @param value the label value
+         * @return an unmodifiable list of tunnels
+         */
+        public List<Tunnel> getTunnelsWithLabel(final String key, final String value) {
+            return this.tunnelsByLabel.getOrDefault(new AbstractMap.SimpleImmutableEntry<>(key, value), Collections.emptyList());
+        }
+
+        /**
+         * Finds the tunnels in a region.
+         *
+         * @param region a region, like <code>us</code>
+         * @return an unmodifiable list of tunnels
+         */
+        public List<Tunnel> getTunnelsInRegion(final String region) {
+            return this.tunnelsByRegion.getOrDefault(region, Collections.emptyList());
+        }
+
+        /**
+         * Looks up the tunnel with a public URL.
+         *
+         * @param publicUrl a public URL
+         * @return the tunnel, if any
+         */
+        public Optional<Tunnel> getTunnelByPublicUrl(final URI publicUrl) {
+            return Optional.ofNullable(this.tunnelsByPublicUrl.get(publicUrl));
+        }
+
+        /**
+         * Finds the endpoints serving a host and port.
+         *
+         * @param hostport a host and port, like <code>example.com:443</code>
+         * @return an unmodifiable list of endpoints
+         */
+        public List<Endpoint> getEndpointsByHostport(final String hostport) {
+            return this.endpointsByHostport.getOrDefault(hostport, Collections.emptyList());
+        }
+
+        /**
+         * Looks up the endpoint with a public URL.
+         *
+         * @param publicUrl a public URL
+         * @return the endpoint, if any
+         */
+        public Optional<Endpoint> getEndpointByPublicUrl(final URI publicUrl) {
+            return Optional.ofNullable(this.endpointsByPublicUrl.get(publicUrl));
+        }
+
+        /**
+         * Finds the endpoints of a reserved domain.
+         *
+         * @param domainId the ID of a reserved domain
+         * @return an unmodifiable list of endpoints
+         */
+        public List<Endpoint> getEndpointsForDomain(final String domainId) {
+            return this.endpointsByDomain.getOrDefault(domainId, Collections.emptyList());
+        }
+
+        /**
+         * Finds the endpoints in a region.
+         *
+         * @param region a region, like <code>us</code>
+         * @return an unmodifiable list of endpoints
+         */
+        public List<Endpoint> getEndpointsInRegion(final String region) {
+            return this.endpointsByRegion.getOrDefault(region, Collections.emptyList());
+        }
+
+        /**
+         * Finds the tunnel sessions in a region.
+         *
+         * @param region a region, like <code>us</code>
+         * @return an unmodifiable list of tunnel sessions
+         */
+        public List<TunnelSession> getTunnelSessionsInRegion(final String region) {
+            return this.tunnelSessionsByRegion.getOrDefault(region, Collections.emptyList());
+        }
+
+        /**
+         * Looks up a reserved domain by name, ignoring case.
+         *
+         * @param domain a domain name
+         * @return the reserved domain, if any
+         */
+        public Optional<ReservedDomain> getReservedDomainByName(final String domain) {
+            return Optional.ofNullable(this.reservedDomainsByDomain.get(domain.toLowerCase(Locale.ROOT)));
+        }
+
+        /**
+         * Looks up a reserved address by address.
+         *
+         * @param addr an address, like <code>1.tcp.ngrok.io:12345</code>
+         * @return the reserved address, if any
+         */
+        public Optional<ReservedAddr> getReservedAddrByAddr(final String addr) {
+            return Optional.ofNullable(this.reservedAddrsByAddr.get(addr));
+        }
+
+        @Override
+        public String toString() {
+            return "AccountReplica.View{" +
+                "refreshedAt='" + this.refreshedAt.map(Object::toString).orElse("(never)") +
+                "', tunnels='" + this.tunnels.size() +
+                "', endpoints='" + this.endpoints.size() +
+                "', tunnelSessions='" + this.tunnelSessions.size() +
+                "', reservedDomains='" + this.reservedDomains.size() +
+                "', reservedAddrs='" + this.reservedAddrs.size() +
+                "'}";
+        }
+    }
+
+    /**
+     * Builder class for account replicas.
+     */
+    public static class Builder {
+        private final NgrokApiClient apiClient;
+        private Duration refreshInterval = Duration.ofSeconds(30);
+        private Duration fullResyncInterval = Duration.ofMinutes(10);
+        private Optional<String> limit = Optional.empty();
+        private Optional<ScheduledExecutorService> scheduler = Optional.empty();
+
+        Builder(final NgrokApiClient apiClient) {
+            this.apiClient = requireNonNull(apiClient, "apiClient is required");
+        }
+
+        /**
+         * Sets the time between the end of one refresh and the start of the next.
+         *
+         * @param refreshInterval a duration
+         * @return the replica builder
+         */
+        public AccountReplica.Builder refreshInterval(final Duration refreshInterval) {
+            this.refreshInterval = requireNonNull(refreshInterval, "refreshInterval is required");
+            return this;
+        }
+
+        /**
+         * Sets the time between refreshes that read every list in full, so that resources that went
+         * away are dropped from the replica.
+         *
+         * @param fullResyncInterval a duration
+         * @return the replica builder
+         */
+        public AccountReplica.Builder fullResyncInterval(final Duration fullResyncInterval) {
+            this.fullResyncInterval = requireNonNull(fullResyncInterval, "fullResyncInterval is required");
+            return this;
+        }
+
+        /**
+         * Sets the <code>limit</code> parameter, the number of items per page, for every list.
+         *
+         * @param limit the value of the limit parameter as a {@link String}
+         * @return the replica builder
+         */
+        public AccountReplica.Builder limit(final String limit) {
+            this.limit = Optional.ofNullable(limit);
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs periodic refreshes. Defaults to Armeria's worker group.
+         *
+         * @param scheduler a scheduled executor
+         * @return the replica builder
+         */
+        public AccountReplica.Builder scheduler(final ScheduledExecutorService scheduler) {
+            this.scheduler = Optional.of(requireNonNull(scheduler, "scheduler is required"));
+            return this;
+        }
+
+        /**
+         * Builds the replica. The replica is empty until it is first refreshed.
+         *
+         * @return an account replica
+         */
+        public AccountReplica build() {
+            return new AccountReplica(this);
+        }
+    }
+
+    /**
+     * A list kept in the replica, with the getters the refresh needs.
+     */
+    private static final class Tracked<T extends Pageable, I> {
+        private final ListType<T, I> type;
+        private final Function<I, String> id;
+        private final Function<I, OffsetDateTime> timestamp;
+
+        private Tracked(final ListType<T, I> type, final Function<I, String> id, final Function<I, OffsetDateTime> timestamp) {
+            this.type = type;
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static final Tracked<?, Tunnel> TUNNELS = new Tracked<>(ListType.TUNNEL_LIST, Tunnel::getId, Tunnel::getStartedAt);
+    private static final Tracked<?, Endpoint> ENDPOINTS = new Tracked<>(ListType.ENDPOINT_LIST, Endpoint::getId, Endpoint::getCreatedAt);
+    private static final Tracked<?, TunnelSession> TUNNEL_SESSIONS = new Tracked<>(ListType.TUNNEL_SESSION_LIST, TunnelSession::getId, TunnelSession::getStartedAt);
+    private static final Tracked<?, ReservedDomain> RESERVED_DOMAINS = new Tracked<>(ListType.RESERVED_DOMAIN_LIST, ReservedDomain::getId, ReservedDomain::getCreatedAt);
+    private static final Tracked<?, ReservedAddr> RESERVED_ADDRS = new Tracked<>(ListType.RESERVED_ADDR_LIST, ReservedAddr::getId, ReservedAddr::getCreatedAt);
+
+    private final NgrokApiClient apiClient;
+    private final Duration refreshInterval;
+    private final long fullResyncIntervalNanos;
+    private final Optional<String> limit;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<CompletableFuture<View>> refreshing = new AtomicReference<>();
+    private volatile View view = View.EMPTY;
+    private volatile long lastFullResyncNanos;
+    private volatile boolean fullResyncDone = false;
+    private volatile boolean running = false;
+    private volatile ScheduledFuture<?> nextRefresh;
+
+    private AccountReplica(final Builder builder) {
+        this.apiClient = builder.apiClient;
+        this.refreshInterval = builder.refreshInterval;
+        this.fullResyncIntervalNanos = builder.fullResyncInterval.toNanos();
+        this.limit = builder.limit;
+        this.scheduler = builder.scheduler.orElseGet(CommonPools::workerGroup);
+    }
+
+    /**
+     * Fetches the current view of the replica. This never blocks.
+     *
+     * @return the current view
+     */
+    public View view() {
+        return this.view;
+    }
+
+    /**
+     * Starts refreshing the replica periodically, beginning right away.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        scheduleRefresh(0);
+    }
+
+    /**
+     * Stops refreshing the replica. The current view stays available.
+     */
+    @Override
+    public synchronized void close() {
+        this.running = false;
+        final ScheduledFuture<?> scheduled = this.nextRefresh;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Refreshes the replica now. If a refresh is already running, this joins it.
+     *
+     * @return a future of the refreshed view
+     */
+    public CompletionStage<View> refresh() {
+        final CompletableFuture<View> refresh = new CompletableFuture<>();
+        if (!this.refreshing.compareAndSet(null, refresh)) {
+            final CompletableFuture<View> existing = this.refreshing.get();
+            return existing != null ? existing : refresh();
+        }
+
+        final long startNanos = System.nanoTime();
+        final boolean full = !this.fullResyncDone || startNanos - this.lastFullResyncNanos >= this.fullResyncIntervalNanos;
+        final View current = this.view;
+        final CompletableFuture<List<Tunnel>> tunnels = refresh(TUNNELS, current.getTunnels(), full);
+        final CompletableFuture<List<Endpoint>> endpoints = refresh(ENDPOINTS, current.getEndpoints(), full);
+        final CompletableFuture<List<TunnelSession>> tunnelSessions = refresh(TUNNEL_SESSIONS, current.getTunnelSessions(), full);
+        final CompletableFuture<List<ReservedDomain>> reservedDomains = refresh(RESERVED_DOMAINS, current.getReservedDomains(), full);
+        final CompletableFuture<List<ReservedAddr>> reservedAddrs = refresh(RESERVED_ADDRS, current.getReservedAddrs(), full);
+
+        CompletableFuture.allOf(tunnels, endpoints, tunnelSessions, reservedDomains, reservedAddrs).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                this.refreshing.set(null);
+                refresh.completeExceptionally(RetryPolicy.unwrap(failure));
+                return;
+            }
+            final View refreshed = new View(
+                Optional.of(OffsetDateTime.now()),
+                tunnels.join(),
+                endpoints.join(),
+                tunnelSessions.join(),
+                reservedDomains.join(),
+                reservedAddrs.join()
+            );
+            this.view = refreshed;
+            if (full) {
+                this.lastFullResyncNanos = startNanos;
+                this.fullResyncDone = true;
+            }
+            this.refreshing.set(null);
+            refresh.complete(refreshed);
+        });
+        return refresh;
+    }
+
+    private void scheduleRefresh(final long delayNanos) {
+        this.nextRefresh = this.scheduler.schedule(
+            () -> refresh().whenComplete((view, failure) -> {
+                synchronized (this) {
+                    if (this.running) {
+                        scheduleRefresh(this.refreshInterval.toNanos());
+                    }
+                }
+            }),
+            delayNanos,
+            TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * Reads the head of a list until it reaches resources no newer than the newest one already known,
+     * then merges it with the known resources. A full refresh reads the whole list instead.
+     */
+    private <T extends Pageable, I> CompletableFuture<List<I>> refresh(final Tracked<T, I> tracked, final Collection<I> known, final boolean full) {
+        final Optional<OffsetDateTime> newestKnown = full
+            ? Optional.empty()
+            : known.stream().map(tracked.timestamp).max(Comparator.naturalOrder());
+        final List<I> fetched = new ArrayList<>();
+        final List<I> firstPage = new ArrayList<>();
+        return this.apiClient.streamList(
+            tracked.type.getEndpoint(),
+            Stream.of(new AbstractMap.SimpleEntry<>("limit", this.limit.map(Function.identity()))),
+            tracked.type,
+            firstPage::add
+        )
+            .thenCompose(nextPageUri -> readHead(tracked, firstPage, nextPageUri, newestKnown, fetched))
+            .thenApply(ignored -> {
+                if (full) {
+                    return fetched;
+                }
+                final Set<String> fetchedIds = fetched.stream().map(tracked.id).collect(Collectors.toCollection(HashSet::new));
+                final List<I> merged = new ArrayList<>(fetched);
+                known.stream().filter(item -> !fetchedIds.contains(tracked.id.apply(item))).forEach(merged::add);
+                return (List<I>) merged;
+            })
+            .toCompletableFuture();
+    }
+
+    private <T extends Pageable, I> CompletionStage<Void> readHead(final Tracked<T, I> tracked,
+                                                                   final List<I> page,
+                                                                   final Optional<URI> nextPageUri,
+                                                                   final Optional<OffsetDateTime> newestKnown,
+                                                                   final List<I> fetched)
+    {
+        fetched.addAll(page);
+        final boolean reachedKnown = newestKnown.isPresent()
+            && (page.isEmpty() || !tracked.timestamp.apply(page.get(page.size() - 1)).isAfter(newestKnown.get()));
+        if (reachedKnown || !nextPageUri.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final List<I> nextPage = new ArrayList<>();
+        return this.apiClient.streamList(nextPageUri.get(), tracked.type, nextPage::add)
+            .thenCompose(uri -> readHead(tracked, nextPage, uri, newestKnown, fetched));
+    }
+}
@@ -0,0 +1,403 @@
+package com.ngrok;
+
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Pageable;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An immutable snapshot of the list resources of an account, such as API keys, edges, tunnel sessions
+ * and endpoints.
+ *
+ * Snapshots are taken with {@link Ngrok#snapshot()}. Every resource type is listed concurrently, up to
+ * a maximum number of requests in flight, and the pages of each type are fetched one after the other.
+ * Taking a snapshot thus takes about as long as listing the slowest resource type.
+ */
+public class AccountSnapshot {
+    /**
+     * How long listing one resource type took, and how much it returned.
+     */
+    public static class Timing {
+        private final Duration duration;
+        private final int pageCount;
+        private final int itemCount;
+
+        private Timing(final Duration duration, final int pageCount, final int itemCount) {
+            this.duration = duration;
+            this.pageCount = pageCount;
+            this.itemCount = itemCount;
+        }
+
+        /**
+         * Fetches the time from the request for the first page until the last page was read.
+         *
+         * @return a duration
+         */
+        public Duration getDuration() {
+            return this.duration;
+        }
+
+        /**
+         * Fetches the number of pages read.
+         *
+         * @return a number of pages
+         */
+        public int getPageCount() {
+            return this.pageCount;
+        }
+
+        /**
+         * Fetches the number of items read.
+         *
+         * @return a number of items
+         */
+        public int getItemCount() {
+            return this.itemCount;
+        }
+
+        @Override
+        public String toString() {
+            return "AccountSnapshot.Timing{" +
+                "duration='" + this.duration +
+                "', pageCount='" + this.pageCount +
+                "', itemCount='" + this.itemCount +
+                "'}";
+        }
+    }
+
+    /**
+     * A builder object encapsulating state for an unsent snapshot.
+     */
+    public static class CallBuilder {
+        private final NgrokApiClient apiClient;
+        private List<ListType<?, ?>> types = ListType.ALL;
+        private int maxConcurrency = 8;
+        private Optional<String> limit = Optional.empty();
+
+        CallBuilder(final NgrokApiClient apiClient) {
+            this.apiClient = requireNonNull(apiClient, "apiClient is required");
+        }
+
+        /**
+         * Sets the resource types to list. Defaults to {@link ListType#ALL}.
+         *
+         * @param types the list types
+         * @return the call builder instance
+         */
+        public CallBuilder types(final Collection<ListType<?, ?>> types) {
+            this.types = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(requireNonNull(types, "types is required"))));
+            return this;
+        }
+
+        /**
+         * Sets the resource types to list. Defaults to {@link ListType#ALL}.
+         *
+         * @param types the list types
+         * @return the call builder instance
+         */
+        public CallBuilder types(final ListType<?, ?>... types) {
+            return types(Arrays.asList(types));
+        }
+
+        /**
+         * Sets the largest number of list requests in flight at once.
+         *
+         * @param maxConcurrency a number of requests
+         * @return the call builder instance
+         */
+        public CallBuilder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets the <code>limit</code> parameter, the number of items per page, for every list.
+         *
+         * @param limit the value of the limit parameter as a {@link String}
+         * @return the call builder instance
+         */
+        public CallBuilder limit(final String limit) {
+            this.limit = Optional.ofNullable(limit);
+            return this;
+        }
+
+        /**
+         * Sets (or unsets) the <code>limit</code> parameter, the number of items per page, for every list.
+         *
+         * @param limit the value of the limit parameter as an {@link Optional} of {@link String}
+         * @return the call builder instance
+         */
+        public CallBuilder limit(final Optional<String> limit) {
+            this.limit = requireNonNull(limit, "limit is required");
+            return this;
+        }
+
+        /**
+         * Takes the snapshot asynchronously. The snapshot fails if listing any of the resource types
+         * fails, and the listings of the other types still in flight are then cancelled. Cancelling
+         * the returned future cancels them too.
+         *
+         * @return a {@link CompletionStage} of an {@link AccountSnapshot}
+         */
+        public CompletionStage<AccountSnapshot> call() {
+            return new Run(this).start();
+        }
+
+        /**
+         * Takes the snapshot and blocks until it has been taken.
+         *
+         * @return an {@link AccountSnapshot}
+         * @throws InterruptedException if the thread was interrupted during the call
+         */
+        public AccountSnapshot blockingCall() throws InterruptedException {
+            try {
+                return call().toCompletableFuture().get();
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private final OffsetDateTime takenAt;
+    private final Duration duration;
+    private final Map<ListType<?, ?>, List<?>> items;
+    private final Map<ListType<?, ?>, Timing> timings;
+
+    private AccountSnapshot(final OffsetDateTime takenAt,
+                            final Duration duration,
+                            final Map<ListType<?, ?>, List<?>> items,
+                            final Map<ListType<?, ?>, Timing> timings)
+    {
+        this.takenAt = takenAt;
+        this.duration = duration;
+        this.items = items;
+        this.timings = timings;
+    }
+
+    /**
+     * Fetches the time the snapshot was started.
+     *
+     * @return a timestamp
+     */
+    public OffsetDateTime getTakenAt() {
+        return this.takenAt;
+    }
+
+    /**
+     * Fetches the time it took to take the whole snapshot.
+     *
+     * @return a duration
+     */
+    public Duration getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Fetches the resource types in the snapshot.
+     *
+     * @return the list types
+     */
+    public Set<ListType<?, ?>> getTypes() {
+        return this.items.keySet();
+    }
+
+    /**
+     * Fetches every resource of one type.
+     *
+     * @param type the list type, like {@link ListType#TUNNEL_LIST}
+     * @param <I> the type of the resources
+     * @return an unmodifiable list of resources
+     * @throws IllegalArgumentException if the type is not part of the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public <I> List<I> get(final ListType<?, I> type) {
+        final List<?> resources = this.items.get(type);
+        if (resources == null) {
+            throw new IllegalArgumentException(type + " is not part of the snapshot");
+        }
+        return (List<I>) resources;
+    }
+
+    /**
+     * Fetches how long listing one resource type took.
+     *
+     * @param type the list type
+     * @return the timing of the type
+     * @throws IllegalArgumentException if the type is not part of the snapshot
+     */
+    public Timing getTiming(final ListType<?, ?> type) {
+        final Timing timing = this.timings.get(type);
+        if (timing == null) {
+            throw new IllegalArgumentException(type + " is not part of the snapshot");
+        }
+        return timing;
+    }
+
+    /**
+     * Fetches how long listing each resource type took.
+     *
+     * @return the timing of every type in the snapshot
+     */
+    public Map<ListType<?, ?>, Timing> getTimings() {
+        return this.timings;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountSnapshot{" +
+            "takenAt='" + this.takenAt +
+            "', duration='" + this.duration +
+            "', timings='" + this.timings +
+            "'}";
+    }
+
+    /**
+     * A snapshot being taken. A fixed number of workers take resource types off a shared queue, so
+     * that there are never more requests in flight than workers. The requests in flight are tracked,
+     * so that they can be cancelled as soon as the snapshot fails.
+     */
+    private static final class Run {
+        private final NgrokApiClient apiClient;
+        private final List<ListType<?, ?>> types;
+        private final int maxConcurrency;
+        private final Optional<String> limit;
+        private final Queue<ListType<?, ?>> pending;
+        private final AtomicInteger remaining;
+        private final ConcurrentMap<ListType<?, ?>, List<?>> items = new ConcurrentHashMap<>();
+        private final ConcurrentMap<ListType<?, ?>, Timing> timings = new ConcurrentHashMap<>();
+        private final CompletableFuture<AccountSnapshot> result = new CompletableFuture<>();
+        private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        private final OffsetDateTime takenAt = OffsetDateTime.now();
+        private final long startNanos = System.nanoTime();
+
+        private Run(final CallBuilder builder) {
+            this.apiClient = builder.apiClient;
+            this.types = builder.types;
+            this.maxConcurrency = builder.maxConcurrency;
+            this.limit = builder.limit;
+            this.pending = new ConcurrentLinkedQueue<>(builder.types);
+            this.remaining = new AtomicInteger(builder.types.size());
+        }
+
+        private CompletionStage<AccountSnapshot> start() {
+            this.result.whenComplete((snapshot, failure) -> {
+                if (failure != null) {
+                    this.inFlight.forEach(request -> request.cancel(false));
+                }
+            });
+            if (this.types.isEmpty()) {
+                finish();
+            }
+            for (int i = 0; i < Math.min(this.maxConcurrency, this.types.size()); i++) {
+                next();
+            }
+            return this.result;
+        }
+
+        private void next() {
+            final ListType<?, ?> type = this.pending.poll();
+            if (type == null || this.result.isDone()) {
+                return;
+            }
+            list(type).whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    this.result.completeExceptionally(RetryPolicy.unwrap(failure));
+                } else if (this.remaining.decrementAndGet() == 0) {
+                    finish();
+                } else {
+                    next();
+                }
+            });
+        }
+
+        private <T extends Pageable, I> CompletionStage<Void> list(final ListType<T, I> type) {
+            final long typeStartNanos = System.nanoTime();
+            final List<I> collected = new ArrayList<>();
+            final AtomicInteger pageCount = new AtomicInteger(1);
+            return track(this.apiClient.streamList(
+                type.getEndpoint(),
+                Stream.of(new AbstractMap.SimpleEntry<>("limit", this.limit.map(Function.identity()))),
+                type,
+                collected::add
+            ))
+                .thenCompose(nextPageUri -> listFrom(type, nextPageUri, collected, pageCount))
+                .thenAccept(ignored -> {
+                    this.items.put(type, Collections.unmodifiableList(collected));
+                    this.timings.put(type, new Timing(Duration.ofNanos(System.nanoTime() - typeStartNanos), pageCount.get(), collected.size()));
+                });
+        }
+
+        private <T extends Pageable, I> CompletionStage<Void> listFrom(final ListType<T, I> type,
+                                                                       final Optional<URI> pageUri,
+                                                                       final List<I> collected,
+                                                                       final AtomicInteger pageCount)
+        {
+            if (!pageUri.isPresent() || this.result.isDone()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            pageCount.incrementAndGet();
+            return track(this.apiClient.streamList(pageUri.get(), type, collected::add))
+                .thenCompose(nextPageUri -> listFrom(type, nextPageUri, collected, pageCount));
+        }
+
+        /**
+         * Keeps hold of a request while it is in flight, cancelling it right away if the snapshot
+         * failed in the meantime.
+         *
+         * @param request the future of a request
+         * @return the future of the request
+         */
+        private <T> CompletionStage<T> track(final CompletionStage<T> request) {
+            final CompletableFuture<T> future = request.toCompletableFuture();
+            this.inFlight.add(future);
+            future.whenComplete((ignored, failure) -> this.inFlight.remove(future));
+            if (this.result.isCompletedExceptionally()) {
+                future.cancel(false);
+            }
+            return future;
+        }
+
+        private void finish() {
+            final Map<ListType<?, ?>, List<?>> orderedItems = new LinkedHashMap<>();
+            final Map<ListType<?, ?>, Timing> orderedTimings = new LinkedHashMap<>();
+            for (final ListType<?, ?> type : this.types) {
+                orderedItems.put(type, this.items.get(type));
+                orderedTimings.put(type, this.timings.get(type));
+            }
+            this.result.complete(new AccountSnapshot(
+                this.takenAt,
+                Duration.ofNanos(System.nanoTime() - this.startNanos),
+                Collections.unmodifiableMap(orderedItems),
+                Collections.unmodifiableMap(orderedTimings)
+            ));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.ngrok;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Runs around the API calls sent through a {@link DefaultNgrokApiClient}, for cross-cutting concerns
+ * such as tracing headers, credential rotation, logging or fault injection.
+ *
+ * Interceptors form an ordered chain: the first one added to the client builder sees each call first
+ * and its result last. An interceptor passes the call on with {@link ApiInvocation#proceed()}, and
+ * returns the result, possibly transformed. It can instead answer the call itself without proceeding,
+ * or proceed several times to retry it, asynchronously.
+ *
+ * <pre>
+ * ApiInterceptor tracing = new ApiInterceptor() {
+ *     public &lt;O&gt; CompletionStage&lt;O&gt; intercept(final ApiInvocation&lt;O&gt; invocation) {
+ *         return invocation.withHeader("traceparent", currentTraceParent()).proceed();
+ *     }
+ * };
+ * </pre>
+ *
+ * Interceptors are called on the thread making the call, or on an I/O thread for retries and later
+ * pages, so they should not block.
+ */
+public interface ApiInterceptor {
+    /**
+     * Intercepts an API call.
+     *
+     * @param invocation the call, which can be passed on with {@link ApiInvocation#proceed()}
+     * @param <O> the type of the result of the call
+     * @return a future of the result of the call
+     */
+    <O> CompletionStage<O> intercept(ApiInvocation<O> invocation);
+}
@@ -0,0 +1,233 @@
+package com.ngrok;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An API call going through a chain of {@link ApiInterceptor}s.
+ *
+ * An invocation is immutable; methods like {@link #withHeader(String, String)} return a copy at the
+ * same place in the chain.
+ *
+ * @param <O> the type of the result of the call
+ */
+public final class ApiInvocation<O> {
+    /**
+     * Sends an invocation once it has gone through every interceptor.
+     *
+     * @param <O> the type of the result of the call
+     */
+    @FunctionalInterface
+    interface Transport<O> {
+        CompletionStage<O> send(ApiInvocation<O> invocation);
+    }
+
+    private final List<ApiInterceptor> interceptors;
+    private final int index;
+    private final Transport<O> transport;
+    private final NgrokApiClient.HttpMethod method;
+    private final String endpoint;
+    private final Optional<URI> uri;
+    private final List<Map.Entry<String, Optional<Object>>> queryParams;
+    private final List<Map.Entry<String, Optional<Object>>> bodyParams;
+    private final Optional<Class<O>> responseClass;
+    private final Map<String, String> headers;
+    private final CompletableFuture<Void> cancelled;
+    private String template;
+
+    ApiInvocation(final List<ApiInterceptor> interceptors,
+                  final int index,
+                  final Transport<O> transport,
+                  final NgrokApiClient.HttpMethod method,
+                  final String endpoint,
+                  final Optional<URI> uri,
+                  final List<Map.Entry<String, Optional<Object>>> queryParams,
+                  final List<Map.Entry<String, Optional<Object>>> bodyParams,
+                  final Optional<Class<O>> responseClass,
+                  final Map<String, String> headers,
+                  final CompletableFuture<Void> cancelled)
+    {
+        this.interceptors = interceptors;
+        this.index = index;
+        this.transport = transport;
+        this.method = method;
+        this.endpoint = endpoint;
+        this.uri = uri;
+        this.queryParams = queryParams;
+        this.bodyParams = bodyParams;
+        this.responseClass = responseClass;
+        this.headers = headers;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Fetches the HTTP method of the call.
+     *
+     * @return the HTTP method
+     */
+    public NgrokApiClient.HttpMethod getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Fetches the endpoint of the call, the path under the API base URI.
+     *
+     * @return an endpoint, like <code>/tunnels/tn_123</code>
+     */
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Fetches the template of the endpoint of the call.
+     *
+     * @return an endpoint template, like <code>/tunnels/{id}</code>
+     * @see EndpointTemplates#templateOf(String)
+     */
+    public String getEndpointTemplate() {
+        if (this.template == null) {
+            this.template = EndpointTemplates.templateOf(this.endpoint);
+        }
+        return this.template;
+    }
+
+    /**
+     * Fetches the full URI of the call, for calls sent to a URI such as the next page of a list. The
+     * query of such calls is part of the URI rather than of the query parameters.
+     *
+     * @return the URI, if the call is sent to one
+     */
+    public Optional<URI> getUri() {
+        return this.uri;
+    }
+
+    /**
+     * Fetches the query parameters of the call. Parameters with an empty value are not sent.
+     *
+     * @return an unmodifiable list of query parameters
+     */
+    public List<Map.Entry<String, Optional<Object>>> getQueryParams() {
+        return this.queryParams;
+    }
+
+    /**
+     * Fetches the JSON body parameters of the call. Parameters with an empty value are not sent, and
+     * no body is sent if the list is empty.
+     *
+     * @return an unmodifiable list of body parameters
+     */
+    public List<Map.Entry<String, Optional<Object>>> getBodyParams() {
+        return this.bodyParams;
+    }
+
+    /**
+     * Fetches the type the response body is decoded into.
+     *
+     * @return the response type, absent if the response has no body or for a streamed list page,
+     *         whose items are handed over as they arrive and whose result is the URI of the next page
+     */
+    public Optional<Class<O>> getResponseClass() {
+        return this.responseClass;
+    }
+
+    /**
+     * Fetches the extra headers set by interceptors so far.
+     *
+     * @return an unmodifiable map of headers
+     */
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Copies the invocation with an extra HTTP header, replacing any header of the same name, whatever
+     * its case. This includes the headers set by the client itself, such as {@code Authorization},
+     * {@code User-Agent} and {@code Ngrok-Version}.
+     *
+     * @param name the name of the header
+     * @param value the value of the header
+     * @return a new invocation
+     */
+    public ApiInvocation<O> withHeader(final String name, final String value) {
+        final Map<String, String> headers = new LinkedHashMap<>(this.headers);
+        headers.put(requireNonNull(name, "name is required"), requireNonNull(value, "value is required"));
+        return new ApiInvocation<>(
+            this.interceptors,
+            this.index,
+            this.transport,
+            this.method,
+            this.endpoint,
+            this.uri,
+            this.queryParams,
+            this.bodyParams,
+            this.responseClass,
+            Collections.unmodifiableMap(headers),
+            this.cancelled
+        );
+    }
+
+    /**
+     * Passes the call on to the next interceptor, or sends it if this is the last one. This can be
+     * called more than once to retry the call.
+     *
+     * @return a future of the result of the call
+     */
+    public CompletionStage<O> proceed() {
+        if (this.index == this.interceptors.size()) {
+            return this.transport.send(this);
+        }
+        final ApiInvocation<O> next = new ApiInvocation<>(
+            this.interceptors,
+            this.index + 1,
+            this.transport,
+            this.method,
+            this.endpoint,
+            this.uri,
+            this.queryParams,
+            this.bodyParams,
+            this.responseClass,
+            this.headers,
+            this.cancelled
+        );
+        try {
+            return requireNonNull(this.interceptors.get(this.index).intercept(next), "an interceptor must return a CompletionStage");
+        } catch (final RuntimeException e) {
+            final CompletableFuture<O> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Cancels every request sent for the call, including those sent later by retrying interceptors.
+     */
+    void cancel() {
+        this.cancelled.complete(null);
+    }
+
+    /**
+     * Runs an action once the caller has cancelled the future of the result of the call, or right
+     * away if it already has.
+     *
+     * @param action the action to run
+     */
+    void onCancel(final Runnable action) {
+        this.cancelled.thenRun(action);
+    }
+
+    @Override
+    public String toString() {
+        return "ApiInvocation{" +
+            "method='" + this.method +
+            "', endpoint='" + this.endpoint +
+            "'}";
+    }
+}
@@ -0,0 +1,287 @@
+package com.ngrok;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Built-in {@link MetricsRegistry} keeping, for every HTTP method and endpoint template, a latency
+ * histogram, request and response byte counts, and counts of status codes and API error codes.
+ *
+ * Once an operation has been seen, recording it does not allocate nor lock. The metrics can be read
+ * through {@link #getOperations()} or, once {@link #registerMBean()} has been called, over JMX.
+ *
+ * <pre>
+ * ApiMetrics metrics = new ApiMetrics();
+ * metrics.registerMBean();
+ * NgrokApiClient client = DefaultNgrokApiClient.newBuilder(apiKey).metrics(metrics).build();
+ * </pre>
+ */
+public class ApiMetrics implements MetricsRegistry, ApiMetricsMXBean {
+    /**
+     * The JMX object name used by {@link #registerMBean()}.
+     */
+    public static final String DEFAULT_OBJECT_NAME = "com.ngrok:type=ApiMetrics";
+
+    private static final int MAX_STATUS_CODE = 599;
+
+    /**
+     * The metrics of one operation, an HTTP method on an endpoint template.
+     */
+    public static class Operation {
+        private final NgrokApiClient.HttpMethod method;
+        private final String endpointTemplate;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS_CODE + 1);
+        private final ConcurrentMap<String, LongAdder> errorCodeCounts = new ConcurrentHashMap<>();
+
+        private Operation(final NgrokApiClient.HttpMethod method, final String endpointTemplate) {
+            this.method = method;
+            this.endpointTemplate = endpointTemplate;
+        }
+
+        /**
+         * Fetches the HTTP method of the operation.
+         *
+         * @return the HTTP method
+         */
+        public NgrokApiClient.HttpMethod getMethod() {
+            return this.method;
+        }
+
+        /**
+         * Fetches the endpoint template of the operation.
+         *
+         * @return the endpoint template, like <code>/tunnels/{id}</code>
+         */
+        public String getEndpointTemplate() {
+            return this.endpointTemplate;
+        }
+
+        /**
+         * Fetches the latency histogram of the operation.
+         *
+         * @return the latency histogram
+         */
+        public LatencyHistogram getLatency() {
+            return this.latency;
+        }
+
+        /**
+         * Fetches the total size of the request bodies of the operation.
+         *
+         * @return a number of bytes
+         */
+        public long getRequestBytes() {
+            return this.requestBytes.sum();
+        }
+
+        /**
+         * Fetches the total size of the response bodies of the operation.
+         *
+         * @return a number of bytes
+         */
+        public long getResponseBytes() {
+            return this.responseBytes.sum();
+        }
+
+        /**
+         * Fetches the number of responses by status code. Exchanges without a response have status
+         * code 0.
+         *
+         * @return a sorted map of counts by status code
+         */
+        public SortedMap<Integer, Long> getStatusCounts() {
+            final SortedMap<Integer, Long> counts = new TreeMap<>();
+            for (int status = 0; status <= MAX_STATUS_CODE; status++) {
+                final long count = this.statusCounts.get(status);
+                if (count > 0) {
+                    counts.put(status, count);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * Fetches the number of API errors by error code.
+         *
+         * @return a sorted map of counts by error code
+         */
+        public SortedMap<String, Long> getErrorCodeCounts() {
+            final SortedMap<String, Long> counts = new TreeMap<>();
+            this.errorCodeCounts.forEach((code, count) -> counts.put(code, count.sum()));
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            return this.method + " " + this.endpointTemplate;
+        }
+    }
+
+    private final Map<NgrokApiClient.HttpMethod, ConcurrentMap<String, Operation>> operations = new EnumMap<>(NgrokApiClient.HttpMethod.class);
+
+    /**
+     * Creates an empty set of metrics.
+     */
+    public ApiMetrics() {
+        for (final NgrokApiClient.HttpMethod method : NgrokApiClient.HttpMethod.values()) {
+            this.operations.put(method, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final NgrokApiClient.HttpMethod method,
+                       final String endpointTemplate,
+                       final int statusCode,
+                       final Optional<String> errorCode,
+                       final long latencyNanos,
+                       final long requestBytes,
+                       final long responseBytes)
+    {
+        final ConcurrentMap<String, Operation> byTemplate = this.operations.get(method);
+        Operation operation = byTemplate.get(endpointTemplate);
+        if (operation == null) {
+            operation = byTemplate.computeIfAbsent(endpointTemplate, template -> new Operation(method, template));
+        }
+        operation.latency.record(latencyNanos);
+        operation.requestBytes.add(requestBytes);
+        operation.responseBytes.add(responseBytes);
+        operation.statusCounts.incrementAndGet(statusCode >= 0 && statusCode <= MAX_STATUS_CODE ? statusCode : 0);
+        if (errorCode.isPresent()) {
+            operation.errorCodeCounts.computeIfAbsent(errorCode.get(), code -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Fetches the metrics of an operation.
+     *
+     * @param method the HTTP method
+     * @param endpointTemplate the endpoint template, like <code>/tunnels/{id}</code>
+     * @return the metrics, if the operation was recorded
+     */
+    public Optional<Operation> getOperation(final NgrokApiClient.HttpMethod method, final String endpointTemplate) {
+        return Optional.ofNullable(this.operations.get(requireNonNull(method, "method is required")).get(endpointTemplate));
+    }
+
+    /**
+     * Fetches the metrics of every operation recorded.
+     *
+     * @return an unmodifiable collection of operations
+     */
+    public Collection<Operation> getOperations() {
+        final List<Operation> all = new ArrayList<>();
+        this.operations.values().forEach(byTemplate -> all.addAll(byTemplate.values()));
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under {@link #DEFAULT_OBJECT_NAME}.
+     *
+     * @return the object name registered
+     * @throws IllegalStateException if the registration failed, for example because the name is taken
+     */
+    public ObjectName registerMBean() {
+        return registerMBean(DEFAULT_OBJECT_NAME);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, for example to tell apart the metrics
+     * of several clients.
+     *
+     * @param objectName the JMX object name, like <code>com.ngrok:type=ApiMetrics,name=worker</code>
+     * @return the object name registered
+     * @throws IllegalStateException if the registration failed, for example because the name is taken
+     */
+    public ObjectName registerMBean(final String objectName) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            return server.registerMBean(this, new ObjectName(requireNonNull(objectName, "objectName is required"))).getObjectName();
+        } catch (final JMException e) {
+            throw new IllegalStateException("Could not register " + objectName, e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return collect(operation -> operation.latency.getCount());
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return collectMillis(operation -> operation.latency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return collectMillis(operation -> operation.latency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return collectMillis(operation -> operation.latency.getMaxNanos());
+    }
+
+    @Override
+    public Map<String, Long> getRequestBytes() {
+        return collect(Operation::getRequestBytes);
+    }
+
+    @Override
+    public Map<String, Long> getResponseBytes() {
+        return collect(Operation::getResponseBytes);
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        getOperations().forEach(operation -> operation.getStatusCounts().forEach((status, count) -> counts.put(operation + " " + status, count)));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCodeCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        getOperations().forEach(operation -> operation.getErrorCodeCounts().forEach((code, count) -> counts.put(operation + " " + code, count)));
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        this.operations.values().forEach(Map::clear);
+    }
+
+    private Map<String, Long> collect(final ToLongFunction<Operation> metric) {
+        final Map<String, Long> values = new TreeMap<>();
+        getOperations().forEach(operation -> values.put(operation.toString(), metric.applyAsLong(operation)));
+        return values;
+    }
+
+    private Map<String, Double> collectMillis(final ToLongFunction<Operation> nanos) {
+        final Map<String, Double> values = new TreeMap<>();
+        getOperations().forEach(operation -> values.put(operation.toString(), nanos.applyAsLong(operation) / 1e6));
+        return values;
+    }
+}
@@ -0,0 +1,72 @@
+package com.ngrok;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ApiMetrics}. Operations are keyed by HTTP method and endpoint template, like
+ * <code>POST /tunnel_sessions/{id}/restart</code>.
+ */
+public interface ApiMetricsMXBean {
+    /**
+     * Fetches the number of exchanges per operation.
+     *
+     * @return a map of counts by operation
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * Fetches the median latency per operation.
+     *
+     * @return a map of latencies in milliseconds by operation
+     */
+    Map<String, Double> getLatencyP50Millis();
+
+    /**
+     * Fetches the 99th percentile latency per operation.
+     *
+     * @return a map of latencies in milliseconds by operation
+     */
+    Map<String, Double> getLatencyP99Millis();
+
+    /**
+     * Fetches the longest latency per operation.
+     *
+     * @return a map of latencies in milliseconds by operation
+     */
+    Map<String, Double> getLatencyMaxMillis();
+
+    /**
+     * Fetches the total size of request bodies per operation.
+     *
+     * @return a map of byte counts by operation
+     */
+    Map<String, Long> getRequestBytes();
+
+    /**
+     * Fetches the total size of response bodies per operation.
+     *
+     * @return a map of byte counts by operation
+     */
+    Map<String, Long> getResponseBytes();
+
+    /**
+     * Fetches the number of responses per operation and status code, keyed like
+     * <code>GET /tunnels 200</code>. Exchanges without a response have status code 0.
+     *
+     * @return a map of counts by operation and status code
+     */
+    Map<String, Long> getStatusCounts();
+
+    /**
+     * Fetches the number of API errors per operation and error code, keyed like
+     * <code>GET /tunnels ERR_NGROK_404</code>.
+     *
+     * @return a map of counts by operation and error code
+     */
+    Map<String, Long> getErrorCodeCounts();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
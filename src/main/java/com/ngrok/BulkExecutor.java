@@ -0,0 +1,507 @@
+package com.ngrok;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs a large number of API calls, such as thousands of creates or deletes, with a bounded number of
+ * calls in flight.
+ *
+ * Operations are given as a stream of suppliers of a call, usually the <code>call</code> method of a
+ * call builder, or as a stream of inputs and the call to make for each:
+ *
+ * <pre>
+ * BulkExecutor.Result&lt;Void&gt; result = BulkExecutor.newBuilder()
+ *     .maxConcurrency(16)
+ *     .build()
+ *     .execute(apiKeyIds.stream(), id -&gt; ngrok.apiKeys().delete(id).call())
+ *     .toCompletableFuture().join();
+ * </pre>
+ *
+ * The stream is consumed lazily, one operation at a time as calls complete, so it may be much larger
+ * than what fits in flight. A failed call does not stop the others: every result and every failure is
+ * collected by the index of its operation in the stream.
+ */
+public class BulkExecutor {
+    /**
+     * The order in which the outcome of each operation is handed to a {@link Listener}.
+     */
+    public enum Ordering {
+        /** Outcomes are handed over as soon as calls complete */
+        COMPLETION,
+        /**
+         * Outcomes are handed over in the order of the operations in the stream. Calls still run
+         * concurrently, but no call starts further ahead of the first unfinished one than a window of
+         * a few times the concurrency, to bound the outcomes waiting for their turn.
+         */
+        SUBMISSION
+    }
+
+    /**
+     * Receives the outcome of each operation. Calls to a listener never overlap.
+     *
+     * @param <T> the type of the results of the operations
+     */
+    public interface Listener<T> {
+        /**
+         * Called when an operation succeeded.
+         *
+         * @param index the index of the operation in the stream
+         * @param result the result of the call
+         */
+        void onSuccess(int index, T result);
+
+        /**
+         * Called when an operation failed.
+         *
+         * @param index the index of the operation in the stream
+         * @param error the failure of the call, usually an {@link com.ngrok.definitions.NgrokApiError}
+         */
+        void onFailure(int index, Throwable error);
+    }
+
+    /**
+     * The progress of a bulk execution at one point in time.
+     */
+    public static class Progress {
+        private final int startedCount;
+        private final int succeededCount;
+        private final int failedCount;
+        private final Duration elapsed;
+
+        private Progress(final int startedCount, final int succeededCount, final int failedCount, final Duration elapsed) {
+            this.startedCount = startedCount;
+            this.succeededCount = succeededCount;
+            this.failedCount = failedCount;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Fetches the number of operations started so far.
+         *
+         * @return a number of operations
+         */
+        public int getStartedCount() {
+            return this.startedCount;
+        }
+
+        /**
+         * Fetches the number of operations which succeeded so far.
+         *
+         * @return a number of operations
+         */
+        public int getSucceededCount() {
+            return this.succeededCount;
+        }
+
+        /**
+         * Fetches the number of operations which failed so far.
+         *
+         * @return a number of operations
+         */
+        public int getFailedCount() {
+            return this.failedCount;
+        }
+
+        /**
+         * Fetches the number of operations which completed so far, successfully or not.
+         *
+         * @return a number of operations
+         */
+        public int getCompletedCount() {
+            return this.succeededCount + this.failedCount;
+        }
+
+        /**
+         * Fetches the number of operations in flight.
+         *
+         * @return a number of operations
+         */
+        public int getInFlightCount() {
+            return this.startedCount - getCompletedCount();
+        }
+
+        /**
+         * Fetches the time since the execution started.
+         *
+         * @return a duration
+         */
+        public Duration getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * Fetches the average number of operations completed per second since the execution started.
+         *
+         * @return a throughput
+         */
+        public double getThroughput() {
+            final long elapsedNanos = this.elapsed.toNanos();
+            return elapsedNanos == 0 ? 0 : getCompletedCount() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "BulkExecutor.Progress{" +
+                "startedCount='" + this.startedCount +
+                "', succeededCount='" + this.succeededCount +
+                "', failedCount='" + this.failedCount +
+                "', elapsed='" + this.elapsed +
+                "'}";
+        }
+    }
+
+    /**
+     * The outcome of a bulk execution.
+     *
+     * @param <T> the type of the results of the operations
+     */
+    public static class Result<T> {
+        private final SortedMap<Integer, T> successes;
+        private final SortedMap<Integer, Throwable> failures;
+        private final Progress progress;
+
+        private Result(final SortedMap<Integer, T> successes, final SortedMap<Integer, Throwable> failures, final Progress progress) {
+            this.successes = successes;
+            this.failures = failures;
+            this.progress = progress;
+        }
+
+        /**
+         * Fetches the results of the operations which succeeded, by index in the stream.
+         *
+         * @return an unmodifiable map of results
+         */
+        public SortedMap<Integer, T> getSuccesses() {
+            return this.successes;
+        }
+
+        /**
+         * Fetches the failures of the operations which failed, by index in the stream.
+         *
+         * @return an unmodifiable map of failures
+         */
+        public SortedMap<Integer, Throwable> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Fetches whether every operation succeeded.
+         *
+         * @return true if no operation failed
+         */
+        public boolean isSuccessful() {
+            return this.failures.isEmpty();
+        }
+
+        /**
+         * Fetches the final progress of the execution, with its counts, duration and throughput.
+         *
+         * @return the progress
+         */
+        public Progress getProgress() {
+            return this.progress;
+        }
+
+        @Override
+        public String toString() {
+            return "BulkExecutor.Result{" +
+                "successes='" + this.successes.size() +
+                "', failures='" + this.failures.size() +
+                "', progress='" + this.progress +
+                "'}";
+        }
+    }
+
+    /**
+     * Builder class for bulk executors.
+     */
+    public static class Builder {
+        private int maxConcurrency = 8;
+        private Ordering ordering = Ordering.COMPLETION;
+        private Consumer<? super Progress> progressListener = progress -> { };
+        private Duration progressInterval = Duration.ofSeconds(1);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the largest number of calls in flight at once. Defaults to 8.
+         *
+         * @param maxConcurrency a number of calls
+         * @return the executor builder
+         */
+        public BulkExecutor.Builder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets the order in which outcomes are handed to listeners. Defaults to
+         * {@link Ordering#COMPLETION}.
+         *
+         * @param ordering an ordering
+         * @return the executor builder
+         */
+        public BulkExecutor.Builder ordering(final Ordering ordering) {
+            this.ordering = requireNonNull(ordering, "ordering is required");
+            return this;
+        }
+
+        /**
+         * Sets a listener for the progress of executions, called at most once per progress interval
+         * while operations complete, and once more when an execution finishes.
+         *
+         * @param progressListener a progress listener
+         * @return the executor builder
+         */
+        public BulkExecutor.Builder progressListener(final Consumer<? super Progress> progressListener) {
+            this.progressListener = requireNonNull(progressListener, "progressListener is required");
+            return this;
+        }
+
+        /**
+         * Sets the shortest time between two progress reports. Defaults to one second.
+         *
+         * @param progressInterval a duration
+         * @return the executor builder
+         */
+        public BulkExecutor.Builder progressInterval(final Duration progressInterval) {
+            this.progressInterval = requireNonNull(progressInterval, "progressInterval is required");
+            return this;
+        }
+
+        /**
+         * Builds the bulk executor.
+         *
+         * @return a bulk executor
+         */
+        public BulkExecutor build() {
+            return new BulkExecutor(this);
+        }
+    }
+
+    /**
+     * Creates a new bulk executor builder.
+     *
+     * @return an executor builder
+     */
+    public static BulkExecutor.Builder newBuilder() {
+        return new BulkExecutor.Builder();
+    }
+
+    private static final int SUBMISSION_WINDOW_FACTOR = 4;
+
+    private final int maxConcurrency;
+    private final Ordering ordering;
+    private final Consumer<? super Progress> progressListener;
+    private final long progressIntervalNanos;
+
+    private BulkExecutor(final Builder builder) {
+        this.maxConcurrency = builder.maxConcurrency;
+        this.ordering = builder.ordering;
+        this.progressListener = builder.progressListener;
+        this.progressIntervalNanos = builder.progressInterval.toNanos();
+    }
+
+    /**
+     * Runs every operation of a stream.
+     *
+     * @param operations the operations, each starting one call when invoked
+     * @param <T> the type of the results of the operations
+     * @return a {@link CompletionStage} of the {@link Result}, completed once every call has completed;
+     *         it only fails if the stream itself fails
+     */
+    public <T> CompletionStage<Result<T>> execute(final Stream<? extends Supplier<? extends CompletionStage<? extends T>>> operations) {
+        return new Run<T>(requireNonNull(operations, "operations is required").iterator(), null).start();
+    }
+
+    /**
+     * Runs one operation for every input of a stream.
+     *
+     * @param inputs the inputs, such as the IDs of the resources to delete
+     * @param operation starts the call for one input
+     * @param <I> the type of the inputs
+     * @param <T> the type of the results of the operations
+     * @return a {@link CompletionStage} of the {@link Result}, with the results and failures by index of
+     *         the input in the stream; it only fails if the stream itself fails
+     */
+    public <I, T> CompletionStage<Result<T>> execute(final Stream<I> inputs, final Function<? super I, ? extends CompletionStage<? extends T>> operation) {
+        requireNonNull(operation, "operation is required");
+        final Stream<Supplier<CompletionStage<? extends T>>> operations = requireNonNull(inputs, "inputs is required")
+            .map(input -> () -> operation.apply(input));
+        return new Run<T>(operations.iterator(), null).start();
+    }
+
+    /**
+     * Runs every operation of a stream, handing the outcome of each to a listener as it is known.
+     *
+     * @param operations the operations, each starting one call when invoked
+     * @param listener the listener for the outcome of each operation
+     * @param <T> the type of the results of the operations
+     * @return a {@link CompletionStage} of the {@link Result}, completed once every call has completed
+     *         and its outcome has been handed to the listener; it only fails if the stream itself fails
+     */
+    public <T> CompletionStage<Result<T>> execute(final Stream<? extends Supplier<? extends CompletionStage<? extends T>>> operations,
+                                                  final Listener<? super T> listener)
+    {
+        return new Run<T>(requireNonNull(operations, "operations is required").iterator(), listener).start();
+    }
+
+    /**
+     * An execution in progress. A single drain loop, entered by whichever thread completes a call,
+     * starts calls while there is room for them, so the stream is only ever read by one thread at a
+     * time and calls completing synchronously do not recurse.
+     */
+    private final class Run<T> {
+        private final Iterator<? extends Supplier<? extends CompletionStage<? extends T>>> operations;
+        private final Listener<? super T> listener;
+        private final AtomicInteger work = new AtomicInteger();
+        private final CompletableFuture<Result<T>> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private final SortedMap<Integer, T> successes = new TreeMap<>();
+        private final SortedMap<Integer, Throwable> failures = new TreeMap<>();
+        private final SortedMap<Integer, Map.Entry<T, Throwable>> undelivered = new TreeMap<>();
+        private int startedCount = 0;
+        private int completedCount = 0;
+        private int deliveredCount = 0;
+        private boolean exhausted = false;
+        private long lastProgressNanos;
+
+        private Run(final Iterator<? extends Supplier<? extends CompletionStage<? extends T>>> operations, final Listener<? super T> listener) {
+            this.operations = operations;
+            this.listener = listener;
+            this.lastProgressNanos = this.startNanos;
+        }
+
+        private CompletionStage<Result<T>> start() {
+            drain();
+            return this.result;
+        }
+
+        private void drain() {
+            if (this.work.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!this.result.isDone()) {
+                    final int index;
+                    synchronized (this) {
+                        if (this.exhausted || !hasRoom()) {
+                            break;
+                        }
+                        index = this.startedCount;
+                    }
+                    final Supplier<? extends CompletionStage<? extends T>> operation;
+                    try {
+                        if (!this.operations.hasNext()) {
+                            synchronized (this) {
+                                this.exhausted = true;
+                                finishIfDone();
+                            }
+                            break;
+                        }
+                        operation = this.operations.next();
+                    } catch (final RuntimeException e) {
+                        this.result.completeExceptionally(e);
+                        break;
+                    }
+                    synchronized (this) {
+                        this.startedCount++;
+                    }
+                    CompletionStage<? extends T> call;
+                    try {
+                        call = operation.get();
+                    } catch (final RuntimeException e) {
+                        final CompletableFuture<T> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(e);
+                        call = failed;
+                    }
+                    call.whenComplete((value, failure) -> {
+                        complete(index, value, failure == null ? null : RetryPolicy.unwrap(failure));
+                        drain();
+                    });
+                }
+            } while (this.work.decrementAndGet() != 0);
+        }
+
+        private boolean hasRoom() {
+            final int inFlight = this.startedCount - this.completedCount;
+            if (inFlight >= BulkExecutor.this.maxConcurrency) {
+                return false;
+            }
+            return BulkExecutor.this.ordering == Ordering.COMPLETION
+                || this.startedCount - this.deliveredCount < BulkExecutor.this.maxConcurrency * SUBMISSION_WINDOW_FACTOR;
+        }
+
+        private synchronized void complete(final int index, final T value, final Throwable failure) {
+            this.completedCount++;
+            if (failure == null) {
+                this.successes.put(index, value);
+            } else {
+                this.failures.put(index, failure);
+            }
+            if (BulkExecutor.this.ordering == Ordering.COMPLETION) {
+                deliver(index, value, failure);
+            } else {
+                this.undelivered.put(index, new AbstractMap.SimpleImmutableEntry<>(value, failure));
+                while (!this.undelivered.isEmpty() && this.undelivered.firstKey() == this.deliveredCount) {
+                    final Map.Entry<T, Throwable> outcome = this.undelivered.remove(this.undelivered.firstKey());
+                    deliver(this.deliveredCount, outcome.getKey(), outcome.getValue());
+                }
+            }
+            final long now = System.nanoTime();
+            if (now - this.lastProgressNanos >= BulkExecutor.this.progressIntervalNanos) {
+                this.lastProgressNanos = now;
+                BulkExecutor.this.progressListener.accept(progress(now));
+            }
+            finishIfDone();
+        }
+
+        private void deliver(final int index, final T value, final Throwable failure) {
+            this.deliveredCount++;
+            if (this.listener == null) {
+                return;
+            }
+            if (failure == null) {
+                this.listener.onSuccess(index, value);
+            } else {
+                this.listener.onFailure(index, failure);
+            }
+        }
+
+        private void finishIfDone() {
+            if (!this.exhausted || this.completedCount < this.startedCount || this.result.isDone()) {
+                return;
+            }
+            final Progress progress = progress(System.nanoTime());
+            BulkExecutor.this.progressListener.accept(progress);
+            this.result.complete(new Result<>(
+                Collections.unmodifiableSortedMap(this.successes),
+                Collections.unmodifiableSortedMap(this.failures),
+                progress
+            ));
+        }
+
+        private Progress progress(final long now) {
+            return new Progress(this.startedCount, this.successes.size(), this.failures.size(), Duration.ofNanos(now - this.startNanos));
+        }
+    }
+}
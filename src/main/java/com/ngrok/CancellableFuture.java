@@ -0,0 +1,287 @@
+package com.ngrok;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A future that runs an action when it is cancelled, and whose dependent stages cancel it in turn.
+ *
+ * A plain {@link CompletableFuture} does not pass cancellation upstream: cancelling the future returned
+ * by {@code thenApply} leaves the future it was derived from running. Every {@link CompletionStage}
+ * method of this future returns another {@code CancellableFuture} that cancels this one when it is
+ * cancelled; a stage passed in as {@code other}, such as to {@code thenCombine}, is left alone. The API client returns this
+ * future instead, so that a caller mapping a response, like the list call builders turning a list into
+ * a {@link com.ngrok.definitions.Page}, still aborts the request when it cancels the mapped future.
+ *
+ * @param <T> the type of the result
+ */
+final class CancellableFuture<T> extends CompletableFuture<T> {
+    private final Runnable onCancel;
+
+    CancellableFuture(final Runnable onCancel) {
+        this.onCancel = onCancel;
+    }
+
+    /**
+     * Mirrors a stage into a new future, running an action if that future is cancelled.
+     *
+     * @param stage the stage to mirror
+     * @param onCancel the action to run on cancellation
+     * @param <T> the type of the result
+     * @return a new future
+     */
+    static <T> CancellableFuture<T> of(final CompletionStage<T> stage, final Runnable onCancel) {
+        final CancellableFuture<T> future = new CancellableFuture<>(onCancel);
+        stage.whenComplete((value, failure) -> {
+            if (failure == null) {
+                future.complete(value);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            this.onCancel.run();
+        }
+        return cancelled;
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenApply(final Function<? super T, ? extends U> fn) {
+        return dependent(super.thenApply(fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenApplyAsync(final Function<? super T, ? extends U> fn) {
+        return dependent(super.thenApplyAsync(fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> thenApplyAsync(final Function<? super T, ? extends U> fn, final Executor executor) {
+        return dependent(super.thenApplyAsync(fn, executor));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenAccept(final Consumer<? super T> action) {
+        return dependent(super.thenAccept(action));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenAcceptAsync(final Consumer<? super T> action) {
+        return dependent(super.thenAcceptAsync(action));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenAcceptAsync(final Consumer<? super T> action, final Executor executor) {
+        return dependent(super.thenAcceptAsync(action, executor));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenRun(final Runnable action) {
+        return dependent(super.thenRun(action));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenRunAsync(final Runnable action) {
+        return dependent(super.thenRunAsync(action));
+    }
+
+    @Override
+    public CancellableFuture<Void> thenRunAsync(final Runnable action, final Executor executor) {
+        return dependent(super.thenRunAsync(action, executor));
+    }
+
+    @Override
+    public <U, V> CancellableFuture<V> thenCombine(final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn) {
+        return dependent(super.thenCombine(other, fn));
+    }
+
+    @Override
+    public <U, V> CancellableFuture<V> thenCombineAsync(final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn) {
+        return dependent(super.thenCombineAsync(other, fn));
+    }
+
+    @Override
+    public <U, V> CancellableFuture<V> thenCombineAsync(final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn, final Executor executor) {
+        return dependent(super.thenCombineAsync(other, fn, executor));
+    }
+
+    @Override
+    public <U> CancellableFuture<Void> thenAcceptBoth(final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action) {
+        return dependent(super.thenAcceptBoth(other, action));
+    }
+
+    @Override
+    public <U> CancellableFuture<Void> thenAcceptBothAsync(final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action) {
+        return dependent(super.thenAcceptBothAsync(other, action));
+    }
+
+    @Override
+    public <U> CancellableFuture<Void> thenAcceptBothAsync(final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action, final Executor executor) {
+        return dependent(super.thenAcceptBothAsync(other, action, executor));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterBoth(final CompletionStage<?> other, final Runnable action) {
+        return dependent(super.runAfterBoth(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterBothAsync(final CompletionStage<?> other, final Runnable action) {
+        return dependent(super.runAfterBothAsync(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterBothAsync(final CompletionStage<?> other, final Runnable action, final Executor executor) {
+        return dependent(super.runAfterBothAsync(other, action, executor));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> applyToEither(final CompletionStage<? extends T> other, final Function<? super T, U> fn) {
+        return dependent(super.applyToEither(other, fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> applyToEitherAsync(final CompletionStage<? extends T> other, final Function<? super T, U> fn) {
+        return dependent(super.applyToEitherAsync(other, fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> applyToEitherAsync(final CompletionStage<? extends T> other, final Function<? super T, U> fn, final Executor executor) {
+        return dependent(super.applyToEitherAsync(other, fn, executor));
+    }
+
+    @Override
+    public CancellableFuture<Void> acceptEither(final CompletionStage<? extends T> other, final Consumer<? super T> action) {
+        return dependent(super.acceptEither(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> acceptEitherAsync(final CompletionStage<? extends T> other, final Consumer<? super T> action) {
+        return dependent(super.acceptEitherAsync(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> acceptEitherAsync(final CompletionStage<? extends T> other, final Consumer<? super T> action, final Executor executor) {
+        return dependent(super.acceptEitherAsync(other, action, executor));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterEither(final CompletionStage<?> other, final Runnable action) {
+        return dependent(super.runAfterEither(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterEitherAsync(final CompletionStage<?> other, final Runnable action) {
+        return dependent(super.runAfterEitherAsync(other, action));
+    }
+
+    @Override
+    public CancellableFuture<Void> runAfterEitherAsync(final CompletionStage<?> other, final Runnable action, final Executor executor) {
+        return dependent(super.runAfterEitherAsync(other, action, executor));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Cancelling the returned future cancels this one, or the stage returned by the function if this
+     * one has already completed.
+     */
+    @Override
+    public <U> CancellableFuture<U> thenCompose(final Function<? super T, ? extends CompletionStage<U>> fn) {
+        final AtomicReference<CompletionStage<U>> next = new AtomicReference<>();
+        return composed(super.thenCompose(recording(fn, next)), next);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Cancelling the returned future cancels this one, or the stage returned by the function if this
+     * one has already completed.
+     */
+    @Override
+    public <U> CancellableFuture<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn) {
+        final AtomicReference<CompletionStage<U>> next = new AtomicReference<>();
+        return composed(super.thenComposeAsync(recording(fn, next)), next);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Cancelling the returned future cancels this one, or the stage returned by the function if this
+     * one has already completed.
+     */
+    @Override
+    public <U> CancellableFuture<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn, final Executor executor) {
+        final AtomicReference<CompletionStage<U>> next = new AtomicReference<>();
+        return composed(super.thenComposeAsync(recording(fn, next), executor), next);
+    }
+
+    @Override
+    public CancellableFuture<T> whenComplete(final BiConsumer<? super T, ? super Throwable> action) {
+        return dependent(super.whenComplete(action));
+    }
+
+    @Override
+    public CancellableFuture<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action) {
+        return dependent(super.whenCompleteAsync(action));
+    }
+
+    @Override
+    public CancellableFuture<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action, final Executor executor) {
+        return dependent(super.whenCompleteAsync(action, executor));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> handle(final BiFunction<? super T, Throwable, ? extends U> fn) {
+        return dependent(super.handle(fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn) {
+        return dependent(super.handleAsync(fn));
+    }
+
+    @Override
+    public <U> CancellableFuture<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn, final Executor executor) {
+        return dependent(super.handleAsync(fn, executor));
+    }
+
+    @Override
+    public CancellableFuture<T> exceptionally(final Function<Throwable, ? extends T> fn) {
+        return dependent(super.exceptionally(fn));
+    }
+
+    private <U> CancellableFuture<U> dependent(final CompletionStage<U> stage) {
+        return of(stage, () -> cancel(false));
+    }
+
+    private static <T, U> Function<T, CompletionStage<U>> recording(final Function<? super T, ? extends CompletionStage<U>> fn, final AtomicReference<CompletionStage<U>> next) {
+        return value -> {
+            final CompletionStage<U> stage = fn.apply(value);
+            next.set(stage);
+            return stage;
+        };
+    }
+
+    private <U> CancellableFuture<U> composed(final CompletionStage<U> stage, final AtomicReference<CompletionStage<U>> next) {
+        return of(stage, () -> {
+            cancel(false);
+            final CompletionStage<U> inner = next.get();
+            if (inner != null) {
+                inner.toCompletableFuture().cancel(false);
+            }
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package com.ngrok;
+
+import com.ngrok.definitions.ReservedDomain;
+
+import java.util.Optional;
+
+/**
+ * Thrown when ngrok reports that it cannot provision the certificate of a reserved domain until the
+ * user corrects something, such as its DNS records.
+ */
+public class CertificateProvisioningException extends RuntimeException {
+    private final ReservedDomain reservedDomain;
+    private final Optional<String> errorCode;
+
+    /**
+     * Creates a new provisioning failure.
+     *
+     * @param message informative message
+     * @param reservedDomain the reserved domain, as last fetched
+     * @param errorCode the error code of the provisioning job, like <code>DNS_ERROR</code>
+     */
+    public CertificateProvisioningException(final String message, final ReservedDomain reservedDomain, final Optional<String> errorCode) {
+        super(message);
+        this.reservedDomain = reservedDomain;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Fetches the reserved domain, as last fetched.
+     *
+     * @return the reserved domain
+     */
+    public ReservedDomain getReservedDomain() {
+        return this.reservedDomain;
+    }
+
+    /**
+     * Fetches the error code of the provisioning job, if it had one.
+     *
+     * @return the error code
+     */
+    public Optional<String> getErrorCode() {
+        return this.errorCode;
+    }
+}
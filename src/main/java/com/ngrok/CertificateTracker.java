@@ -0,0 +1,322 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.NgrokApiError;
+import com.ngrok.definitions.ReservedDomain;
+import com.ngrok.definitions.ReservedDomainCertJob;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Waits for the certificates of many reserved domains to be provisioned, polling each domain only
+ * when its status says something may have changed.
+ *
+ * Tracked domains are kept in one priority queue ordered by the time of their next check, served by a
+ * single timer. When the timer fires, the checks that are due are run a small batch at a time. The
+ * time of the next check of a domain comes from its certificate status: the time the provisioning job
+ * will be retried if there is one, a delay growing with the age of the job if it is running, bounded
+ * by a minimum and maximum delay.
+ *
+ * The future returned by {@link #track(String)} completes with the reserved domain once it has a
+ * certificate, or fails with a {@link CertificateProvisioningException} once provisioning fails in a
+ * way only the user can correct, such as a <code>DNS_ERROR</code>.
+ */
+public class CertificateTracker implements AutoCloseable {
+    /**
+     * Checks due within this much of each other are run together, rather than arming the timer again
+     * for a few milliseconds.
+     */
+    private static final long COALESCE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * Builder class for certificate trackers.
+     */
+    public static class Builder {
+        private final Ngrok ngrok;
+        private int batchSize = 4;
+        private Duration minDelay = Duration.ofSeconds(5);
+        private Duration maxDelay = Duration.ofMinutes(5);
+        private Optional<ScheduledExecutorService> scheduler = Optional.empty();
+
+        Builder(final Ngrok ngrok) {
+            this.ngrok = requireNonNull(ngrok, "ngrok is required");
+        }
+
+        /**
+         * Sets the largest number of checks in flight at once. Defaults to 4.
+         *
+         * @param batchSize a number of checks
+         * @return the tracker builder
+         */
+        public CertificateTracker.Builder batchSize(final int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the shortest time between two checks of a domain. Defaults to five seconds.
+         *
+         * @param minDelay a duration
+         * @return the tracker builder
+         */
+        public CertificateTracker.Builder minDelay(final Duration minDelay) {
+            this.minDelay = requireNonNull(minDelay, "minDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets the longest time between two checks of a domain. Defaults to five minutes.
+         *
+         * @param maxDelay a duration
+         * @return the tracker builder
+         */
+        public CertificateTracker.Builder maxDelay(final Duration maxDelay) {
+            this.maxDelay = requireNonNull(maxDelay, "maxDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs the timer. Defaults to Armeria's worker group.
+         *
+         * @param scheduler a scheduled executor
+         * @return the tracker builder
+         */
+        public CertificateTracker.Builder scheduler(final ScheduledExecutorService scheduler) {
+            this.scheduler = Optional.of(requireNonNull(scheduler, "scheduler is required"));
+            return this;
+        }
+
+        /**
+         * Builds the tracker.
+         *
+         * @return a certificate tracker
+         */
+        public CertificateTracker build() {
+            if (this.minDelay.isNegative() || this.minDelay.isZero() || this.maxDelay.compareTo(this.minDelay) < 0) {
+                throw new IllegalArgumentException("minDelay must be positive and no longer than maxDelay");
+            }
+            return new CertificateTracker(this);
+        }
+    }
+
+    /**
+     * A tracked domain.
+     */
+    private static final class Pending {
+        private final String id;
+        private final CompletableFuture<ReservedDomain> future = new CompletableFuture<>();
+        private long dueNanos;
+        private int consecutiveErrors = 0;
+
+        private Pending(final String id, final long dueNanos) {
+            this.id = id;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private final Ngrok ngrok;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final BulkExecutor bulk;
+    private final int batchSize;
+    private final PriorityQueue<Pending> queue = new PriorityQueue<>(Comparator.comparingLong((Pending pending) -> pending.dueNanos));
+    private final Map<String, Pending> pending = new HashMap<>();
+    private ScheduledFuture<?> timer;
+    private long timerDueNanos;
+    private boolean checking = false;
+    private boolean closed = false;
+
+    private CertificateTracker(final Builder builder) {
+        this.ngrok = builder.ngrok;
+        this.minDelayNanos = builder.minDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.scheduler = builder.scheduler.orElseGet(CommonPools::workerGroup);
+        this.batchSize = builder.batchSize;
+        this.bulk = BulkExecutor.newBuilder().maxConcurrency(builder.batchSize).build();
+    }
+
+    /**
+     * Starts tracking the certificate of a reserved domain, checking it right away. Tracking a domain
+     * already tracked returns the same future.
+     *
+     * @param reservedDomainId the ID of the reserved domain
+     * @return a future of the reserved domain once it has a certificate
+     */
+    public synchronized CompletionStage<ReservedDomain> track(final String reservedDomainId) {
+        requireNonNull(reservedDomainId, "reservedDomainId is required");
+        if (this.closed) {
+            throw new IllegalStateException("The tracker is closed");
+        }
+        final Pending existing = this.pending.get(reservedDomainId);
+        if (existing != null) {
+            return existing.future;
+        }
+        final Pending added = new Pending(reservedDomainId, System.nanoTime());
+        this.pending.put(reservedDomainId, added);
+        this.queue.add(added);
+        arm();
+        return added.future;
+    }
+
+    /**
+     * Fetches the number of domains still tracked.
+     *
+     * @return a number of domains
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Stops tracking. The futures of the domains still tracked fail with a
+     * {@link CancellationException}.
+     */
+    @Override
+    public void close() {
+        final List<Pending> cancelled;
+        synchronized (this) {
+            this.closed = true;
+            if (this.timer != null) {
+                this.timer.cancel(false);
+                this.timer = null;
+            }
+            cancelled = new ArrayList<>(this.pending.values());
+            this.pending.clear();
+            this.queue.clear();
+        }
+        cancelled.forEach(domain -> domain.future.completeExceptionally(new CancellationException("The tracker was closed")));
+    }
+
+    /**
+     * Arms the timer for the earliest check, unless checks are running; those arm it once done.
+     */
+    private void arm() {
+        final Pending next = this.queue.peek();
+        if (this.closed || this.checking || next == null) {
+            return;
+        }
+        if (this.timer != null) {
+            if (this.timerDueNanos - next.dueNanos <= 0) {
+                return;
+            }
+            this.timer.cancel(false);
+        }
+        this.timerDueNanos = next.dueNanos;
+        this.timer = this.scheduler.schedule(this::fire, Math.max(0, next.dueNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void fire() {
+        final List<Pending> due = new ArrayList<>();
+        synchronized (this) {
+            this.timer = null;
+            if (this.closed || this.checking) {
+                return;
+            }
+            final long horizonNanos = System.nanoTime() + COALESCE_NANOS;
+            while (!this.queue.isEmpty() && this.queue.peek().dueNanos - horizonNanos <= 0 && due.size() < this.batchSize) {
+                due.add(this.queue.poll());
+            }
+            this.checking = true;
+        }
+        this.bulk.execute(due.stream(), this::check).whenComplete((ignored, failure) -> {
+            synchronized (this) {
+                this.checking = false;
+                arm();
+            }
+        });
+    }
+
+    private CompletionStage<Void> check(final Pending domain) {
+        return this.ngrok.reservedDomains().get(domain.id).call().handle((reservedDomain, failure) -> {
+            if (failure != null) {
+                onError(domain, RetryPolicy.unwrap(failure));
+            } else {
+                onStatus(domain, reservedDomain);
+            }
+            return null;
+        });
+    }
+
+    private void onError(final Pending domain, final Throwable error) {
+        if (error instanceof NgrokApiError) {
+            final int status = ((NgrokApiError) error).getHttpStatusCode();
+            if (status >= 400 && status < 500 && status != 429) {
+                finish(domain, error, null);
+                return;
+            }
+        }
+        domain.consecutiveErrors++;
+        reschedule(domain, this.minDelayNanos << Math.min(domain.consecutiveErrors, 16));
+    }
+
+    private void onStatus(final Pending domain, final ReservedDomain reservedDomain) {
+        domain.consecutiveErrors = 0;
+        if (reservedDomain.getCertificate().isPresent()) {
+            finish(domain, null, reservedDomain);
+            return;
+        }
+        if (!reservedDomain.getCertificateManagementPolicy().isPresent()) {
+            finish(domain, new CertificateProvisioningException(
+                "Certificates of " + reservedDomain.getDomain() + " are not managed by ngrok", reservedDomain, Optional.empty()
+            ), null);
+            return;
+        }
+        final Optional<ReservedDomainCertJob> job = reservedDomain.getCertificateManagementStatus().flatMap(status -> status.getProvisioningJob());
+        if (!job.isPresent()) {
+            reschedule(domain, this.minDelayNanos);
+            return;
+        }
+        final Optional<String> errorCode = job.get().getErrorCode();
+        if (errorCode.isPresent() && !"INTERNAL_ERROR".equals(errorCode.get())) {
+            finish(domain, new CertificateProvisioningException(job.get().getMsg(), reservedDomain, errorCode), null);
+            return;
+        }
+        final OffsetDateTime now = OffsetDateTime.now();
+        final long delayNanos = job.get().getRetriesAt()
+            .map(retriesAt -> Duration.between(now, retriesAt).toNanos())
+            // A running job is checked again after half of its age, so long jobs are checked less often
+            .orElseGet(() -> Duration.between(job.get().getStartedAt(), now).toNanos() / 2);
+        reschedule(domain, delayNanos);
+    }
+
+    private synchronized void reschedule(final Pending domain, final long delayNanos) {
+        if (this.pending.get(domain.id) != domain) {
+            return;
+        }
+        domain.dueNanos = System.nanoTime() + Math.max(this.minDelayNanos, Math.min(this.maxDelayNanos, delayNanos));
+        this.queue.add(domain);
+    }
+
+    private void finish(final Pending domain, final Throwable failure, final ReservedDomain reservedDomain) {
+        synchronized (this) {
+            if (!this.pending.remove(domain.id, domain)) {
+                return;
+            }
+        }
+        if (failure != null) {
+            domain.future.completeExceptionally(failure);
+        } else {
+            domain.future.complete(reservedDomain);
+        }
+    }
+}
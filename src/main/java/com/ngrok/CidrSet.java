@@ -0,0 +1,198 @@
+package com.ngrok;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A set of IP addresses, kept as the smallest number of disjoint address ranges covering every CIDR
+ * added to it.
+ *
+ * Adjacent and overlapping CIDRs are merged as they are added, so the memory held by the set is
+ * proportional to the number of ranges it ends up with, not to the number of CIDRs added. Adding a
+ * CIDR takes logarithmic time in the number of ranges.
+ */
+public class CidrSet {
+    private static final int IPV4_BITS = 32;
+    private static final int IPV6_BITS = 128;
+
+    private final NavigableMap<BigInteger, BigInteger> ipv4Ranges = new TreeMap<>();
+    private final NavigableMap<BigInteger, BigInteger> ipv6Ranges = new TreeMap<>();
+
+    /**
+     * Creates an empty set.
+     */
+    public CidrSet() {
+    }
+
+    /**
+     * Adds the addresses of a CIDR, or a single address, to the set.
+     *
+     * @param cidr a CIDR, like <code>10.0.0.0/8</code> or <code>2001:db8::/32</code>
+     * @throws IllegalArgumentException if the CIDR is not valid
+     */
+    public void add(final String cidr) {
+        final IpPolicyIndex.Cidr parsed = IpPolicyIndex.Cidr.parse(cidr);
+        final int bits = parsed.ipv4 ? IPV4_BITS : IPV6_BITS;
+        final BigInteger start = toInteger(parsed);
+        final BigInteger end = start.or(BigInteger.ONE.shiftLeft(bits - parsed.length).subtract(BigInteger.ONE));
+        addRange(parsed.ipv4 ? this.ipv4Ranges : this.ipv6Ranges, start, end);
+    }
+
+    /**
+     * Adds the CIDRs of a text feed to the set, one per line, reading it as a stream.
+     *
+     * Blank lines are skipped, as is anything after a <code>#</code> or <code>;</code> comment marker or
+     * after the first whitespace of a line, so the usual blocklist formats can be read as they are.
+     *
+     * @param reader the feed; it is not closed
+     * @param invalidLine called with the line number and the error of every line which is not a valid
+     *                    CIDR; those lines are skipped
+     * @return the number of CIDRs added
+     * @throws IOException if reading the feed fails
+     */
+    public long addAll(final Reader reader, final BiConsumer<Long, IllegalArgumentException> invalidLine) throws IOException {
+        final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        long lineNumber = 0;
+        long added = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            final String cidr = firstToken(line);
+            if (cidr.isEmpty()) {
+                continue;
+            }
+            try {
+                add(cidr);
+                added++;
+            } catch (final IllegalArgumentException e) {
+                invalidLine.accept(lineNumber, e);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Fetches the number of disjoint address ranges in the set.
+     *
+     * @return a number of ranges
+     */
+    public int getRangeCount() {
+        return this.ipv4Ranges.size() + this.ipv6Ranges.size();
+    }
+
+    /**
+     * Fetches the smallest list of CIDRs covering exactly the addresses in the set, IPv4 first, each
+     * family in address order.
+     *
+     * @return an unmodifiable list of CIDRs, like <code>10.0.0.0/8</code>
+     */
+    public List<String> toCidrs() {
+        final List<String> cidrs = new ArrayList<>();
+        toCidrs(this.ipv4Ranges, IPV4_BITS, cidrs);
+        toCidrs(this.ipv6Ranges, IPV6_BITS, cidrs);
+        return Collections.unmodifiableList(cidrs);
+    }
+
+    /**
+     * Formats a CIDR the way {@link #toCidrs()} does, with its host bits cleared, so that CIDRs written
+     * differently can be compared.
+     *
+     * @param cidr a CIDR, or a single address
+     * @return the canonical form of the CIDR
+     * @throws IllegalArgumentException if the CIDR is not valid
+     */
+    public static String canonical(final String cidr) {
+        final IpPolicyIndex.Cidr parsed = IpPolicyIndex.Cidr.parse(cidr);
+        return format(toInteger(parsed), parsed.ipv4 ? IPV4_BITS : IPV6_BITS, parsed.length);
+    }
+
+    private static void addRange(final NavigableMap<BigInteger, BigInteger> ranges, final BigInteger start, final BigInteger end) {
+        BigInteger mergedStart = start;
+        BigInteger mergedEnd = end;
+        final Map.Entry<BigInteger, BigInteger> lower = ranges.floorEntry(start);
+        if (lower != null && lower.getValue().add(BigInteger.ONE).compareTo(start) >= 0) {
+            if (lower.getValue().compareTo(end) >= 0) {
+                return;
+            }
+            mergedStart = lower.getKey();
+            ranges.remove(lower.getKey());
+        }
+        Map.Entry<BigInteger, BigInteger> higher = ranges.ceilingEntry(mergedStart);
+        while (higher != null && higher.getKey().compareTo(mergedEnd.add(BigInteger.ONE)) <= 0) {
+            mergedEnd = mergedEnd.max(higher.getValue());
+            ranges.remove(higher.getKey());
+            higher = ranges.ceilingEntry(mergedStart);
+        }
+        ranges.put(mergedStart, mergedEnd);
+    }
+
+    private static void toCidrs(final NavigableMap<BigInteger, BigInteger> ranges, final int bits, final List<String> cidrs) {
+        for (final Map.Entry<BigInteger, BigInteger> range : ranges.entrySet()) {
+            BigInteger start = range.getKey();
+            final BigInteger end = range.getValue();
+            while (start.compareTo(end) <= 0) {
+                // The largest block aligned on start which does not go past end
+                final int alignment = start.signum() == 0 ? bits : start.getLowestSetBit();
+                final int hostBits = Math.min(alignment, end.subtract(start).add(BigInteger.ONE).bitLength() - 1);
+                cidrs.add(format(start, bits, bits - hostBits));
+                start = start.add(BigInteger.ONE.shiftLeft(hostBits));
+            }
+        }
+    }
+
+    private static BigInteger toInteger(final IpPolicyIndex.Cidr cidr) {
+        if (cidr.ipv4) {
+            return BigInteger.valueOf(cidr.hi >>> 32);
+        }
+        return new BigInteger(1, toBytes(cidr.hi, cidr.lo));
+    }
+
+    private static byte[] toBytes(final long hi, final long lo) {
+        final byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (hi >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (lo >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    private static String format(final BigInteger address, final int bits, final int length) {
+        final byte[] bytes = new byte[bits / 8];
+        final byte[] magnitude = address.toByteArray();
+        final int copied = Math.min(magnitude.length, bytes.length);
+        System.arraycopy(magnitude, magnitude.length - copied, bytes, bytes.length - copied, copied);
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress() + "/" + length;
+        } catch (final UnknownHostException e) {
+            // Only thrown for addresses of an illegal length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String firstToken(final String line) {
+        int end = 0;
+        while (end < line.length()) {
+            final char c = line.charAt(end);
+            if (c == '#' || c == ';' || Character.isWhitespace(c)) {
+                break;
+            }
+            end++;
+        }
+        if (end == 0) {
+            final String trimmed = line.trim();
+            return trimmed.isEmpty() || trimmed.charAt(0) == '#' || trimmed.charAt(0) == ';' ? "" : firstToken(trimmed);
+        }
+        return line.substring(0, end);
+    }
+}
@@ -0,0 +1,432 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+import com.ngrok.definitions.EndpointCircuitBreaker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Client-side circuit breaker for {@link DefaultNgrokApiClient}, with one circuit per endpoint
+ * template, like <code>/edges/https/{id}</code>, so that a family of endpoints failing during an
+ * incident does not hold up calls to the others.
+ *
+ * Its settings are those of the {@link EndpointCircuitBreaker} module of edges. Each circuit counts
+ * requests and failures over a rolling window split into buckets. Once the window holds at least
+ * the volume threshold of requests and the share of failures reaches the error threshold, the
+ * circuit opens: for the tripped duration, its requests fail right away with a
+ * {@link CircuitOpenException} without being sent. After that, one trial request is let through; the
+ * circuit closes if it succeeds, and opens again if it fails.
+ *
+ * A request fails if the API answered with a 5xx status or could not be reached, including timeouts.
+ * Other responses, even errors like 404, show the API is healthy. Requests cancelled by the caller or
+ * rejected before being sent are not counted.
+ */
+public class CircuitBreaker {
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        /** Requests are sent and counted */
+        CLOSED,
+        /** Requests fail without being sent */
+        OPEN,
+        /** One trial request is sent, the others fail without being sent */
+        HALF_OPEN
+    }
+
+    /**
+     * Receives the state changes of circuits.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called when a circuit changes state, on the thread that completed the request causing the
+         * change, so it should not block.
+         *
+         * @param endpointTemplate the endpoint template of the circuit
+         * @param from the previous state
+         * @param to the new state
+         */
+        void onStateChange(String endpointTemplate, State from, State to);
+    }
+
+    /**
+     * Builder class for circuit breakers.
+     */
+    public static class Builder {
+        private Duration trippedDuration = Duration.ofSeconds(10);
+        private Duration rollingWindow = Duration.ofSeconds(10);
+        private int numBuckets = 10;
+        private long volumeThreshold = 20;
+        private double errorThresholdPercentage = 0.5;
+        private final List<Listener> listeners = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Copies the settings of an {@link EndpointCircuitBreaker} module, so that the client trips
+         * the way an edge would. Settings the module leaves unset, which read as zero, keep their
+         * current value.
+         *
+         * @param module an endpoint circuit breaker module
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder settings(final EndpointCircuitBreaker module) {
+            requireNonNull(module, "module is required");
+            if (module.getTrippedDuration() != null && !module.getTrippedDuration().isZero()) {
+                trippedDuration(module.getTrippedDuration());
+            }
+            if (module.getRollingWindow() > 0) {
+                rollingWindow(Duration.ofSeconds(module.getRollingWindow()));
+            }
+            if (module.getNumBuckets() > 0) {
+                numBuckets((int) Math.min(module.getNumBuckets(), Integer.MAX_VALUE));
+            }
+            if (module.getVolumeThreshold() > 0) {
+                volumeThreshold(module.getVolumeThreshold());
+            }
+            if (module.getErrorThresholdPercentage() > 0) {
+                errorThresholdPercentage(module.getErrorThresholdPercentage());
+            }
+            return this;
+        }
+
+        /**
+         * Sets how long a circuit stays open before a trial request is let through. Defaults to ten
+         * seconds.
+         *
+         * @param trippedDuration a duration
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder trippedDuration(final Duration trippedDuration) {
+            this.trippedDuration = requireNonNull(trippedDuration, "trippedDuration is required");
+            return this;
+        }
+
+        /**
+         * Sets the rolling window over which requests and failures are counted. Defaults to ten
+         * seconds.
+         *
+         * @param rollingWindow a duration
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder rollingWindow(final Duration rollingWindow) {
+            this.rollingWindow = requireNonNull(rollingWindow, "rollingWindow is required");
+            return this;
+        }
+
+        /**
+         * Sets the number of buckets the rolling window is split into; counts leave the window one
+         * bucket at a time. Defaults to 10, at most 128.
+         *
+         * @param numBuckets a number of buckets
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder numBuckets(final int numBuckets) {
+            if (numBuckets < 1 || numBuckets > 128) {
+                throw new IllegalArgumentException("numBuckets must be between 1 and 128");
+            }
+            this.numBuckets = numBuckets;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests the rolling window must hold before a circuit can open.
+         * Defaults to 20.
+         *
+         * @param volumeThreshold a number of requests
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder volumeThreshold(final long volumeThreshold) {
+            if (volumeThreshold < 1) {
+                throw new IllegalArgumentException("volumeThreshold must be positive");
+            }
+            this.volumeThreshold = volumeThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the share of failed requests in the rolling window at which a circuit opens. Defaults
+         * to 0.5.
+         *
+         * @param errorThresholdPercentage a share between 0 and 1
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder errorThresholdPercentage(final double errorThresholdPercentage) {
+            if (errorThresholdPercentage <= 0 || errorThresholdPercentage > 1) {
+                throw new IllegalArgumentException("errorThresholdPercentage must be above 0 and at most 1");
+            }
+            this.errorThresholdPercentage = errorThresholdPercentage;
+            return this;
+        }
+
+        /**
+         * Adds a listener for the state changes of circuits.
+         *
+         * @param listener a listener
+         * @return the breaker builder
+         */
+        public CircuitBreaker.Builder listener(final Listener listener) {
+            this.listeners.add(requireNonNull(listener, "listener is required"));
+            return this;
+        }
+
+        /**
+         * Builds the circuit breaker.
+         *
+         * @return a circuit breaker
+         */
+        public CircuitBreaker build() {
+            if (this.trippedDuration.isNegative() || this.rollingWindow.toNanos() < this.numBuckets) {
+                throw new IllegalArgumentException("trippedDuration must not be negative and rollingWindow must be positive");
+            }
+            return new CircuitBreaker(this);
+        }
+    }
+
+    /**
+     * Creates a new circuit breaker builder.
+     *
+     * @return a breaker builder
+     */
+    public static CircuitBreaker.Builder newBuilder() {
+        return new CircuitBreaker.Builder();
+    }
+
+    /**
+     * Creates a circuit breaker with all default settings.
+     *
+     * @return a circuit breaker
+     */
+    public static CircuitBreaker createDefault() {
+        return newBuilder().build();
+    }
+
+    /**
+     * The right to send one request through a circuit, to be completed with its outcome.
+     */
+    final class Permit {
+        private final Circuit circuit;
+        private final boolean trial;
+
+        private Permit(final Circuit circuit, final boolean trial) {
+            this.circuit = circuit;
+            this.trial = trial;
+        }
+
+        /**
+         * Records the outcome of the request.
+         *
+         * @param response the response, if one arrived
+         * @param failure the failure, if the request failed
+         */
+        void complete(final AggregatedHttpResponse response, final Throwable failure) {
+            final Boolean failed;
+            if (response != null) {
+                failed = response.status().code() >= 500;
+            } else {
+                final Throwable cause = RetryPolicy.unwrap(failure);
+                failed = cause instanceof CancellationException || cause instanceof RequestRejectedException ? null : true;
+            }
+            this.circuit.onOutcome(this.trial, Optional.ofNullable(failed));
+        }
+
+        /**
+         * Records that the request was cancelled, so its outcome does not count.
+         */
+        void cancel() {
+            this.circuit.onOutcome(this.trial, Optional.empty());
+        }
+    }
+
+    /**
+     * The state and rolling counts of one endpoint template.
+     */
+    private final class Circuit {
+        private final String template;
+        private final long[] bucketIds = new long[CircuitBreaker.this.numBuckets];
+        private final long[] requests = new long[CircuitBreaker.this.numBuckets];
+        private final long[] failures = new long[CircuitBreaker.this.numBuckets];
+        private State state = State.CLOSED;
+        private long openUntilNanos;
+
+        private Circuit(final String template) {
+            this.template = template;
+            Arrays.fill(this.bucketIds, -1);
+        }
+
+        private Permit acquire() {
+            final long now = System.nanoTime();
+            synchronized (this) {
+                if (this.state == State.CLOSED) {
+                    return new Permit(this, false);
+                }
+                final long remainingNanos = this.openUntilNanos - now;
+                if (this.state == State.HALF_OPEN || remainingNanos > 0) {
+                    throw new CircuitOpenException(this.template, Duration.ofNanos(Math.max(0, remainingNanos)));
+                }
+                this.state = State.HALF_OPEN;
+            }
+            notifyListeners(this.template, State.OPEN, State.HALF_OPEN);
+            return new Permit(this, true);
+        }
+
+        /**
+         * Records the outcome of a request.
+         *
+         * @param trial whether the request was the trial of a half-open circuit
+         * @param failed whether the request failed, or empty if it does not count
+         */
+        private void onOutcome(final boolean trial, final Optional<Boolean> failed) {
+            final State from;
+            final State to;
+            synchronized (this) {
+                from = this.state;
+                if (trial) {
+                    if (!failed.isPresent()) {
+                        // Lets the next request be the trial instead
+                        this.state = State.OPEN;
+                        this.openUntilNanos = System.nanoTime();
+                    } else if (failed.get()) {
+                        open();
+                    } else {
+                        this.state = State.CLOSED;
+                        Arrays.fill(this.bucketIds, -1);
+                    }
+                } else if (this.state == State.CLOSED && failed.isPresent()) {
+                    if (!record(failed.get())) {
+                        return;
+                    }
+                    open();
+                } else {
+                    return;
+                }
+                to = this.state;
+            }
+            notifyListeners(this.template, from, to);
+        }
+
+        /**
+         * Counts a request in the current bucket.
+         *
+         * @return whether the circuit should open
+         */
+        private boolean record(final boolean failed) {
+            final long bucketId = System.nanoTime() / CircuitBreaker.this.bucketNanos;
+            final int index = (int) Math.floorMod(bucketId, (long) this.bucketIds.length);
+            if (this.bucketIds[index] != bucketId) {
+                this.bucketIds[index] = bucketId;
+                this.requests[index] = 0;
+                this.failures[index] = 0;
+            }
+            this.requests[index]++;
+            if (failed) {
+                this.failures[index]++;
+            } else {
+                return false;
+            }
+            long totalRequests = 0;
+            long totalFailures = 0;
+            for (int i = 0; i < this.bucketIds.length; i++) {
+                if (bucketId - this.bucketIds[i] < this.bucketIds.length) {
+                    totalRequests += this.requests[i];
+                    totalFailures += this.failures[i];
+                }
+            }
+            return totalRequests >= CircuitBreaker.this.volumeThreshold
+                && totalFailures >= CircuitBreaker.this.errorThresholdPercentage * totalRequests;
+        }
+
+        private void open() {
+            this.state = State.OPEN;
+            this.openUntilNanos = System.nanoTime() + CircuitBreaker.this.trippedDurationNanos;
+            Arrays.fill(this.bucketIds, -1);
+        }
+
+        private synchronized State getState() {
+            return this.state;
+        }
+    }
+
+    private final long trippedDurationNanos;
+    private final long bucketNanos;
+    private final int numBuckets;
+    private final long volumeThreshold;
+    private final double errorThresholdPercentage;
+    private final List<Listener> listeners;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private CircuitBreaker(final Builder builder) {
+        this.trippedDurationNanos = builder.trippedDuration.toNanos();
+        this.bucketNanos = builder.rollingWindow.toNanos() / builder.numBuckets;
+        this.numBuckets = builder.numBuckets;
+        this.volumeThreshold = builder.volumeThreshold;
+        this.errorThresholdPercentage = builder.errorThresholdPercentage;
+        this.listeners = Collections.unmodifiableList(new ArrayList<>(builder.listeners));
+    }
+
+    /**
+     * Fetches the state of the circuit of an endpoint template. An open circuit whose tripped
+     * duration is over stays open until a request is made.
+     *
+     * @param endpointTemplate an endpoint template, like <code>/edges/https/{id}</code>
+     * @return the state of the circuit
+     */
+    public State getState(final String endpointTemplate) {
+        final Circuit circuit = this.circuits.get(requireNonNull(endpointTemplate, "endpointTemplate is required"));
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * Fetches the state of the circuit of every endpoint template requested so far.
+     *
+     * @return a sorted map of states by endpoint template
+     */
+    public SortedMap<String, State> getStates() {
+        final SortedMap<String, State> states = new TreeMap<>();
+        this.circuits.forEach((template, circuit) -> states.put(template, circuit.getState()));
+        return states;
+    }
+
+    /**
+     * Gets the right to send a request.
+     *
+     * @param endpointTemplate the endpoint template of the request
+     * @return a permit to complete with the outcome of the request
+     * @throws CircuitOpenException if the circuit of the template is open
+     */
+    Permit acquire(final String endpointTemplate) {
+        Circuit circuit = this.circuits.get(endpointTemplate);
+        if (circuit == null) {
+            circuit = this.circuits.computeIfAbsent(endpointTemplate, Circuit::new);
+        }
+        return circuit.acquire();
+    }
+
+    /**
+     * Tells every listener about a state change. Exceptions thrown by listeners are ignored, so that
+     * they cannot fail a request.
+     */
+    private void notifyListeners(final String template, final State from, final State to) {
+        for (final Listener listener : this.listeners) {
+            try {
+                listener.onStateChange(template, from, to);
+            } catch (final RuntimeException e) {
+                // Ignored, see above
+            }
+        }
+    }
+}
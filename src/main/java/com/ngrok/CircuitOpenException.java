@@ -0,0 +1,45 @@
+package com.ngrok;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request is not sent because the circuit of its endpoint template is open, as the
+ * API recently failed too many requests to the same family of endpoints.
+ *
+ * @see CircuitBreaker
+ */
+public class CircuitOpenException extends RequestRejectedException {
+    private final String endpointTemplate;
+    private final Duration retryAfter;
+
+    /**
+     * Creates a new rejection.
+     *
+     * @param endpointTemplate the endpoint template of the open circuit, like <code>/edges/https/{id}</code>
+     * @param retryAfter the time left before the circuit lets a trial request through
+     */
+    public CircuitOpenException(final String endpointTemplate, final Duration retryAfter) {
+        super("The circuit for " + endpointTemplate + " is open");
+        this.endpointTemplate = endpointTemplate;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Fetches the endpoint template of the open circuit.
+     *
+     * @return an endpoint template, like <code>/edges/https/{id}</code>
+     */
+    public String getEndpointTemplate() {
+        return this.endpointTemplate;
+    }
+
+    /**
+     * Fetches the time left before the circuit lets a trial request through. This is zero while a
+     * trial request is in flight.
+     *
+     * @return a duration
+     */
+    public Duration getRetryAfter() {
+        return this.retryAfter;
+    }
+}
@@ -0,0 +1,364 @@
+package com.ngrok;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Adaptive limit on the number of API requests in flight at once.
+ *
+ * Every request has to hold a permit while it is on the wire. The number of permits is adjusted by a
+ * pluggable {@link Algorithm} from the round-trip time of each request and from whether the API
+ * pushed back on it (with a 429 or 503 response, or a timeout). Requests over the limit wait in a
+ * bounded queue and are handed a permit as soon as one frees up; once the queue is full, further
+ * requests fail fast with a {@link RequestRejectedException}.
+ *
+ * @see Aimd
+ * @see Gradient
+ */
+public class ConcurrencyLimiter {
+    /**
+     * A strategy for adjusting the concurrency limit.
+     *
+     * Implementations are called concurrently from many threads and are responsible for their own
+     * synchronization.
+     */
+    public interface Algorithm {
+        /**
+         * Fetches the current concurrency limit.
+         *
+         * @return a number of requests, at least 1
+         */
+        int getLimit();
+
+        /**
+         * Records the outcome of one request.
+         *
+         * @param rttNanos round-trip time of the request, in nanoseconds
+         * @param inFlight number of requests in flight when the request was sent, including itself
+         * @param dropped whether or not the API pushed back on the request
+         */
+        void onSample(long rttNanos, int inFlight, boolean dropped);
+    }
+
+    /**
+     * Additive-increase/multiplicative-decrease limit: grows by one for each request that completes in
+     * time while the limit is in use, and shrinks by a fixed ratio whenever a request is dropped or
+     * takes longer than the timeout.
+     */
+    public static class Aimd implements Algorithm {
+        private final int minLimit;
+        private final int maxLimit;
+        private final double backoffRatio;
+        private final long timeoutNanos;
+        private volatile int limit;
+
+        /**
+         * Creates a new AIMD algorithm.
+         *
+         * @param initialLimit starting limit
+         * @param minLimit smallest limit
+         * @param maxLimit largest limit
+         * @param backoffRatio ratio the limit is multiplied by on a drop, between 0.5 and 1
+         * @param timeout round-trip time above which a request counts as dropped
+         */
+        public Aimd(final int initialLimit, final int minLimit, final int maxLimit, final double backoffRatio, final Duration timeout) {
+            if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+            }
+            if (backoffRatio < 0.5 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoffRatio must be in [0.5, 1)");
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.backoffRatio = backoffRatio;
+            this.timeoutNanos = requireNonNull(timeout, "timeout is required").toNanos();
+            this.limit = initialLimit;
+        }
+
+        @Override
+        public int getLimit() {
+            return this.limit;
+        }
+
+        @Override
+        public synchronized void onSample(final long rttNanos, final int inFlight, final boolean dropped) {
+            if (dropped || rttNanos > this.timeoutNanos) {
+                this.limit = Math.max(this.minLimit, (int) (this.limit * this.backoffRatio));
+            } else if (inFlight * 2 >= this.limit) {
+                this.limit = Math.min(this.maxLimit, this.limit + 1);
+            }
+        }
+    }
+
+    /**
+     * Gradient limit: compares a short-term average round-trip time against a slowly moving long-term
+     * baseline, and scales the limit down as latency rises above the baseline. A headroom of roughly
+     * the square root of the limit lets it probe upwards while latency stays flat.
+     */
+    public static class Gradient implements Algorithm {
+        private static final double SHORT_SMOOTHING = 0.1;
+        private static final double LONG_SMOOTHING = 0.01;
+        private static final double LIMIT_SMOOTHING = 0.2;
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final double tolerance;
+        private double shortRtt = 0;
+        private double longRtt = 0;
+        private double estimatedLimit;
+        private volatile int limit;
+
+        /**
+         * Creates a new gradient algorithm.
+         *
+         * @param initialLimit starting limit
+         * @param minLimit smallest limit
+         * @param maxLimit largest limit
+         * @param tolerance how far short-term latency may rise above the long-term baseline before the
+         *                  limit shrinks, e.g. 1.5 for 50%
+         */
+        public Gradient(final int initialLimit, final int minLimit, final int maxLimit, final double tolerance) {
+            if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+            }
+            if (tolerance < 1) {
+                throw new IllegalArgumentException("tolerance must be at least 1");
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.tolerance = tolerance;
+            this.estimatedLimit = initialLimit;
+            this.limit = initialLimit;
+        }
+
+        @Override
+        public int getLimit() {
+            return this.limit;
+        }
+
+        @Override
+        public synchronized void onSample(final long rttNanos, final int inFlight, final boolean dropped) {
+            if (this.longRtt == 0) {
+                this.shortRtt = rttNanos;
+                this.longRtt = rttNanos;
+                return;
+            }
+            this.shortRtt += (rttNanos - this.shortRtt) * SHORT_SMOOTHING;
+            this.longRtt += (rttNanos - this.longRtt) * LONG_SMOOTHING;
+
+            // Let the baseline recover quickly once a latency spike has passed
+            if (this.longRtt / this.shortRtt > 2) {
+                this.longRtt *= 0.95;
+            }
+
+            // Don't grow the limit while it isn't even being used
+            if (!dropped && inFlight < this.estimatedLimit / 2) {
+                return;
+            }
+
+            final double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, this.tolerance * this.longRtt / this.shortRtt));
+            final double target = this.estimatedLimit * gradient + Math.sqrt(this.estimatedLimit);
+            this.estimatedLimit = Math.max(this.minLimit, Math.min(this.maxLimit,
+                this.estimatedLimit * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING));
+            this.limit = (int) this.estimatedLimit;
+        }
+    }
+
+    /**
+     * Builder class for concurrency limiters.
+     */
+    public static class Builder {
+        private Algorithm algorithm = new Aimd(20, 1, 200, 0.9, Duration.ofSeconds(5));
+        private int maxQueueSize = 1000;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the algorithm adjusting the limit. The default is an {@link Aimd} algorithm starting at
+         * 20 requests, bounded to between 1 and 200, that treats requests over 5 seconds as drops.
+         *
+         * @param algorithm a limit algorithm
+         * @return the limiter builder
+         */
+        public ConcurrencyLimiter.Builder algorithm(final Algorithm algorithm) {
+            this.algorithm = requireNonNull(algorithm, "algorithm is required");
+            return this;
+        }
+
+        /**
+         * Sets how many requests may wait for a permit before new requests are rejected.
+         *
+         * @param maxQueueSize a number of requests
+         * @return the limiter builder
+         */
+        public ConcurrencyLimiter.Builder maxQueueSize(final int maxQueueSize) {
+            if (maxQueueSize < 0) {
+                throw new IllegalArgumentException("maxQueueSize must not be negative");
+            }
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * Builds the concurrency limiter.
+         *
+         * @return a concurrency limiter
+         */
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this.algorithm, this.maxQueueSize);
+        }
+    }
+
+    /**
+     * Creates a new concurrency limiter builder.
+     *
+     * @return a limiter builder
+     */
+    public static ConcurrencyLimiter.Builder newBuilder() {
+        return new ConcurrencyLimiter.Builder();
+    }
+
+    private final Algorithm algorithm;
+    private final int maxQueueSize;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<CompletableFuture<Permit>> waiters = new ConcurrentLinkedQueue<>();
+    private final LongAdder rejections = new LongAdder();
+
+    private ConcurrencyLimiter(final Algorithm algorithm, final int maxQueueSize) {
+        this.algorithm = algorithm;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Fetches the current concurrency limit.
+     *
+     * @return a number of requests
+     */
+    public int getLimit() {
+        return this.algorithm.getLimit();
+    }
+
+    /**
+     * Fetches the number of requests currently holding a permit.
+     *
+     * @return a number of requests
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Fetches the number of requests currently waiting for a permit.
+     *
+     * @return a number of requests
+     */
+    public int getQueueDepth() {
+        return this.queued.get();
+    }
+
+    /**
+     * Fetches the number of requests rejected because the queue was full.
+     *
+     * @return a number of requests
+     */
+    public long getRejectionCount() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * Acquires a permit, waiting in the queue if the limit has been reached. Cancelling the returned
+     * future takes the request out of the queue.
+     *
+     * @return a future permit, failed with a {@link RequestRejectedException} if the queue is full
+     */
+    CompletionStage<Permit> acquire() {
+        while (true) {
+            final int current = this.inFlight.get();
+            if (current >= this.algorithm.getLimit()) {
+                break;
+            }
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                return CompletableFuture.completedFuture(new Permit(current + 1));
+            }
+        }
+
+        if (this.queued.incrementAndGet() > this.maxQueueSize) {
+            this.queued.decrementAndGet();
+            this.rejections.increment();
+            final CompletableFuture<Permit> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new RequestRejectedException("too many API requests in flight and queued"));
+            return rejected;
+        }
+        final CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        waiter.whenComplete((permit, failure) -> {
+            if (waiter.isCancelled() && this.waiters.remove(waiter)) {
+                this.queued.decrementAndGet();
+            }
+        });
+        this.waiters.add(waiter);
+        drain();
+        return waiter;
+    }
+
+    private void drain() {
+        while (!this.waiters.isEmpty()) {
+            final int current = this.inFlight.get();
+            if (current >= this.algorithm.getLimit()) {
+                return;
+            }
+            if (!this.inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final CompletableFuture<Permit> waiter = this.waiters.poll();
+            if (waiter == null) {
+                this.inFlight.decrementAndGet();
+                continue;
+            }
+            this.queued.decrementAndGet();
+            if (!waiter.complete(new Permit(current + 1))) {
+                // The waiting request was abandoned, so hand the permit on
+                this.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A permit to have one request in flight. Must be released exactly once.
+     */
+    final class Permit {
+        private final int inFlightAtStart;
+        private final long startNanos = System.nanoTime();
+
+        private Permit(final int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases the permit and feeds the outcome of the request to the limit algorithm.
+         *
+         * @param dropped whether or not the API pushed back on the request
+         */
+        void release(final boolean dropped) {
+            ConcurrencyLimiter.this.algorithm.onSample(System.nanoTime() - this.startNanos, this.inFlightAtStart, dropped);
+            abandon();
+        }
+
+        /**
+         * Releases the permit without feeding anything to the limit algorithm, for a request that was
+         * cancelled or never sent, whose round trip says nothing about the API.
+         */
+        void abandon() {
+            ConcurrencyLimiter.this.inFlight.decrementAndGet();
+            drain();
+        }
+    }
+}
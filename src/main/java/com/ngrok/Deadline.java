@@ -0,0 +1,95 @@
+package com.ngrok;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A point in time by which API calls must be done, measured on the monotonic clock of
+ * {@link System#nanoTime()}.
+ *
+ * A deadline is absolute: every request made through {@link Ngrok#withDeadline(Deadline)} shares the
+ * same one, so retries and the requests for further pages of a list all count against it.
+ *
+ * <pre>
+ * Ngrok bounded = ngrok.withDeadline(Deadline.after(Duration.ofSeconds(5)));
+ * bounded.forEach(ListType.TUNNEL_LIST, tunnel -&gt; ...);
+ * </pre>
+ */
+public final class Deadline implements Comparable<Deadline> {
+    private final long nanoTime;
+
+    private Deadline(final long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Creates a deadline some time from now.
+     *
+     * @param timeout the time from now to the deadline
+     * @return a deadline
+     */
+    public static Deadline after(final Duration timeout) {
+        return new Deadline(System.nanoTime() + requireNonNull(timeout, "timeout is required").toNanos());
+    }
+
+    /**
+     * Fetches the time left before the deadline.
+     *
+     * @return a duration, zero once the deadline has passed
+     */
+    public Duration timeRemaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @return whether the deadline has passed
+     */
+    public boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    /**
+     * Picks the earlier of this deadline and another one.
+     *
+     * @param other another deadline
+     * @return the earlier deadline
+     */
+    public Deadline earliest(final Deadline other) {
+        return compareTo(requireNonNull(other, "other is required")) <= 0 ? this : other;
+    }
+
+    long remainingNanos() {
+        return Math.max(0, this.nanoTime - System.nanoTime());
+    }
+
+    @Override
+    public int compareTo(final Deadline other) {
+        return Long.signum(this.nanoTime - other.nanoTime);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return this.nanoTime == ((Deadline) o).nanoTime;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.nanoTime);
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{" +
+            "timeRemaining='" + timeRemaining() +
+            "'}";
+    }
+}
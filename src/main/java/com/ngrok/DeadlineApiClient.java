@@ -0,0 +1,100 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Pageable;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A view of an API client whose requests fail once a deadline has passed.
+ *
+ * Each request gets a timer for the time left. When it fires, the future returned to the caller fails
+ * with a {@link DeadlineExceededException} and the future of the underlying client is cancelled,
+ * which {@link DefaultNgrokApiClient} turns into an abort of the HTTP exchange and of any pending
+ * retry. Requests made after the deadline fail without being sent.
+ */
+final class DeadlineApiClient implements NgrokApiClient {
+    private final NgrokApiClient delegate;
+    private final Deadline deadline;
+
+    DeadlineApiClient(final NgrokApiClient delegate, final Deadline deadline) {
+        this.delegate = delegate;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public <O> CompletionStage<O> sendRequest(final URI uri, final Class<O> responseClass) {
+        return bounded(() -> this.delegate.sendRequest(uri, responseClass));
+    }
+
+    @Override
+    public <O> CompletionStage<O> sendRequest(final HttpMethod method,
+                                              final String endpoint,
+                                              final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                              final Stream<Map.Entry<String, Optional<Object>>> bodyParams,
+                                              final Optional<Class<O>> responseClass)
+    {
+        return bounded(() -> this.delegate.sendRequest(method, endpoint, queryParams, bodyParams, responseClass));
+    }
+
+    @Override
+    public <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final URI uri,
+                                                                             final ListType<T, I> listType,
+                                                                             final Consumer<? super I> action)
+    {
+        return bounded(() -> this.delegate.streamList(uri, listType, action));
+    }
+
+    @Override
+    public <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final String endpoint,
+                                                                             final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                                                             final ListType<T, I> listType,
+                                                                             final Consumer<? super I> action)
+    {
+        return bounded(() -> this.delegate.streamList(endpoint, queryParams, listType, action));
+    }
+
+    @Override
+    public NgrokApiClient withDeadline(final Deadline deadline) {
+        return new DeadlineApiClient(this.delegate, this.deadline.earliest(deadline));
+    }
+
+    private <T> CompletionStage<T> bounded(final Supplier<CompletionStage<T>> request) {
+        final long remainingNanos = this.deadline.remainingNanos();
+        if (remainingNanos == 0) {
+            final CompletableFuture<T> expired = new CompletableFuture<>();
+            expired.completeExceptionally(exceeded());
+            return expired;
+        }
+        final CompletableFuture<T> sent = request.get().toCompletableFuture();
+        final CancellableFuture<T> result = new CancellableFuture<>(() -> sent.cancel(false));
+        final ScheduledFuture<?> timer = CommonPools.workerGroup().schedule(() -> {
+            if (result.completeExceptionally(exceeded())) {
+                sent.cancel(false);
+            }
+        }, remainingNanos, TimeUnit.NANOSECONDS);
+        sent.whenComplete((value, failure) -> {
+            timer.cancel(false);
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(RetryPolicy.unwrap(failure));
+            }
+        });
+        return result;
+    }
+
+    private DeadlineExceededException exceeded() {
+        return new DeadlineExceededException("The deadline of the call has passed");
+    }
+}
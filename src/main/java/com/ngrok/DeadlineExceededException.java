@@ -0,0 +1,16 @@
+package com.ngrok;
+
+/**
+ * Thrown when an API call made with a {@link Deadline} is not done by the deadline. A request still
+ * in flight at the deadline is cancelled, so it may or may not have reached the ngrok API.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    /**
+     * Creates a new deadline failure.
+     *
+     * @param message informative message
+     */
+    public DeadlineExceededException(final String message) {
+        super(message);
+    }
+}
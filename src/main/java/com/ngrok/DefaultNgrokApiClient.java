@@ -1,26 +1,50 @@
 package com.ngrok;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.linecorp.armeria.client.ClientFactory;
+import com.linecorp.armeria.client.ResponseTimeoutException;
 import com.linecorp.armeria.client.WebClient;
 import com.linecorp.armeria.client.WebClientRequestPreparation;
 import com.linecorp.armeria.common.*;
+import com.ngrok.definitions.ListType;
 import com.ngrok.definitions.NgrokApiError;
+import com.ngrok.definitions.Pageable;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -39,6 +63,15 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
         private Optional<WebClient> httpClient = Optional.empty();
         private Optional<URI> baseUri = Optional.empty();
         private Optional<ObjectMapper> objectMapper = Optional.empty();
+        private Optional<RetryPolicy> retryPolicy = Optional.empty();
+        private Optional<HedgingPolicy> hedgingPolicy = Optional.empty();
+        private Optional<RateLimiter> rateLimiter = Optional.empty();
+        private Optional<ConcurrencyLimiter> concurrencyLimiter = Optional.empty();
+        private Optional<CircuitBreaker> circuitBreaker = Optional.empty();
+        private boolean coalesceGets = false;
+        private Optional<ResponseCache> responseCache = Optional.empty();
+        private Optional<MetricsRegistry> metrics = Optional.empty();
+        private final List<ApiInterceptor> interceptors = new ArrayList<>();
 
         private Builder(final String apiKey) {
             this.apiKey = requireNonNull(apiKey, "apiKey is required");
@@ -120,6 +153,211 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
             return this;
         }
 
+        /**
+         * Sets the policy used to retry failed requests. Requests are not retried unless a policy is set.
+         *
+         * @param retryPolicy a retry policy
+         * @return the client builder
+         * @see RetryPolicy#createDefault()
+         */
+        public DefaultNgrokApiClient.Builder retryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = Optional.ofNullable(retryPolicy);
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry failed requests. Requests are not retried unless a policy is set.
+         *
+         * @param retryPolicy an optional retry policy
+         * @return the client builder
+         * @see RetryPolicy#createDefault()
+         */
+        public DefaultNgrokApiClient.Builder retryPolicy(final Optional<RetryPolicy> retryPolicy) {
+            this.retryPolicy = requireNonNull(retryPolicy, "retryPolicy is required");
+            return this;
+        }
+
+        /**
+         * Sets the policy used to hedge slow GET requests. Requests are not hedged unless a policy is
+         * set. Streamed list pages are never hedged.
+         *
+         * @param hedgingPolicy a hedging policy
+         * @return the client builder
+         * @see HedgingPolicy#createDefault()
+         */
+        public DefaultNgrokApiClient.Builder hedgingPolicy(final HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = Optional.ofNullable(hedgingPolicy);
+            return this;
+        }
+
+        /**
+         * Sets the policy used to hedge slow GET requests. Requests are not hedged unless a policy is
+         * set. Streamed list pages are never hedged.
+         *
+         * @param hedgingPolicy an optional hedging policy
+         * @return the client builder
+         * @see HedgingPolicy#createDefault()
+         */
+        public DefaultNgrokApiClient.Builder hedgingPolicy(final Optional<HedgingPolicy> hedgingPolicy) {
+            this.hedgingPolicy = requireNonNull(hedgingPolicy, "hedgingPolicy is required");
+            return this;
+        }
+
+        /**
+         * Sets the rate limiter that every request, including retries, has to get a permit from.
+         * Requests are not rate limited unless a limiter is set.
+         *
+         * @param rateLimiter a rate limiter
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder rateLimiter(final RateLimiter rateLimiter) {
+            this.rateLimiter = Optional.ofNullable(rateLimiter);
+            return this;
+        }
+
+        /**
+         * Sets the rate limiter that every request, including retries, has to get a permit from.
+         * Requests are not rate limited unless a limiter is set.
+         *
+         * @param rateLimiter an optional rate limiter
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder rateLimiter(final Optional<RateLimiter> rateLimiter) {
+            this.rateLimiter = requireNonNull(rateLimiter, "rateLimiter is required");
+            return this;
+        }
+
+        /**
+         * Sets the limiter that caps the number of requests in flight at once. The number of requests
+         * in flight is not limited unless a limiter is set.
+         *
+         * @param concurrencyLimiter a concurrency limiter
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder concurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = Optional.ofNullable(concurrencyLimiter);
+            return this;
+        }
+
+        /**
+         * Sets the limiter that caps the number of requests in flight at once. The number of requests
+         * in flight is not limited unless a limiter is set.
+         *
+         * @param concurrencyLimiter an optional concurrency limiter
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder concurrencyLimiter(final Optional<ConcurrencyLimiter> concurrencyLimiter) {
+            this.concurrencyLimiter = requireNonNull(concurrencyLimiter, "concurrencyLimiter is required");
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker that stops sending requests to a family of endpoints while the
+         * API keeps failing them. Requests to an open circuit fail with a {@link CircuitOpenException}.
+         * There is no circuit breaker unless one is set.
+         *
+         * @param circuitBreaker a circuit breaker
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder circuitBreaker(final CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = Optional.ofNullable(circuitBreaker);
+            return this;
+        }
+
+        /**
+         * Sets the circuit breaker that stops sending requests to a family of endpoints while the
+         * API keeps failing them. Requests to an open circuit fail with a {@link CircuitOpenException}.
+         * There is no circuit breaker unless one is set.
+         *
+         * @param circuitBreaker an optional circuit breaker
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder circuitBreaker(final Optional<CircuitBreaker> circuitBreaker) {
+            this.circuitBreaker = requireNonNull(circuitBreaker, "circuitBreaker is required");
+            return this;
+        }
+
+        /**
+         * Sets whether or not identical GET requests that are in flight at the same time share a single
+         * HTTP round trip. Each caller still gets its own, independently decoded result. Requests only
+         * count as identical if interceptors set the same headers on them. Disabled by default.
+         *
+         * @param coalesceGets whether or not to coalesce concurrent GET requests
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder coalesceGets(final boolean coalesceGets) {
+            this.coalesceGets = coalesceGets;
+            return this;
+        }
+
+        /**
+         * Sets the cache used to answer single-resource GET calls. Any other call sent through this
+         * client invalidates the cached resources it may have changed. Calls on which interceptors set
+         * headers, such as their own credentials, are never answered from the cache nor cached. Nothing
+         * is cached unless a cache is set.
+         *
+         * @param responseCache a response cache
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder responseCache(final ResponseCache responseCache) {
+            this.responseCache = Optional.ofNullable(responseCache);
+            return this;
+        }
+
+        /**
+         * Sets the cache used to answer single-resource GET calls. Any other call sent through this
+         * client invalidates the cached resources it may have changed. Calls on which interceptors set
+         * headers, such as their own credentials, are never answered from the cache nor cached. Nothing
+         * is cached unless a cache is set.
+         *
+         * @param responseCache an optional response cache
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder responseCache(final Optional<ResponseCache> responseCache) {
+            this.responseCache = requireNonNull(responseCache, "responseCache is required");
+            return this;
+        }
+
+        /**
+         * Sets the registry that every HTTP exchange, including retries, is recorded in. Nothing is
+         * recorded unless a registry is set.
+         *
+         * @param metrics a metrics registry
+         * @return the client builder
+         * @see ApiMetrics
+         */
+        public DefaultNgrokApiClient.Builder metrics(final MetricsRegistry metrics) {
+            this.metrics = Optional.ofNullable(metrics);
+            return this;
+        }
+
+        /**
+         * Sets the registry that every HTTP exchange, including retries, is recorded in. Nothing is
+         * recorded unless a registry is set.
+         *
+         * @param metrics an optional metrics registry
+         * @return the client builder
+         * @see ApiMetrics
+         */
+        public DefaultNgrokApiClient.Builder metrics(final Optional<MetricsRegistry> metrics) {
+            this.metrics = requireNonNull(metrics, "metrics is required");
+            return this;
+        }
+
+        /**
+         * Adds an interceptor to the end of the chain that runs around every call to
+         * {@link NgrokApiClient#sendRequest(URI, Class)} and
+         * {@link NgrokApiClient#sendRequest(NgrokApiClient.HttpMethod, String, Stream, Stream, Optional)},
+         * and around every streamed list page. The first interceptor added sees each call first.
+         *
+         * @param interceptor an interceptor
+         * @return the client builder
+         */
+        public DefaultNgrokApiClient.Builder interceptor(final ApiInterceptor interceptor) {
+            this.interceptors.add(requireNonNull(interceptor, "interceptor is required"));
+            return this;
+        }
+
         /**
          * Builds the ngrok API client instance.
          *
@@ -134,7 +372,16 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
                     new ObjectMapper()
                         .registerModule(new Jdk8Module())
                         .registerModule(new JavaTimeModule())
-                )
+                ),
+                this.retryPolicy,
+                this.hedgingPolicy,
+                this.rateLimiter,
+                this.concurrencyLimiter,
+                this.circuitBreaker,
+                this.coalesceGets,
+                this.responseCache,
+                this.metrics,
+                this.interceptors
             );
         }
     }
@@ -167,6 +414,8 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
             .build();
     }
 
+    private static final byte[] EMPTY_OBJECT = {'{', '}'};
+
     private static com.linecorp.armeria.common.HttpMethod armeriaMethodFromNgrokMethod(final HttpMethod method) {
         switch (method) {
             case GET: return com.linecorp.armeria.common.HttpMethod.GET;
@@ -215,20 +464,54 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
         return couldThrow(f, Optional.of(response));
     }
 
-    private static <T> CompletionStage<T> couldThrow(final Callable<T> f) {
-        return couldThrow(f, Optional.empty());
-    }
-
     private final String apiKey;
     private final WebClient httpClient;
     private final URI baseUri;
     private final ObjectMapper objectMapper;
+    private final ObjectWriter bodyWriter;
+    private final ThreadLocal<ByteArrayBuilder> bodyBuffers = ThreadLocal.withInitial(ByteArrayBuilder::new);
+    private final Optional<RetryPolicy> retryPolicy;
+    private final Optional<HedgingPolicy> hedgingPolicy;
+    private final Optional<RateLimiter> rateLimiter;
+    private final Optional<ConcurrencyLimiter> concurrencyLimiter;
+    private final Optional<CircuitBreaker> circuitBreaker;
+    private final boolean coalesceGets;
+    private final Optional<ResponseCache> responseCache;
+    private final Optional<MetricsRegistry> metrics;
+    private final List<ApiInterceptor> interceptors;
+    private final ConcurrentMap<String, CompletableFuture<AggregatedHttpResponse>> inFlightGets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
 
-    private DefaultNgrokApiClient(final String apiKey, final WebClient httpClient, final URI baseUri, final ObjectMapper objectMapper) {
+    private DefaultNgrokApiClient(final String apiKey,
+                                  final WebClient httpClient,
+                                  final URI baseUri,
+                                  final ObjectMapper objectMapper,
+                                  final Optional<RetryPolicy> retryPolicy,
+                                  final Optional<HedgingPolicy> hedgingPolicy,
+                                  final Optional<RateLimiter> rateLimiter,
+                                  final Optional<ConcurrencyLimiter> concurrencyLimiter,
+                                  final Optional<CircuitBreaker> circuitBreaker,
+                                  final boolean coalesceGets,
+                                  final Optional<ResponseCache> responseCache,
+                                  final Optional<MetricsRegistry> metrics,
+                                  final List<ApiInterceptor> interceptors)
+    {
         this.apiKey = apiKey;
         this.httpClient = httpClient;
         this.baseUri = baseUri;
         this.objectMapper = objectMapper;
+        this.bodyWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.retryPolicy = retryPolicy;
+        this.hedgingPolicy = hedgingPolicy;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.coalesceGets = coalesceGets;
+        this.responseCache = responseCache;
+        this.metrics = metrics;
+        this.interceptors = Collections.unmodifiableList(new ArrayList<>(interceptors));
+        this.scheduler = CommonPools.workerGroup();
     }
 
     /**
@@ -236,8 +519,22 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
      */
     @Override
     public <O> CompletionStage<O> sendRequest(final URI uri, final Class<O> responseClass) {
-        final WebClientRequestPreparation request = this.httpClient.prepare().get(uri.toString());
-        return sendRequest(request, Optional.empty(), Optional.of(responseClass));
+        if (!this.interceptors.isEmpty()) {
+            return intercept(new ApiInvocation<>(
+                this.interceptors,
+                0,
+                this::sendIntercepted,
+                HttpMethod.GET,
+                uri.getRawPath(),
+                Optional.of(uri),
+                Collections.emptyList(),
+                Collections.emptyList(),
+                Optional.of(responseClass),
+                Collections.emptyMap(),
+                new CompletableFuture<>()
+            ));
+        }
+        return send(new ApiRequest(HttpMethod.GET, uri.getRawPath(), uri.toString(), Collections.emptyList(), Optional.empty()), Optional.of(responseClass));
     }
 
     /**
@@ -247,71 +544,823 @@ public class DefaultNgrokApiClient implements NgrokApiClient {
     public <O> CompletionStage<O> sendRequest(final NgrokApiClient.HttpMethod method,
                                               final String endpoint,
                                               final Stream<Map.Entry<String, Optional<Object>>> queryParams,
-                                              final Stream<Map.Entry<String, Optional<Object>>> bodyParamsStream,
+                                              final Stream<Map.Entry<String, Optional<Object>>> bodyParams,
                                               final Optional<Class<O>> responseClass)
     {
-        final WebClientRequestPreparation request = this.httpClient.prepare()
-            .method(armeriaMethodFromNgrokMethod(method))
-            .path(this.baseUri.toString() + endpoint)
-            .queryParams(
-                queryParams.flatMap(entry -> entry.getValue()
-                    .map(value -> Stream.of(new AbstractMap.SimpleEntry<>(entry.getKey(), queryParamToString(value))))
-                    .orElse(Stream.empty())
-                ).collect(Collectors.toList())
-            );
-
-        final List<Map.Entry<String, Optional<Object>>> bodyParams = bodyParamsStream.collect(Collectors.toList());
-        final Optional<JsonNode> body;
-        if (bodyParams.isEmpty()) {
-            body = Optional.empty();
-        } else {
-            body = Optional.of(this.objectMapper.convertValue(
-                bodyParams.stream().flatMap(entry -> entry.getValue()
-                    .map(value -> Stream.of(new AbstractMap.SimpleEntry<>(entry.getKey(), value)))
-                    .orElse(Stream.empty())
-                ).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)),
-                JsonNode.class
+        if (!this.interceptors.isEmpty()) {
+            return intercept(new ApiInvocation<>(
+                this.interceptors,
+                0,
+                this::sendIntercepted,
+                method,
+                endpoint,
+                Optional.empty(),
+                Collections.unmodifiableList(queryParams.collect(Collectors.toList())),
+                Collections.unmodifiableList(bodyParams.collect(Collectors.toList())),
+                responseClass,
+                Collections.emptyMap(),
+                new CompletableFuture<>()
             ));
         }
+        final Optional<byte[]> body;
+        try {
+            body = encodeBody(bodyParams);
+        } catch (final IOException | RuntimeException e) {
+            return failedFuture(e);
+        }
+        return send(new ApiRequest(method, endpoint, this.baseUri.toString() + endpoint, queryOf(queryParams), body), responseClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The response is parsed as it arrives, and each item is handed to the action on the I/O thread as
+     * soon as its object has been read, so the action should not block. A page is only retried if it
+     * failed before any of its items were handed over. Listings are never cached or coalesced, but
+     * they do go through the interceptors.
+     */
+    @Override
+    public <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final URI uri,
+                                                                             final ListType<T, I> listType,
+                                                                             final Consumer<? super I> action)
+    {
+        return streamList(uri.getRawPath(), Optional.of(uri), Collections.emptyList(), listType, action);
+    }
 
-        return sendRequest(request, body, responseClass);
+    /**
+     * {@inheritDoc}
+     *
+     * The response is parsed as it arrives, and each item is handed to the action on the I/O thread as
+     * soon as its object has been read, so the action should not block. A page is only retried if it
+     * failed before any of its items were handed over. Listings are never cached or coalesced, but
+     * they do go through the interceptors.
+     */
+    @Override
+    public <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final String endpoint,
+                                                                             final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                                                             final ListType<T, I> listType,
+                                                                             final Consumer<? super I> action)
+    {
+        return streamList(endpoint, Optional.empty(), Collections.unmodifiableList(queryParams.collect(Collectors.toList())), listType, action);
     }
 
-    private <O> CompletionStage<O> sendRequest(final WebClientRequestPreparation request,
-                                               final Optional<JsonNode> maybeBody,
-                                               final Optional<Class<O>> responseClass)
+    private <I> CompletionStage<Optional<URI>> streamList(final String endpoint,
+                                                          final Optional<URI> uri,
+                                                          final List<Map.Entry<String, Optional<Object>>> queryParams,
+                                                          final ListType<?, I> listType,
+                                                          final Consumer<? super I> action)
     {
-        request
-            .header(HttpHeaderNames.USER_AGENT, "ngrok-api-client-java/" + Version.CLIENT_VERSION)
-            .header("ngrok-version", Version.API_VERSION)
-            .header(HttpHeaderNames.AUTHORIZATION, "Bearer " + this.apiKey);
-        return maybeBody
-            .map(body -> couldThrow(() -> Optional.of(this.objectMapper.writeValueAsBytes(body))))
-            .orElseGet(() ->CompletableFuture.completedFuture(Optional.empty()))
-            .thenApply(maybeBodyBytes -> maybeBodyBytes.map(bodyBytes -> request.content(MediaType.JSON, bodyBytes)).orElse(request))
-            .thenCompose(req -> req.execute().aggregate())
-            .thenCompose(response -> Optional
-                .of(response.content())
-                .filter(c -> !c.isEmpty())
-                .map(responseBody -> {
-                    if (response.status().isSuccess()) {
-                        return responseClass
-                            .map(cls -> couldThrow(() -> this.objectMapper.readValue(responseBody.toStringUtf8(), cls), response))
-                            .orElseGet(() -> CompletableFuture.completedFuture(null));
+        final ListItemParser<I> parser = new ListItemParser<>(this.objectMapper.getFactory(), readerFor(listType.getItemClass()), listType.getItemsField(), action);
+        if (this.interceptors.isEmpty()) {
+            final String path = uri.isPresent() ? uri.get().toString() : this.baseUri.toString() + endpoint;
+            return sendStreamed(new ApiRequest(HttpMethod.GET, endpoint, path, queryOf(queryParams.stream()), Optional.empty()), parser);
+        }
+        return intercept(new ApiInvocation<>(
+            this.interceptors,
+            0,
+            invocation -> sendStreamedIntercepted(invocation, parser),
+            HttpMethod.GET,
+            endpoint,
+            uri,
+            queryParams,
+            Collections.emptyList(),
+            Optional.empty(),
+            Collections.emptyMap(),
+            new CompletableFuture<>()
+        ));
+    }
+
+    private CompletionStage<Optional<URI>> sendStreamed(final ApiRequest request, final ListItemParser<?> parser) {
+        final ApiRequest streamingRequest = request.streamingTo(parser);
+        return cancellable(streamingRequest, fetchWithRetries(streamingRequest).thenApply(response -> parser.getNextPageUri()));
+    }
+
+    /**
+     * Sends a streamed list page once it has gone through every interceptor, with the headers they
+     * set. An interceptor cannot send the page again once some of its items have been handed over,
+     * as they would be handed over twice.
+     */
+    private CompletionStage<Optional<URI>> sendStreamedIntercepted(final ApiInvocation<Optional<URI>> invocation, final ListItemParser<?> parser) {
+        if (parser.getItemCount() > 0) {
+            return failedFuture(new IllegalStateException("A list page cannot be sent again once some of its items have been handed over"));
+        }
+        final ApiRequest request = requestOf(invocation, Optional.empty());
+        invocation.onCancel(request::cancel);
+        return sendStreamed(request, parser);
+    }
+
+    /**
+     * Runs a call through the interceptors. Cancelling the returned future cancels every request
+     * sent for the call, even if an interceptor returned a future of its own.
+     */
+    private <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+        return CancellableFuture.of(invocation.proceed(), invocation::cancel);
+    }
+
+    /**
+     * Sends a call once it has gone through every interceptor, with the headers they set.
+     */
+    private <O> CompletionStage<O> sendIntercepted(final ApiInvocation<O> invocation) {
+        final Optional<byte[]> body;
+        try {
+            body = encodeBody(invocation.getBodyParams().stream());
+        } catch (final IOException | RuntimeException e) {
+            return failedFuture(e);
+        }
+        final ApiRequest request = requestOf(invocation, body);
+        invocation.onCancel(request::cancel);
+        return send(request, invocation.getResponseClass());
+    }
+
+    private ApiRequest requestOf(final ApiInvocation<?> invocation, final Optional<byte[]> body) {
+        final String path = invocation.getUri().isPresent()
+            ? invocation.getUri().get().toString()
+            : this.baseUri.toString() + invocation.getEndpoint();
+        return new ApiRequest(
+            invocation.getMethod(),
+            invocation.getEndpoint(),
+            path,
+            queryOf(invocation.getQueryParams().stream()),
+            body,
+            Optional.empty(),
+            invocation.getHeaders()
+        );
+    }
+
+    private static List<Map.Entry<String, String>> queryOf(final Stream<Map.Entry<String, Optional<Object>>> queryParams) {
+        return queryParams.flatMap(entry -> entry.getValue()
+            .map(value -> Stream.<Map.Entry<String, String>>of(new AbstractMap.SimpleEntry<>(entry.getKey(), queryParamToString(value))))
+            .orElse(Stream.empty())
+        ).collect(Collectors.toList());
+    }
+
+    private <O> CompletionStage<O> send(final ApiRequest request, final Optional<Class<O>> responseClass) {
+        final boolean singleResource = responseClass.filter(cls -> !Pageable.class.isAssignableFrom(cls)).isPresent();
+        return cancellable(request, fetchThroughCache(request, singleResource).thenCompose(response -> decodeResponse(response, responseClass)));
+    }
+
+    /**
+     * Ties a request to the future of its result. Cancelling the returned future, or any future
+     * mapped from it, aborts the request wherever it is: waiting for a retry or a permit, or in flight.
+     */
+    private static <O> CompletionStage<O> cancellable(final ApiRequest request, final CompletionStage<O> stage) {
+        return CancellableFuture.of(stage, request::cancel);
+    }
+
+    /**
+     * Answers single-resource GET requests from the response cache, if there is one, and invalidates
+     * cached resources affected by any other request.
+     */
+    private CompletionStage<AggregatedHttpResponse> fetchThroughCache(final ApiRequest request, final boolean singleResource) {
+        if (!this.responseCache.isPresent()) {
+            return fetch(request);
+        }
+        final ResponseCache cache = this.responseCache.get();
+        if (request.method != HttpMethod.GET) {
+            cache.invalidate(request.endpoint);
+            return fetch(request).whenComplete((response, failure) -> cache.invalidate(request.endpoint));
+        }
+        if (!singleResource || !request.queryParams.isEmpty() || !request.headers.isEmpty()) {
+            return fetch(request);
+        }
+
+        final Optional<AggregatedHttpResponse> cached = cache.get(request.endpoint);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        final long epoch = cache.epoch();
+        return fetch(request).whenComplete((response, failure) -> {
+            if (failure == null) {
+                cache.put(request.endpoint, response, epoch);
+            }
+        });
+    }
+
+    /**
+     * Fetches the successful response to a request, sharing it with any identical GET request that is
+     * already in flight if coalescing is enabled. Every caller decodes the shared response bytes on
+     * its own, so callers never share result objects. A shared request is not aborted when one of
+     * its callers cancels.
+     */
+    private CompletionStage<AggregatedHttpResponse> fetch(final ApiRequest request) {
+        if (!this.coalesceGets || request.method != HttpMethod.GET) {
+            return fetchWithRetries(request);
+        }
+        final String key = request.key();
+        final CompletableFuture<AggregatedHttpResponse> shared = new CompletableFuture<>();
+        final CompletableFuture<AggregatedHttpResponse> existing = this.inFlightGets.putIfAbsent(key, shared);
+        if (existing != null) {
+            return existing;
+        }
+        fetchWithRetries(request.detached()).whenComplete((response, failure) -> {
+            this.inFlightGets.remove(key, shared);
+            if (failure == null) {
+                shared.complete(response);
+            } else {
+                shared.completeExceptionally(RetryPolicy.unwrap(failure));
+            }
+        });
+        return shared;
+    }
+
+    private CompletionStage<AggregatedHttpResponse> fetchWithRetries(final ApiRequest request) {
+        if (!this.retryPolicy.isPresent()) {
+            return attempt(request).thenCompose(this::checkStatus);
+        }
+        final CompletableFuture<AggregatedHttpResponse> result = new CompletableFuture<>();
+        fetchWithRetries(request, this.retryPolicy.get().newBackoff(request.method), result);
+        return result;
+    }
+
+    private void fetchWithRetries(final ApiRequest request,
+                                  final RetryPolicy.Backoff backoff,
+                                  final CompletableFuture<AggregatedHttpResponse> result)
+    {
+        attempt(request).whenComplete((response, transportFailure) -> {
+            final CompletionStage<AggregatedHttpResponse> checked = transportFailure == null
+                ? checkStatus(response)
+                : failedFuture(transportFailure);
+            checked.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    result.complete(value);
+                    return;
+                }
+                final Optional<Duration> retryAfter = Optional.ofNullable(response)
+                    .flatMap(r -> RetryPolicy.parseRetryAfter(r.headers().get(HttpHeaderNames.RETRY_AFTER)));
+                final Optional<Duration> delay = backoff.nextDelay(failure, retryAfter);
+                if (delay.isPresent() && !request.isCancelled() && request.isRepeatable()) {
+                    this.scheduler.schedule(() -> fetchWithRetries(request, backoff, result), delay.get().toNanos(), TimeUnit.NANOSECONDS);
+                } else {
+                    result.completeExceptionally(RetryPolicy.unwrap(failure));
+                }
+            });
+        });
+    }
+
+    private CompletionStage<AggregatedHttpResponse> checkStatus(final AggregatedHttpResponse response) {
+        return response.status().isSuccess()
+            ? CompletableFuture.completedFuture(response)
+            : decodeResponse(response, Optional.empty());
+    }
+
+    /**
+     * Makes one attempt at a request, hedging it if it is a GET request and a hedging policy is set.
+     */
+    private CompletionStage<AggregatedHttpResponse> attempt(final ApiRequest request) {
+        if (!this.hedgingPolicy.isPresent() || request.method != HttpMethod.GET || request.itemParser.isPresent()) {
+            return execute(request);
+        }
+        final HedgingPolicy policy = this.hedgingPolicy.get();
+        final String template = request.template();
+        final long delayNanos = policy.newRequest(template);
+        if (delayNanos < 0) {
+            final long startNanos = System.nanoTime();
+            return execute(request).whenComplete((response, failure) -> {
+                if (response != null) {
+                    policy.record(template, System.nanoTime() - startNanos);
+                }
+            });
+        }
+        return new HedgedExchange(request, policy, template).start(delayNanos);
+    }
+
+    /**
+     * Sends a request through the circuit of its endpoint template, if there is a circuit breaker,
+     * and records whether it failed. Requests rejected by an open circuit never take a rate limiter
+     * token.
+     */
+    private CompletionStage<AggregatedHttpResponse> execute(final ApiRequest request) {
+        if (!this.circuitBreaker.isPresent()) {
+            return executeThrottled(request);
+        }
+        final CircuitBreaker.Permit permit;
+        try {
+            permit = this.circuitBreaker.get().acquire(request.template());
+        } catch (final CircuitOpenException e) {
+            return failedFuture(e);
+        }
+        return executeThrottled(request).whenComplete((response, failure) -> {
+            if (request.isCancelled()) {
+                permit.cancel();
+            } else {
+                permit.complete(response, failure);
+            }
+        });
+    }
+
+    private CompletionStage<AggregatedHttpResponse> executeThrottled(final ApiRequest request) {
+        if (!this.rateLimiter.isPresent()) {
+            return executeLimited(request);
+        }
+        final long waitNanos;
+        try {
+            waitNanos = this.rateLimiter.get().reserve(this.apiKey, request.method);
+        } catch (final RequestRejectedException e) {
+            return failedFuture(e);
+        }
+        return waitNanos > 0 ? later(waitNanos, () -> executeLimited(request)) : executeLimited(request);
+    }
+
+    private <T> CompletionStage<T> later(final long delayNanos, final Supplier<CompletionStage<T>> action) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        this.scheduler.schedule(() -> {
+            try {
+                action.get().whenComplete((value, failure) -> {
+                    if (failure == null) {
+                        result.complete(value);
                     } else {
-                        return couldThrow(() -> this.objectMapper.readValue(responseBody.toStringUtf8(), NgrokApiError.class), response)
-                            .thenCompose(DefaultNgrokApiClient::<O>failedFuture);
+                        result.completeExceptionally(RetryPolicy.unwrap(failure));
                     }
-                })
-                .orElseGet(() -> {
-                    if (response.status().isSuccess()) {
-                        return responseClass
-                            .map(cls -> couldThrow(() -> this.objectMapper.readValue("{}", cls), response))
-                            .orElseGet(() -> CompletableFuture.completedFuture(null));
-                    } else {
-                        return failedFuture(new NgrokApiError(response.status().code()));
+                });
+            } catch (final RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    private CompletionStage<AggregatedHttpResponse> executeLimited(final ApiRequest request) {
+        if (!this.concurrencyLimiter.isPresent()) {
+            return transmit(request);
+        }
+        final CompletableFuture<ConcurrencyLimiter.Permit> acquired = this.concurrencyLimiter.get().acquire().toCompletableFuture();
+        request.onCancel(() -> acquired.cancel(false));
+        return acquired.thenCompose(permit -> {
+            final CompletionStage<AggregatedHttpResponse> exchange;
+            try {
+                exchange = transmit(request);
+            } catch (final RuntimeException e) {
+                permit.abandon();
+                return failedFuture(e);
+            }
+            return exchange.whenComplete((response, failure) -> {
+                if (request.isCancelled()) {
+                    permit.abandon();
+                } else {
+                    permit.release(
+                        failure != null
+                            ? RetryPolicy.unwrap(failure) instanceof ResponseTimeoutException
+                            : response.status().code() == 429 || response.status().code() == 503
+                    );
+                }
+            });
+        });
+    }
+
+    private CompletionStage<AggregatedHttpResponse> transmit(final ApiRequest request) {
+        if (request.isCancelled()) {
+            return failedFuture(new CancellationException());
+        }
+        final WebClientRequestPreparation preparation = this.httpClient.prepare()
+            .method(armeriaMethodFromNgrokMethod(request.method))
+            .path(request.path);
+        if (!request.hasHeader(HttpHeaderNames.USER_AGENT)) {
+            preparation.header(HttpHeaderNames.USER_AGENT, "ngrok-api-client-java/" + Version.CLIENT_VERSION);
+        }
+        if (!request.hasHeader("ngrok-version")) {
+            preparation.header("ngrok-version", Version.API_VERSION);
+        }
+        if (!request.hasHeader(HttpHeaderNames.AUTHORIZATION)) {
+            preparation.header(HttpHeaderNames.AUTHORIZATION, "Bearer " + this.apiKey);
+        }
+        if (!request.queryParams.isEmpty()) {
+            preparation.queryParams(request.queryParams);
+        }
+        if (!request.headers.isEmpty()) {
+            request.headers.forEach(preparation::header);
+        }
+        request.body.ifPresent(body -> preparation.content(MediaType.JSON, body));
+        final long startNanos = System.nanoTime();
+        final long streamedBefore = request.itemParser.isPresent() ? request.itemParser.get().getByteCount() : 0;
+        final HttpResponse response = preparation.execute();
+        request.onCancel(response::abort);
+        final CompletionStage<AggregatedHttpResponse> exchange = request.itemParser
+            .map(parser -> parseItems(response, parser))
+            .orElseGet(response::aggregate);
+        return this.metrics.isPresent() ? measure(request, startNanos, streamedBefore, exchange) : exchange;
+    }
+
+    /**
+     * Records an exchange in the metrics registry once it is done. Exceptions thrown by the registry
+     * are ignored, so that metrics can never fail a request.
+     */
+    private CompletionStage<AggregatedHttpResponse> measure(final ApiRequest request,
+                                                            final long startNanos,
+                                                            final long streamedBefore,
+                                                            final CompletionStage<AggregatedHttpResponse> exchange)
+    {
+        final MetricsRegistry registry = this.metrics.get();
+        return exchange.whenComplete((response, failure) -> {
+            final long latencyNanos = System.nanoTime() - startNanos;
+            final long requestBytes = request.body.isPresent() ? request.body.get().length : 0;
+            final long streamedBytes = request.itemParser.isPresent() ? request.itemParser.get().getByteCount() - streamedBefore : 0;
+            try {
+                if (response == null) {
+                    registry.record(request.method, request.template(), 0, Optional.empty(), latencyNanos, requestBytes, streamedBytes);
+                } else {
+                    registry.record(
+                        request.method,
+                        request.template(),
+                        response.status().code(),
+                        response.status().isSuccess() ? Optional.empty() : errorCodeOf(response),
+                        latencyNanos,
+                        requestBytes,
+                        streamedBytes + response.content().length()
+                    );
+                }
+            } catch (final RuntimeException e) {
+                // Ignored, see above
+            }
+        });
+    }
+
+    private Optional<String> errorCodeOf(final AggregatedHttpResponse response) {
+        if (response.content().isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return readerFor(NgrokApiError.class).<NgrokApiError>readValue(response.content().array()).getErrorCode();
+        } catch (final IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Feeds the body of a successful response to an item parser as it arrives, one chunk at a time.
+     * The returned response holds the headers, and the body only if the request failed.
+     */
+    private static CompletionStage<AggregatedHttpResponse> parseItems(final HttpResponse response, final ListItemParser<?> parser) {
+        final CompletableFuture<AggregatedHttpResponse> result = new CompletableFuture<>();
+        try {
+            parser.begin();
+        } catch (final IOException e) {
+            response.abort(e);
+            return failedFuture(e);
+        }
+        response.subscribe(new Subscriber<HttpObject>() {
+            private Subscription subscription;
+            private ResponseHeaders headers;
+            private final ByteArrayOutputStream errorBody = new ByteArrayOutputStream();
+
+            @Override
+            public void onSubscribe(final Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(final HttpObject object) {
+                try {
+                    if (object instanceof ResponseHeaders) {
+                        final ResponseHeaders responseHeaders = (ResponseHeaders) object;
+                        if (responseHeaders.status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+                            this.headers = responseHeaders;
+                        }
+                    } else if (object instanceof HttpData && this.headers != null) {
+                        final byte[] chunk = ((HttpData) object).array();
+                        if (this.headers.status().isSuccess()) {
+                            parser.feed(chunk);
+                        } else {
+                            this.errorBody.write(chunk, 0, chunk.length);
+                        }
                     }
-                })
-            );
+                    this.subscription.request(1);
+                } catch (final IOException | RuntimeException e) {
+                    this.subscription.cancel();
+                    fail(e);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                if (result.isDone()) {
+                    return;
+                }
+                if (this.headers == null) {
+                    result.completeExceptionally(new IllegalStateException("Response ended without headers"));
+                    return;
+                }
+                if (!this.headers.status().isSuccess()) {
+                    result.complete(AggregatedHttpResponse.of(this.headers, HttpData.wrap(this.errorBody.toByteArray())));
+                    return;
+                }
+                try {
+                    parser.finish();
+                    result.complete(AggregatedHttpResponse.of(this.headers, HttpData.empty()));
+                } catch (final IOException e) {
+                    fail(e);
+                }
+            }
+
+            private void fail(final Exception e) {
+                result.completeExceptionally(e instanceof IOException
+                    ? new NgrokApiError(this.headers.status().code(), Optional.empty(), e)
+                    : e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Serializes body parameters straight into a JSON object, skipping any parameter with an empty value.
+     *
+     * Each value is written to a single {@link JsonGenerator}, rather than first being collected into a
+     * map and converted into a {@link com.fasterxml.jackson.databind.JsonNode} tree. The writer does not
+     * flush after each value, so the generator is only flushed once, when it is closed. The bytes are
+     * written to a buffer reused by every call on the same thread; resetting it keeps only its last
+     * block, which Jackson caps at 128 KiB. An empty stream of parameters means no body at all, while
+     * a stream of only empty values still produces an empty JSON object.
+     */
+    private Optional<byte[]> encodeBody(final Stream<Map.Entry<String, Optional<Object>>> bodyParams) throws IOException {
+        final Iterator<Map.Entry<String, Optional<Object>>> entries = bodyParams.iterator();
+        if (!entries.hasNext()) {
+            return Optional.empty();
+        }
+
+        final ByteArrayBuilder buffer = this.bodyBuffers.get();
+        try {
+            try (final JsonGenerator generator = this.bodyWriter.createGenerator(buffer, JsonEncoding.UTF8)) {
+                generator.writeStartObject();
+                while (entries.hasNext()) {
+                    final Map.Entry<String, Optional<Object>> entry = entries.next();
+                    if (entry.getValue().isPresent()) {
+                        generator.writeFieldName(entry.getKey());
+                        this.bodyWriter.writeValue(generator, entry.getValue().get());
+                    }
+                }
+                generator.writeEndObject();
+            }
+            return Optional.of(buffer.toByteArray());
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * Decodes an aggregated response straight from its content bytes.
+     *
+     * The bytes of an aggregated (unpooled) response are handed to Jackson as-is, so no intermediate
+     * {@link String} copy of the body is made. The body is only ever turned into a string if decoding
+     * fails, so that it can be attached to the resulting {@link NgrokApiError}.
+     */
+    private <O> CompletionStage<O> decodeResponse(final AggregatedHttpResponse response, final Optional<Class<O>> responseClass) {
+        final HttpData content = response.content();
+        if (response.status().isSuccess()) {
+            return responseClass
+                .map(cls -> couldThrow(() -> readerFor(cls).<O>readValue(content.isEmpty() ? EMPTY_OBJECT : content.array()), response))
+                .orElseGet(() -> CompletableFuture.completedFuture(null));
+        } else if (content.isEmpty()) {
+            return failedFuture(new NgrokApiError(response.status().code()));
+        } else {
+            return couldThrow(() -> readerFor(NgrokApiError.class).<NgrokApiError>readValue(content.array()), response)
+                .thenCompose(DefaultNgrokApiClient::<O>failedFuture);
+        }
+    }
+
+    private ObjectReader readerFor(final Class<?> responseClass) {
+        return this.readers.computeIfAbsent(responseClass, this.objectMapper::readerFor);
+    }
+
+    /**
+     * A GET request sent once, and a second time if no response arrived after the hedging delay.
+     *
+     * The first response that settles the request wins and the other copy is aborted. A response
+     * settles the request unless it is a 429 or 5xx response or a transport failure, in which case
+     * the other copy, if there is one in flight, is waited for. If the first copy fails before the
+     * hedging delay, its failure is returned without hedging, and left to the retry policy.
+     */
+    private final class HedgedExchange {
+        private final ApiRequest request;
+        private final HedgingPolicy policy;
+        private final String template;
+        private final ApiRequest primary;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<AggregatedHttpResponse> result = new CompletableFuture<>();
+        private ApiRequest hedge;
+        private ScheduledFuture<?> timer;
+        private int inFlight = 1;
+
+        private HedgedExchange(final ApiRequest request, final HedgingPolicy policy, final String template) {
+            this.request = request;
+            this.policy = policy;
+            this.template = template;
+            this.primary = request.detached();
+        }
+
+        private CompletionStage<AggregatedHttpResponse> start(final long delayNanos) {
+            send(this.primary);
+            synchronized (this) {
+                if (!this.result.isDone()) {
+                    this.timer = scheduler.schedule(this::sendHedge, delayNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            this.request.onCancel(this::abandon);
+            return this.result;
+        }
+
+        private void sendHedge() {
+            final ApiRequest hedge;
+            synchronized (this) {
+                this.timer = null;
+                if (this.result.isDone() || this.request.isCancelled() || !this.policy.withdrawHedge()) {
+                    return;
+                }
+                hedge = this.request.detached();
+                this.hedge = hedge;
+                this.inFlight++;
+            }
+            send(hedge);
+        }
+
+        private void send(final ApiRequest copy) {
+            execute(copy).whenComplete((response, failure) -> settle(copy, response, failure));
+        }
+
+        private void settle(final ApiRequest copy, final AggregatedHttpResponse response, final Throwable failure) {
+            final boolean settling = response != null && response.status().code() < 500 && response.status().code() != 429;
+            final ApiRequest loser;
+            synchronized (this) {
+                this.inFlight--;
+                if (this.result.isDone() || !settling && this.inFlight > 0) {
+                    return;
+                }
+                if (this.timer != null) {
+                    this.timer.cancel(false);
+                    this.timer = null;
+                }
+                loser = copy == this.primary ? this.hedge : this.primary;
+            }
+            if (response != null) {
+                // When the hedge wins, this is a lower bound of the latency of the abandoned primary
+                this.policy.record(this.template, System.nanoTime() - this.startNanos);
+            }
+            if (copy != this.primary && settling) {
+                this.policy.hedgeWon();
+            }
+            if (loser != null) {
+                loser.cancel();
+            }
+            if (failure == null) {
+                this.result.complete(response);
+            } else {
+                this.result.completeExceptionally(RetryPolicy.unwrap(failure));
+            }
+        }
+
+        private void abandon() {
+            final ApiRequest hedge;
+            synchronized (this) {
+                if (this.timer != null) {
+                    this.timer.cancel(false);
+                    this.timer = null;
+                }
+                hedge = this.hedge;
+            }
+            this.primary.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    /**
+     * A fully prepared API request, which can be sent as many times as needed.
+     */
+    private static final class ApiRequest {
+        private final NgrokApiClient.HttpMethod method;
+        private final String endpoint;
+        private final String path;
+        private final List<Map.Entry<String, String>> queryParams;
+        private final Optional<byte[]> body;
+        private final Optional<ListItemParser<?>> itemParser;
+        private final Map<String, String> headers;
+        private final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+        private String template;
+
+        private ApiRequest(final NgrokApiClient.HttpMethod method,
+                           final String endpoint,
+                           final String path,
+                           final List<Map.Entry<String, String>> queryParams,
+                           final Optional<byte[]> body)
+        {
+            this(method, endpoint, path, queryParams, body, Optional.empty(), Collections.emptyMap());
+        }
+
+        private ApiRequest(final NgrokApiClient.HttpMethod method,
+                           final String endpoint,
+                           final String path,
+                           final List<Map.Entry<String, String>> queryParams,
+                           final Optional<byte[]> body,
+                           final Optional<ListItemParser<?>> itemParser,
+                           final Map<String, String> headers)
+        {
+            this.method = method;
+            this.endpoint = endpoint;
+            this.path = path;
+            this.queryParams = queryParams;
+            this.body = body;
+            this.itemParser = itemParser;
+            this.headers = headers;
+        }
+
+        /**
+         * Copies the request, so that the body of its response is fed to an item parser as it arrives
+         * rather than being aggregated.
+         *
+         * @param parser the item parser
+         * @return a new request
+         */
+        private ApiRequest streamingTo(final ListItemParser<?> parser) {
+            return new ApiRequest(this.method, this.endpoint, this.path, this.queryParams, this.body, Optional.of(parser), this.headers);
+        }
+
+        /**
+         * Copies the request, without tying the copy to the cancellation of this one.
+         *
+         * @return a new request
+         */
+        private ApiRequest detached() {
+            return new ApiRequest(this.method, this.endpoint, this.path, this.queryParams, this.body, this.itemParser, this.headers);
+        }
+
+        private void cancel() {
+            this.cancelled.complete(null);
+        }
+
+        /**
+         * Fetches the template of the endpoint of the request, working it out on first use.
+         *
+         * @return the endpoint template
+         * @see EndpointTemplates#templateOf(String)
+         */
+        private String template() {
+            if (this.template == null) {
+                this.template = EndpointTemplates.templateOf(this.endpoint);
+            }
+            return this.template;
+        }
+
+        private boolean isCancelled() {
+            return this.cancelled.isDone();
+        }
+
+        /**
+         * Checks whether an interceptor set a header, whatever the case of its name.
+         *
+         * @param name the name of the header
+         * @return true if the header is set on the request
+         */
+        private boolean hasHeader(final CharSequence name) {
+            for (final String header : this.headers.keySet()) {
+                if (header.equalsIgnoreCase(name.toString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks whether the request can be sent again, which is not the case once items of its
+         * response have been handed over.
+         *
+         * @return whether the request can be retried
+         */
+        private boolean isRepeatable() {
+            return !this.itemParser.filter(parser -> parser.getItemCount() > 0).isPresent();
+        }
+
+        /**
+         * Runs an action when the request is cancelled, or right away if it already was.
+         *
+         * @param action the action to run
+         */
+        private void onCancel(final Runnable action) {
+            this.cancelled.thenRun(action);
+        }
+
+        /**
+         * Builds a key identifying identical requests.
+         *
+         * @return the path and query of the request, followed by the headers set by interceptors
+         */
+        private String key() {
+            final String pathAndQuery = this.queryParams.isEmpty()
+                ? this.path
+                : this.path + "?" + this.queryParams.stream()
+                    .map(param -> param.getKey() + "=" + param.getValue())
+                    .collect(Collectors.joining("&"));
+            if (this.headers.isEmpty()) {
+                return pathAndQuery;
+            }
+            return pathAndQuery + "\n" + this.headers.entrySet().stream()
+                .map(header -> header.getKey().toLowerCase(Locale.ROOT) + ": " + header.getValue())
+                .sorted()
+                .collect(Collectors.joining("\n"));
+        }
     }
 }
@@ -0,0 +1,101 @@
+package com.ngrok;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maps API endpoints to their templates, so that requests for different resources of the same kind
+ * can be grouped together: <code>/tunnel_sessions/ts_123/restart</code> becomes
+ * <code>/tunnel_sessions/{id}/restart</code>.
+ *
+ * Every path segment that is not part of the fixed vocabulary of the ngrok API is taken to be an
+ * identifier.
+ */
+public final class EndpointTemplates {
+    /**
+     * Placeholder used in templates in place of identifiers.
+     */
+    public static final String ID = "{id}";
+
+    private static final Set<String> LITERAL_SEGMENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "abuse_reports",
+        "agent_ingresses",
+        "api_keys",
+        "backend",
+        "backends",
+        "certificate",
+        "certificate_authorities",
+        "certificate_management_policy",
+        "circuit_breaker",
+        "compression",
+        "credentials",
+        "edges",
+        "endpoints",
+        "event_destinations",
+        "event_subscriptions",
+        "failover",
+        "http_response",
+        "https",
+        "ip_policies",
+        "ip_policy_rules",
+        "ip_restriction",
+        "ip_restrictions",
+        "mutual_tls",
+        "oauth",
+        "oidc",
+        "request_headers",
+        "reserved_addrs",
+        "reserved_domains",
+        "response_headers",
+        "restart",
+        "routes",
+        "saml",
+        "sources",
+        "ssh_certificate_authorities",
+        "ssh_credentials",
+        "ssh_host_certificates",
+        "ssh_user_certificates",
+        "stop",
+        "tcp",
+        "tls",
+        "tls_certificates",
+        "tls_termination",
+        "tunnel_group",
+        "tunnel_sessions",
+        "tunnels",
+        "update",
+        "webhook_verification",
+        "websocket_tcp_converter",
+        "weighted"
+    )));
+
+    private EndpointTemplates() {
+    }
+
+    /**
+     * Finds the template of an endpoint.
+     *
+     * @param endpoint an endpoint path under the API base URI, with or without a query string
+     * @return the endpoint template
+     */
+    public static String templateOf(final String endpoint) {
+        final int queryStart = endpoint.indexOf('?');
+        final String path = queryStart < 0 ? endpoint : endpoint.substring(0, queryStart);
+        final StringBuilder template = new StringBuilder(path.length());
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                final String segment = path.substring(start, end);
+                template.append('/').append(LITERAL_SEGMENTS.contains(segment) ? segment : ID);
+            }
+            start = end + 1;
+        }
+        return template.length() == 0 ? "/" : template.toString();
+    }
+}
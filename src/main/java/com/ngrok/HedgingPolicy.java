@@ -0,0 +1,258 @@
+package com.ngrok;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Policy describing when {@link DefaultNgrokApiClient} hedges GET requests: if no response to a GET
+ * request has arrived after a while, a second copy of the request is sent, the first response is
+ * used and the other request is aborted.
+ *
+ * The delay before hedging is a high percentile of the latency seen so far on the same endpoint
+ * template, like <code>/tunnels/{id}</code>, so that only the slowest requests are hedged. Until
+ * enough latencies have been seen on a template, its requests are not hedged.
+ *
+ * Every GET request deposits a fraction of a hedge into a budget and every hedge withdraws a whole
+ * one, which caps the extra load caused by hedging at that fraction of the GET requests, plus a
+ * small reserve.
+ */
+public class HedgingPolicy {
+    /**
+     * Builder class for hedging policies.
+     */
+    public static class Builder {
+        private double percentile = 95;
+        private Duration minDelay = Duration.ofMillis(10);
+        private Duration maxDelay = Duration.ofSeconds(5);
+        private int minSamples = 100;
+        private double budgetRatio = 0.05;
+        private int budgetReserve = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the percentile of the latency of an endpoint template after which its requests are
+         * hedged. Defaults to 95.
+         *
+         * @param percentile a percentile between 0 and 100, like <code>99</code>
+         * @return the policy builder
+         */
+        public HedgingPolicy.Builder percentile(final double percentile) {
+            if (percentile <= 0 || percentile >= 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the shortest delay before a request is hedged. Defaults to ten milliseconds.
+         *
+         * @param minDelay a delay
+         * @return the policy builder
+         */
+        public HedgingPolicy.Builder minDelay(final Duration minDelay) {
+            this.minDelay = requireNonNull(minDelay, "minDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets the longest delay before a request is hedged. Defaults to five seconds.
+         *
+         * @param maxDelay a delay
+         * @return the policy builder
+         */
+        public HedgingPolicy.Builder maxDelay(final Duration maxDelay) {
+            this.maxDelay = requireNonNull(maxDelay, "maxDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets the number of latencies that must have been seen on an endpoint template before its
+         * requests are hedged. Defaults to 100.
+         *
+         * @param minSamples a number of requests
+         * @return the policy builder
+         */
+        public HedgingPolicy.Builder minSamples(final int minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples must be positive");
+            }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets the hedge budget: the share of GET requests that may be hedged, plus a reserve of
+         * hedges that is always available to clients with little traffic. Defaults to 5% and 10.
+         *
+         * @param ratio fraction of a hedge earned by each GET request, between 0 and 1
+         * @param reserve number of hedges that can be banked
+         * @return the policy builder
+         */
+        public HedgingPolicy.Builder budget(final double ratio, final int reserve) {
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException("ratio must be between 0 and 1");
+            }
+            if (reserve < 0) {
+                throw new IllegalArgumentException("reserve must not be negative");
+            }
+            this.budgetRatio = ratio;
+            this.budgetReserve = reserve;
+            return this;
+        }
+
+        /**
+         * Builds the hedging policy.
+         *
+         * @return a hedging policy
+         */
+        public HedgingPolicy build() {
+            if (this.minDelay.isNegative() || this.maxDelay.compareTo(this.minDelay) < 0) {
+                throw new IllegalArgumentException("minDelay must not be negative nor longer than maxDelay");
+            }
+            return new HedgingPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new hedging policy builder.
+     *
+     * @return a policy builder
+     */
+    public static HedgingPolicy.Builder newBuilder() {
+        return new HedgingPolicy.Builder();
+    }
+
+    /**
+     * Creates a hedging policy with all default settings.
+     *
+     * @return a hedging policy
+     */
+    public static HedgingPolicy createDefault() {
+        return newBuilder().build();
+    }
+
+    private static final long TOKEN = 1000;
+
+    /**
+     * The hedging delay of a template is worked out again after this many latencies, rather than
+     * scanning its histogram on every request.
+     */
+    private static final long REFRESH_INTERVAL = 64;
+
+    /**
+     * The latencies seen on one endpoint template.
+     */
+    private static final class TemplateLatency {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong recorded = new AtomicLong();
+        private volatile long delayNanos = -1;
+    }
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int minSamples;
+    private final long budgetDeposit;
+    private final long budgetCap;
+    private final AtomicLong budgetBalance;
+    private final ConcurrentMap<String, TemplateLatency> latencies = new ConcurrentHashMap<>();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    private HedgingPolicy(final Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelayNanos = builder.minDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.minSamples = builder.minSamples;
+        this.budgetDeposit = Math.round(builder.budgetRatio * TOKEN);
+        this.budgetCap = builder.budgetReserve * TOKEN;
+        this.budgetBalance = new AtomicLong(this.budgetCap);
+    }
+
+    /**
+     * Fetches the number of hedges currently available in the hedge budget.
+     *
+     * @return a number of hedges
+     */
+    public long getAvailableHedges() {
+        return this.budgetBalance.get() / TOKEN;
+    }
+
+    /**
+     * Fetches the number of hedged requests sent so far.
+     *
+     * @return a number of requests
+     */
+    public long getHedgeCount() {
+        return this.hedgeCount.sum();
+    }
+
+    /**
+     * Fetches the number of hedged requests that answered before the request they hedged.
+     *
+     * @return a number of requests
+     */
+    public long getHedgeWinCount() {
+        return this.hedgeWinCount.sum();
+    }
+
+    /**
+     * Starts a GET request, depositing into the hedge budget.
+     *
+     * @param template the endpoint template of the request
+     * @return the delay after which the request should be hedged, or -1 if it should not be
+     */
+    long newRequest(final String template) {
+        this.budgetBalance.accumulateAndGet(this.budgetDeposit, (balance, deposit) -> Math.min(this.budgetCap, balance + deposit));
+        final TemplateLatency latency = this.latencies.get(template);
+        return latency == null ? -1 : latency.delayNanos;
+    }
+
+    /**
+     * Records the latency of a request that was not hedged, or the time until a hedged request was
+     * abandoned, which is a lower bound of its latency.
+     *
+     * @param template the endpoint template of the request
+     * @param nanos a duration in nanoseconds
+     */
+    void record(final String template, final long nanos) {
+        TemplateLatency latency = this.latencies.get(template);
+        if (latency == null) {
+            latency = this.latencies.computeIfAbsent(template, ignored -> new TemplateLatency());
+        }
+        latency.histogram.record(nanos);
+        final long recorded = latency.recorded.incrementAndGet();
+        if (recorded >= this.minSamples && (latency.delayNanos < 0 || recorded % REFRESH_INTERVAL == 0)) {
+            latency.delayNanos = Math.max(this.minDelayNanos, Math.min(this.maxDelayNanos, latency.histogram.getValueAtPercentile(this.percentile)));
+        }
+    }
+
+    /**
+     * Withdraws a hedge from the budget.
+     *
+     * @return whether the budget allowed the hedge
+     */
+    boolean withdrawHedge() {
+        long balance;
+        do {
+            balance = this.budgetBalance.get();
+            if (balance < TOKEN) {
+                return false;
+            }
+        } while (!this.budgetBalance.compareAndSet(balance, balance - TOKEN));
+        this.hedgeCount.increment();
+        return true;
+    }
+
+    void hedgeWon() {
+        this.hedgeWinCount.increment();
+    }
+}
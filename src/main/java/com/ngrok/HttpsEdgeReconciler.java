@@ -0,0 +1,1033 @@
+package com.ngrok;
+
+import com.ngrok.definitions.*;
+import com.ngrok.services.EdgesHttpsRoutes;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Brings HTTPS edges, their routes and the modules of both in line with a declared configuration,
+ * making only the calls needed.
+ *
+ * The current edges are listed once, then compared with the declared ones field by field and module by
+ * module, using the <code>equals</code> of the definitions. Unchanged modules are not sent again. Every
+ * change is an independent call, so changes to different edges, routes and modules run concurrently.
+ *
+ * A declared edge is matched to an existing edge by ID if it has one, otherwise by its set of
+ * hostports; an edge matching no existing edge is created. Routes are matched within their edge by
+ * match type and match. A module left out of a declared route or edge is deleted if it exists, and
+ * routes of a declared edge which are not declared are deleted unless pruning is disabled. Edges which
+ * are not declared are never touched.
+ *
+ * Modules are declared with the type their <code>replace</code> call takes. For modules the API
+ * returns without their secrets, such as OIDC client secrets or webhook verification secrets, the
+ * current module never equals the declared one, so those are always replaced. For stable plans, set
+ * <code>enabled</code> explicitly on every module.
+ */
+public class HttpsEdgeReconciler {
+    /**
+     * The declared configuration of an HTTPS edge.
+     */
+    public static class Edge {
+        private final Optional<String> id;
+        private final Optional<List<String>> hostports;
+        private final Optional<String> description;
+        private final Optional<String> metadata;
+        private final Optional<EndpointMutualTlsMutate> mutualTls;
+        private final Optional<EndpointTlsTerminationAtEdge> tlsTermination;
+        private final List<Route> routes;
+
+        private Edge(final Builder builder) {
+            this.id = builder.id;
+            this.hostports = builder.hostports;
+            this.description = builder.description;
+            this.metadata = builder.metadata;
+            this.mutualTls = builder.mutualTls;
+            this.tlsTermination = builder.tlsTermination;
+            this.routes = Collections.unmodifiableList(new ArrayList<>(builder.routes.values()));
+        }
+
+        /**
+         * Builder class for declared edges.
+         */
+        public static class Builder {
+            private Optional<String> id = Optional.empty();
+            private Optional<List<String>> hostports = Optional.empty();
+            private Optional<String> description = Optional.empty();
+            private Optional<String> metadata = Optional.empty();
+            private Optional<EndpointMutualTlsMutate> mutualTls = Optional.empty();
+            private Optional<EndpointTlsTerminationAtEdge> tlsTermination = Optional.empty();
+            private final Map<List<String>, Route> routes = new LinkedHashMap<>();
+
+            private Builder() {
+            }
+
+            /**
+             * Sets the ID of the existing edge to reconcile. Without an ID, the edge is matched by its
+             * hostports.
+             *
+             * @param id the ID of the edge
+             * @return the builder instance
+             */
+            public Edge.Builder id(final String id) {
+                this.id = Optional.of(requireNonNull(id, "id is required"));
+                return this;
+            }
+
+            /**
+             * Sets the hostports of the edge. Left unset, the hostports of an existing edge are kept.
+             *
+             * @param hostports the hostports, like <code>example.com:443</code>
+             * @return the builder instance
+             */
+            public Edge.Builder hostports(final List<String> hostports) {
+                this.hostports = Optional.of(Collections.unmodifiableList(new ArrayList<>(requireNonNull(hostports, "hostports is required"))));
+                return this;
+            }
+
+            /**
+             * Sets the description of the edge. Left unset, the description of an existing edge is kept.
+             *
+             * @param description the description
+             * @return the builder instance
+             */
+            public Edge.Builder description(final String description) {
+                this.description = Optional.of(requireNonNull(description, "description is required"));
+                return this;
+            }
+
+            /**
+             * Sets the metadata of the edge. Left unset, the metadata of an existing edge is kept.
+             *
+             * @param metadata the metadata
+             * @return the builder instance
+             */
+            public Edge.Builder metadata(final String metadata) {
+                this.metadata = Optional.of(requireNonNull(metadata, "metadata is required"));
+                return this;
+            }
+
+            /**
+             * Sets the mutual TLS module of the edge. Left unset, the module is removed.
+             *
+             * @param mutualTls the module
+             * @return the builder instance
+             */
+            public Edge.Builder mutualTls(final EndpointMutualTlsMutate mutualTls) {
+                this.mutualTls = Optional.of(requireNonNull(mutualTls, "mutualTls is required"));
+                return this;
+            }
+
+            /**
+             * Sets the TLS termination module of the edge. Left unset, the module is removed.
+             *
+             * @param tlsTermination the module
+             * @return the builder instance
+             */
+            public Edge.Builder tlsTermination(final EndpointTlsTerminationAtEdge tlsTermination) {
+                this.tlsTermination = Optional.of(requireNonNull(tlsTermination, "tlsTermination is required"));
+                return this;
+            }
+
+            /**
+             * Adds a route to the edge, replacing any route declared with the same match type and match.
+             *
+             * @param route the route
+             * @return the builder instance
+             */
+            public Edge.Builder route(final Route route) {
+                requireNonNull(route, "route is required");
+                this.routes.put(route.key(), route);
+                return this;
+            }
+
+            /**
+             * Builds the declared edge.
+             *
+             * @return a declared edge
+             * @throws IllegalStateException if the edge has neither an ID nor hostports
+             */
+            public Edge build() {
+                if (!this.id.isPresent() && !this.hostports.isPresent()) {
+                    throw new IllegalStateException("An edge needs an id or hostports to be matched");
+                }
+                return new Edge(this);
+            }
+        }
+
+        /**
+         * Creates a new declared edge builder.
+         *
+         * @return an edge builder
+         */
+        public static Edge.Builder newBuilder() {
+            return new Edge.Builder();
+        }
+
+        private String name() {
+            return this.id.orElseGet(() -> String.valueOf(this.hostports.orElse(Collections.emptyList())));
+        }
+    }
+
+    /**
+     * The declared configuration of a route of an HTTPS edge.
+     */
+    public static class Route {
+        private final String matchType;
+        private final String match;
+        private final Optional<String> description;
+        private final Optional<String> metadata;
+        private final Map<RouteModule<?, ?>, Object> modules;
+
+        private Route(final Builder builder) {
+            this.matchType = builder.matchType;
+            this.match = builder.match;
+            this.description = builder.description;
+            this.metadata = builder.metadata;
+            this.modules = Collections.unmodifiableMap(new LinkedHashMap<>(builder.modules));
+        }
+
+        /**
+         * Builder class for declared routes. Every module left unset is removed from the route.
+         */
+        public static class Builder {
+            private final String matchType;
+            private final String match;
+            private Optional<String> description = Optional.empty();
+            private Optional<String> metadata = Optional.empty();
+            private final Map<RouteModule<?, ?>, Object> modules = new LinkedHashMap<>();
+
+            private Builder(final String matchType, final String match) {
+                this.matchType = requireNonNull(matchType, "matchType is required");
+                this.match = requireNonNull(match, "match is required");
+            }
+
+            private <M> Route.Builder module(final RouteModule<M, ?> module, final M value) {
+                this.modules.put(module, requireNonNull(value, module.name + " is required"));
+                return this;
+            }
+
+            /**
+             * Sets the description of the route. Left unset, the description of an existing route is
+             * kept.
+             *
+             * @param description the description
+             * @return the builder instance
+             */
+            public Route.Builder description(final String description) {
+                this.description = Optional.of(requireNonNull(description, "description is required"));
+                return this;
+            }
+
+            /**
+             * Sets the metadata of the route. Left unset, the metadata of an existing route is kept.
+             *
+             * @param metadata the metadata
+             * @return the builder instance
+             */
+            public Route.Builder metadata(final String metadata) {
+                this.metadata = Optional.of(requireNonNull(metadata, "metadata is required"));
+                return this;
+            }
+
+            /**
+             * Sets the backend module of the route.
+             *
+             * @param backend the module
+             * @return the builder instance
+             */
+            public Route.Builder backend(final EndpointBackendMutate backend) {
+                return module(BACKEND, backend);
+            }
+
+            /**
+             * Sets the IP restriction module of the route.
+             *
+             * @param ipRestriction the module
+             * @return the builder instance
+             */
+            public Route.Builder ipRestriction(final EndpointIpPolicyMutate ipRestriction) {
+                return module(IP_RESTRICTION, ipRestriction);
+            }
+
+            /**
+             * Sets the circuit breaker module of the route.
+             *
+             * @param circuitBreaker the module
+             * @return the builder instance
+             */
+            public Route.Builder circuitBreaker(final EndpointCircuitBreaker circuitBreaker) {
+                return module(CIRCUIT_BREAKER, circuitBreaker);
+            }
+
+            /**
+             * Sets the compression module of the route.
+             *
+             * @param compression the module
+             * @return the builder instance
+             */
+            public Route.Builder compression(final EndpointCompression compression) {
+                return module(COMPRESSION, compression);
+            }
+
+            /**
+             * Sets the request headers module of the route.
+             *
+             * @param requestHeaders the module
+             * @return the builder instance
+             */
+            public Route.Builder requestHeaders(final EndpointRequestHeaders requestHeaders) {
+                return module(REQUEST_HEADERS, requestHeaders);
+            }
+
+            /**
+             * Sets the response headers module of the route.
+             *
+             * @param responseHeaders the module
+             * @return the builder instance
+             */
+            public Route.Builder responseHeaders(final EndpointResponseHeaders responseHeaders) {
+                return module(RESPONSE_HEADERS, responseHeaders);
+            }
+
+            /**
+             * Sets the webhook verification module of the route.
+             *
+             * @param webhookVerification the module
+             * @return the builder instance
+             */
+            public Route.Builder webhookVerification(final EndpointWebhookValidation webhookVerification) {
+                return module(WEBHOOK_VERIFICATION, webhookVerification);
+            }
+
+            /**
+             * Sets the OAuth module of the route.
+             *
+             * @param oauth the module
+             * @return the builder instance
+             */
+            public Route.Builder oauth(final EndpointOAuth oauth) {
+                return module(OAUTH, oauth);
+            }
+
+            /**
+             * Sets the SAML module of the route.
+             *
+             * @param saml the module
+             * @return the builder instance
+             */
+            public Route.Builder saml(final EndpointSamlMutate saml) {
+                return module(SAML, saml);
+            }
+
+            /**
+             * Sets the OIDC module of the route.
+             *
+             * @param oidc the module
+             * @return the builder instance
+             */
+            public Route.Builder oidc(final EndpointOidc oidc) {
+                return module(OIDC, oidc);
+            }
+
+            /**
+             * Sets the websocket to TCP converter module of the route.
+             *
+             * @param websocketTcpConverter the module
+             * @return the builder instance
+             */
+            public Route.Builder websocketTcpConverter(final EndpointWebsocketTcpConverter websocketTcpConverter) {
+                return module(WEBSOCKET_TCP_CONVERTER, websocketTcpConverter);
+            }
+
+            /**
+             * Builds the declared route.
+             *
+             * @return a declared route
+             */
+            public Route build() {
+                return new Route(this);
+            }
+        }
+
+        /**
+         * Creates a new declared route builder.
+         *
+         * @param matchType the type of match, like <code>path_prefix</code>
+         * @param match the value to match
+         * @return a route builder
+         */
+        public static Route.Builder newBuilder(final String matchType, final String match) {
+            return new Route.Builder(matchType, match);
+        }
+
+        private List<String> key() {
+            return Arrays.asList(this.matchType, this.match);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <M> Optional<M> get(final RouteModule<M, ?> module) {
+            return Optional.ofNullable((M) this.modules.get(module));
+        }
+    }
+
+    /**
+     * One call needed to reach the declared configuration.
+     */
+    public static class Change {
+        /**
+         * The kind of a change.
+         */
+        public enum Kind {
+            /** Creates an edge, along with its modules and routes */
+            CREATE_EDGE,
+            /** Updates the hostports, description or metadata of an edge */
+            UPDATE_EDGE,
+            /** Replaces a module of an edge */
+            REPLACE_EDGE_MODULE,
+            /** Deletes a module of an edge */
+            DELETE_EDGE_MODULE,
+            /** Creates a route, along with its modules */
+            CREATE_ROUTE,
+            /** Updates the description or metadata of a route */
+            UPDATE_ROUTE,
+            /** Deletes a route */
+            DELETE_ROUTE,
+            /** Replaces a module of a route */
+            REPLACE_ROUTE_MODULE,
+            /** Deletes a module of a route */
+            DELETE_ROUTE_MODULE
+        }
+
+        private final Kind kind;
+        private final String edge;
+        private final Optional<String> route;
+        private final Optional<String> module;
+        private final Supplier<CompletionStage<?>> call;
+
+        private Change(final Kind kind, final String edge, final Optional<String> route, final Optional<String> module, final Supplier<CompletionStage<?>> call) {
+            this.kind = kind;
+            this.edge = edge;
+            this.route = route;
+            this.module = module;
+            this.call = call;
+        }
+
+        /**
+         * Fetches the kind of the change.
+         *
+         * @return the kind
+         */
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /**
+         * Fetches the edge changed: its ID, or its hostports for an edge to create.
+         *
+         * @return the edge
+         */
+        public String getEdge() {
+            return this.edge;
+        }
+
+        /**
+         * Fetches the route changed, as its ID or, for a route to create, its match.
+         *
+         * @return the route, for route changes
+         */
+        public Optional<String> getRoute() {
+            return this.route;
+        }
+
+        /**
+         * Fetches the name of the module changed, like <code>backend</code>.
+         *
+         * @return the module, for module changes
+         */
+        public Optional<String> getModule() {
+            return this.module;
+        }
+
+        @Override
+        public String toString() {
+            return "HttpsEdgeReconciler.Change{" +
+                "kind='" + this.kind +
+                "', edge='" + this.edge +
+                "', route='" + this.route.orElse("") +
+                "', module='" + this.module.orElse("") +
+                "'}";
+        }
+    }
+
+    /**
+     * The changes needed to reach the declared configuration from the current one.
+     */
+    public static class Plan {
+        private final List<Change> changes;
+
+        private Plan(final List<Change> changes) {
+            this.changes = Collections.unmodifiableList(changes);
+        }
+
+        /**
+         * Fetches the changes of the plan.
+         *
+         * @return an unmodifiable list of changes
+         */
+        public List<Change> getChanges() {
+            return this.changes;
+        }
+
+        /**
+         * Fetches whether the current configuration already is the declared one.
+         *
+         * @return true if there is nothing to change
+         */
+        public boolean isEmpty() {
+            return this.changes.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "HttpsEdgeReconciler.Plan{" +
+                "changes='" + this.changes +
+                "'}";
+        }
+    }
+
+    /**
+     * The outcome of applying a plan.
+     */
+    public static class Result {
+        private final Plan plan;
+        private final Map<Change, Throwable> failures;
+        private final Duration duration;
+
+        private Result(final Plan plan, final Map<Change, Throwable> failures, final Duration duration) {
+            this.plan = plan;
+            this.failures = failures;
+            this.duration = duration;
+        }
+
+        /**
+         * Fetches the plan applied.
+         *
+         * @return the plan
+         */
+        public Plan getPlan() {
+            return this.plan;
+        }
+
+        /**
+         * Fetches the changes which failed, with their failure.
+         *
+         * @return an unmodifiable map of failures
+         */
+        public Map<Change, Throwable> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Fetches whether every change was applied.
+         *
+         * @return true if no change failed
+         */
+        public boolean isSuccessful() {
+            return this.failures.isEmpty();
+        }
+
+        /**
+         * Fetches the time taken to apply the plan.
+         *
+         * @return a duration
+         */
+        public Duration getDuration() {
+            return this.duration;
+        }
+
+        @Override
+        public String toString() {
+            return "HttpsEdgeReconciler.Result{" +
+                "changes='" + this.plan.getChanges().size() +
+                "', failures='" + this.failures +
+                "', duration='" + this.duration +
+                "'}";
+        }
+    }
+
+    /**
+     * A builder object encapsulating state for an unstarted reconciliation.
+     */
+    public static class CallBuilder {
+        private final Ngrok ngrok;
+        private final List<Edge> edges = new ArrayList<>();
+        private boolean pruneRoutes = true;
+        private int maxConcurrency = 8;
+
+        CallBuilder(final Ngrok ngrok) {
+            this.ngrok = requireNonNull(ngrok, "ngrok is required");
+        }
+
+        /**
+         * Adds a declared edge.
+         *
+         * @param edge the edge
+         * @return the call builder instance
+         */
+        public CallBuilder edge(final Edge edge) {
+            this.edges.add(requireNonNull(edge, "edge is required"));
+            return this;
+        }
+
+        /**
+         * Adds declared edges.
+         *
+         * @param edges the edges
+         * @return the call builder instance
+         */
+        public CallBuilder edges(final Collection<Edge> edges) {
+            requireNonNull(edges, "edges is required").forEach(this::edge);
+            return this;
+        }
+
+        /**
+         * Sets whether routes of a declared edge which are not declared are deleted. Defaults to true.
+         *
+         * @param pruneRoutes whether to delete undeclared routes
+         * @return the call builder instance
+         */
+        public CallBuilder pruneRoutes(final boolean pruneRoutes) {
+            this.pruneRoutes = pruneRoutes;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of calls in flight at once. Defaults to 8.
+         *
+         * @param maxConcurrency a number of calls
+         * @return the call builder instance
+         */
+        public CallBuilder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Computes the changes needed, without applying them.
+         *
+         * @return a {@link CompletionStage} of the {@link Plan}
+         */
+        public CompletionStage<Plan> plan() {
+            final List<HttpsEdge> current = Collections.synchronizedList(new ArrayList<>());
+            final List<Edge> declared = new ArrayList<>(this.edges);
+            return this.ngrok.forEach(ListType.HTTPS_EDGE_LIST, current::add)
+                .thenApply(ignored -> new Planner(this.ngrok, this.pruneRoutes).plan(declared, current));
+        }
+
+        /**
+         * Computes the changes needed and applies them. A failed change does not stop the others.
+         *
+         * @return a {@link CompletionStage} of the {@link Result}
+         */
+        public CompletionStage<Result> call() {
+            return plan().thenCompose(this::apply);
+        }
+
+        /**
+         * Applies a plan computed earlier, such as one reviewed after a call to {@link #plan()}.
+         *
+         * @param plan the plan
+         * @return a {@link CompletionStage} of the {@link Result}
+         */
+        public CompletionStage<Result> apply(final Plan plan) {
+            final long startNanos = System.nanoTime();
+            return BulkExecutor.newBuilder()
+                .maxConcurrency(this.maxConcurrency)
+                .build()
+                .execute(plan.getChanges().stream(), change -> change.call.get())
+                .thenApply(result -> {
+                    final Map<Change, Throwable> failures = new LinkedHashMap<>();
+                    result.getFailures().forEach((index, error) -> failures.put(plan.getChanges().get(index), error));
+                    return new Result(plan, Collections.unmodifiableMap(failures), Duration.ofNanos(System.nanoTime() - startNanos));
+                });
+        }
+
+        /**
+         * Computes the changes needed, applies them and blocks until they have been applied.
+         *
+         * @return the {@link Result}
+         * @throws InterruptedException if the thread was interrupted during the call
+         */
+        public Result blockingCall() throws InterruptedException {
+            try {
+                return call().toCompletableFuture().get();
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * A module of a route: how to read it from a declared and a current route, and how to replace or
+     * delete it.
+     *
+     * @param <M> the type the module is declared and replaced with
+     * @param <C> the type the module is read with
+     */
+    private static final class RouteModule<M, C> {
+        private final String name;
+        private final Function<HttpsEdgeRoute, Optional<C>> current;
+        private final Function<C, M> comparable;
+        private final BiConsumer<EdgesHttpsRoutes.CreateCallBuilder, Optional<M>> create;
+        private final ModuleCall<M> replace;
+        private final ModuleCall<Void> delete;
+
+        private RouteModule(final String name,
+                            final Function<HttpsEdgeRoute, Optional<C>> current,
+                            final Function<C, M> comparable,
+                            final BiConsumer<EdgesHttpsRoutes.CreateCallBuilder, Optional<M>> create,
+                            final ModuleCall<M> replace,
+                            final ModuleCall<Void> delete)
+        {
+            this.name = name;
+            this.current = current;
+            this.comparable = comparable;
+            this.create = create;
+            this.replace = replace;
+            this.delete = delete;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ModuleCall<M> {
+        CompletionStage<?> call(Ngrok ngrok, String edgeId, String routeId, M module);
+    }
+
+    private static final RouteModule<EndpointBackendMutate, EndpointBackend> BACKEND = new RouteModule<>(
+        "backend",
+        HttpsEdgeRoute::getBackend,
+        current -> EndpointBackendMutate.newBuilder().enabled(current.getEnabled()).backendId(current.getBackend().getId()).build(),
+        EdgesHttpsRoutes.CreateCallBuilder::backend,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteBackend().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteBackend().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointIpPolicyMutate, EndpointIpPolicy> IP_RESTRICTION = new RouteModule<>(
+        "ip_restriction",
+        HttpsEdgeRoute::getIpRestriction,
+        current -> EndpointIpPolicyMutate.newBuilder().enabled(current.getEnabled()).ipPolicyIds(ids(current.getIpPolicies())).build(),
+        EdgesHttpsRoutes.CreateCallBuilder::ipRestriction,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteIpRestriction().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteIpRestriction().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointCircuitBreaker, EndpointCircuitBreaker> CIRCUIT_BREAKER = new RouteModule<>(
+        "circuit_breaker",
+        HttpsEdgeRoute::getCircuitBreaker,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::circuitBreaker,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteCircuitBreaker().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteCircuitBreaker().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointCompression, EndpointCompression> COMPRESSION = new RouteModule<>(
+        "compression",
+        HttpsEdgeRoute::getCompression,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::compression,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteCompression().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteCompression().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointRequestHeaders, EndpointRequestHeaders> REQUEST_HEADERS = new RouteModule<>(
+        "request_headers",
+        HttpsEdgeRoute::getRequestHeaders,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::requestHeaders,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteRequestHeaders().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteRequestHeaders().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointResponseHeaders, EndpointResponseHeaders> RESPONSE_HEADERS = new RouteModule<>(
+        "response_headers",
+        HttpsEdgeRoute::getResponseHeaders,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::responseHeaders,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteResponseHeaders().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteResponseHeaders().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointWebhookValidation, EndpointWebhookValidation> WEBHOOK_VERIFICATION = new RouteModule<>(
+        "webhook_verification",
+        HttpsEdgeRoute::getWebhookVerification,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::webhookVerification,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteWebhookVerification().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteWebhookVerification().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointOAuth, EndpointOAuth> OAUTH = new RouteModule<>(
+        "oauth",
+        HttpsEdgeRoute::getOauth,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::oauth,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteOauth().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteOauth().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointSamlMutate, EndpointSaml> SAML = new RouteModule<>(
+        "saml",
+        HttpsEdgeRoute::getSaml,
+        current -> EndpointSamlMutate.newBuilder()
+            .enabled(current.getEnabled())
+            .optionsPassthrough(current.getOptionsPassthrough())
+            .cookiePrefix(current.getCookiePrefix())
+            .inactivityTimeout(current.getInactivityTimeout())
+            .maximumDuration(current.getMaximumDuration())
+            .idpMetadata(current.getIdpMetadata())
+            .forceAuthn(current.getForceAuthn())
+            .allowIdpInitiated(current.getAllowIdpInitiated())
+            .authorizedGroups(current.getAuthorizedGroups())
+            .nameidFormat(current.getNameidFormat())
+            .build(),
+        EdgesHttpsRoutes.CreateCallBuilder::saml,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteSaml().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteSaml().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointOidc, EndpointOidc> OIDC = new RouteModule<>(
+        "oidc",
+        HttpsEdgeRoute::getOidc,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::oidc,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteOidc().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteOidc().delete(edgeId, routeId).call()
+    );
+
+    private static final RouteModule<EndpointWebsocketTcpConverter, EndpointWebsocketTcpConverter> WEBSOCKET_TCP_CONVERTER = new RouteModule<>(
+        "websocket_tcp_converter",
+        HttpsEdgeRoute::getWebsocketTcpConverter,
+        Function.identity(),
+        EdgesHttpsRoutes.CreateCallBuilder::websocketTcpConverter,
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteWebsocketTcpConverter().replace(edgeId, routeId).module(module).call(),
+        (ngrok, edgeId, routeId, module) -> ngrok.edgeModules().httpsEdgeRouteWebsocketTcpConverter().delete(edgeId, routeId).call()
+    );
+
+    private static final List<RouteModule<?, ?>> ROUTE_MODULES = Collections.unmodifiableList(Arrays.asList(
+        BACKEND,
+        IP_RESTRICTION,
+        CIRCUIT_BREAKER,
+        COMPRESSION,
+        REQUEST_HEADERS,
+        RESPONSE_HEADERS,
+        WEBHOOK_VERIFICATION,
+        OAUTH,
+        SAML,
+        OIDC,
+        WEBSOCKET_TCP_CONVERTER
+    ));
+
+    private HttpsEdgeReconciler() {
+    }
+
+    private static List<String> ids(final List<Ref> refs) {
+        return refs.stream().map(Ref::getId).collect(Collectors.toList());
+    }
+
+    private static Optional<EndpointMutualTlsMutate> currentMutualTls(final HttpsEdge edge) {
+        return edge.getMutualTls().map(current -> EndpointMutualTlsMutate.newBuilder()
+            .enabled(current.getEnabled())
+            .certificateAuthorityIds(ids(current.getCertificateAuthorities()))
+            .build());
+    }
+
+    private static Optional<EndpointTlsTerminationAtEdge> currentTlsTermination(final HttpsEdge edge) {
+        return edge.getTlsTermination().map(current -> EndpointTlsTerminationAtEdge.newBuilder()
+            .enabled(current.getEnabled())
+            .minVersion(current.getMinVersion())
+            .build());
+    }
+
+    /**
+     * Computes the changes between declared and current edges.
+     */
+    private static final class Planner {
+        private final Ngrok ngrok;
+        private final boolean pruneRoutes;
+        private final List<Change> changes = new ArrayList<>();
+
+        private Planner(final Ngrok ngrok, final boolean pruneRoutes) {
+            this.ngrok = ngrok;
+            this.pruneRoutes = pruneRoutes;
+        }
+
+        private Plan plan(final List<Edge> declared, final List<HttpsEdge> current) {
+            final List<HttpsEdge> unmatched = new ArrayList<>(current);
+            for (final Edge edge : declared) {
+                final Optional<HttpsEdge> existing = unmatched.stream().filter(candidate -> matches(edge, candidate)).findFirst();
+                if (existing.isPresent()) {
+                    unmatched.remove(existing.get());
+                    planEdge(edge, existing.get());
+                } else if (edge.id.isPresent()) {
+                    throw new IllegalArgumentException("No HTTPS edge with id " + edge.id.get());
+                } else {
+                    this.changes.add(new Change(Change.Kind.CREATE_EDGE, edge.name(), Optional.empty(), Optional.empty(), () -> createEdge(edge)));
+                }
+            }
+            return new Plan(this.changes);
+        }
+
+        private static boolean matches(final Edge edge, final HttpsEdge candidate) {
+            if (edge.id.isPresent()) {
+                return edge.id.get().equals(candidate.getId());
+            }
+            return new HashSet<>(edge.hostports.get()).equals(new HashSet<>(candidate.getHostports().orElse(Collections.emptyList())));
+        }
+
+        private void planEdge(final Edge edge, final HttpsEdge current) {
+            final String edgeId = current.getId();
+            final Optional<List<String>> hostports = edge.hostports
+                .filter(wanted -> !new HashSet<>(wanted).equals(new HashSet<>(current.getHostports().orElse(Collections.emptyList()))));
+            final Optional<String> description = edge.description.filter(wanted -> !wanted.equals(current.getDescription()));
+            final Optional<String> metadata = edge.metadata.filter(wanted -> !wanted.equals(current.getMetadata()));
+            if (hostports.isPresent() || description.isPresent() || metadata.isPresent()) {
+                this.changes.add(new Change(Change.Kind.UPDATE_EDGE, edgeId, Optional.empty(), Optional.empty(), () ->
+                    this.ngrok.edges().https().update(edgeId)
+                        .hostports(hostports)
+                        .description(description)
+                        .metadata(metadata)
+                        .call()
+                ));
+            }
+
+            planEdgeModule(edgeId, "mutual_tls", edge.mutualTls, currentMutualTls(current),
+                module -> this.ngrok.edgeModules().httpsEdgeMutualTls().replace(edgeId).module(module).call(),
+                () -> this.ngrok.edgeModules().httpsEdgeMutualTls().delete(edgeId).call()
+            );
+            planEdgeModule(edgeId, "tls_termination", edge.tlsTermination, currentTlsTermination(current),
+                module -> this.ngrok.edgeModules().httpsEdgeTlsTermination().replace(edgeId).module(module).call(),
+                () -> this.ngrok.edgeModules().httpsEdgeTlsTermination().delete(edgeId).call()
+            );
+
+            final Map<List<String>, HttpsEdgeRoute> currentRoutes = new LinkedHashMap<>();
+            current.getRoutes().forEach(route -> currentRoutes.putIfAbsent(Arrays.asList(route.getMatchType(), route.getMatch()), route));
+            final Set<String> matchedRouteIds = new HashSet<>();
+            for (final Route route : edge.routes) {
+                final HttpsEdgeRoute existing = currentRoutes.get(route.key());
+                if (existing == null) {
+                    this.changes.add(new Change(Change.Kind.CREATE_ROUTE, edgeId, Optional.of(route.matchType + " " + route.match), Optional.empty(), () -> createRoute(edgeId, route)));
+                } else {
+                    matchedRouteIds.add(existing.getId());
+                    planRoute(edgeId, route, existing);
+                }
+            }
+            if (this.pruneRoutes) {
+                for (final HttpsEdgeRoute stale : current.getRoutes()) {
+                    if (!matchedRouteIds.contains(stale.getId())) {
+                        this.changes.add(new Change(Change.Kind.DELETE_ROUTE, edgeId, Optional.of(stale.getId()), Optional.empty(), () ->
+                            this.ngrok.edges().httpsRoutes().delete(edgeId, stale.getId()).call()
+                        ));
+                    }
+                }
+            }
+        }
+
+        private <M> void planEdgeModule(final String edgeId,
+                                        final String name,
+                                        final Optional<M> wanted,
+                                        final Optional<M> current,
+                                        final Function<M, CompletionStage<?>> replace,
+                                        final Supplier<CompletionStage<?>> delete)
+        {
+            if (wanted.isPresent() && !wanted.equals(current)) {
+                this.changes.add(new Change(Change.Kind.REPLACE_EDGE_MODULE, edgeId, Optional.empty(), Optional.of(name), () -> replace.apply(wanted.get())));
+            } else if (!wanted.isPresent() && current.isPresent()) {
+                this.changes.add(new Change(Change.Kind.DELETE_EDGE_MODULE, edgeId, Optional.empty(), Optional.of(name), delete));
+            }
+        }
+
+        private void planRoute(final String edgeId, final Route route, final HttpsEdgeRoute current) {
+            final String routeId = current.getId();
+            final boolean descriptionChanged = route.description.isPresent() && !route.description.get().equals(current.getDescription());
+            final boolean metadataChanged = route.metadata.isPresent() && !route.metadata.get().equals(current.getMetadata());
+            if (descriptionChanged || metadataChanged) {
+                // The update call always sends every one of these fields
+                this.changes.add(new Change(Change.Kind.UPDATE_ROUTE, edgeId, Optional.of(routeId), Optional.empty(), () ->
+                    this.ngrok.edges().httpsRoutes().update(edgeId, routeId)
+                        .matchType(current.getMatchType())
+                        .match(current.getMatch())
+                        .description(route.description.orElse(current.getDescription()))
+                        .metadata(route.metadata.orElse(current.getMetadata()))
+                        .call()
+                ));
+            }
+            for (final RouteModule<?, ?> module : ROUTE_MODULES) {
+                planRouteModule(edgeId, routeId, route, current, module);
+            }
+        }
+
+        private <M, C> void planRouteModule(final String edgeId, final String routeId, final Route route, final HttpsEdgeRoute current, final RouteModule<M, C> module) {
+            final Optional<M> wanted = route.get(module);
+            final Optional<M> existing = module.current.apply(current).map(module.comparable);
+            if (wanted.isPresent() && !wanted.equals(existing)) {
+                this.changes.add(new Change(Change.Kind.REPLACE_ROUTE_MODULE, edgeId, Optional.of(routeId), Optional.of(module.name), () ->
+                    module.replace.call(this.ngrok, edgeId, routeId, wanted.get())
+                ));
+            } else if (!wanted.isPresent() && existing.isPresent()) {
+                this.changes.add(new Change(Change.Kind.DELETE_ROUTE_MODULE, edgeId, Optional.of(routeId), Optional.of(module.name), () ->
+                    module.delete.call(this.ngrok, edgeId, routeId, null)
+                ));
+            }
+        }
+
+        private CompletionStage<?> createEdge(final Edge edge) {
+            return this.ngrok.edges().https().create()
+                .hostports(edge.hostports)
+                .description(edge.description)
+                .metadata(edge.metadata)
+                .mutualTls(edge.mutualTls)
+                .tlsTermination(edge.tlsTermination)
+                .call()
+                .thenCompose(created -> CompletableFuture.allOf(edge.routes.stream()
+                    .map(route -> createRoute(created.getId(), route).toCompletableFuture())
+                    .toArray(CompletableFuture[]::new)));
+        }
+
+        private CompletionStage<HttpsEdgeRoute> createRoute(final String edgeId, final Route route) {
+            final EdgesHttpsRoutes.CreateCallBuilder create = this.ngrok.edges().httpsRoutes().create(edgeId, route.matchType, route.match)
+                .description(route.description)
+                .metadata(route.metadata);
+            for (final RouteModule<?, ?> module : ROUTE_MODULES) {
+                withModule(create, route, module);
+            }
+            return create.call();
+        }
+
+        private static <M> void withModule(final EdgesHttpsRoutes.CreateCallBuilder create, final Route route, final RouteModule<M, ?> module) {
+            module.create.accept(create, route.get(module));
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.ngrok;
+
+import com.ngrok.definitions.IpPolicyRule;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Ref;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Longest-prefix-match index over IP policy rules, to decide offline whether an address would be
+ * allowed or denied by a set of IP policies.
+ *
+ * Rules are kept in two path-compressed binary (Patricia) tries, one for IPv4 and one for IPv6. The
+ * most specific rule matching an address decides; if rules of the selected policies for the same
+ * prefix disagree, deny wins.
+ *
+ * Lookups walk at most one node per distinct prefix length on the path, test each node against the
+ * selected policies with a few bitwise operations, and allocate nothing. Tries are persistent: adding
+ * or removing a rule copies the nodes on its path and publishes a new root, so lookups never block and
+ * never see a half-applied change. Changes are serialized.
+ */
+public class IpPolicyIndex {
+    /**
+     * The outcome of matching an address against the rules of some IP policies.
+     */
+    public enum Decision {
+        /** The most specific matching rule allows the address */
+        ALLOW,
+        /** The most specific matching rule denies the address */
+        DENY,
+        /** No rule of the selected policies matches the address */
+        NO_MATCH
+    }
+
+    /**
+     * A set of IP policies to match addresses against, prepared once so that lookups allocate
+     * nothing.
+     */
+    public static final class Selection {
+        private final long[] mask;
+
+        private Selection(final long[] mask) {
+            this.mask = mask;
+        }
+
+        private boolean intersects(final long[] policies) {
+            for (int i = Math.min(this.mask.length, policies.length) - 1; i >= 0; i--) {
+                if ((this.mask[i] & policies[i]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final String ALLOW_ACTION = "allow";
+    private static final String DENY_ACTION = "deny";
+
+    /**
+     * Creates an index of every rule of every IP policy on the account.
+     *
+     * @param ngrok the ngrok API instance to list the rules with
+     * @return a future of the index
+     */
+    public static CompletionStage<IpPolicyIndex> fetch(final Ngrok ngrok) {
+        final IpPolicyIndex index = new IpPolicyIndex();
+        return ngrok.forEach(ListType.IP_POLICY_RULE_LIST, index::add).thenApply(ignored -> index);
+    }
+
+    private final Map<String, Integer> policyIndexes = new HashMap<>();
+    private final Map<String, Rule> rules = new HashMap<>();
+    private volatile Node ipv4Root = null;
+    private volatile Node ipv6Root = null;
+
+    /**
+     * Creates an empty index.
+     */
+    public IpPolicyIndex() {
+    }
+
+    /**
+     * Adds a rule to the index, replacing any rule with the same ID.
+     *
+     * @param rule an IP policy rule
+     */
+    public void add(final IpPolicyRule rule) {
+        add(rule.getId(), rule.getIpPolicy().getId(), rule.getCidr(), rule.getAction());
+    }
+
+    /**
+     * Adds a rule to the index, replacing any rule with the same ID.
+     *
+     * @param ruleId the ID of the rule
+     * @param policyId the ID of the IP policy the rule belongs to
+     * @param cidr the CIDR the rule applies to, like <code>10.0.0.0/8</code>
+     * @param action the action of the rule, <code>allow</code> or <code>deny</code>
+     * @throws IllegalArgumentException if the CIDR or the action is not valid
+     */
+    public synchronized void add(final String ruleId, final String policyId, final String cidr, final String action) {
+        requireNonNull(ruleId, "ruleId is required");
+        requireNonNull(policyId, "policyId is required");
+        final boolean deny;
+        switch (requireNonNull(action, "action is required").toLowerCase(Locale.ROOT)) {
+            case ALLOW_ACTION:
+                deny = false;
+                break;
+            case DENY_ACTION:
+                deny = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown IP policy rule action: " + action);
+        }
+        final Cidr parsed = Cidr.parse(cidr);
+        final int policy = this.policyIndexes.computeIfAbsent(policyId, id -> this.policyIndexes.size());
+
+        remove(ruleId);
+        final Rule rule = new Rule(ruleId, policy, deny, parsed);
+        this.rules.put(ruleId, rule);
+        if (parsed.ipv4) {
+            this.ipv4Root = insert(this.ipv4Root, parsed.hi, parsed.lo, parsed.length, rule);
+        } else {
+            this.ipv6Root = insert(this.ipv6Root, parsed.hi, parsed.lo, parsed.length, rule);
+        }
+    }
+
+    /**
+     * Removes a rule from the index.
+     *
+     * @param ruleId the ID of the rule
+     * @return whether the rule was in the index
+     */
+    public synchronized boolean remove(final String ruleId) {
+        final Rule rule = this.rules.remove(ruleId);
+        if (rule == null) {
+            return false;
+        }
+        if (rule.cidr.ipv4) {
+            this.ipv4Root = delete(this.ipv4Root, rule.cidr.hi, rule.cidr.lo, rule.cidr.length, ruleId);
+        } else {
+            this.ipv6Root = delete(this.ipv6Root, rule.cidr.hi, rule.cidr.lo, rule.cidr.length, ruleId);
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the number of rules in the index.
+     *
+     * @return a number of rules
+     */
+    public synchronized int size() {
+        return this.rules.size();
+    }
+
+    /**
+     * Prepares a selection of IP policies for lookups.
+     *
+     * @param policyIds the IDs of the IP policies
+     * @return a selection
+     */
+    public synchronized Selection select(final Collection<String> policyIds) {
+        long[] mask = new long[0];
+        for (final String policyId : policyIds) {
+            final int policy = this.policyIndexes.computeIfAbsent(policyId, id -> this.policyIndexes.size());
+            if ((policy >>> 6) >= mask.length) {
+                mask = Arrays.copyOf(mask, (policy >>> 6) + 1);
+            }
+            mask[policy >>> 6] |= 1L << policy;
+        }
+        return new Selection(mask);
+    }
+
+    /**
+     * Prepares a selection of IP policies for lookups, as referenced by an IP restriction module
+     * (see {@link com.ngrok.definitions.EndpointIpPolicy#getIpPolicies()}).
+     *
+     * @param ipPolicies references to the IP policies
+     * @return a selection
+     */
+    public Selection selectRefs(final List<Ref> ipPolicies) {
+        return select(ipPolicies.stream().map(Ref::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * Decides whether an address would be allowed by a selection of IP policies.
+     *
+     * @param selection the IP policies
+     * @param address an address
+     * @return the decision
+     */
+    public Decision decide(final Selection selection, final InetAddress address) {
+        return decide(selection, address.getAddress());
+    }
+
+    /**
+     * Decides whether an address would be allowed by a selection of IP policies, without allocating.
+     *
+     * @param selection the IP policies
+     * IPv4-mapped IPv6 addresses, like <code>::ffff:10.0.0.1</code>, are looked up as the IPv4
+     * address they map, as {@link InetAddress} does.
+     *
+     * @param address the bytes of an IPv4 (4 bytes) or IPv6 (16 bytes) address, in network order
+     * @return the decision
+     * @throws IllegalArgumentException if the address has another length
+     */
+    public Decision decide(final Selection selection, final byte[] address) {
+        if (address.length == 4) {
+            return lookup(this.ipv4Root, selection, (long) readInt(address, 0) << 32, 0);
+        } else if (address.length == 16) {
+            final long hi = readLong(address, 0);
+            final long lo = readLong(address, 8);
+            if (hi == 0 && (lo >>> 32) == 0xffffL) {
+                return lookup(this.ipv4Root, selection, lo << 32, 0);
+            }
+            return lookup(this.ipv6Root, selection, hi, lo);
+        }
+        throw new IllegalArgumentException("An address is 4 or 16 bytes long");
+    }
+
+    /**
+     * Decides whether an IPv4 address would be allowed by a selection of IP policies, without
+     * allocating.
+     *
+     * @param selection the IP policies
+     * @param ipv4Address the address as an integer, like <code>0x0a000001</code> for 10.0.0.1
+     * @return the decision
+     */
+    public Decision decideIpv4(final Selection selection, final int ipv4Address) {
+        return lookup(this.ipv4Root, selection, (long) ipv4Address << 32, 0);
+    }
+
+    private static Decision lookup(final Node root, final Selection selection, final long hi, final long lo) {
+        Decision decision = Decision.NO_MATCH;
+        Node node = root;
+        while (node != null && commonPrefixLength(hi, lo, node.hi, node.lo) >= node.length) {
+            if (selection.intersects(node.deny)) {
+                decision = Decision.DENY;
+            } else if (selection.intersects(node.allow)) {
+                decision = Decision.ALLOW;
+            }
+            if (node.length == 128) {
+                break;
+            }
+            node = bit(hi, lo, node.length) ? node.right : node.left;
+        }
+        return decision;
+    }
+
+    private static Node insert(final Node node, final long hi, final long lo, final int length, final Rule rule) {
+        if (node == null) {
+            return new Node(hi, lo, length, new Rule[] {rule}, null, null);
+        }
+        final int common = Math.min(Math.min(length, node.length), commonPrefixLength(hi, lo, node.hi, node.lo));
+        if (common < node.length) {
+            // The new prefix diverges from, or contains, this node: split above it
+            if (common == length) {
+                return bit(node.hi, node.lo, length)
+                    ? new Node(hi, lo, length, new Rule[] {rule}, null, node)
+                    : new Node(hi, lo, length, new Rule[] {rule}, node, null);
+            }
+            final Node leaf = new Node(hi, lo, length, new Rule[] {rule}, null, null);
+            final long splitHi = mask(hi, lo, common, true);
+            final long splitLo = mask(hi, lo, common, false);
+            return bit(hi, lo, common)
+                ? new Node(splitHi, splitLo, common, Node.NO_RULES, node, leaf)
+                : new Node(splitHi, splitLo, common, Node.NO_RULES, leaf, node);
+        }
+        if (length == node.length) {
+            final Rule[] rules = Arrays.copyOf(node.rules, node.rules.length + 1);
+            rules[node.rules.length] = rule;
+            return new Node(node.hi, node.lo, node.length, rules, node.left, node.right);
+        }
+        return bit(hi, lo, node.length)
+            ? new Node(node.hi, node.lo, node.length, node.rules, node.left, insert(node.right, hi, lo, length, rule))
+            : new Node(node.hi, node.lo, node.length, node.rules, insert(node.left, hi, lo, length, rule), node.right);
+    }
+
+    private static Node delete(final Node node, final long hi, final long lo, final int length, final String ruleId) {
+        if (node == null || length < node.length) {
+            return node;
+        }
+        final Node replaced;
+        if (length == node.length) {
+            final Rule[] rules = Arrays.stream(node.rules).filter(rule -> !rule.id.equals(ruleId)).toArray(Rule[]::new);
+            replaced = new Node(node.hi, node.lo, node.length, rules, node.left, node.right);
+        } else if (bit(hi, lo, node.length)) {
+            replaced = new Node(node.hi, node.lo, node.length, node.rules, node.left, delete(node.right, hi, lo, length, ruleId));
+        } else {
+            replaced = new Node(node.hi, node.lo, node.length, node.rules, delete(node.left, hi, lo, length, ruleId), node.right);
+        }
+        // Drop nodes that no longer hold rules or branch
+        if (replaced.rules.length == 0) {
+            if (replaced.left == null) {
+                return replaced.right;
+            } else if (replaced.right == null) {
+                return replaced.left;
+            }
+        }
+        return replaced;
+    }
+
+    private static int commonPrefixLength(final long hi1, final long lo1, final long hi2, final long lo2) {
+        if (hi1 != hi2) {
+            return Long.numberOfLeadingZeros(hi1 ^ hi2);
+        }
+        return 64 + Long.numberOfLeadingZeros(lo1 ^ lo2);
+    }
+
+    private static boolean bit(final long hi, final long lo, final int index) {
+        return index < 64
+            ? (hi & (Long.MIN_VALUE >>> index)) != 0
+            : (lo & (Long.MIN_VALUE >>> (index - 64))) != 0;
+    }
+
+    private static long mask(final long hi, final long lo, final int length, final boolean high) {
+        if (high) {
+            return length >= 64 ? hi : length == 0 ? 0 : hi & (-1L << (64 - length));
+        }
+        return length <= 64 ? 0 : length == 128 ? lo : lo & (-1L << (128 - length));
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private static long readLong(final byte[] bytes, final int offset) {
+        return (long) readInt(bytes, offset) << 32 | (readInt(bytes, offset + 4) & 0xffffffffL);
+    }
+
+    private static final class Rule {
+        private final String id;
+        private final int policy;
+        private final boolean deny;
+        private final Cidr cidr;
+
+        private Rule(final String id, final int policy, final boolean deny, final Cidr cidr) {
+            this.id = id;
+            this.policy = policy;
+            this.deny = deny;
+            this.cidr = cidr;
+        }
+    }
+
+    /**
+     * An immutable trie node: a prefix of <code>length</code> bits, left-aligned in two longs, the rules
+     * for exactly that prefix, and the subtries for the next bit being 0 or 1. The policies with rules
+     * allowing and denying the prefix are kept as bit sets, so a lookup tests a node in a few words
+     * however many rules it holds.
+     */
+    private static final class Node {
+        private static final Rule[] NO_RULES = new Rule[0];
+
+        private final long hi;
+        private final long lo;
+        private final int length;
+        private final Rule[] rules;
+        private final long[] allow;
+        private final long[] deny;
+        private final Node left;
+        private final Node right;
+
+        private Node(final long hi, final long lo, final int length, final Rule[] rules, final Node left, final Node right) {
+            this.hi = hi;
+            this.lo = lo;
+            this.length = length;
+            this.rules = rules;
+            this.left = left;
+            this.right = right;
+            int words = 0;
+            for (final Rule rule : rules) {
+                words = Math.max(words, (rule.policy >>> 6) + 1);
+            }
+            this.allow = new long[words];
+            this.deny = new long[words];
+            for (final Rule rule : rules) {
+                (rule.deny ? this.deny : this.allow)[rule.policy >>> 6] |= 1L << rule.policy;
+            }
+        }
+    }
+
+    /**
+     * A parsed CIDR, with the address left-aligned in two longs and the host bits cleared.
+     */
+    static final class Cidr {
+        final boolean ipv4;
+        final long hi;
+        final long lo;
+        final int length;
+
+        private Cidr(final boolean ipv4, final long hi, final long lo, final int length) {
+            this.ipv4 = ipv4;
+            this.hi = mask(hi, lo, length, true);
+            this.lo = mask(hi, lo, length, false);
+            this.length = length;
+        }
+
+        /**
+         * Parses a CIDR, or a single address. Only IP literals are accepted, so this never resolves
+         * host names. IPv4-mapped IPv6 CIDRs, like <code>::ffff:10.0.0.0/104</code>, are read as the
+         * IPv4 CIDR they map, as {@link InetAddress} does for addresses.
+         *
+         * @param cidr a CIDR, like <code>10.0.0.0/8</code> or <code>2001:db8::/32</code>
+         * @return the parsed CIDR
+         * @throws IllegalArgumentException if the CIDR is not valid
+         */
+        static Cidr parse(final String cidr) {
+            requireNonNull(cidr, "cidr is required");
+            final int slash = cidr.indexOf('/');
+            final String literal = slash < 0 ? cidr : cidr.substring(0, slash);
+            final boolean ipv6Literal = literal.indexOf(':') >= 0;
+            if (literal.isEmpty() || !literal.chars().allMatch(c -> (ipv6Literal ? Character.digit(c, 16) : Character.digit(c, 10)) >= 0 || c == '.' || c == ':')) {
+                throw new IllegalArgumentException("Not an IP address: " + cidr);
+            }
+            final InetAddress address;
+            try {
+                address = InetAddress.getByName(literal);
+            } catch (final UnknownHostException e) {
+                throw new IllegalArgumentException("Not an IP address: " + cidr, e);
+            }
+            final byte[] bytes = address.getAddress();
+            final boolean ipv4 = address instanceof Inet4Address;
+            final int maxLength = ipv4 ? 32 : 128;
+            int length;
+            try {
+                length = slash < 0 ? maxLength : Integer.parseInt(cidr.substring(slash + 1));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Not a valid prefix length: " + cidr, e);
+            }
+            if (ipv4 && ipv6Literal && slash >= 0) {
+                // An IPv4-mapped address, whose prefix length counts the 96 bits of ::ffff:0:0/96
+                if (length < 96 || length > 128) {
+                    throw new IllegalArgumentException("Not a valid prefix length for an IPv4-mapped address, which must be between 96 and 128: " + cidr);
+                }
+                length -= 96;
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Not a valid prefix length: " + cidr);
+            }
+            return ipv4
+                ? new Cidr(true, (long) readInt(bytes, 0) << 32, 0, length)
+                : new Cidr(false, readLong(bytes, 0), readLong(bytes, 8), length);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.IpPolicyRule;
+import com.ngrok.definitions.ListType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Brings the rules of one IP policy in line with a large feed of CIDRs, such as a threat-intelligence
+ * blocklist.
+ *
+ * The feed is read as a stream into a {@link CidrSet}, which merges adjacent and overlapping CIDRs into
+ * the smallest covering set. That set is then compared with the rules of the policy carrying the same
+ * action, and only the missing rules are created and the stale ones deleted, a bounded number of
+ * requests at a time. New rules are all created before any stale one is deleted, so addresses covered
+ * both before and after the ingest stay covered throughout.
+ *
+ * An ingest does not stop at the first failed line or request; every failure is collected in the
+ * {@link Result}. A feed with lines that failed to parse, or without any valid CIDR, may be truncated
+ * or the wrong file, so by default the rules it lacks are then kept rather than deleted.
+ */
+public class IpPolicyIngest {
+    /**
+     * The step of an ingest that failed for one item.
+     */
+    public enum Operation {
+        /** A line of the feed is not a valid CIDR */
+        PARSE,
+        /** Creating a rule for a CIDR failed */
+        CREATE,
+        /** Deleting a stale rule failed */
+        DELETE
+    }
+
+    /**
+     * A failure for one item of an ingest.
+     */
+    public static class Failure {
+        private final Operation operation;
+        private final String subject;
+        private final Throwable error;
+
+        private Failure(final Operation operation, final String subject, final Throwable error) {
+            this.operation = operation;
+            this.subject = subject;
+            this.error = error;
+        }
+
+        /**
+         * Fetches the step that failed.
+         *
+         * @return an operation
+         */
+        public Operation getOperation() {
+            return this.operation;
+        }
+
+        /**
+         * Fetches what the step failed for: the line number for {@link Operation#PARSE}, the CIDR for
+         * {@link Operation#CREATE} and the rule ID for {@link Operation#DELETE}.
+         *
+         * @return the subject of the failure
+         */
+        public String getSubject() {
+            return this.subject;
+        }
+
+        /**
+         * Fetches the cause of the failure, usually an {@link NgrokApiError} for requests.
+         *
+         * @return the error
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+
+        @Override
+        public String toString() {
+            return "IpPolicyIngest.Failure{" +
+                "operation='" + this.operation +
+                "', subject='" + this.subject +
+                "', error='" + this.error +
+                "'}";
+        }
+    }
+
+    /**
+     * The outcome of an ingest.
+     */
+    public static class Result {
+        private final long cidrCount;
+        private final int ruleCount;
+        private final int unchangedCount;
+        private final int createdCount;
+        private final int deletedCount;
+        private final int keptCount;
+        private final List<Failure> failures;
+
+        private Result(final long cidrCount,
+                       final int ruleCount,
+                       final int unchangedCount,
+                       final int createdCount,
+                       final int deletedCount,
+                       final int keptCount,
+                       final List<Failure> failures)
+        {
+            this.cidrCount = cidrCount;
+            this.ruleCount = ruleCount;
+            this.unchangedCount = unchangedCount;
+            this.createdCount = createdCount;
+            this.deletedCount = deletedCount;
+            this.keptCount = keptCount;
+            this.failures = failures;
+        }
+
+        /**
+         * Fetches the number of valid CIDRs read from the feed.
+         *
+         * @return a number of CIDRs
+         */
+        public long getCidrCount() {
+            return this.cidrCount;
+        }
+
+        /**
+         * Fetches the number of CIDRs in the smallest set covering the feed, which is the number of rules
+         * the policy should have.
+         *
+         * @return a number of rules
+         */
+        public int getRuleCount() {
+            return this.ruleCount;
+        }
+
+        /**
+         * Fetches the number of rules which were already on the policy.
+         *
+         * @return a number of rules
+         */
+        public int getUnchangedCount() {
+            return this.unchangedCount;
+        }
+
+        /**
+         * Fetches the number of rules created.
+         *
+         * @return a number of rules
+         */
+        public int getCreatedCount() {
+            return this.createdCount;
+        }
+
+        /**
+         * Fetches the number of stale rules deleted.
+         *
+         * @return a number of rules
+         */
+        public int getDeletedCount() {
+            return this.deletedCount;
+        }
+
+        /**
+         * Fetches the number of stale rules kept rather than deleted, because the feed had lines that
+         * failed to parse or no valid CIDR at all.
+         *
+         * @return a number of rules
+         * @see CallBuilder#deleteOnIncompleteFeed(boolean)
+         */
+        public int getKeptCount() {
+            return this.keptCount;
+        }
+
+        /**
+         * Fetches the failures of the ingest, in the order they happened.
+         *
+         * @return an unmodifiable list of failures
+         */
+        public List<Failure> getFailures() {
+            return this.failures;
+        }
+
+        @Override
+        public String toString() {
+            return "IpPolicyIngest.Result{" +
+                "cidrCount='" + this.cidrCount +
+                "', ruleCount='" + this.ruleCount +
+                "', unchangedCount='" + this.unchangedCount +
+                "', createdCount='" + this.createdCount +
+                "', deletedCount='" + this.deletedCount +
+                "', keptCount='" + this.keptCount +
+                "', failures='" + this.failures.size() +
+                "'}";
+        }
+    }
+
+    /**
+     * A builder object encapsulating state for an unstarted ingest.
+     */
+    public static class CallBuilder {
+        private final Ngrok ngrok;
+        private final String ipPolicyId;
+        private final Reader feed;
+        private String action = "deny";
+        private String description = "";
+        private int maxConcurrency = 8;
+        private boolean deleteOnIncompleteFeed = false;
+        private Optional<Executor> executor = Optional.empty();
+
+        CallBuilder(final Ngrok ngrok, final String ipPolicyId, final Reader feed) {
+            this.ngrok = requireNonNull(ngrok, "ngrok is required");
+            this.ipPolicyId = requireNonNull(ipPolicyId, "ipPolicyId is required");
+            this.feed = requireNonNull(feed, "feed is required");
+        }
+
+        /**
+         * Sets the action of the rules to manage, <code>allow</code> or <code>deny</code>. Rules of the
+         * policy with the other action are left alone. Defaults to <code>deny</code>.
+         *
+         * @param action the action of the rules
+         * @return the call builder instance
+         */
+        public CallBuilder action(final String action) {
+            this.action = requireNonNull(action, "action is required");
+            return this;
+        }
+
+        /**
+         * Sets the description of the rules created. Defaults to an empty description.
+         *
+         * @param description the description of the rules
+         * @return the call builder instance
+         */
+        public CallBuilder description(final String description) {
+            this.description = requireNonNull(description, "description is required");
+            return this;
+        }
+
+        /**
+         * Sets the largest number of create or delete requests in flight at once. Defaults to 8.
+         *
+         * @param maxConcurrency a number of requests
+         * @return the call builder instance
+         */
+        public CallBuilder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets whether or not the rules missing from the feed are deleted even when some lines of the
+         * feed failed to parse, or when it has no valid CIDR at all. A truncated or garbled feed would
+         * then wipe the rules it lacks, so this is disabled by default and such rules are kept.
+         *
+         * @param deleteOnIncompleteFeed whether or not to delete stale rules on an incomplete feed
+         * @return the call builder instance
+         */
+        public CallBuilder deleteOnIncompleteFeed(final boolean deleteOnIncompleteFeed) {
+            this.deleteOnIncompleteFeed = deleteOnIncompleteFeed;
+            return this;
+        }
+
+        /**
+         * Sets the executor the feed is read on. Defaults to Armeria's blocking task executor.
+         *
+         * @param executor an executor
+         * @return the call builder instance
+         */
+        public CallBuilder executor(final Executor executor) {
+            this.executor = Optional.of(requireNonNull(executor, "executor is required"));
+            return this;
+        }
+
+        /**
+         * Runs the ingest asynchronously. The ingest fails as a whole only if the feed cannot be read or
+         * the rules of the policy cannot be listed; other failures are reported in the {@link Result}.
+         *
+         * @return a {@link CompletionStage} of the {@link Result}
+         */
+        public CompletionStage<Result> call() {
+            return new Run(this).start();
+        }
+
+        /**
+         * Runs the ingest and blocks until it has finished.
+         *
+         * @return the {@link Result}
+         * @throws InterruptedException if the thread was interrupted during the call
+         */
+        public Result blockingCall() throws InterruptedException {
+            try {
+                return call().toCompletableFuture().get();
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private IpPolicyIngest() {
+    }
+
+    /**
+     * An ingest being run. Creates and deletes each go through a {@link BulkExecutor}.
+     */
+    private static final class Run {
+        private final CallBuilder builder;
+        private final CidrSet cidrs = new CidrSet();
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        private long cidrCount;
+
+        private Run(final CallBuilder builder) {
+            this.builder = builder;
+        }
+
+        private CompletionStage<Result> start() {
+            final Executor executor = this.builder.executor.orElseGet(CommonPools::blockingTaskExecutor);
+            final List<String> deletes = new ArrayList<>();
+            return CompletableFuture.runAsync(this::read, executor)
+                .thenCompose(ignored -> existingRules(deletes))
+                .thenCompose(existing -> {
+                    final List<String> wanted = this.cidrs.toCidrs();
+                    final List<String> creates = new ArrayList<>();
+                    for (final String cidr : wanted) {
+                        if (existing.remove(cidr) == null) {
+                            creates.add(cidr);
+                        }
+                    }
+                    final boolean incompleteFeed = wanted.isEmpty() || this.failures.stream().anyMatch(failure -> failure.operation == Operation.PARSE);
+                    final int keptCount = incompleteFeed && !this.builder.deleteOnIncompleteFeed ? existing.size() : 0;
+                    if (keptCount == 0) {
+                        deletes.addAll(existing.values());
+                    }
+                    final int unchangedCount = wanted.size() - creates.size();
+                    final BulkExecutor bulk = BulkExecutor.newBuilder().maxConcurrency(this.builder.maxConcurrency).build();
+                    return bulk.execute(creates.stream(), this::create).thenCompose(created -> {
+                        report(Operation.CREATE, creates, created);
+                        return bulk.execute(deletes.stream(), this::delete).thenApply(deleted -> {
+                            report(Operation.DELETE, deletes, deleted);
+                            return new Result(
+                                this.cidrCount,
+                                wanted.size(),
+                                unchangedCount,
+                                created.getSuccesses().size(),
+                                deleted.getSuccesses().size(),
+                                keptCount,
+                                Collections.unmodifiableList(new ArrayList<>(this.failures))
+                            );
+                        });
+                    });
+                });
+        }
+
+        private void read() {
+            try {
+                this.cidrCount = this.cidrs.addAll(this.builder.feed, (lineNumber, error) ->
+                    this.failures.add(new Failure(Operation.PARSE, String.valueOf(lineNumber), error))
+                );
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Lists the rules of the policy with the managed action, by canonical CIDR. Only the first rule
+         * for a CIDR is kept in the map; the IDs of any later duplicates are added to the stale list.
+         */
+        private CompletionStage<Map<String, String>> existingRules(final List<String> stale) {
+            final Map<String, String> existing = new HashMap<>();
+            return this.builder.ngrok.forEach(ListType.IP_POLICY_RULE_LIST, rule -> {
+                if (!isManaged(rule)) {
+                    return;
+                }
+                final String cidr;
+                try {
+                    cidr = CidrSet.canonical(rule.getCidr());
+                } catch (final IllegalArgumentException e) {
+                    return;
+                }
+                if (existing.putIfAbsent(cidr, rule.getId()) != null) {
+                    stale.add(rule.getId());
+                }
+            }).thenApply(ignored -> existing);
+        }
+
+        private boolean isManaged(final IpPolicyRule rule) {
+            return this.builder.ipPolicyId.equals(rule.getIpPolicy().getId()) && this.builder.action.equalsIgnoreCase(rule.getAction());
+        }
+
+        private CompletionStage<IpPolicyRule> create(final String cidr) {
+            return this.builder.ngrok.ipPolicyRules().create(cidr, this.builder.ipPolicyId)
+                .action(this.builder.action)
+                .description(this.builder.description)
+                .call();
+        }
+
+        private CompletionStage<Void> delete(final String ruleId) {
+            return this.builder.ngrok.ipPolicyRules().delete(ruleId).call();
+        }
+
+        private void report(final Operation operation, final List<String> subjects, final BulkExecutor.Result<?> result) {
+            result.getFailures().forEach((index, error) -> this.failures.add(new Failure(operation, subjects.get(index), error)));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.ngrok;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, with log-linear buckets in the manner of HdrHistogram.
+ *
+ * Values below 32 get a bucket each; above that, every power of two is split into 32 buckets, so any
+ * value is reported within about 3% of what was recorded. The buckets cover every positive long in
+ * under 2,000 counters, which keeps the histogram at a fixed size of about 15 KB.
+ *
+ * Recording is lock-free and allocation-free: it increments one atomic counter and updates a few
+ * adders. Reads scan the counters without stopping writers, so a read made during recording may be
+ * off by the values recorded meanwhile.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+    }
+
+    /**
+     * Records a duration. Negative durations are recorded as zero.
+     *
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(indexOf(value));
+        this.totalCount.increment();
+        this.totalNanos.add(value);
+        long max = this.maxNanos.get();
+        while (value > max && !this.maxNanos.compareAndSet(max, value)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    /**
+     * Fetches the number of durations recorded.
+     *
+     * @return a number of durations
+     */
+    public long getCount() {
+        return this.totalCount.sum();
+    }
+
+    /**
+     * Fetches the longest duration recorded, exactly.
+     *
+     * @return a duration in nanoseconds, or zero if nothing was recorded
+     */
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Fetches the mean of the durations recorded, exactly.
+     *
+     * @return a duration in nanoseconds, or zero if nothing was recorded
+     */
+    public double getMeanNanos() {
+        final long count = this.totalCount.sum();
+        return count == 0 ? 0 : (double) this.totalNanos.sum() / count;
+    }
+
+    /**
+     * Fetches a duration which the given share of recorded durations do not exceed, within the
+     * precision of the histogram.
+     *
+     * @param percentile a percentile between 0 and 100, like <code>99.9</code>
+     * @return a duration in nanoseconds, or zero if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += this.counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), this.maxNanos.get());
+            }
+        }
+        return this.maxNanos.get();
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    static long highestValueIn(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,152 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Incremental parser for a page of a list, fed with the body of the response as it arrives.
+ *
+ * Each item of the list is buffered as tokens until its object closes, then bound and handed to the
+ * consumer, so only one item is held in memory at a time. The <code>next_page_uri</code> field is
+ * picked up wherever it appears in the page.
+ *
+ * @param <I> the type of the items in the list
+ */
+final class ListItemParser<I> {
+    private static final String NEXT_PAGE_URI_FIELD = "next_page_uri";
+
+    private final JsonFactory factory;
+    private final ObjectReader itemReader;
+    private final String itemsField;
+    private final Consumer<? super I> consumer;
+    private JsonParser parser;
+    private ByteArrayFeeder feeder;
+    private int depth;
+    private boolean inItems;
+    private TokenBuffer item;
+    private int itemDepth;
+    private long itemCount = 0;
+    private long byteCount = 0;
+    private Optional<URI> nextPageUri;
+
+    ListItemParser(final JsonFactory factory, final ObjectReader itemReader, final String itemsField, final Consumer<? super I> consumer) {
+        this.factory = factory;
+        this.itemReader = itemReader;
+        this.itemsField = itemsField;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts parsing a new response body. Items already handed to the consumer stay counted.
+     *
+     * @throws IOException if the parser cannot be created
+     */
+    void begin() throws IOException {
+        this.parser = this.factory.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) this.parser.getNonBlockingInputFeeder();
+        this.depth = 0;
+        this.inItems = false;
+        this.item = null;
+        this.itemDepth = 0;
+        this.nextPageUri = Optional.empty();
+    }
+
+    /**
+     * Parses the next chunk of the response body, handing over every item it completes. The parser
+     * keeps a reference to the chunk, which must not be modified afterwards.
+     *
+     * @param chunk the bytes of the chunk
+     * @throws IOException if the body is not valid JSON, or an item cannot be bound
+     */
+    void feed(final byte[] chunk) throws IOException {
+        if (chunk.length > 0) {
+            this.byteCount += chunk.length;
+            this.feeder.feedInput(chunk, 0, chunk.length);
+            parseAvailable();
+        }
+    }
+
+    /**
+     * Signals the end of the response body.
+     *
+     * @throws IOException if the body ended before the page was complete
+     */
+    void finish() throws IOException {
+        this.feeder.endOfInput();
+        parseAvailable();
+        if (this.depth != 0 || this.item != null) {
+            throw new JsonEOFException(this.parser, null, "Unexpected end of list page");
+        }
+        this.parser.close();
+    }
+
+    /**
+     * Fetches the number of items handed to the consumer so far.
+     *
+     * @return a number of items
+     */
+    long getItemCount() {
+        return this.itemCount;
+    }
+
+    /**
+     * Fetches the number of bytes of the response body fed to the parser so far.
+     *
+     * @return a number of bytes
+     */
+    long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+     * Fetches the URI of the next page, once the whole body has been parsed.
+     *
+     * @return a URI, if there is a next page
+     */
+    Optional<URI> getNextPageUri() {
+        return this.nextPageUri;
+    }
+
+    private void parseAvailable() throws IOException {
+        JsonToken token;
+        while ((token = this.parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (this.item != null) {
+                this.item.copyCurrentEvent(this.parser);
+                if (token.isStructStart()) {
+                    this.itemDepth++;
+                } else if (token.isStructEnd() && --this.itemDepth == 0) {
+                    final I value = this.itemReader.readValue(this.item.asParser());
+                    this.item = null;
+                    this.itemCount++;
+                    this.consumer.accept(value);
+                }
+            } else if (this.inItems && this.depth == 2 && token == JsonToken.START_OBJECT) {
+                this.item = new TokenBuffer(this.parser);
+                this.item.copyCurrentEvent(this.parser);
+                this.itemDepth = 1;
+            } else if (token.isStructStart()) {
+                this.depth++;
+                if (this.depth == 2 && token == JsonToken.START_ARRAY && this.itemsField.equals(this.parser.getCurrentName())) {
+                    this.inItems = true;
+                }
+            } else if (token.isStructEnd()) {
+                if (this.depth == 2) {
+                    this.inItems = false;
+                }
+                this.depth--;
+            } else if (this.depth == 1 && token == JsonToken.VALUE_STRING && NEXT_PAGE_URI_FIELD.equals(this.parser.getCurrentName())) {
+                this.nextPageUri = Optional.of(URI.create(this.parser.getText()));
+            }
+        }
+    }
+}
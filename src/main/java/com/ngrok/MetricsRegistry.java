@@ -0,0 +1,36 @@
+package com.ngrok;
+
+import java.util.Optional;
+
+/**
+ * Receives a measurement for every HTTP exchange made by a {@link DefaultNgrokApiClient}, to be
+ * recorded in a metrics system.
+ *
+ * Exchanges are reported once per attempt, so a request retried twice is reported three times.
+ * Requests are grouped by endpoint template (see {@link EndpointTemplates}) rather than by path, so
+ * that the number of distinct operations stays small. {@link ApiMetrics} is a built-in implementation
+ * exposed through JMX.
+ *
+ * Implementations are called on I/O threads and must be thread-safe and quick.
+ */
+public interface MetricsRegistry {
+    /**
+     * Records one HTTP exchange.
+     *
+     * @param method the HTTP method
+     * @param endpointTemplate the endpoint template, like <code>/tunnel_sessions/{id}/restart</code>
+     * @param statusCode the HTTP status code of the response, or 0 if no response was received
+     * @param errorCode the <code>error_code</code> of the {@link com.ngrok.definitions.NgrokApiError} in the
+     *                  response, if the request failed with one
+     * @param latencyNanos the time from sending the request to receiving the whole response
+     * @param requestBytes the size of the request body
+     * @param responseBytes the size of the response body
+     */
+    void record(NgrokApiClient.HttpMethod method,
+                String endpointTemplate,
+                int statusCode,
+                Optional<String> errorCode,
+                long latencyNanos,
+                long requestBytes,
+                long responseBytes);
+}
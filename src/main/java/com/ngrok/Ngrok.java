@@ -1,8 +1,17 @@
 package com.ngrok;
 
+import com.ngrok.definitions.Endpoint;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Pageable;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelSession;
 import com.ngrok.services.*;
 
+import java.io.Reader;
 import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Main entry point for the ngrok API.
@@ -40,6 +49,127 @@ public class Ngrok {
     public Ngrok(final NgrokApiClient apiClient) {
         this.apiClient = Objects.requireNonNull(apiClient, "apiClient is required");
     }
+
+    /**
+     * Creates a view of this instance whose API calls, including the requests for further pages of
+     * lists and any retries, must all be done by a deadline. Calls not done by then fail with a
+     * {@link DeadlineExceededException}, and their HTTP exchanges are aborted.
+     *
+     * @param deadline the deadline
+     * @return an ngrok API instance
+     * @see NgrokApiClient#withDeadline(Deadline)
+     */
+    public Ngrok withDeadline(final Deadline deadline) {
+        return new Ngrok(this.apiClient.withDeadline(deadline));
+    }
+
+    /**
+     * Hands every item of a list, across all of its pages, to an action. Each page is read as it
+     * arrives, so items are handed over before their page has been fully received.
+     *
+     * @param listType the type of the list, like {@link ListType#TUNNEL_SESSION_LIST}
+     * @param action the action to run on each item
+     * @param <T> the type of the list
+     * @param <I> the type of the items in the list
+     * @return a {@link CompletionStage} that completes once every page has been read
+     * @see ListType#forEach(NgrokApiClient, Stream, Consumer)
+     */
+    public <T extends Pageable, I> CompletionStage<Void> forEach(final ListType<T, I> listType, final Consumer<? super I> action) {
+        return Objects.requireNonNull(listType, "listType is required").forEach(this.apiClient, Stream.empty(), action);
+    }
+
+    /**
+     * Creates a call builder for a snapshot of the list resources of the account, taken by listing
+     * every resource type concurrently.
+     *
+     * @return a call builder for the snapshot
+     */
+    public AccountSnapshot.CallBuilder snapshot() {
+        return new AccountSnapshot.CallBuilder(this.apiClient);
+    }
+
+    /**
+     * Creates a builder for an in-memory replica of the tunnels, endpoints, tunnel sessions, reserved
+     * domains and reserved addresses of the account.
+     *
+     * @return a replica builder
+     */
+    public AccountReplica.Builder replica() {
+        return new AccountReplica.Builder(this.apiClient);
+    }
+
+    /**
+     * Creates a builder for a watcher of the tunnels of the account, reporting tunnels as they come,
+     * go and change.
+     *
+     * @return a watcher builder
+     */
+    public ResourceWatcher.Builder<Tunnel> watchTunnels() {
+        return ResourceWatcher.tunnels(this.apiClient);
+    }
+
+    /**
+     * Creates a builder for a watcher of the tunnel sessions of the account, reporting sessions as
+     * they come, go and change.
+     *
+     * @return a watcher builder
+     */
+    public ResourceWatcher.Builder<TunnelSession> watchTunnelSessions() {
+        return ResourceWatcher.tunnelSessions(this.apiClient);
+    }
+
+    /**
+     * Creates a builder for a watcher of the endpoints of the account, reporting endpoints as they
+     * come, go and change.
+     *
+     * @return a watcher builder
+     */
+    public ResourceWatcher.Builder<Endpoint> watchEndpoints() {
+        return ResourceWatcher.endpoints(this.apiClient);
+    }
+
+    /**
+     * Creates a call builder for a reconciliation of HTTPS edges, their routes and their modules with a
+     * declared configuration.
+     *
+     * @return a call builder for the reconciliation
+     */
+    public HttpsEdgeReconciler.CallBuilder reconcileHttpsEdges() {
+        return new HttpsEdgeReconciler.CallBuilder(this);
+    }
+
+    /**
+     * Creates a call builder for an ingest of a feed of CIDRs into the rules of an IP policy, creating
+     * and deleting only the rules needed for the policy to cover exactly the feed.
+     *
+     * @param ipPolicyId the ID of the IP policy
+     * @param feed the feed, one CIDR per line; it is not closed
+     * @return a call builder for the ingest
+     */
+    public IpPolicyIngest.CallBuilder ipPolicyIngest(final String ipPolicyId, final Reader feed) {
+        return new IpPolicyIngest.CallBuilder(this, ipPolicyId, feed);
+    }
+
+    /**
+     * Creates a call builder for a rollout of a restart, stop or update across the tunnel sessions of
+     * the account, in waves.
+     *
+     * @param operation the call to make for each selected session
+     * @return a call builder for the rollout
+     */
+    public TunnelSessionRollout.CallBuilder tunnelSessionRollout(final TunnelSessionRollout.Operation operation) {
+        return new TunnelSessionRollout.CallBuilder(this, operation);
+    }
+
+    /**
+     * Creates a builder for a tracker waiting for the certificates of reserved domains to be
+     * provisioned.
+     *
+     * @return a tracker builder
+     */
+    public CertificateTracker.Builder certificateTracker() {
+        return new CertificateTracker.Builder(this);
+    }
     
     /**
      * Abuse Reports allow you to submit take-down requests for URLs hosted by
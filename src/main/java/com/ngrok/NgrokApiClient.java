@@ -1,11 +1,17 @@
 package com.ngrok;
 
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Pageable;
+
 import java.net.URI;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * API client interface.
  *
@@ -64,4 +70,73 @@ public interface NgrokApiClient {
                                        Stream<Map.Entry<String, Optional<Object>>> queryParams,
                                        Stream<Map.Entry<String, Optional<Object>>> bodyParams,
                                        Optional<Class<O>> responseClass);
+
+    /**
+     * Sends a GET request for a page of a list directly to the specified URI, and hands each item on
+     * the page to an action.
+     *
+     * The default implementation reads the whole page with {@link #sendRequest(URI, Class)} before
+     * handing over any item. Implementations may instead parse the response as it arrives and hand
+     * over each item as soon as it has been read.
+     *
+     * @param uri a URI to send the request to
+     * @param listType the type of the list
+     * @param action the action to run on each item
+     * @param <T> the type of the list
+     * @param <I> the type of the items in the list
+     * @return a future encapsulating the URI of the next page, if any
+     */
+    default <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final URI uri,
+                                                                              final ListType<T, I> listType,
+                                                                              final Consumer<? super I> action)
+    {
+        return sendRequest(uri, listType.getListClass()).thenApply(list -> {
+            listType.items(list).forEach(action);
+            return list.getNextPageUri();
+        });
+    }
+
+    /**
+     * Sends a GET request for the first page of a list to the ngrok API, and hands each item on the
+     * page to an action.
+     *
+     * The default implementation reads the whole page with
+     * {@link #sendRequest(HttpMethod, String, Stream, Stream, Optional)} before handing over any item.
+     * Implementations may instead parse the response as it arrives and hand over each item as soon as
+     * it has been read.
+     *
+     * @param endpoint the endpoint (under the base URI) to send the request to
+     * @param queryParams any query parameters to send along with the request (parameters with an empty
+     *                    value will not be sent)
+     * @param listType the type of the list
+     * @param action the action to run on each item
+     * @param <T> the type of the list
+     * @param <I> the type of the items in the list
+     * @return a future encapsulating the URI of the next page, if any
+     */
+    default <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final String endpoint,
+                                                                              final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                                                              final ListType<T, I> listType,
+                                                                              final Consumer<? super I> action)
+    {
+        return sendRequest(HttpMethod.GET, endpoint, queryParams, Stream.empty(), Optional.of(listType.getListClass())).thenApply(list -> {
+            listType.items(list).forEach(action);
+            return list.getNextPageUri();
+        });
+    }
+
+    /**
+     * Creates a view of this client whose requests all fail with a {@link DeadlineExceededException}
+     * once a deadline has passed. The view shares everything else with this client.
+     *
+     * A request still in flight at the deadline is cancelled, so this client should abort a request
+     * when the future of its result is cancelled, as {@link DefaultNgrokApiClient} does. Requests made
+     * through a view that already has a deadline are bound by the earlier of the two.
+     *
+     * @param deadline the deadline
+     * @return an API client
+     */
+    default NgrokApiClient withDeadline(final Deadline deadline) {
+        return new DeadlineApiClient(this, requireNonNull(deadline, "deadline is required"));
+    }
 }
@@ -0,0 +1,593 @@
+package com.ngrok;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A set of provisioning steps, such as creating a certificate authority, an IP policy and its rules,
+ * backends and an edge, where steps use the results of the steps they depend on.
+ *
+ * Steps are declared in order and may only depend on steps declared before them, so a plan is always
+ * a directed acyclic graph. Running the plan starts every step as soon as the steps it depends on have
+ * succeeded, up to a maximum number of steps in flight:
+ *
+ * <pre>
+ * ProvisioningPlan.Builder plan = ProvisioningPlan.newBuilder();
+ * ProvisioningPlan.Step&lt;IpPolicy&gt; policy = plan.step("ip-policy",
+ *     results -&gt; ngrok.ipPolicies().create().call(),
+ *     created -&gt; ngrok.ipPolicies().delete(created.getId()).call());
+ * plan.step("ip-policy-rule",
+ *     results -&gt; ngrok.ipPolicyRules().create("10.0.0.0/8", results.get(policy).getId()).call(),
+ *     policy);
+ * ProvisioningPlan.Outcome outcome = plan.build().run().toCompletableFuture().join();
+ * </pre>
+ *
+ * When a step fails, the steps depending on it are skipped while independent steps go on. With
+ * rollback enabled, no further step is started instead, and once the steps in flight are done, the
+ * steps which succeeded are undone in reverse order of declaration.
+ *
+ * The outcome reports how long every step took and the critical path: the chain of dependent steps
+ * which took the longest, which bounds how fast the plan can run however many steps run at once.
+ */
+public class ProvisioningPlan {
+    /**
+     * A step of a plan, used to declare dependencies and to fetch its result.
+     *
+     * @param <T> the type of the result of the step
+     */
+    public static final class Step<T> {
+        private final Builder owner;
+        private final int index;
+        private final String name;
+        private final Function<Results, ? extends CompletionStage<? extends T>> action;
+        private final Optional<Function<? super T, ? extends CompletionStage<?>>> rollback;
+        private final int[] dependencies;
+
+        private Step(final Builder owner,
+                     final int index,
+                     final String name,
+                     final Function<Results, ? extends CompletionStage<? extends T>> action,
+                     final Optional<Function<? super T, ? extends CompletionStage<?>>> rollback,
+                     final int[] dependencies)
+        {
+            this.owner = owner;
+            this.index = index;
+            this.name = name;
+            this.action = action;
+            this.rollback = rollback;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Fetches the name of the step.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        @Override
+        public String toString() {
+            return "ProvisioningPlan.Step{" +
+                "name='" + this.name +
+                "'}";
+        }
+    }
+
+    /**
+     * The results of the steps a step depends on.
+     */
+    public interface Results {
+        /**
+         * Fetches the result of a step.
+         *
+         * @param step a step the current step depends on
+         * @param <T> the type of the result
+         * @return the result of the step
+         * @throws IllegalStateException if the step has not succeeded yet
+         */
+        <T> T get(Step<T> step);
+    }
+
+    /**
+     * What became of a step when the plan was run.
+     */
+    public enum Status {
+        /** The step succeeded and was kept */
+        SUCCEEDED,
+        /** The step failed */
+        FAILED,
+        /** The step was not run, because a step it depends on failed or the plan was aborted */
+        SKIPPED,
+        /** The step succeeded, then was undone after another step failed */
+        ROLLED_BACK,
+        /** The step succeeded, then undoing it after another step failed also failed */
+        ROLLBACK_FAILED
+    }
+
+    /**
+     * The outcome of running a plan.
+     */
+    public static class Outcome {
+        private final Map<String, Status> statuses;
+        private final Map<String, Throwable> failures;
+        private final Map<String, Duration> durations;
+        private final List<String> criticalPath;
+        private final Duration criticalPathDuration;
+        private final Duration duration;
+        private final Object[] results;
+
+        private Outcome(final Map<String, Status> statuses,
+                        final Map<String, Throwable> failures,
+                        final Map<String, Duration> durations,
+                        final List<String> criticalPath,
+                        final Duration criticalPathDuration,
+                        final Duration duration,
+                        final Object[] results)
+        {
+            this.statuses = statuses;
+            this.failures = failures;
+            this.durations = durations;
+            this.criticalPath = criticalPath;
+            this.criticalPathDuration = criticalPathDuration;
+            this.duration = duration;
+            this.results = results;
+        }
+
+        /**
+         * Fetches whether every step succeeded.
+         *
+         * @return true if no step failed
+         */
+        public boolean isSuccessful() {
+            return this.failures.isEmpty();
+        }
+
+        /**
+         * Fetches the result of a step which succeeded and was kept.
+         *
+         * @param step the step
+         * @param <T> the type of the result
+         * @return the result, if the step succeeded and was not rolled back
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Optional<T> get(final Step<T> step) {
+            return this.statuses.get(step.name) == Status.SUCCEEDED ? Optional.ofNullable((T) this.results[step.index]) : Optional.empty();
+        }
+
+        /**
+         * Fetches what became of every step, in order of declaration.
+         *
+         * @return an unmodifiable map of statuses by step name
+         */
+        public Map<String, Status> getStatuses() {
+            return this.statuses;
+        }
+
+        /**
+         * Fetches the failures of the steps which failed, and of the rollbacks which failed.
+         *
+         * @return an unmodifiable map of failures by step name
+         */
+        public Map<String, Throwable> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Fetches how long every step which ran took.
+         *
+         * @return an unmodifiable map of durations by step name
+         */
+        public Map<String, Duration> getDurations() {
+            return this.durations;
+        }
+
+        /**
+         * Fetches the chain of dependent steps which took the longest, from first to last.
+         *
+         * @return an unmodifiable list of step names
+         */
+        public List<String> getCriticalPath() {
+            return this.criticalPath;
+        }
+
+        /**
+         * Fetches the total time of the steps on the critical path.
+         *
+         * @return a duration
+         */
+        public Duration getCriticalPathDuration() {
+            return this.criticalPathDuration;
+        }
+
+        /**
+         * Fetches the time it took to run the whole plan, rollbacks included.
+         *
+         * @return a duration
+         */
+        public Duration getDuration() {
+            return this.duration;
+        }
+
+        @Override
+        public String toString() {
+            return "ProvisioningPlan.Outcome{" +
+                "statuses='" + this.statuses +
+                "', failures='" + this.failures +
+                "', criticalPath='" + this.criticalPath +
+                "', criticalPathDuration='" + this.criticalPathDuration +
+                "', duration='" + this.duration +
+                "'}";
+        }
+    }
+
+    /**
+     * Builder class for provisioning plans.
+     */
+    public static class Builder {
+        private final List<Step<?>> steps = new ArrayList<>();
+        private int maxConcurrency = 8;
+        private boolean rollbackOnFailure = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Declares a step.
+         *
+         * @param name the name of the step, unique in the plan
+         * @param action starts the call of the step, given the results of the steps it depends on
+         * @param dependencies the steps whose results the step needs
+         * @param <T> the type of the result of the step
+         * @return the step
+         */
+        public <T> Step<T> step(final String name,
+                                final Function<Results, ? extends CompletionStage<? extends T>> action,
+                                final Step<?>... dependencies)
+        {
+            return add(name, action, Optional.empty(), dependencies);
+        }
+
+        /**
+         * Declares a step which can be undone.
+         *
+         * @param name the name of the step, unique in the plan
+         * @param action starts the call of the step, given the results of the steps it depends on
+         * @param rollback starts the call undoing the step, given its result
+         * @param dependencies the steps whose results the step needs
+         * @param <T> the type of the result of the step
+         * @return the step
+         */
+        public <T> Step<T> step(final String name,
+                                final Function<Results, ? extends CompletionStage<? extends T>> action,
+                                final Function<? super T, ? extends CompletionStage<?>> rollback,
+                                final Step<?>... dependencies)
+        {
+            return add(name, action, Optional.of(requireNonNull(rollback, "rollback is required")), dependencies);
+        }
+
+        private <T> Step<T> add(final String name,
+                                final Function<Results, ? extends CompletionStage<? extends T>> action,
+                                final Optional<Function<? super T, ? extends CompletionStage<?>>> rollback,
+                                final Step<?>[] dependencies)
+        {
+            requireNonNull(name, "name is required");
+            requireNonNull(action, "action is required");
+            if (this.steps.stream().anyMatch(step -> step.name.equals(name))) {
+                throw new IllegalArgumentException("A step is already named " + name);
+            }
+            final int[] indexes = new int[dependencies.length];
+            for (int i = 0; i < dependencies.length; i++) {
+                if (dependencies[i].owner != this) {
+                    throw new IllegalArgumentException(dependencies[i].name + " is not a step of this plan");
+                }
+                indexes[i] = dependencies[i].index;
+            }
+            final Step<T> step = new Step<>(this, this.steps.size(), name, action, rollback, indexes);
+            this.steps.add(step);
+            return step;
+        }
+
+        /**
+         * Sets the largest number of steps in flight at once. Defaults to 8.
+         *
+         * @param maxConcurrency a number of steps
+         * @return the plan builder
+         */
+        public ProvisioningPlan.Builder maxConcurrency(final int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets whether a failed step aborts the plan and undoes the steps which succeeded. Defaults to
+         * false, where only the steps depending on a failed step are skipped.
+         *
+         * @param rollbackOnFailure whether to roll back on failure
+         * @return the plan builder
+         */
+        public ProvisioningPlan.Builder rollbackOnFailure(final boolean rollbackOnFailure) {
+            this.rollbackOnFailure = rollbackOnFailure;
+            return this;
+        }
+
+        /**
+         * Builds the plan.
+         *
+         * @return a provisioning plan
+         */
+        public ProvisioningPlan build() {
+            return new ProvisioningPlan(this);
+        }
+    }
+
+    /**
+     * Creates a new provisioning plan builder.
+     *
+     * @return a plan builder
+     */
+    public static ProvisioningPlan.Builder newBuilder() {
+        return new ProvisioningPlan.Builder();
+    }
+
+    private final List<Step<?>> steps;
+    private final int[][] dependents;
+    private final int maxConcurrency;
+    private final boolean rollbackOnFailure;
+
+    private ProvisioningPlan(final Builder builder) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(builder.steps));
+        this.maxConcurrency = builder.maxConcurrency;
+        this.rollbackOnFailure = builder.rollbackOnFailure;
+        final List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < this.steps.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (final Step<?> step : this.steps) {
+            for (final int dependency : step.dependencies) {
+                dependents.get(dependency).add(step.index);
+            }
+        }
+        this.dependents = dependents.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+    }
+
+    /**
+     * Fetches the steps of the plan, in order of declaration.
+     *
+     * @return an unmodifiable list of steps
+     */
+    public List<Step<?>> getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Runs the plan asynchronously. A plan can be run any number of times.
+     *
+     * @return a {@link CompletionStage} of the {@link Outcome}, completed once every step and rollback
+     *         is done; failures of steps are reported in the outcome rather than failing the stage
+     */
+    public CompletionStage<Outcome> run() {
+        return new Run().start();
+    }
+
+    /**
+     * Runs the plan and blocks until it is done.
+     *
+     * @return the {@link Outcome}
+     * @throws InterruptedException if the thread was interrupted during the call
+     */
+    public Outcome blockingRun() throws InterruptedException {
+        try {
+            return run().toCompletableFuture().get();
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * A run of the plan. Steps become ready when their last dependency succeeds; ready steps are taken
+     * off a queue while there is room in flight, and started outside of the lock.
+     */
+    private final class Run implements Results {
+        private final int stepCount = ProvisioningPlan.this.steps.size();
+        private final int[] pendingDependencies = new int[this.stepCount];
+        private final Status[] statuses = new Status[this.stepCount];
+        private final Object[] results = new Object[this.stepCount];
+        private final Map<String, Throwable> failures = new LinkedHashMap<>();
+        private final long[] startNanos = new long[this.stepCount];
+        private final long[] endNanos = new long[this.stepCount];
+        private final boolean[] started = new boolean[this.stepCount];
+        private final Deque<Integer> ready = new ArrayDeque<>();
+        private final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        private final long runStartNanos = System.nanoTime();
+        private int inFlight = 0;
+        private boolean aborted = false;
+        private boolean finishing = false;
+
+        private CompletionStage<Outcome> start() {
+            synchronized (this) {
+                for (final Step<?> step : ProvisioningPlan.this.steps) {
+                    this.pendingDependencies[step.index] = step.dependencies.length;
+                    if (step.dependencies.length == 0) {
+                        this.ready.add(step.index);
+                    }
+                }
+            }
+            pump();
+            return this.outcome;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T get(final Step<T> step) {
+            if (step.index >= this.stepCount || ProvisioningPlan.this.steps.get(step.index) != step || this.statuses[step.index] != Status.SUCCEEDED) {
+                throw new IllegalStateException(step.name + " has not succeeded");
+            }
+            return (T) this.results[step.index];
+        }
+
+        private void pump() {
+            final List<Integer> toStart = new ArrayList<>();
+            final boolean done;
+            synchronized (this) {
+                while (!this.aborted && this.inFlight < ProvisioningPlan.this.maxConcurrency && !this.ready.isEmpty()) {
+                    final int index = this.ready.poll();
+                    this.started[index] = true;
+                    this.startNanos[index] = System.nanoTime();
+                    this.inFlight++;
+                    toStart.add(index);
+                }
+                done = this.inFlight == 0 && toStart.isEmpty() && (this.aborted || this.ready.isEmpty()) && !this.finishing;
+                if (done) {
+                    this.finishing = true;
+                }
+            }
+            for (final int index : toStart) {
+                launch(ProvisioningPlan.this.steps.get(index));
+            }
+            if (done) {
+                finish();
+            }
+        }
+
+        private <T> void launch(final Step<T> step) {
+            CompletionStage<? extends T> call;
+            try {
+                call = requireNonNull(step.action.apply(this), "a step must return a CompletionStage");
+            } catch (final RuntimeException e) {
+                final CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                call = failed;
+            }
+            call.whenComplete((result, failure) -> {
+                complete(step, result, failure == null ? null : RetryPolicy.unwrap(failure));
+                pump();
+            });
+        }
+
+        private synchronized void complete(final Step<?> step, final Object result, final Throwable failure) {
+            this.inFlight--;
+            this.endNanos[step.index] = System.nanoTime();
+            if (failure == null) {
+                this.statuses[step.index] = Status.SUCCEEDED;
+                this.results[step.index] = result;
+                for (final int dependent : ProvisioningPlan.this.dependents[step.index]) {
+                    if (--this.pendingDependencies[dependent] == 0) {
+                        this.ready.add(dependent);
+                    }
+                }
+            } else {
+                this.statuses[step.index] = Status.FAILED;
+                this.failures.put(step.name, failure);
+                if (ProvisioningPlan.this.rollbackOnFailure) {
+                    this.aborted = true;
+                }
+            }
+        }
+
+        private void finish() {
+            final List<Step<?>> toUndo = new ArrayList<>();
+            synchronized (this) {
+                for (int i = 0; i < this.stepCount; i++) {
+                    if (this.statuses[i] == null) {
+                        this.statuses[i] = Status.SKIPPED;
+                    }
+                }
+                if (this.aborted) {
+                    for (int i = this.stepCount - 1; i >= 0; i--) {
+                        if (this.statuses[i] == Status.SUCCEEDED && ProvisioningPlan.this.steps.get(i).rollback.isPresent()) {
+                            toUndo.add(ProvisioningPlan.this.steps.get(i));
+                        }
+                    }
+                }
+            }
+            CompletionStage<Void> rollbacks = CompletableFuture.completedFuture(null);
+            for (final Step<?> step : toUndo) {
+                rollbacks = rollbacks.thenCompose(ignored -> undo(step));
+            }
+            rollbacks.whenComplete((ignored, failure) -> this.outcome.complete(outcome()));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> CompletionStage<Void> undo(final Step<T> step) {
+            CompletionStage<?> call;
+            try {
+                call = step.rollback.get().apply((T) this.results[step.index]);
+            } catch (final RuntimeException e) {
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                call = failed;
+            }
+            return call.handle((ignored, failure) -> {
+                synchronized (this) {
+                    if (failure == null) {
+                        this.statuses[step.index] = Status.ROLLED_BACK;
+                    } else {
+                        this.statuses[step.index] = Status.ROLLBACK_FAILED;
+                        this.failures.put(step.name, RetryPolicy.unwrap(failure));
+                    }
+                }
+                return null;
+            });
+        }
+
+        private synchronized Outcome outcome() {
+            final Map<String, Status> statuses = new LinkedHashMap<>();
+            final Map<String, Duration> durations = new LinkedHashMap<>();
+            // Longest chain of dependent steps ending at each step; declaration order is topological
+            final long[] pathNanos = new long[this.stepCount];
+            final int[] previous = new int[this.stepCount];
+            int last = -1;
+            for (final Step<?> step : ProvisioningPlan.this.steps) {
+                statuses.put(step.name, this.statuses[step.index]);
+                previous[step.index] = -1;
+                if (!this.started[step.index]) {
+                    continue;
+                }
+                final long stepNanos = this.endNanos[step.index] - this.startNanos[step.index];
+                durations.put(step.name, Duration.ofNanos(stepNanos));
+                for (final int dependency : step.dependencies) {
+                    if (previous[step.index] < 0 || pathNanos[dependency] > pathNanos[previous[step.index]]) {
+                        previous[step.index] = dependency;
+                    }
+                }
+                pathNanos[step.index] = stepNanos + (previous[step.index] < 0 ? 0 : pathNanos[previous[step.index]]);
+                if (last < 0 || pathNanos[step.index] > pathNanos[last]) {
+                    last = step.index;
+                }
+            }
+            final List<String> criticalPath = new ArrayList<>();
+            for (int index = last; index >= 0; index = previous[index]) {
+                criticalPath.add(ProvisioningPlan.this.steps.get(index).name);
+            }
+            Collections.reverse(criticalPath);
+            return new Outcome(
+                Collections.unmodifiableMap(statuses),
+                Collections.unmodifiableMap(new LinkedHashMap<>(this.failures)),
+                Collections.unmodifiableMap(durations),
+                Collections.unmodifiableList(criticalPath),
+                Duration.ofNanos(last < 0 ? 0 : pathNanos[last]),
+                Duration.ofNanos(System.nanoTime() - this.runStartNanos),
+                Arrays.copyOf(this.results, this.stepCount)
+            );
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.ngrok;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Client-side token bucket rate limiter for API requests.
+ *
+ * A limiter can hold two kinds of buckets: one shared by every request passing through the limiter,
+ * and one per API key. Passing the same limiter to several {@link DefaultNgrokApiClient} instances
+ * makes them share its buckets. Every service client obtained from one {@link Ngrok} instance goes
+ * through the same API client, and so through the same limiter.
+ *
+ * Requests never block a thread while waiting for a permit: the limiter reserves a permit and
+ * reports how long the caller has to wait for it, and the API client delays the request by that
+ * long. Buckets are updated with compare-and-set only, so the limiter is lock-free.
+ */
+public class RateLimiter {
+    /**
+     * Builder class for rate limiters.
+     */
+    public static class Builder {
+        private Optional<Bucket> globalBucket = Optional.empty();
+        private Optional<Bucket> perApiKeyBucket = Optional.empty();
+        private final Map<NgrokApiClient.HttpMethod, Integer> weights = new EnumMap<>(NgrokApiClient.HttpMethod.class);
+        private Optional<Duration> maxWait = Optional.empty();
+
+        private Builder() {
+        }
+
+        /**
+         * Limits all requests passing through this limiter.
+         *
+         * @param permitsPerSecond sustained rate of permits
+         * @param burst number of permits that can be used at once after a quiet period
+         * @return the limiter builder
+         */
+        public RateLimiter.Builder limit(final double permitsPerSecond, final int burst) {
+            this.globalBucket = Optional.of(new Bucket(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits the requests made with each API key separately.
+         *
+         * @param permitsPerSecond sustained rate of permits for each API key
+         * @param burst number of permits each API key can use at once after a quiet period
+         * @return the limiter builder
+         */
+        public RateLimiter.Builder limitPerApiKey(final double permitsPerSecond, final int burst) {
+            this.perApiKeyBucket = Optional.of(new Bucket(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Sets how many permits a request with the given method uses. The default weight is 1.
+         *
+         * @param method an HTTP method
+         * @param weight a number of permits, at least 1
+         * @return the limiter builder
+         */
+        public RateLimiter.Builder weight(final NgrokApiClient.HttpMethod method, final int weight) {
+            requireNonNull(method, "method is required");
+            if (weight < 1) {
+                throw new IllegalArgumentException("weight must be at least 1");
+            }
+            this.weights.put(method, weight);
+            return this;
+        }
+
+        /**
+         * Sets the longest a request may wait for a permit. Requests that would have to wait longer
+         * fail with a {@link RequestRejectedException}. By default, requests wait as long as needed.
+         *
+         * @param maxWait a duration
+         * @return the limiter builder
+         */
+        public RateLimiter.Builder maxWait(final Duration maxWait) {
+            this.maxWait = Optional.ofNullable(maxWait);
+            return this;
+        }
+
+        /**
+         * Builds the rate limiter.
+         *
+         * @return a rate limiter
+         */
+        public RateLimiter build() {
+            if (!this.globalBucket.isPresent() && !this.perApiKeyBucket.isPresent()) {
+                throw new IllegalStateException("at least one of limit or limitPerApiKey is required");
+            }
+            return new RateLimiter(this);
+        }
+    }
+
+    /**
+     * Creates a new rate limiter builder.
+     *
+     * @return a limiter builder
+     */
+    public static RateLimiter.Builder newBuilder() {
+        return new RateLimiter.Builder();
+    }
+
+    private final Optional<Bucket> globalBucket;
+    private final Optional<Bucket> perApiKeyBucketTemplate;
+    private final ConcurrentMap<String, Bucket> perApiKeyBuckets = new ConcurrentHashMap<>();
+    private final int[] weights;
+    private final long maxWaitNanos;
+
+    private RateLimiter(final Builder builder) {
+        this.globalBucket = builder.globalBucket.map(Bucket::copy);
+        this.perApiKeyBucketTemplate = builder.perApiKeyBucket;
+        this.weights = new int[NgrokApiClient.HttpMethod.values().length];
+        for (final NgrokApiClient.HttpMethod method : NgrokApiClient.HttpMethod.values()) {
+            this.weights[method.ordinal()] = builder.weights.getOrDefault(method, 1);
+        }
+        this.maxWaitNanos = builder.maxWait.map(Duration::toNanos).orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves permits for one request.
+     *
+     * @param apiKey the API key the request is made with
+     * @param method the HTTP method of the request
+     * @return how long the request has to wait before it may be sent, in nanoseconds
+     * @throws RequestRejectedException if the request would have to wait longer than the maximum wait
+     */
+    long reserve(final String apiKey, final NgrokApiClient.HttpMethod method) {
+        final int weight = this.weights[method.ordinal()];
+        final long now = System.nanoTime();
+
+        final long globalWait;
+        if (this.globalBucket.isPresent()) {
+            globalWait = this.globalBucket.get().reserve(weight, now, this.maxWaitNanos);
+            if (globalWait < 0) {
+                throw new RequestRejectedException("rate limit exceeded for this API client");
+            }
+        } else {
+            globalWait = 0;
+        }
+
+        if (this.perApiKeyBucketTemplate.isPresent()) {
+            final Bucket bucket = this.perApiKeyBuckets.computeIfAbsent(apiKey, key -> this.perApiKeyBucketTemplate.get().copy());
+            final long apiKeyWait = bucket.reserve(weight, now, this.maxWaitNanos);
+            if (apiKeyWait < 0) {
+                this.globalBucket.ifPresent(b -> b.refund(weight));
+                throw new RequestRejectedException("rate limit exceeded for this API key");
+            }
+            return Math.max(globalWait, apiKeyWait);
+        }
+        return globalWait;
+    }
+
+    /**
+     * A token bucket, implemented as a generic cell rate algorithm: the bucket only stores the
+     * theoretical time at which it would be full again.
+     */
+    private static final class Bucket {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+        private Bucket(final double permitsPerSecond, final int burst) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.toleranceNanos = this.intervalNanos * burst;
+        }
+
+        private Bucket(final long intervalNanos, final long toleranceNanos) {
+            this.intervalNanos = intervalNanos;
+            this.toleranceNanos = toleranceNanos;
+        }
+
+        private Bucket copy() {
+            return new Bucket(this.intervalNanos, this.toleranceNanos);
+        }
+
+        /**
+         * Reserves permits.
+         *
+         * @return the wait in nanoseconds, or -1 if it would exceed the maximum wait
+         */
+        private long reserve(final int weight, final long now, final long maxWaitNanos) {
+            final long increment = this.intervalNanos * weight;
+            while (true) {
+                final long current = this.theoreticalArrival.get();
+                final long next = Math.max(current, now) + increment;
+                final long wait = Math.max(0, next - now - this.toleranceNanos);
+                if (wait > maxWaitNanos) {
+                    return -1;
+                }
+                if (this.theoreticalArrival.compareAndSet(current, next)) {
+                    return wait;
+                }
+            }
+        }
+
+        private void refund(final int weight) {
+            this.theoreticalArrival.addAndGet(-this.intervalNanos * weight);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ngrok;
+
+/**
+ * Thrown when the API client refuses to send a request at all, for example because a client-side
+ * limit would have been exceeded. A request rejected this way never reached the ngrok API.
+ */
+public class RequestRejectedException extends RuntimeException {
+    /**
+     * Creates a new rejection.
+     *
+     * @param message informative message
+     */
+    public RequestRejectedException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,405 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.Endpoint;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelSession;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Polls a list of tunnels, tunnel sessions or endpoints and turns it into a feed of added, removed and
+ * changed resources.
+ *
+ * Each poll reads the whole list and compares it with the previous one by ID, in time linear in the
+ * size of the list. The first poll reports every resource as added.
+ *
+ * The time between polls adapts to the churn of the list: it is halved, down to a minimum, after a
+ * poll that saw changes, and doubled, up to a maximum, after a poll that saw none. A quiet account is
+ * then polled rarely, and a busy one often enough to keep up.
+ *
+ * Events are delivered to listeners on a separate executor, one batch per poll and in order, so a slow
+ * listener never delays polling.
+ *
+ * @param <T> the type of the resources watched
+ */
+public class ResourceWatcher<T> implements AutoCloseable {
+    /**
+     * The kind of a change to a resource.
+     */
+    public enum ChangeType {
+        /** The resource appeared in the list */
+        ADDED,
+        /** The resource is no longer in the list */
+        REMOVED,
+        /** The resource is still in the list, with different properties */
+        CHANGED
+    }
+
+    /**
+     * A change to one resource.
+     *
+     * @param <T> the type of the resource
+     */
+    public static class Event<T> {
+        private final ChangeType type;
+        private final String id;
+        private final Optional<T> previous;
+        private final Optional<T> current;
+
+        private Event(final ChangeType type, final String id, final Optional<T> previous, final Optional<T> current) {
+            this.type = type;
+            this.id = id;
+            this.previous = previous;
+            this.current = current;
+        }
+
+        /**
+         * Fetches the kind of the change.
+         *
+         * @return a change type
+         */
+        public ChangeType getType() {
+            return this.type;
+        }
+
+        /**
+         * Fetches the ID of the resource.
+         *
+         * @return the ID
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * Fetches the resource before the change, absent for {@link ChangeType#ADDED}.
+         *
+         * @return the previous resource
+         */
+        public Optional<T> getPrevious() {
+            return this.previous;
+        }
+
+        /**
+         * Fetches the resource after the change, absent for {@link ChangeType#REMOVED}.
+         *
+         * @return the current resource
+         */
+        public Optional<T> getCurrent() {
+            return this.current;
+        }
+
+        @Override
+        public String toString() {
+            return "ResourceWatcher.Event{" +
+                "type='" + this.type +
+                "', id='" + this.id +
+                "'}";
+        }
+    }
+
+    /**
+     * Receives the changes seen by a watcher.
+     *
+     * @param <T> the type of the resources watched
+     */
+    public interface Listener<T> {
+        /**
+         * Called with the changes seen by one poll, if there were any.
+         *
+         * @param events the changes, never empty
+         */
+        void onEvents(List<Event<T>> events);
+
+        /**
+         * Called when a poll failed. Polling goes on at the current interval.
+         *
+         * @param error the cause of the failure
+         */
+        default void onError(final Throwable error) {
+        }
+    }
+
+    /**
+     * Builder class for resource watchers.
+     *
+     * @param <T> the type of the resources watched
+     */
+    public static class Builder<T> {
+        private final NgrokApiClient apiClient;
+        private final ListType<?, T> type;
+        private final Function<T, String> id;
+        private final List<Listener<T>> listeners = new ArrayList<>();
+        private Duration minInterval = Duration.ofSeconds(1);
+        private Duration maxInterval = Duration.ofMinutes(1);
+        private Optional<String> limit = Optional.empty();
+        private Optional<ScheduledExecutorService> scheduler = Optional.empty();
+        private Optional<Executor> executor = Optional.empty();
+
+        private Builder(final NgrokApiClient apiClient, final ListType<?, T> type, final Function<T, String> id) {
+            this.apiClient = requireNonNull(apiClient, "apiClient is required");
+            this.type = type;
+            this.id = id;
+        }
+
+        /**
+         * Adds a listener for the changes seen by the watcher.
+         *
+         * @param listener a listener
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> listener(final Listener<T> listener) {
+            this.listeners.add(requireNonNull(listener, "listener is required"));
+            return this;
+        }
+
+        /**
+         * Sets the shortest time between polls, used while the list keeps changing. Defaults to one
+         * second.
+         *
+         * @param minInterval a duration
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> minInterval(final Duration minInterval) {
+            this.minInterval = requireNonNull(minInterval, "minInterval is required");
+            return this;
+        }
+
+        /**
+         * Sets the longest time between polls, reached while the list stays the same. Defaults to one
+         * minute.
+         *
+         * @param maxInterval a duration
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> maxInterval(final Duration maxInterval) {
+            this.maxInterval = requireNonNull(maxInterval, "maxInterval is required");
+            return this;
+        }
+
+        /**
+         * Sets the <code>limit</code> parameter, the number of items per page, for the list.
+         *
+         * @param limit the value of the limit parameter as a {@link String}
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> limit(final String limit) {
+            this.limit = Optional.ofNullable(limit);
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs polls. Defaults to Armeria's worker group.
+         *
+         * @param scheduler a scheduled executor
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> scheduler(final ScheduledExecutorService scheduler) {
+            this.scheduler = Optional.of(requireNonNull(scheduler, "scheduler is required"));
+            return this;
+        }
+
+        /**
+         * Sets the executor that listeners are called on. Defaults to Armeria's blocking task executor.
+         *
+         * @param executor an executor
+         * @return the watcher builder
+         */
+        public ResourceWatcher.Builder<T> executor(final Executor executor) {
+            this.executor = Optional.of(requireNonNull(executor, "executor is required"));
+            return this;
+        }
+
+        /**
+         * Builds the watcher. It does not poll until it is started.
+         *
+         * @return a resource watcher
+         */
+        public ResourceWatcher<T> build() {
+            if (this.minInterval.isNegative() || this.minInterval.isZero() || this.maxInterval.compareTo(this.minInterval) < 0) {
+                throw new IllegalArgumentException("minInterval must be positive and no longer than maxInterval");
+            }
+            return new ResourceWatcher<>(this);
+        }
+    }
+
+    static ResourceWatcher.Builder<Tunnel> tunnels(final NgrokApiClient apiClient) {
+        return new Builder<>(apiClient, ListType.TUNNEL_LIST, Tunnel::getId);
+    }
+
+    static ResourceWatcher.Builder<TunnelSession> tunnelSessions(final NgrokApiClient apiClient) {
+        return new Builder<>(apiClient, ListType.TUNNEL_SESSION_LIST, TunnelSession::getId);
+    }
+
+    static ResourceWatcher.Builder<Endpoint> endpoints(final NgrokApiClient apiClient) {
+        return new Builder<>(apiClient, ListType.ENDPOINT_LIST, Endpoint::getId);
+    }
+
+    private final NgrokApiClient apiClient;
+    private final ListType<?, T> type;
+    private final Function<T, String> id;
+    private final List<Listener<T>> listeners;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final Optional<String> limit;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private Map<String, T> known = Collections.emptyMap();
+    private CompletableFuture<Void> deliveries = CompletableFuture.completedFuture(null);
+    private volatile long intervalNanos;
+    private volatile boolean running = false;
+    private volatile ScheduledFuture<?> nextPoll;
+
+    private ResourceWatcher(final Builder<T> builder) {
+        this.apiClient = builder.apiClient;
+        this.type = builder.type;
+        this.id = builder.id;
+        this.listeners = Collections.unmodifiableList(new ArrayList<>(builder.listeners));
+        this.minIntervalNanos = builder.minInterval.toNanos();
+        this.maxIntervalNanos = builder.maxInterval.toNanos();
+        this.limit = builder.limit;
+        this.scheduler = builder.scheduler.orElseGet(CommonPools::workerGroup);
+        this.executor = builder.executor.orElseGet(CommonPools::blockingTaskExecutor);
+        this.intervalNanos = this.minIntervalNanos;
+    }
+
+    /**
+     * Starts polling, beginning right away.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        schedulePoll(0);
+    }
+
+    /**
+     * Stops polling. Events of past polls are still delivered.
+     */
+    @Override
+    public synchronized void close() {
+        this.running = false;
+        final ScheduledFuture<?> scheduled = this.nextPoll;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    /**
+     * Fetches the current time between polls.
+     *
+     * @return a duration between the minimum and maximum intervals
+     */
+    public Duration getInterval() {
+        return Duration.ofNanos(this.intervalNanos);
+    }
+
+    private void schedulePoll(final long delayNanos) {
+        this.nextPoll = this.scheduler.schedule(
+            () -> poll().whenComplete((changed, failure) -> {
+                if (failure != null) {
+                    deliver(listener -> listener.onError(RetryPolicy.unwrap(failure)));
+                } else {
+                    this.intervalNanos = changed
+                        ? Math.max(this.minIntervalNanos, this.intervalNanos / 2)
+                        : Math.min(this.maxIntervalNanos, this.intervalNanos * 2);
+                }
+                synchronized (this) {
+                    if (this.running) {
+                        schedulePoll(this.intervalNanos);
+                    }
+                }
+            }),
+            delayNanos,
+            TimeUnit.NANOSECONDS
+        );
+    }
+
+    /**
+     * Reads the whole list and compares it with the previous one. Polls never overlap, since the next
+     * one is only scheduled once this one is done.
+     *
+     * @return whether anything changed
+     */
+    private CompletionStage<Boolean> poll() {
+        final Map<String, T> current = new HashMap<>();
+        final Function<T, String> id = this.id;
+        return this.apiClient.streamList(
+            this.type.getEndpoint(),
+            Stream.of(new AbstractMap.SimpleEntry<>("limit", this.limit.map(Function.identity()))),
+            this.type,
+            item -> current.put(id.apply(item), item)
+        )
+            .thenCompose(nextPageUri -> readRest(nextPageUri, current))
+            .thenApply(ignored -> {
+                final List<Event<T>> events = new ArrayList<>();
+                for (final Map.Entry<String, T> entry : current.entrySet()) {
+                    final T previous = this.known.get(entry.getKey());
+                    if (previous == null) {
+                        events.add(new Event<>(ChangeType.ADDED, entry.getKey(), Optional.empty(), Optional.of(entry.getValue())));
+                    } else if (!previous.equals(entry.getValue())) {
+                        events.add(new Event<>(ChangeType.CHANGED, entry.getKey(), Optional.of(previous), Optional.of(entry.getValue())));
+                    }
+                }
+                for (final Map.Entry<String, T> entry : this.known.entrySet()) {
+                    if (!current.containsKey(entry.getKey())) {
+                        events.add(new Event<>(ChangeType.REMOVED, entry.getKey(), Optional.of(entry.getValue()), Optional.empty()));
+                    }
+                }
+                this.known = current;
+                if (events.isEmpty()) {
+                    return false;
+                }
+                final List<Event<T>> batch = Collections.unmodifiableList(events);
+                deliver(listener -> listener.onEvents(batch));
+                return true;
+            });
+    }
+
+    private CompletionStage<Void> readRest(final Optional<URI> nextPageUri, final Map<String, T> current) {
+        if (!nextPageUri.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Function<T, String> id = this.id;
+        return this.apiClient.streamList(nextPageUri.get(), this.type, item -> current.put(id.apply(item), item))
+            .thenCompose(uri -> readRest(uri, current));
+    }
+
+    /**
+     * Queues a call to every listener behind the previous ones. Exceptions thrown by listeners are
+     * ignored, so one failing listener cannot stop the feed.
+     */
+    private synchronized void deliver(final Consumer<Listener<T>> call) {
+        this.deliveries = this.deliveries.thenRunAsync(() -> {
+            for (final Listener<T> listener : this.listeners) {
+                try {
+                    call.accept(listener);
+                } catch (final RuntimeException e) {
+                    // Ignored, see above
+                }
+            }
+        }, this.executor);
+    }
+}
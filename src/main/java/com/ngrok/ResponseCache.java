@@ -0,0 +1,370 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.AggregatedHttpResponse;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded, read-through cache for the responses of single-resource GET calls.
+ *
+ * The cache holds raw response bodies, so every caller decodes its own copy of a cached resource.
+ * Entries expire after a time-to-live that can be set per endpoint template (see
+ * {@link EndpointTemplates}), and are evicted with a CLOCK approximation of least-recently-used once
+ * the total size of the cached bodies goes over the configured weight. Any other request sent through
+ * the same client for a path invalidates the entries for that path, for every path above it and for
+ * every path below it, so that, for example, replacing a route module also drops the cached route and
+ * edge.
+ *
+ * Entries live in a concurrent skip list and are counted with atomics, so the cache has no global
+ * lock.
+ */
+public class ResponseCache {
+    /**
+     * A point-in-time snapshot of cache statistics.
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long invalidationCount;
+        private final int size;
+        private final long weight;
+
+        private Stats(final long hitCount, final long missCount, final long evictionCount, final long invalidationCount, final int size, final long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.invalidationCount = invalidationCount;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        /**
+         * Fetches the number of lookups answered from the cache.
+         *
+         * @return a number of lookups
+         */
+        public long getHitCount() {
+            return this.hitCount;
+        }
+
+        /**
+         * Fetches the number of lookups that had to go to the API.
+         *
+         * @return a number of lookups
+         */
+        public long getMissCount() {
+            return this.missCount;
+        }
+
+        /**
+         * Fetches the number of entries evicted to stay under the maximum weight.
+         *
+         * @return a number of entries
+         */
+        public long getEvictionCount() {
+            return this.evictionCount;
+        }
+
+        /**
+         * Fetches the number of entries dropped because their resource was changed.
+         *
+         * @return a number of entries
+         */
+        public long getInvalidationCount() {
+            return this.invalidationCount;
+        }
+
+        /**
+         * Fetches the number of entries in the cache.
+         *
+         * @return a number of entries
+         */
+        public int getSize() {
+            return this.size;
+        }
+
+        /**
+         * Fetches the total weight of the entries in the cache, in bytes.
+         *
+         * @return a weight
+         */
+        public long getWeight() {
+            return this.weight;
+        }
+
+        @Override
+        public String toString() {
+            return "ResponseCache.Stats{" +
+                "hitCount='" + this.hitCount +
+                "', missCount='" + this.missCount +
+                "', evictionCount='" + this.evictionCount +
+                "', invalidationCount='" + this.invalidationCount +
+                "', size='" + this.size +
+                "', weight='" + this.weight +
+                "'}";
+        }
+    }
+
+    /**
+     * Builder class for response caches.
+     */
+    public static class Builder {
+        private long maxWeight = 16 * 1024 * 1024;
+        private Duration defaultTtl = Duration.ofSeconds(30);
+        private final Map<String, Duration> ttls = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the largest total size of cached response bodies, in bytes.
+         *
+         * @param maxWeight a number of bytes
+         * @return the cache builder
+         */
+        public ResponseCache.Builder maxWeight(final long maxWeight) {
+            if (maxWeight < 1) {
+                throw new IllegalArgumentException("maxWeight must be positive");
+            }
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of entries with no more specific TTL.
+         *
+         * @param defaultTtl a duration
+         * @return the cache builder
+         */
+        public ResponseCache.Builder defaultTtl(final Duration defaultTtl) {
+            this.defaultTtl = requireNonNull(defaultTtl, "defaultTtl is required");
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of entries for one endpoint template, like
+         * <code>/ip_policies/{id}</code>. A zero TTL disables caching for that template.
+         *
+         * @param template an endpoint template
+         * @param ttl a duration
+         * @return the cache builder
+         * @see EndpointTemplates#templateOf(String)
+         */
+        public ResponseCache.Builder ttl(final String template, final Duration ttl) {
+            this.ttls.put(requireNonNull(template, "template is required"), requireNonNull(ttl, "ttl is required"));
+            return this;
+        }
+
+        /**
+         * Builds the response cache.
+         *
+         * @return a response cache
+         */
+        public ResponseCache build() {
+            return new ResponseCache(this);
+        }
+    }
+
+    /**
+     * Creates a new response cache builder.
+     *
+     * @return a cache builder
+     */
+    public static ResponseCache.Builder newBuilder() {
+        return new ResponseCache.Builder();
+    }
+
+    private final long maxWeight;
+    private final long defaultTtlNanos;
+    private final Map<String, Long> ttlNanos = new HashMap<>();
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockLength = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private ResponseCache(final Builder builder) {
+        this.maxWeight = builder.maxWeight;
+        this.defaultTtlNanos = builder.defaultTtl.toNanos();
+        builder.ttls.forEach((template, ttl) -> this.ttlNanos.put(template, ttl.toNanos()));
+    }
+
+    /**
+     * Takes a snapshot of the cache statistics.
+     *
+     * @return cache statistics
+     */
+    public Stats getStats() {
+        return new Stats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.invalidations.sum(), this.size.get(), this.weight.get());
+    }
+
+    /**
+     * Drops every entry from the cache.
+     */
+    public void invalidateAll() {
+        this.epoch.incrementAndGet();
+        this.entries.keySet().forEach(this::remove);
+    }
+
+    /**
+     * Fetches the current invalidation epoch. A response fetched while the epoch changed may be stale
+     * and is not cached.
+     *
+     * @return the epoch
+     */
+    long epoch() {
+        return this.epoch.get();
+    }
+
+    /**
+     * Looks up a cached response.
+     *
+     * @param endpoint the endpoint of a GET request
+     * @return the cached response, if any
+     */
+    Optional<AggregatedHttpResponse> get(final String endpoint) {
+        final Entry entry = this.entries.get(endpoint);
+        if (entry == null) {
+            this.misses.increment();
+            return Optional.empty();
+        }
+        if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+            remove(endpoint, entry);
+            this.misses.increment();
+            return Optional.empty();
+        }
+        entry.referenced = true;
+        this.hits.increment();
+        return Optional.of(entry.response);
+    }
+
+    /**
+     * Caches a response, unless the cache was invalidated since the request was sent.
+     *
+     * @param endpoint the endpoint of a GET request
+     * @param response a successful response
+     * @param epochAtRequest the epoch when the request was sent
+     */
+    void put(final String endpoint, final AggregatedHttpResponse response, final long epochAtRequest) {
+        final long ttl = this.ttlNanos.getOrDefault(EndpointTemplates.templateOf(endpoint), this.defaultTtlNanos);
+        final int entryWeight = response.content().length() + endpoint.length();
+        if (ttl <= 0 || entryWeight > this.maxWeight) {
+            return;
+        }
+
+        final Entry entry = new Entry(endpoint, response, System.nanoTime() + ttl, entryWeight);
+        final Entry previous = this.entries.put(endpoint, entry);
+        if (previous != null) {
+            this.weight.addAndGet(-previous.weight);
+        } else {
+            this.size.incrementAndGet();
+        }
+        this.weight.addAndGet(entryWeight);
+        this.clock.add(entry);
+        this.clockLength.incrementAndGet();
+
+        // An invalidation may have raced with this request, in which case the response may be stale
+        if (this.epoch.get() != epochAtRequest) {
+            remove(endpoint, entry);
+        }
+        evict();
+    }
+
+    /**
+     * Drops the entries for an endpoint, for every endpoint above it, and for every endpoint below it.
+     *
+     * @param endpoint the endpoint of a request that may have changed a resource
+     */
+    void invalidate(final String endpoint) {
+        this.epoch.incrementAndGet();
+        final int queryStart = endpoint.indexOf('?');
+        final String path = queryStart < 0 ? endpoint : endpoint.substring(0, queryStart);
+
+        invalidateExactly(path);
+        final ConcurrentNavigableMap<String, Entry> below = this.entries.subMap(path + "/", path + "0");
+        below.keySet().forEach(this::invalidateExactly);
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            invalidateExactly(path.substring(0, slash));
+        }
+    }
+
+    private void invalidateExactly(final String endpoint) {
+        if (remove(endpoint)) {
+            this.invalidations.increment();
+        }
+    }
+
+    private boolean remove(final String endpoint) {
+        final Entry entry = this.entries.get(endpoint);
+        return entry != null && remove(endpoint, entry);
+    }
+
+    private boolean remove(final String endpoint, final Entry entry) {
+        if (this.entries.remove(endpoint, entry)) {
+            this.size.decrementAndGet();
+            this.weight.addAndGet(-entry.weight);
+            return true;
+        }
+        return false;
+    }
+
+    private void evict() {
+        while (this.weight.get() > this.maxWeight || this.clockLength.get() > 2 * this.size.get() + 16) {
+            final Entry entry = this.clock.poll();
+            if (entry == null) {
+                return;
+            }
+            this.clockLength.decrementAndGet();
+            if (this.entries.get(entry.endpoint) != entry) {
+                // Already replaced, invalidated or expired
+                continue;
+            }
+            if (entry.referenced && this.weight.get() <= this.maxWeight * 2) {
+                entry.referenced = false;
+                this.clock.add(entry);
+                this.clockLength.incrementAndGet();
+                continue;
+            }
+            if (this.weight.get() > this.maxWeight && remove(entry.endpoint, entry)) {
+                this.evictions.increment();
+            } else {
+                this.clock.add(entry);
+                this.clockLength.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String endpoint;
+        private final AggregatedHttpResponse response;
+        private final long expiresAtNanos;
+        private final int weight;
+        private volatile boolean referenced = false;
+
+        private Entry(final String endpoint, final AggregatedHttpResponse response, final long expiresAtNanos, final int weight) {
+            this.endpoint = endpoint;
+            this.response = response;
+            this.expiresAtNanos = expiresAtNanos;
+            this.weight = weight;
+        }
+    }
+}
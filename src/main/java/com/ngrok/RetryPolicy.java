@@ -0,0 +1,396 @@
+package com.ngrok;
+
+import com.linecorp.armeria.client.ResponseTimeoutException;
+import com.linecorp.armeria.client.UnprocessedRequestException;
+import com.linecorp.armeria.common.ClosedSessionException;
+import com.ngrok.definitions.NgrokApiError;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Policy describing when and how {@link DefaultNgrokApiClient} retries failed requests.
+ *
+ * Delays between attempts use decorrelated jitter, so that many clients failing at the same time
+ * do not retry in lockstep. A <code>Retry-After</code> response header raises the delay to at least
+ * the requested value. Every request sent through a client deposits a fraction of a retry into a
+ * shared budget and every retry withdraws a whole one, which caps the share of traffic that can
+ * be retries and keeps retries from amplifying an outage.
+ *
+ * Only idempotent methods ({@link NgrokApiClient.HttpMethod#GET}, {@link NgrokApiClient.HttpMethod#PUT}
+ * and {@link NgrokApiClient.HttpMethod#DELETE}) are retried by default. Other methods are only
+ * retried if {@link Builder#retryNonIdempotent(boolean)} is set, or if the request provably never
+ * reached the server.
+ */
+public class RetryPolicy {
+    /**
+     * Decides whether a failed request may be retried.
+     */
+    @FunctionalInterface
+    public interface Classifier {
+        /**
+         * Checks if a failure is worth retrying.
+         *
+         * @param cause the failure, already unwrapped from any {@link CompletionException}; will be an
+         *              {@link NgrokApiError} when the API returned an error response
+         * @return whether or not the request may be retried
+         */
+        boolean isRetryable(Throwable cause);
+
+        /**
+         * Creates a classifier that retries API errors with the given HTTP status codes.
+         *
+         * @param httpStatusCodes HTTP status codes to retry
+         * @return a classifier
+         */
+        static Classifier onStatus(final Integer... httpStatusCodes) {
+            final Set<Integer> statusSet = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(httpStatusCodes)));
+            return cause -> cause instanceof NgrokApiError && statusSet.contains(((NgrokApiError) cause).getHttpStatusCode());
+        }
+
+        /**
+         * Creates a classifier that retries API errors with one of the given ngrok error codes.
+         *
+         * @param errorCodes ngrok API error codes to retry
+         * @return a classifier
+         */
+        static Classifier onErrorCode(final String... errorCodes) {
+            return cause -> cause instanceof NgrokApiError && ((NgrokApiError) cause).isErrorCode(errorCodes);
+        }
+
+        /**
+         * Creates a classifier that retries connection-level failures such as resets, closed sessions
+         * and response timeouts.
+         *
+         * @return a classifier
+         */
+        static Classifier onTransportFailure() {
+            return cause -> cause instanceof UnprocessedRequestException
+                || cause instanceof ClosedSessionException
+                || cause instanceof ResponseTimeoutException
+                || cause instanceof IOException;
+        }
+
+        /**
+         * Combines this classifier with another one; a failure is retryable if either says so.
+         *
+         * @param other another classifier
+         * @return a combined classifier
+         */
+        default Classifier or(final Classifier other) {
+            requireNonNull(other, "other is required");
+            return cause -> isRetryable(cause) || other.isRetryable(cause);
+        }
+    }
+
+    /**
+     * The classifier used when none is configured. Retries 429, 502, 503 and 504 responses as well
+     * as connection-level failures.
+     */
+    public static final Classifier DEFAULT_CLASSIFIER = Classifier.onStatus(429, 502, 503, 504)
+        .or(Classifier.onTransportFailure());
+
+    /**
+     * Builder class for retry policies.
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration baseDelay = Duration.ofMillis(100);
+        private Duration maxDelay = Duration.ofSeconds(10);
+        private boolean retryNonIdempotent = false;
+        private boolean respectRetryAfter = true;
+        private double budgetRatio = 0.1;
+        private int budgetReserve = 10;
+        private Classifier classifier = DEFAULT_CLASSIFIER;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of attempts for a single call, including the first one.
+         *
+         * @param maxAttempts a number of attempts, at least 1
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder maxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the smallest delay between two attempts.
+         *
+         * @param baseDelay a delay
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder baseDelay(final Duration baseDelay) {
+            this.baseDelay = requireNonNull(baseDelay, "baseDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets the largest delay between two attempts. A <code>Retry-After</code> header asking for
+         * a longer delay than this fails the call instead of waiting.
+         *
+         * @param maxDelay a delay
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder maxDelay(final Duration maxDelay) {
+            this.maxDelay = requireNonNull(maxDelay, "maxDelay is required");
+            return this;
+        }
+
+        /**
+         * Sets whether or not POST and PATCH requests are retried.
+         *
+         * @param retryNonIdempotent whether or not non-idempotent requests are retried
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder retryNonIdempotent(final boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * Sets whether or not a <code>Retry-After</code> response header is honored.
+         *
+         * @param respectRetryAfter whether or not to honor <code>Retry-After</code>
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder respectRetryAfter(final boolean respectRetryAfter) {
+            this.respectRetryAfter = respectRetryAfter;
+            return this;
+        }
+
+        /**
+         * Sets the retry budget: the share of requests that may be retries, plus a reserve of retries
+         * that is always available to clients with little traffic.
+         *
+         * @param ratio fraction of a retry earned by each request, between 0 and 1
+         * @param reserve number of retries that can be banked
+         * @return the policy builder
+         */
+        public RetryPolicy.Builder budget(final double ratio, final int reserve) {
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException("ratio must be between 0 and 1");
+            }
+            if (reserve < 0) {
+                throw new IllegalArgumentException("reserve must not be negative");
+            }
+            this.budgetRatio = ratio;
+            this.budgetReserve = reserve;
+            return this;
+        }
+
+        /**
+         * Sets the classifier deciding which failures are retried.
+         *
+         * @param classifier a classifier
+         * @return the policy builder
+         * @see RetryPolicy#DEFAULT_CLASSIFIER
+         */
+        public RetryPolicy.Builder classifier(final Classifier classifier) {
+            this.classifier = requireNonNull(classifier, "classifier is required");
+            return this;
+        }
+
+        /**
+         * Builds the retry policy.
+         *
+         * @return a retry policy
+         */
+        public RetryPolicy build() {
+            if (this.maxDelay.compareTo(this.baseDelay) < 0) {
+                throw new IllegalArgumentException("maxDelay must not be shorter than baseDelay");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+
+    /**
+     * Creates a new retry policy builder.
+     *
+     * @return a policy builder
+     */
+    public static RetryPolicy.Builder newBuilder() {
+        return new RetryPolicy.Builder();
+    }
+
+    /**
+     * Creates a retry policy with all default settings.
+     *
+     * @return a retry policy
+     */
+    public static RetryPolicy createDefault() {
+        return newBuilder().build();
+    }
+
+    private static final long TOKEN = 1000;
+    private static final Set<NgrokApiClient.HttpMethod> IDEMPOTENT_METHODS = Collections.unmodifiableSet(EnumSet.of(
+        NgrokApiClient.HttpMethod.GET,
+        NgrokApiClient.HttpMethod.PUT,
+        NgrokApiClient.HttpMethod.DELETE
+    ));
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final boolean retryNonIdempotent;
+    private final boolean respectRetryAfter;
+    private final long budgetDeposit;
+    private final long budgetCap;
+    private final Classifier classifier;
+    private final AtomicLong budgetBalance;
+
+    private RetryPolicy(final Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.respectRetryAfter = builder.respectRetryAfter;
+        this.budgetDeposit = Math.round(builder.budgetRatio * TOKEN);
+        this.budgetCap = builder.budgetReserve * TOKEN;
+        this.classifier = builder.classifier;
+        this.budgetBalance = new AtomicLong(this.budgetCap);
+    }
+
+    /**
+     * Fetches the number of retries currently available in the retry budget.
+     *
+     * @return a number of retries
+     */
+    public long getAvailableRetries() {
+        return this.budgetBalance.get() / TOKEN;
+    }
+
+    /**
+     * Starts tracking the attempts of a single call, depositing into the retry budget.
+     *
+     * @param method the HTTP method of the call
+     * @return the retry state of the call
+     */
+    Backoff newBackoff(final NgrokApiClient.HttpMethod method) {
+        this.budgetBalance.accumulateAndGet(this.budgetDeposit, (balance, deposit) -> Math.min(this.budgetCap, balance + deposit));
+        return new Backoff(method);
+    }
+
+    private boolean withdrawRetry() {
+        long balance;
+        do {
+            balance = this.budgetBalance.get();
+            if (balance < TOKEN) {
+                return false;
+            }
+        } while (!this.budgetBalance.compareAndSet(balance, balance - TOKEN));
+        return true;
+    }
+
+    /**
+     * Retry state of a single call. Attempts of one call never overlap, so instances are only
+     * handed from one attempt to the next.
+     */
+    final class Backoff {
+        private final NgrokApiClient.HttpMethod method;
+        private int attempts = 1;
+        private long previousDelayNanos = RetryPolicy.this.baseDelayNanos;
+
+        private Backoff(final NgrokApiClient.HttpMethod method) {
+            this.method = method;
+        }
+
+        /**
+         * Decides whether a failed attempt is retried and how long to wait first.
+         *
+         * @param failure the failure of the last attempt
+         * @param retryAfter the value of the <code>Retry-After</code> header of the last response, if any
+         * @return the delay before the next attempt, or empty if the call should fail
+         */
+        synchronized Optional<Duration> nextDelay(final Throwable failure, final Optional<Duration> retryAfter) {
+            final Throwable cause = unwrap(failure);
+            if (this.attempts >= RetryPolicy.this.maxAttempts) {
+                return Optional.empty();
+            }
+            final boolean mayResend = cause instanceof UnprocessedRequestException
+                || RetryPolicy.this.retryNonIdempotent
+                || IDEMPOTENT_METHODS.contains(this.method);
+            if (!mayResend || !RetryPolicy.this.classifier.isRetryable(cause)) {
+                return Optional.empty();
+            }
+
+            long delayNanos = Math.min(
+                RetryPolicy.this.maxDelayNanos,
+                ThreadLocalRandom.current().nextLong(RetryPolicy.this.baseDelayNanos, Math.max(this.previousDelayNanos * 3, RetryPolicy.this.baseDelayNanos) + 1)
+            );
+            if (RetryPolicy.this.respectRetryAfter && retryAfter.isPresent()) {
+                final long retryAfterNanos = retryAfter.get().toNanos();
+                if (retryAfterNanos > RetryPolicy.this.maxDelayNanos) {
+                    return Optional.empty();
+                }
+                delayNanos = Math.max(delayNanos, retryAfterNanos);
+            }
+            if (!withdrawRetry()) {
+                return Optional.empty();
+            }
+
+            this.attempts++;
+            this.previousDelayNanos = delayNanos;
+            return Optional.of(Duration.ofNanos(delayNanos));
+        }
+    }
+
+    /**
+     * Parses the value of a <code>Retry-After</code> header, given either in seconds or as an HTTP date.
+     *
+     * @param value the header value
+     * @return the delay it asks for, or empty if the value is missing or malformed
+     */
+    static Optional<Duration> parseRetryAfter(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        final String trimmed = value.trim();
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed))));
+        } catch (final NumberFormatException e) {
+            try {
+                final ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+                final Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+            } catch (final DateTimeParseException e1) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Strips the wrappers that {@link java.util.concurrent.CompletionStage} composition puts around failures.
+     *
+     * @param failure a failure
+     * @return the underlying cause
+     */
+    static Throwable unwrap(final Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,511 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.CommonPools;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.TunnelSession;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Restarts, stops or updates a selection of tunnel sessions across a fleet of agents, in waves.
+ *
+ * The selected sessions are split into waves of a given size. Each wave is run with a bounded number
+ * of calls in flight, and the next wave only starts once the previous one is done, optionally after a
+ * pause. Restarts can also be confirmed: since a restarted agent reconnects with a new tunnel session
+ * ID, a wave is only done once, for every restarted session, a new session from the same agent has
+ * started a tunnel, or a timeout has passed.
+ *
+ * Between waves, the share of failed sessions so far is compared with a threshold; once it is
+ * crossed, the rollout stops and the remaining sessions are left untouched.
+ */
+public class TunnelSessionRollout {
+    /**
+     * The call made for each session.
+     */
+    public enum Operation {
+        /** Restarts the agent, see {@link com.ngrok.services.TunnelSessions#restart(String)} */
+        RESTART,
+        /** Stops the agent, see {@link com.ngrok.services.TunnelSessions#stop(String)} */
+        STOP,
+        /** Updates the agent, see {@link com.ngrok.services.TunnelSessions#update(String)} */
+        UPDATE
+    }
+
+    /**
+     * The outcome of a rollout.
+     */
+    public static class Result {
+        private final int selectedCount;
+        private final int waveCount;
+        private final List<String> succeeded;
+        private final Map<String, Throwable> failures;
+        private final List<String> skipped;
+        private final boolean stopped;
+        private final Duration duration;
+
+        private Result(final int selectedCount,
+                       final int waveCount,
+                       final List<String> succeeded,
+                       final Map<String, Throwable> failures,
+                       final List<String> skipped,
+                       final boolean stopped,
+                       final Duration duration)
+        {
+            this.selectedCount = selectedCount;
+            this.waveCount = waveCount;
+            this.succeeded = succeeded;
+            this.failures = failures;
+            this.skipped = skipped;
+            this.stopped = stopped;
+            this.duration = duration;
+        }
+
+        /**
+         * Fetches the number of sessions selected for the rollout.
+         *
+         * @return a number of sessions
+         */
+        public int getSelectedCount() {
+            return this.selectedCount;
+        }
+
+        /**
+         * Fetches the number of waves which were run.
+         *
+         * @return a number of waves
+         */
+        public int getWaveCount() {
+            return this.waveCount;
+        }
+
+        /**
+         * Fetches the IDs of the sessions the call succeeded for, and was confirmed for if asked to.
+         *
+         * @return an unmodifiable list of tunnel session IDs
+         */
+        public List<String> getSucceeded() {
+            return this.succeeded;
+        }
+
+        /**
+         * Fetches the failures by session ID. A restart which was not confirmed in time fails with a
+         * {@link TimeoutException}.
+         *
+         * @return an unmodifiable map of failures by tunnel session ID
+         */
+        public Map<String, Throwable> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * Fetches the IDs of the sessions left untouched because the rollout was stopped.
+         *
+         * @return an unmodifiable list of tunnel session IDs
+         */
+        public List<String> getSkipped() {
+            return this.skipped;
+        }
+
+        /**
+         * Fetches whether the rollout was stopped because the error rate crossed its threshold.
+         *
+         * @return true if the rollout was stopped
+         */
+        public boolean isStopped() {
+            return this.stopped;
+        }
+
+        /**
+         * Fetches the time the rollout took.
+         *
+         * @return a duration
+         */
+        public Duration getDuration() {
+            return this.duration;
+        }
+
+        @Override
+        public String toString() {
+            return "TunnelSessionRollout.Result{" +
+                "selectedCount='" + this.selectedCount +
+                "', waveCount='" + this.waveCount +
+                "', succeeded='" + this.succeeded.size() +
+                "', failures='" + this.failures.size() +
+                "', skipped='" + this.skipped.size() +
+                "', stopped='" + this.stopped +
+                "', duration='" + this.duration +
+                "'}";
+        }
+    }
+
+    /**
+     * A builder object encapsulating state for an unstarted rollout.
+     */
+    public static class CallBuilder {
+        private final Ngrok ngrok;
+        private final Operation operation;
+        private Predicate<TunnelSession> selector = session -> true;
+        private int batchSize = 50;
+        private int maxInFlight = 8;
+        private Duration pause = Duration.ZERO;
+        private Optional<Duration> confirmTimeout = Optional.empty();
+        private Duration confirmInterval = Duration.ofSeconds(5);
+        private double maxErrorRate = 0.1;
+        private Optional<ScheduledExecutorService> scheduler = Optional.empty();
+
+        CallBuilder(final Ngrok ngrok, final Operation operation) {
+            this.ngrok = requireNonNull(ngrok, "ngrok is required");
+            this.operation = requireNonNull(operation, "operation is required");
+        }
+
+        /**
+         * Selects only the sessions in a region.
+         *
+         * @param region a region, like <code>us</code>
+         * @return the call builder instance
+         */
+        public CallBuilder region(final String region) {
+            requireNonNull(region, "region is required");
+            return filter(session -> region.equals(session.getRegion()));
+        }
+
+        /**
+         * Selects only the sessions of agents of a version.
+         *
+         * @param agentVersion an agent version, like <code>3.0.3</code>
+         * @return the call builder instance
+         */
+        public CallBuilder agentVersion(final String agentVersion) {
+            requireNonNull(agentVersion, "agentVersion is required");
+            return filter(session -> agentVersion.equals(session.getAgentVersion()));
+        }
+
+        /**
+         * Selects only the sessions of agents running on an operating system.
+         *
+         * @param os an operating system, like <code>linux</code>
+         * @return the call builder instance
+         */
+        public CallBuilder os(final String os) {
+            requireNonNull(os, "os is required");
+            return filter(session -> os.equals(session.getOs()));
+        }
+
+        /**
+         * Selects only the sessions using a transport.
+         *
+         * @param transport a transport, like <code>ngrok/v2</code>
+         * @return the call builder instance
+         */
+        public CallBuilder transport(final String transport) {
+            requireNonNull(transport, "transport is required");
+            return filter(session -> transport.equals(session.getTransport()));
+        }
+
+        /**
+         * Selects only the sessions started with a credential.
+         *
+         * @param credential a reference to the credential
+         * @return the call builder instance
+         */
+        public CallBuilder credential(final Ref credential) {
+            requireNonNull(credential, "credential is required");
+            return filter(session -> credential.getId().equals(session.getCredential().getId()));
+        }
+
+        /**
+         * Selects only the sessions matching a predicate. Every selection set on the builder applies.
+         *
+         * @param filter a predicate on tunnel sessions
+         * @return the call builder instance
+         */
+        public CallBuilder filter(final Predicate<? super TunnelSession> filter) {
+            requireNonNull(filter, "filter is required");
+            this.selector = this.selector.and(filter);
+            return this;
+        }
+
+        /**
+         * Sets the number of sessions in each wave. Defaults to 50.
+         *
+         * @param batchSize a number of sessions
+         * @return the call builder instance
+         */
+        public CallBuilder batchSize(final int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of calls in flight at once within a wave. Defaults to 8.
+         *
+         * @param maxInFlight a number of calls
+         * @return the call builder instance
+         */
+        public CallBuilder maxInFlight(final int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets the pause between the end of a wave and the start of the next. Defaults to no pause.
+         *
+         * @param pause a duration
+         * @return the call builder instance
+         */
+        public CallBuilder pauseBetweenWaves(final Duration pause) {
+            this.pause = requireNonNull(pause, "pause is required");
+            return this;
+        }
+
+        /**
+         * Confirms every restart by listing tunnel sessions and tunnels until a new session from the
+         * same agent, matched on credential, IP, operating system and metadata, has started a tunnel.
+         * Restarts not confirmed within the timeout count as failures. Only available for
+         * {@link Operation#RESTART}.
+         *
+         * @param timeout how long to wait for the agents of a wave to reconnect
+         * @param interval how long to wait between listings
+         * @return the call builder instance
+         */
+        public CallBuilder confirmReconnect(final Duration timeout, final Duration interval) {
+            if (this.operation != Operation.RESTART) {
+                throw new IllegalStateException("Only restarts can be confirmed");
+            }
+            this.confirmTimeout = Optional.of(requireNonNull(timeout, "timeout is required"));
+            this.confirmInterval = requireNonNull(interval, "interval is required");
+            return this;
+        }
+
+        /**
+         * Sets the share of failed sessions above which the rollout stops, checked between waves.
+         * Defaults to 0.1.
+         *
+         * @param maxErrorRate a rate between 0 and 1; 1 never stops the rollout
+         * @return the call builder instance
+         */
+        public CallBuilder maxErrorRate(final double maxErrorRate) {
+            if (maxErrorRate < 0 || maxErrorRate > 1) {
+                throw new IllegalArgumentException("maxErrorRate must be between 0 and 1");
+            }
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler for pauses and confirmation listings. Defaults to Armeria's worker group.
+         *
+         * @param scheduler a scheduled executor
+         * @return the call builder instance
+         */
+        public CallBuilder scheduler(final ScheduledExecutorService scheduler) {
+            this.scheduler = Optional.of(requireNonNull(scheduler, "scheduler is required"));
+            return this;
+        }
+
+        /**
+         * Runs the rollout asynchronously. The rollout fails as a whole only if the tunnel sessions
+         * cannot be listed; other failures are reported in the {@link Result}.
+         *
+         * @return a {@link CompletionStage} of the {@link Result}
+         */
+        public CompletionStage<Result> call() {
+            return new Run(this).start();
+        }
+
+        /**
+         * Runs the rollout and blocks until it has finished.
+         *
+         * @return the {@link Result}
+         * @throws InterruptedException if the thread was interrupted during the call
+         */
+        public Result blockingCall() throws InterruptedException {
+            try {
+                return call().toCompletableFuture().get();
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private TunnelSessionRollout() {
+    }
+
+    /**
+     * A rollout being run. Waves run one after the other, so the state below is only ever touched by
+     * one stage at a time.
+     */
+    private static final class Run {
+        private final CallBuilder builder;
+        private final ScheduledExecutorService scheduler;
+        private final BulkExecutor bulk;
+        private final List<TunnelSession> selected = new ArrayList<>();
+        private final Set<String> knownSessionIds = new HashSet<>();
+        private final Set<String> succeeded = new LinkedHashSet<>();
+        private final Map<String, Throwable> failures = new LinkedHashMap<>();
+        private final long startNanos = System.nanoTime();
+        private int waveCount = 0;
+        private int attemptedCount = 0;
+        private boolean stopped = false;
+
+        private Run(final CallBuilder builder) {
+            this.builder = builder;
+            this.scheduler = builder.scheduler.orElseGet(CommonPools::workerGroup);
+            this.bulk = BulkExecutor.newBuilder().maxConcurrency(builder.maxInFlight).build();
+        }
+
+        private CompletionStage<Result> start() {
+            return this.builder.ngrok.forEach(ListType.TUNNEL_SESSION_LIST, session -> {
+                this.knownSessionIds.add(session.getId());
+                if (this.builder.selector.test(session)) {
+                    this.selected.add(session);
+                }
+            }).thenCompose(ignored -> wave(0)).thenApply(this::result);
+        }
+
+        private CompletionStage<Integer> wave(final int from) {
+            if (from >= this.selected.size()) {
+                return CompletableFuture.completedFuture(from);
+            }
+            if (this.attemptedCount > 0 && (double) this.failures.size() / this.attemptedCount > this.builder.maxErrorRate) {
+                this.stopped = true;
+                return CompletableFuture.completedFuture(from);
+            }
+            final List<TunnelSession> wave = this.selected.subList(from, Math.min(from + this.builder.batchSize, this.selected.size()));
+            final CompletionStage<Void> pause = this.waveCount == 0 ? CompletableFuture.completedFuture(null) : delay(this.builder.pause);
+            this.waveCount++;
+            return pause
+                .thenCompose(ignored -> this.bulk.execute(wave.stream(), this::operate))
+                .thenCompose(result -> {
+                    this.attemptedCount += wave.size();
+                    final List<TunnelSession> done = new ArrayList<>();
+                    for (int i = 0; i < wave.size(); i++) {
+                        final Throwable failure = result.getFailures().get(i);
+                        if (failure == null) {
+                            done.add(wave.get(i));
+                        } else {
+                            this.failures.put(wave.get(i).getId(), failure);
+                        }
+                    }
+                    if (!this.builder.confirmTimeout.isPresent() || done.isEmpty()) {
+                        done.forEach(session -> this.succeeded.add(session.getId()));
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    final Map<String, Deque<String>> pending = new HashMap<>();
+                    for (final TunnelSession session : done) {
+                        pending.computeIfAbsent(agentKey(session), key -> new ArrayDeque<>()).add(session.getId());
+                    }
+                    return confirm(pending, System.nanoTime() + this.builder.confirmTimeout.get().toNanos());
+                })
+                .thenCompose(ignored -> wave(from + wave.size()));
+        }
+
+        private CompletionStage<Void> operate(final TunnelSession session) {
+            switch (this.builder.operation) {
+                case RESTART:
+                    return this.builder.ngrok.tunnelSessions().restart(session.getId()).call();
+                case STOP:
+                    return this.builder.ngrok.tunnelSessions().stop(session.getId()).call();
+                default:
+                    return this.builder.ngrok.tunnelSessions().update(session.getId()).call();
+            }
+        }
+
+        /**
+         * Waits for new sessions with tunnels, matching each to a restarted session of the same agent
+         * still pending. Matched new sessions become known, so that a later wave cannot match them again.
+         */
+        private CompletionStage<Void> confirm(final Map<String, Deque<String>> pending, final long deadlineNanos) {
+            return delay(this.builder.confirmInterval)
+                .thenCompose(ignored -> reconnectedSessions())
+                .thenCompose(reconnected -> {
+                    for (final TunnelSession session : reconnected) {
+                        final Deque<String> restarted = pending.get(agentKey(session));
+                        if (restarted != null && !restarted.isEmpty()) {
+                            this.succeeded.add(restarted.poll());
+                            this.knownSessionIds.add(session.getId());
+                        }
+                    }
+                    pending.values().removeIf(Deque::isEmpty);
+                    if (pending.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (System.nanoTime() - deadlineNanos >= 0) {
+                        final TimeoutException timeout = new TimeoutException("agent did not reconnect within " + this.builder.confirmTimeout.get());
+                        pending.values().forEach(ids -> ids.forEach(id -> this.failures.put(id, timeout)));
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return confirm(pending, deadlineNanos);
+                });
+        }
+
+        private CompletionStage<List<TunnelSession>> reconnectedSessions() {
+            final Set<String> tunnelledSessionIds = new HashSet<>();
+            final List<TunnelSession> reconnected = new ArrayList<>();
+            return this.builder.ngrok.forEach(ListType.TUNNEL_LIST, tunnel -> tunnelledSessionIds.add(tunnel.getTunnelSession().getId()))
+                .thenCompose(ignored -> this.builder.ngrok.forEach(ListType.TUNNEL_SESSION_LIST, session -> {
+                    if (!this.knownSessionIds.contains(session.getId()) && tunnelledSessionIds.contains(session.getId())) {
+                        reconnected.add(session);
+                    }
+                }))
+                .thenApply(ignored -> reconnected);
+        }
+
+        private CompletionStage<Void> delay(final Duration duration) {
+            if (duration.isZero() || duration.isNegative()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final CompletableFuture<Void> elapsed = new CompletableFuture<>();
+            this.scheduler.schedule(() -> elapsed.complete(null), duration.toNanos(), TimeUnit.NANOSECONDS);
+            return elapsed;
+        }
+
+        private Result result(final int next) {
+            final List<String> skipped = new ArrayList<>();
+            for (final TunnelSession session : this.selected.subList(next, this.selected.size())) {
+                skipped.add(session.getId());
+            }
+            return new Result(
+                this.selected.size(),
+                this.waveCount,
+                Collections.unmodifiableList(new ArrayList<>(this.succeeded)),
+                Collections.unmodifiableMap(new LinkedHashMap<>(this.failures)),
+                Collections.unmodifiableList(skipped),
+                this.stopped,
+                Duration.ofNanos(System.nanoTime() - this.startNanos)
+            );
+        }
+
+        private static String agentKey(final TunnelSession session) {
+            return session.getCredential().getId() + '\n' + session.getIp() + '\n' + session.getOs() + '\n' + session.getMetadata();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.ngrok.definitions;
+
+import com.ngrok.NgrokApiClient;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Describes a {@link Pageable} list resource: its endpoint, its class, the class of its items, and the
+ * JSON field that holds the items. Clients use this to read the items of a list page one at a time.
+ *
+ * @param <T> the type of the list
+ * @param <I> the type of the items in the list
+ */
+public final class ListType<T extends Pageable, I> {
+    /**
+     * The {@link AgentIngressList} list type.
+     */
+    public static final ListType<AgentIngressList, AgentIngress> AGENT_INGRESS_LIST = new ListType<>("/agent_ingresses", AgentIngressList.class, AgentIngress.class, "ingresses", AgentIngressList::getIngresses);
+
+    /**
+     * The {@link ApiKeyList} list type.
+     */
+    public static final ListType<ApiKeyList, ApiKey> API_KEY_LIST = new ListType<>("/api_keys", ApiKeyList.class, ApiKey.class, "keys", ApiKeyList::getKeys);
+
+    /**
+     * The {@link CertificateAuthorityList} list type.
+     */
+    public static final ListType<CertificateAuthorityList, CertificateAuthority> CERTIFICATE_AUTHORITY_LIST = new ListType<>("/certificate_authorities", CertificateAuthorityList.class, CertificateAuthority.class, "certificate_authorities", CertificateAuthorityList::getCertificateAuthorities);
+
+    /**
+     * The {@link CredentialList} list type.
+     */
+    public static final ListType<CredentialList, Credential> CREDENTIAL_LIST = new ListType<>("/credentials", CredentialList.class, Credential.class, "credentials", CredentialList::getCredentials);
+
+    /**
+     * The {@link EndpointList} list type.
+     */
+    public static final ListType<EndpointList, Endpoint> ENDPOINT_LIST = new ListType<>("/endpoints", EndpointList.class, Endpoint.class, "endpoints", EndpointList::getEndpoints);
+
+    /**
+     * The {@link EventDestinationList} list type.
+     */
+    public static final ListType<EventDestinationList, EventDestination> EVENT_DESTINATION_LIST = new ListType<>("/event_destinations", EventDestinationList.class, EventDestination.class, "event_destinations", EventDestinationList::getEventDestinations);
+
+    /**
+     * The {@link EventSubscriptionList} list type.
+     */
+    public static final ListType<EventSubscriptionList, EventSubscription> EVENT_SUBSCRIPTION_LIST = new ListType<>("/event_subscriptions", EventSubscriptionList.class, EventSubscription.class, "event_subscriptions", EventSubscriptionList::getEventSubscriptions);
+
+    /**
+     * The {@link FailoverBackendList} list type.
+     */
+    public static final ListType<FailoverBackendList, FailoverBackend> FAILOVER_BACKEND_LIST = new ListType<>("/backends/failover", FailoverBackendList.class, FailoverBackend.class, "backends", FailoverBackendList::getBackends);
+
+    /**
+     * The {@link HttpResponseBackendList} list type.
+     */
+    public static final ListType<HttpResponseBackendList, HttpResponseBackend> HTTP_RESPONSE_BACKEND_LIST = new ListType<>("/backends/http_response", HttpResponseBackendList.class, HttpResponseBackend.class, "backends", HttpResponseBackendList::getBackends);
+
+    /**
+     * The {@link HttpsEdgeList} list type.
+     */
+    public static final ListType<HttpsEdgeList, HttpsEdge> HTTPS_EDGE_LIST = new ListType<>("/edges/https", HttpsEdgeList.class, HttpsEdge.class, "https_edges", HttpsEdgeList::getHttpsEdges);
+
+    /**
+     * The {@link IpPolicyList} list type.
+     */
+    public static final ListType<IpPolicyList, IpPolicy> IP_POLICY_LIST = new ListType<>("/ip_policies", IpPolicyList.class, IpPolicy.class, "ip_policies", IpPolicyList::getIpPolicies);
+
+    /**
+     * The {@link IpPolicyRuleList} list type.
+     */
+    public static final ListType<IpPolicyRuleList, IpPolicyRule> IP_POLICY_RULE_LIST = new ListType<>("/ip_policy_rules", IpPolicyRuleList.class, IpPolicyRule.class, "ip_policy_rules", IpPolicyRuleList::getIpPolicyRules);
+
+    /**
+     * The {@link IpRestrictionList} list type.
+     */
+    public static final ListType<IpRestrictionList, IpRestriction> IP_RESTRICTION_LIST = new ListType<>("/ip_restrictions", IpRestrictionList.class, IpRestriction.class, "ip_restrictions", IpRestrictionList::getIpRestrictions);
+
+    /**
+     * The {@link ReservedAddrList} list type.
+     */
+    public static final ListType<ReservedAddrList, ReservedAddr> RESERVED_ADDR_LIST = new ListType<>("/reserved_addrs", ReservedAddrList.class, ReservedAddr.class, "reserved_addrs", ReservedAddrList::getReservedAddrs);
+
+    /**
+     * The {@link ReservedDomainList} list type.
+     */
+    public static final ListType<ReservedDomainList, ReservedDomain> RESERVED_DOMAIN_LIST = new ListType<>("/reserved_domains", ReservedDomainList.class, ReservedDomain.class, "reserved_domains", ReservedDomainList::getReservedDomains);
+
+    /**
+     * The {@link SshCertificateAuthorityList} list type.
+     */
+    public static final ListType<SshCertificateAuthorityList, SshCertificateAuthority> SSH_CERTIFICATE_AUTHORITY_LIST = new ListType<>("/ssh_certificate_authorities", SshCertificateAuthorityList.class, SshCertificateAuthority.class, "ssh_certificate_authorities", SshCertificateAuthorityList::getSshCertificateAuthorities);
+
+    /**
+     * The {@link SshCredentialList} list type.
+     */
+    public static final ListType<SshCredentialList, SshCredential> SSH_CREDENTIAL_LIST = new ListType<>("/ssh_credentials", SshCredentialList.class, SshCredential.class, "ssh_credentials", SshCredentialList::getSshCredentials);
+
+    /**
+     * The {@link SshHostCertificateList} list type.
+     */
+    public static final ListType<SshHostCertificateList, SshHostCertificate> SSH_HOST_CERTIFICATE_LIST = new ListType<>("/ssh_host_certificates", SshHostCertificateList.class, SshHostCertificate.class, "ssh_host_certificates", SshHostCertificateList::getSshHostCertificates);
+
+    /**
+     * The {@link SshUserCertificateList} list type.
+     */
+    public static final ListType<SshUserCertificateList, SshUserCertificate> SSH_USER_CERTIFICATE_LIST = new ListType<>("/ssh_user_certificates", SshUserCertificateList.class, SshUserCertificate.class, "ssh_user_certificates", SshUserCertificateList::getSshUserCertificates);
+
+    /**
+     * The {@link TcpEdgeList} list type.
+     */
+    public static final ListType<TcpEdgeList, TcpEdge> TCP_EDGE_LIST = new ListType<>("/edges/tcp", TcpEdgeList.class, TcpEdge.class, "tcp_edges", TcpEdgeList::getTcpEdges);
+
+    /**
+     * The {@link TlsCertificateList} list type.
+     */
+    public static final ListType<TlsCertificateList, TlsCertificate> TLS_CERTIFICATE_LIST = new ListType<>("/tls_certificates", TlsCertificateList.class, TlsCertificate.class, "tls_certificates", TlsCertificateList::getTlsCertificates);
+
+    /**
+     * The {@link TlsEdgeList} list type.
+     */
+    public static final ListType<TlsEdgeList, TlsEdge> TLS_EDGE_LIST = new ListType<>("/edges/tls", TlsEdgeList.class, TlsEdge.class, "tls_edges", TlsEdgeList::getTlsEdges);
+
+    /**
+     * The {@link TunnelGroupBackendList} list type.
+     */
+    public static final ListType<TunnelGroupBackendList, TunnelGroupBackend> TUNNEL_GROUP_BACKEND_LIST = new ListType<>("/backends/tunnel_group", TunnelGroupBackendList.class, TunnelGroupBackend.class, "backends", TunnelGroupBackendList::getBackends);
+
+    /**
+     * The {@link TunnelList} list type.
+     */
+    public static final ListType<TunnelList, Tunnel> TUNNEL_LIST = new ListType<>("/tunnels", TunnelList.class, Tunnel.class, "tunnels", TunnelList::getTunnels);
+
+    /**
+     * The {@link TunnelSessionList} list type.
+     */
+    public static final ListType<TunnelSessionList, TunnelSession> TUNNEL_SESSION_LIST = new ListType<>("/tunnel_sessions", TunnelSessionList.class, TunnelSession.class, "tunnel_sessions", TunnelSessionList::getTunnelSessions);
+
+    /**
+     * The {@link WeightedBackendList} list type.
+     */
+    public static final ListType<WeightedBackendList, WeightedBackend> WEIGHTED_BACKEND_LIST = new ListType<>("/backends/weighted", WeightedBackendList.class, WeightedBackend.class, "backends", WeightedBackendList::getBackends);
+
+    /**
+     * Every list type in the API.
+     */
+    public static final List<ListType<?, ?>> ALL = Collections.unmodifiableList(Arrays.asList(
+        AGENT_INGRESS_LIST,
+        API_KEY_LIST,
+        CERTIFICATE_AUTHORITY_LIST,
+        CREDENTIAL_LIST,
+        ENDPOINT_LIST,
+        EVENT_DESTINATION_LIST,
+        EVENT_SUBSCRIPTION_LIST,
+        FAILOVER_BACKEND_LIST,
+        HTTP_RESPONSE_BACKEND_LIST,
+        HTTPS_EDGE_LIST,
+        IP_POLICY_LIST,
+        IP_POLICY_RULE_LIST,
+        IP_RESTRICTION_LIST,
+        RESERVED_ADDR_LIST,
+        RESERVED_DOMAIN_LIST,
+        SSH_CERTIFICATE_AUTHORITY_LIST,
+        SSH_CREDENTIAL_LIST,
+        SSH_HOST_CERTIFICATE_LIST,
+        SSH_USER_CERTIFICATE_LIST,
+        TCP_EDGE_LIST,
+        TLS_CERTIFICATE_LIST,
+        TLS_EDGE_LIST,
+        TUNNEL_GROUP_BACKEND_LIST,
+        TUNNEL_LIST,
+        TUNNEL_SESSION_LIST,
+        WEIGHTED_BACKEND_LIST
+    ));
+
+    private final String endpoint;
+    private final Class<T> listClass;
+    private final Class<I> itemClass;
+    private final String itemsField;
+    private final Function<T, List<I>> items;
+
+    private ListType(final String endpoint, final Class<T> listClass, final Class<I> itemClass, final String itemsField, final Function<T, List<I>> items) {
+        this.endpoint = requireNonNull(endpoint, "endpoint is required");
+        this.listClass = requireNonNull(listClass, "listClass is required");
+        this.itemClass = requireNonNull(itemClass, "itemClass is required");
+        this.itemsField = requireNonNull(itemsField, "itemsField is required");
+        this.items = requireNonNull(items, "items is required");
+    }
+
+    /**
+     * Fetches the endpoint (under the base URI) of the first page of the list.
+     *
+     * @return an endpoint
+     */
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Fetches the class of the list.
+     *
+     * @return a list class
+     */
+    public Class<T> getListClass() {
+        return this.listClass;
+    }
+
+    /**
+     * Fetches the class of the items in the list.
+     *
+     * @return an item class
+     */
+    public Class<I> getItemClass() {
+        return this.itemClass;
+    }
+
+    /**
+     * Fetches the name of the JSON field holding the items of the list.
+     *
+     * @return a field name
+     */
+    public String getItemsField() {
+        return this.itemsField;
+    }
+
+    /**
+     * Fetches the items of a list page.
+     *
+     * @param list a list page
+     * @return the items on the page
+     */
+    public List<I> items(final T list) {
+        return this.items.apply(list);
+    }
+
+    /**
+     * Hands every item of a list, across all of its pages, to an action. Each page is read with
+     * {@link NgrokApiClient#streamList(String, Stream, ListType, Consumer)}, so clients that support it
+     * hand over each item as soon as it has been received.
+     *
+     * @param apiClient the API client to send the requests with
+     * @param queryParams the query parameters of the first page
+     * @param action the action to run on each item
+     * @return a future that completes once every page has been read; cancelling it cancels the
+     *         request for the page being read
+     */
+    public CompletionStage<Void> forEach(final NgrokApiClient apiClient,
+                                         final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                         final Consumer<? super I> action)
+    {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final AtomicReference<CompletableFuture<Optional<URI>>> current = new AtomicReference<>();
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(true);
+            }
+        });
+        forEachFrom(apiClient, apiClient.streamList(this.endpoint, queryParams, this, action), action, current, result);
+        return result;
+    }
+
+    private void forEachFrom(final NgrokApiClient apiClient,
+                             final CompletionStage<Optional<URI>> page,
+                             final Consumer<? super I> action,
+                             final AtomicReference<CompletableFuture<Optional<URI>>> current,
+                             final CompletableFuture<Void> result)
+    {
+        final CompletableFuture<Optional<URI>> pageFuture = page.toCompletableFuture();
+        current.set(pageFuture);
+        if (result.isCancelled()) {
+            pageFuture.cancel(true);
+        }
+        pageFuture.whenComplete((nextPageUri, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            } else if (nextPageUri.isPresent() && !result.isDone()) {
+                forEachFrom(apiClient, apiClient.streamList(nextPageUri.get(), this, action), action, current, result);
+            } else {
+                result.complete(null);
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "ListType{" +
+            "endpoint='" + this.endpoint +
+            "', listClass='" + this.listClass.getSimpleName() +
+            "', itemClass='" + this.itemClass.getSimpleName() +
+            "', itemsField='" + this.itemsField +
+            "'}";
+    }
+}
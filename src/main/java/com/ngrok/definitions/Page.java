@@ -1,10 +1,18 @@
 package com.ngrok.definitions;
 
 import com.ngrok.NgrokApiClient;
+import org.reactivestreams.Publisher;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Wrapper class that holds a single page of a {@link Pageable} response.
@@ -34,16 +42,94 @@ public class Page<T extends Pageable> {
     }
 
     /**
-     * Fetches the next page of responses, if any.
+     * Fetches the next page of responses, if any. Cancelling the returned future also cancels the
+     * request for the page.
      *
      * @return a future encapsulating a possible next page
      */
     @SuppressWarnings("unchecked")
     public CompletionStage<Optional<Page<T>>> next() {
         return page.getNextPageUri()
-            .map(nextPageUri -> apiClient.sendRequest(nextPageUri, (Class<T>) this.page.getClass())
-                .thenApply(nextPage -> Optional.of(new Page<>(this.apiClient, nextPage)))
-            )
+            .map(nextPageUri -> {
+                final CompletableFuture<T> response = apiClient.sendRequest(nextPageUri, (Class<T>) this.page.getClass()).toCompletableFuture();
+                final CompletableFuture<Optional<Page<T>>> nextPage = response.thenApply(nextPageBody -> Optional.of(new Page<>(this.apiClient, nextPageBody)));
+                nextPage.whenComplete((value, failure) -> {
+                    if (nextPage.isCancelled()) {
+                        response.cancel(true);
+                    }
+                });
+                return (CompletionStage<Optional<Page<T>>>) nextPage;
+            })
             .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()));
     }
+
+    /**
+     * Iterates lazily over the items on this page and on every page after it, fetching the next page
+     * in the background while the current one is consumed.
+     *
+     * @param items extracts the items from a page, like <code>TunnelList::getTunnels</code>
+     * @param <I> the type of the items
+     * @return an iterator over the items
+     */
+    public <I> Iterator<I> iterator(final Function<T, List<I>> items) {
+        return iterator(items, 1);
+    }
+
+    /**
+     * Iterates lazily over the items on this page and on every page after it, fetching up to
+     * <code>prefetch</code> pages in the background while the current one is consumed. Calls to
+     * {@link Iterator#hasNext()} block while waiting for a page, and throw if fetching it failed.
+     *
+     * @param items extracts the items from a page, like <code>TunnelList::getTunnels</code>
+     * @param prefetch the number of pages to fetch ahead, or zero to fetch each page only when needed
+     * @param <I> the type of the items
+     * @return an iterator over the items
+     */
+    public <I> Iterator<I> iterator(final Function<T, List<I>> items, final int prefetch) {
+        return new PageIterator<>(this, items, prefetch);
+    }
+
+    /**
+     * Streams lazily over the items on this page and on every page after it, fetching the next page
+     * in the background while the current one is consumed.
+     *
+     * @param items extracts the items from a page, like <code>TunnelList::getTunnels</code>
+     * @param <I> the type of the items
+     * @return a sequential stream of the items
+     */
+    public <I> Stream<I> stream(final Function<T, List<I>> items) {
+        return stream(items, 1);
+    }
+
+    /**
+     * Streams lazily over the items on this page and on every page after it, fetching up to
+     * <code>prefetch</code> pages in the background while the current one is consumed. Closing the
+     * stream abandons the pages fetched ahead.
+     *
+     * @param items extracts the items from a page, like <code>TunnelList::getTunnels</code>
+     * @param prefetch the number of pages to fetch ahead, or zero to fetch each page only when needed
+     * @param <I> the type of the items
+     * @return a sequential stream of the items
+     */
+    public <I> Stream<I> stream(final Function<T, List<I>> items, final int prefetch) {
+        final PageIterator<T, I> iterator = new PageIterator<>(this, items, prefetch);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(iterator::close);
+    }
+
+    /**
+     * Publishes the items on this page and on every page after it to a Reactive Streams subscriber.
+     * The next page is only requested once the items of the current page have been delivered and
+     * the subscriber signals demand for more, so at most one page is held in memory per
+     * subscription. Cancelling the subscription aborts the request for a page in flight.
+     *
+     * Every subscriber gets its own subscription, starting from this page.
+     *
+     * @param items extracts the items from a page, like <code>TunnelList::getTunnels</code>
+     * @param <I> the type of the items
+     * @return a publisher of the items
+     */
+    public <I> Publisher<I> publisher(final Function<T, List<I>> items) {
+        return new PagePublisher<>(this, items);
+    }
 }
@@ -0,0 +1,102 @@
+package com.ngrok.definitions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Iterator over the items of a page and of every page after it.
+ *
+ * Up to <code>prefetch</code> pages are requested ahead of the page being consumed. Each page is
+ * requested as soon as the page before it has arrived, so the iterator only blocks when it catches up
+ * with the pages in flight.
+ *
+ * @param <T> the type of the pages
+ * @param <I> the type of the items on a page
+ */
+final class PageIterator<T extends Pageable, I> implements Iterator<I>, AutoCloseable {
+    private final Function<T, List<I>> items;
+    private final int prefetch;
+    private final Deque<CompletableFuture<Optional<Page<T>>>> ahead = new ArrayDeque<>();
+    private CompletionStage<Optional<Page<T>>> lastRequested;
+    private Iterator<I> current;
+    private boolean exhausted = false;
+
+    PageIterator(final Page<T> first, final Function<T, List<I>> items, final int prefetch) {
+        if (prefetch < 0) {
+            throw new IllegalArgumentException("prefetch must not be negative");
+        }
+        this.items = items;
+        this.prefetch = prefetch;
+        this.lastRequested = CompletableFuture.completedFuture(Optional.of(first));
+        this.current = items.apply(first.getPage()).iterator();
+        fill();
+    }
+
+    private void requestNext() {
+        this.lastRequested = this.lastRequested.thenCompose(maybePage -> maybePage
+            .map(Page::next)
+            .orElseGet(() -> CompletableFuture.completedFuture(Optional.empty()))
+        );
+        this.ahead.add(this.lastRequested.toCompletableFuture());
+    }
+
+    private void fill() {
+        while (this.ahead.size() < this.prefetch) {
+            requestNext();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!this.current.hasNext()) {
+            if (this.exhausted) {
+                return false;
+            }
+            if (this.ahead.isEmpty()) {
+                requestNext();
+            }
+            final CompletableFuture<Optional<Page<T>>> nextPage = this.ahead.poll();
+            fill();
+
+            final Optional<Page<T>> page;
+            try {
+                page = nextPage.join();
+            } catch (final CompletionException e) {
+                close();
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+            if (!page.isPresent()) {
+                close();
+                return false;
+            }
+            this.current = this.items.apply(page.get().getPage()).iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public I next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.current.next();
+    }
+
+    /**
+     * Stops iterating and abandons any pages requested ahead.
+     */
+    @Override
+    public void close() {
+        this.exhausted = true;
+        this.ahead.forEach(future -> future.cancel(true));
+        this.ahead.clear();
+    }
+}
@@ -0,0 +1,156 @@
+package com.ngrok.definitions;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reactive Streams publisher of the items of a page and of every page after it.
+ *
+ * @param <T> the type of the pages
+ * @param <I> the type of the items on a page
+ */
+final class PagePublisher<T extends Pageable, I> implements Publisher<I> {
+    private final Page<T> first;
+    private final Function<T, List<I>> items;
+
+    PagePublisher(final Page<T> first, final Function<T, List<I>> items) {
+        this.first = first;
+        this.items = items;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super I> subscriber) {
+        requireNonNull(subscriber, "subscriber is required");
+        final PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * Delivers items as demand allows, from a single thread at a time. Whichever thread signals demand
+     * or completes a page request takes over the delivery loop if no other thread holds it, and
+     * otherwise leaves a note for the thread that does.
+     */
+    private final class PageSubscription implements Subscription {
+        private final Subscriber<? super I> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private Page<T> page;
+        private Iterator<I> current;
+        private boolean done = false;
+        private volatile boolean cancelled = false;
+        private volatile CompletableFuture<Optional<Page<T>>> pending = null;
+        private volatile Optional<Page<T>> arrived = null;
+        private volatile Throwable failure = null;
+
+        private PageSubscription(final Subscriber<? super I> subscriber) {
+            this.subscriber = subscriber;
+            this.page = PagePublisher.this.first;
+            this.current = PagePublisher.this.items.apply(this.page.getPage()).iterator();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                this.failure = new IllegalArgumentException("a subscriber must request a positive number of items");
+            } else {
+                this.demand.getAndUpdate(requested -> requested + n < 0 ? Long.MAX_VALUE : requested + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            final CompletableFuture<Optional<Page<T>>> request = this.pending;
+            if (request != null) {
+                request.cancel(true);
+            }
+        }
+
+        private void drain() {
+            if (this.work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                deliver();
+                missed = this.work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            while (!this.done && !this.cancelled) {
+                final Throwable error = this.failure;
+                if (error != null) {
+                    this.done = true;
+                    this.subscriber.onError(error);
+                    return;
+                }
+                if (this.current.hasNext()) {
+                    if (this.demand.get() == 0) {
+                        return;
+                    }
+                    final I item = this.current.next();
+                    this.demand.getAndUpdate(requested -> requested == Long.MAX_VALUE ? requested : requested - 1);
+                    this.subscriber.onNext(item);
+                    continue;
+                }
+
+                final Optional<Page<T>> nextPage = this.arrived;
+                if (nextPage != null) {
+                    this.arrived = null;
+                    this.pending = null;
+                    if (!nextPage.isPresent()) {
+                        this.done = true;
+                        this.subscriber.onComplete();
+                        return;
+                    }
+                    this.page = nextPage.get();
+                    this.current = PagePublisher.this.items.apply(this.page.getPage()).iterator();
+                    continue;
+                }
+                if (this.pending != null) {
+                    return;
+                }
+                if (!this.page.getPage().getNextPageUri().isPresent()) {
+                    this.done = true;
+                    this.subscriber.onComplete();
+                    return;
+                }
+                if (this.demand.get() == 0) {
+                    return;
+                }
+
+                final CompletableFuture<Optional<Page<T>>> request = this.page.next().toCompletableFuture();
+                this.pending = request;
+                if (this.cancelled) {
+                    request.cancel(true);
+                    return;
+                }
+                request.whenComplete((value, requestFailure) -> {
+                    if (requestFailure != null) {
+                        this.failure = requestFailure instanceof CompletionException && requestFailure.getCause() != null
+                            ? requestFailure.getCause()
+                            : requestFailure;
+                    } else {
+                        this.arrived = value;
+                    }
+                    drain();
+                });
+            }
+        }
+    }
+}
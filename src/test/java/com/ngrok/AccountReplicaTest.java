@@ -0,0 +1,97 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccountReplicaTest extends TestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private static Tunnel tunnel(final String id, final OffsetDateTime startedAt, final String label) {
+        return new Tunnel(
+            id,
+            URI.create("https://" + id + ".ngrok.io"),
+            startedAt,
+            "",
+            "https",
+            "us",
+            new Ref("ts_1", URI.create("https://api.ngrok.com/tunnel_sessions/ts_1")),
+            Optional.empty(),
+            Collections.singletonMap("app", label),
+            Optional.empty(),
+            "http://localhost:80"
+        );
+    }
+
+    private void stubEmptyList(final String endpoint, final String field) {
+        wireMock.stubFor(
+            get(urlPathEqualTo(endpoint))
+                .willReturn(okJson("{\"" + field + "\":[],\"uri\":\"https://api.ngrok.com" + endpoint + "\"}"))
+        );
+    }
+
+    @BeforeEach
+    public void stubLists() throws JsonProcessingException {
+        wireMock.resetAll();
+        final OffsetDateTime now = OffsetDateTime.parse("2022-01-01T00:00:00Z");
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .withQueryParam("before_id", absent())
+                .willReturn(ok(MAPPER.writeValueAsString(new TunnelList(
+                    Collections.singletonList(tunnel("tn_2", now, "web")),
+                    URI.create("https://api.ngrok.com/tunnels"),
+                    Optional.of(wireMock.getBaseUri().resolve("/tunnels?before_id=tn_2"))
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .withQueryParam("before_id", equalTo("tn_2"))
+                .willReturn(ok(MAPPER.writeValueAsString(new TunnelList(
+                    Collections.singletonList(tunnel("tn_1", now.minusHours(1), "api")),
+                    URI.create("https://api.ngrok.com/tunnels"),
+                    Optional.empty()
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        stubEmptyList("/endpoints", "endpoints");
+        stubEmptyList("/tunnel_sessions", "tunnel_sessions");
+        stubEmptyList("/reserved_domains", "reserved_domains");
+        stubEmptyList("/reserved_addrs", "reserved_addrs");
+    }
+
+    @Test
+    public void testRefreshIndexesAndOnlyReadsNewHead() {
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+        try (final AccountReplica replica = ngrok.replica().fullResyncInterval(Duration.ofHours(1)).build()) {
+            assertThat(replica.view().getTunnels()).isEmpty();
+
+            final AccountReplica.View view = replica.refresh().toCompletableFuture().join();
+            assertThat(view.getTunnels()).extracting(Tunnel::getId).containsExactly("tn_2", "tn_1");
+            assertThat(view.getTunnelsWithLabel("app", "api")).extracting(Tunnel::getId).containsExactly("tn_1");
+            assertThat(view.getTunnelByPublicUrl(URI.create("https://tn_2.ngrok.io"))).isPresent();
+            assertThat(view.getTunnelsInRegion("eu")).isEmpty();
+            wireMock.verify(2, getRequestedFor(urlPathEqualTo("/tunnels")));
+
+            replica.refresh().toCompletableFuture().join();
+            assertThat(replica.view().getTunnels()).extracting(Tunnel::getId).containsExactly("tn_2", "tn_1");
+            wireMock.verify(3, getRequestedFor(urlPathEqualTo("/tunnels")));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.ApiKey;
+import com.ngrok.definitions.ApiKeyList;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.NgrokApiError;
+import com.ngrok.definitions.Pageable;
+import com.ngrok.definitions.TunnelList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccountSnapshotTest extends ApiKeyTestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    @BeforeEach
+    public void stubLists() throws JsonProcessingException {
+        wireMock.resetAll();
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys"))
+                .withQueryParam("before_id", absent())
+                .willReturn(ok(MAPPER.writeValueAsString(new ApiKeyList(
+                    Collections.singletonList(API_KEY_NO_TOKEN),
+                    URI.create("https://api.ngrok.com/api_keys"),
+                    Optional.of(wireMock.getBaseUri().resolve("/api_keys?before_id=" + API_KEY.getId()))
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys"))
+                .withQueryParam("before_id", equalTo(API_KEY.getId()))
+                .willReturn(ok(MAPPER.writeValueAsString(new ApiKeyList(
+                    Collections.singletonList(API_KEY_NO_TOKEN),
+                    URI.create("https://api.ngrok.com/api_keys"),
+                    Optional.empty()
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .willReturn(ok(MAPPER.writeValueAsString(new TunnelList(
+                    Collections.emptyList(),
+                    URI.create("https://api.ngrok.com/tunnels"),
+                    Optional.empty()
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    @Test
+    public void testSnapshotListsEveryType() throws InterruptedException {
+        final AccountSnapshot snapshot = ngrok.snapshot()
+            .types(ListType.API_KEY_LIST, ListType.TUNNEL_LIST)
+            .maxConcurrency(1)
+            .limit("1")
+            .blockingCall();
+
+        assertThat(snapshot.getTypes()).containsExactly(ListType.API_KEY_LIST, ListType.TUNNEL_LIST);
+        assertThat(snapshot.get(ListType.API_KEY_LIST)).extracting(ApiKey::getId).containsExactly(API_KEY.getId(), API_KEY.getId());
+        assertThat(snapshot.get(ListType.TUNNEL_LIST)).isEmpty();
+        assertThat(snapshot.getTiming(ListType.API_KEY_LIST).getPageCount()).isEqualTo(2);
+        assertThat(snapshot.getTiming(ListType.TUNNEL_LIST).getItemCount()).isZero();
+        assertThrows(IllegalArgumentException.class, () -> snapshot.get(ListType.ENDPOINT_LIST));
+        wireMock.verify(getRequestedFor(urlPathEqualTo("/tunnels")).withQueryParam("limit", equalTo("1")));
+    }
+
+    @Test
+    public void testSnapshotFailsWithAnyType() {
+        assertThrows(NgrokApiError.class, () -> ngrok.snapshot()
+            .types(ListType.TUNNEL_LIST, ListType.ENDPOINT_LIST)
+            .blockingCall()
+        );
+    }
+
+    @Test
+    public void testFailedSnapshotCancelsListingsInFlight() {
+        final CompletableFuture<Optional<URI>> tunnels = new CompletableFuture<>();
+        final NgrokApiClient apiClient = new NgrokApiClient() {
+            @Override
+            public <O> CompletionStage<O> sendRequest(final URI uri, final Class<O> responseClass) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <O> CompletionStage<O> sendRequest(final HttpMethod method,
+                                                      final String endpoint,
+                                                      final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                                      final Stream<Map.Entry<String, Optional<Object>>> bodyParams,
+                                                      final Optional<Class<O>> responseClass)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T extends Pageable, I> CompletionStage<Optional<URI>> streamList(final String endpoint,
+                                                                                     final Stream<Map.Entry<String, Optional<Object>>> queryParams,
+                                                                                     final ListType<T, I> listType,
+                                                                                     final Consumer<? super I> action)
+            {
+                if (listType == ListType.TUNNEL_LIST) {
+                    return tunnels;
+                }
+                final CompletableFuture<Optional<URI>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new NgrokApiError(500));
+                return failed;
+            }
+        };
+
+        assertThrows(NgrokApiError.class, () -> new Ngrok(apiClient).snapshot()
+            .types(ListType.TUNNEL_LIST, ListType.ENDPOINT_LIST)
+            .blockingCall()
+        );
+        assertThat(tunnels).isCancelled();
+    }
+}
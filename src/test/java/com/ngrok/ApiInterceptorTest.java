@@ -0,0 +1,214 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.NgrokApiError;
+import com.ngrok.definitions.TunnelList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ApiInterceptorTest extends TestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    @Test
+    public void testInterceptorsRunInOrderAndCanSetHeaders() throws InterruptedException {
+        wireMock.stubFor(post(urlPathEqualTo("/tunnel_sessions/ts_1/restart")).willReturn(noContent()));
+        final List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    seen.add("outer " + invocation.getMethod() + " " + invocation.getEndpointTemplate());
+                    return invocation.withHeader("traceparent", "00-trace-span-01").proceed();
+                }
+            })
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    seen.add("inner " + invocation.getHeaders().get("traceparent"));
+                    return invocation.proceed();
+                }
+            })
+            .build());
+
+        ngrok.tunnelSessions().restart("ts_1").blockingCall();
+
+        assertThat(seen).containsExactly("outer POST /tunnel_sessions/{id}/restart", "inner 00-trace-span-01");
+        wireMock.verify(postRequestedFor(urlPathEqualTo("/tunnel_sessions/ts_1/restart"))
+            .withHeader("traceparent", equalTo("00-trace-span-01")));
+    }
+
+    @Test
+    public void testInterceptorHeadersReplaceTheClientHeaders() throws InterruptedException {
+        wireMock.stubFor(post(urlPathEqualTo("/tunnel_sessions/ts_1/restart")).willReturn(noContent()));
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    return invocation.withHeader("authorization", "Bearer rotated").proceed();
+                }
+            })
+            .build());
+
+        ngrok.tunnelSessions().restart("ts_1").blockingCall();
+
+        assertThat(wireMock.getAllServeEvents()).hasSize(1);
+        assertThat(wireMock.getAllServeEvents().get(0).getRequest().getHeaders().getHeader("Authorization").values())
+            .containsExactly("Bearer rotated");
+    }
+
+    @Test
+    public void testStreamedListPagesAreIntercepted() throws JsonProcessingException {
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels"))
+            .withQueryParam("before_id", absent())
+            .willReturn(okJson(MAPPER.writeValueAsString(new TunnelList(
+                Collections.emptyList(),
+                URI.create("https://api.ngrok.com/tunnels"),
+                Optional.of(wireMock.getBaseUri().resolve("/tunnels?before_id=tn_1"))
+            )))));
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels"))
+            .withQueryParam("before_id", equalTo("tn_1"))
+            .willReturn(okJson(MAPPER.writeValueAsString(new TunnelList(
+                Collections.emptyList(),
+                URI.create("https://api.ngrok.com/tunnels"),
+                Optional.empty()
+            )))));
+        final List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    seen.add(invocation.getMethod() + " " + invocation.getEndpointTemplate());
+                    return invocation.withHeader("Authorization", "Bearer rotated").proceed();
+                }
+            })
+            .build());
+
+        ngrok.forEach(ListType.TUNNEL_LIST, tunnel -> { }).toCompletableFuture().join();
+
+        assertThat(seen).containsExactly("GET /tunnels", "GET /tunnels");
+        assertThat(wireMock.getAllServeEvents()).hasSize(2).allSatisfy(event ->
+            assertThat(event.getRequest().getHeaders().getHeader("Authorization").values()).containsExactly("Bearer rotated"));
+    }
+
+    @Test
+    public void testCallsWithDifferentInterceptorHeadersAreNotShared() throws InterruptedException {
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1")).willReturn(okJson("{}").withFixedDelay(200)));
+        final AtomicInteger calls = new AtomicInteger();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .coalesceGets(true)
+            .responseCache(ResponseCache.newBuilder().build())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    return invocation.withHeader("Authorization", "Bearer tenant-" + calls.incrementAndGet() % 2).proceed();
+                }
+            })
+            .build());
+
+        final CompletableFuture<?> first = ngrok.tunnels().get("tn_1").call().toCompletableFuture();
+        final CompletableFuture<?> second = ngrok.tunnels().get("tn_1").call().toCompletableFuture();
+        CompletableFuture.allOf(first, second).join();
+        ngrok.tunnels().get("tn_1").blockingCall();
+
+        wireMock.verify(3, getRequestedFor(urlPathEqualTo("/tunnels/tn_1")));
+    }
+
+    @Test
+    public void testInterceptorsCanShortCircuitAndRetry() throws InterruptedException {
+        wireMock.stubFor(post(urlPathEqualTo("/tunnel_sessions/ts_1/restart")).willReturn(aResponse().withStatus(503)));
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    if (invocation.getEndpoint().endsWith("/stop")) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return invocation.proceed().handle((result, failure) -> invocation).thenCompose(ApiInvocation::proceed);
+                }
+            })
+            .build());
+
+        ngrok.tunnelSessions().stop("ts_1").blockingCall();
+        final CompletableFuture<Void> restart = ngrok.tunnelSessions().restart("ts_1").call().toCompletableFuture();
+
+        assertThat(restart).hasFailedWithThrowableThat().isInstanceOf(NgrokApiError.class);
+        wireMock.verify(0, postRequestedFor(urlPathEqualTo("/tunnel_sessions/ts_1/stop")));
+        wireMock.verify(2, postRequestedFor(urlPathEqualTo("/tunnel_sessions/ts_1/restart")));
+    }
+
+    @Test
+    public void testCancellingAnInterceptedCallAbortsTheRequest() {
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1")).willReturn(ok("{}").withFixedDelay(5000)));
+        final AtomicReference<CompletionStage<?>> sent = new AtomicReference<>();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    return invocation.proceed().thenApply(result -> result);
+                }
+            })
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    final CompletionStage<O> result = invocation.proceed();
+                    sent.set(result);
+                    return result;
+                }
+            })
+            .build());
+
+        final CompletableFuture<?> call = ngrok.tunnels().get("tn_1").call().toCompletableFuture();
+        call.cancel(true);
+
+        assertThat(sent.get().toCompletableFuture()).failsWithin(Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void testCancellingAHandledCallAbortsTheRequest() {
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1")).willReturn(ok("{}").withFixedDelay(5000)));
+        final AtomicReference<CompletionStage<?>> sent = new AtomicReference<>();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .interceptor(new ApiInterceptor() {
+                @Override
+                public <O> CompletionStage<O> intercept(final ApiInvocation<O> invocation) {
+                    final CompletionStage<O> result = invocation.proceed();
+                    sent.set(result);
+                    return result;
+                }
+            })
+            .build());
+
+        final CompletableFuture<?> call = ngrok.tunnels().get("tn_1").call()
+            .whenComplete((tunnel, failure) -> { })
+            .handle((tunnel, failure) -> tunnel)
+            .exceptionally(failure -> null)
+            .toCompletableFuture();
+        call.cancel(true);
+
+        assertThat(sent.get().toCompletableFuture()).failsWithin(Duration.ofSeconds(2));
+    }
+}
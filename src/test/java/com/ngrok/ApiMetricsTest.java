@@ -0,0 +1,64 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.HttpHeaderNames;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.Collections;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+public class ApiMetricsTest extends TestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    @Test
+    public void testExchangesAreRecordedByTemplate() throws InterruptedException {
+        wireMock.stubFor(
+            post(urlPathMatching("/tunnel_sessions/.*/restart"))
+                .willReturn(noContent())
+        );
+        wireMock.stubFor(
+            post(urlPathEqualTo("/tunnel_sessions/ts_missing/restart"))
+                .willReturn(aResponse().withStatus(404)
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                    .withBody("{\"error_code\":\"ERR_NGROK_404\",\"status_code\":404,\"msg\":\"not found\",\"details\":{}}"))
+        );
+        final ApiMetrics metrics = new ApiMetrics();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .metrics(metrics)
+            .build());
+
+        ngrok.tunnelSessions().restart("ts_1").blockingCall();
+        ngrok.tunnelSessions().restart("ts_2").blockingCall();
+        assertThatThrownBy(() -> ngrok.tunnelSessions().restart("ts_missing").blockingCall());
+
+        assertThat(metrics.getOperations()).hasSize(1);
+        final ApiMetrics.Operation restart = metrics.getOperation(NgrokApiClient.HttpMethod.POST, "/tunnel_sessions/{id}/restart").get();
+        assertThat(restart.getLatency().getCount()).isEqualTo(3);
+        assertThat(restart.getLatency().getMaxNanos()).isPositive();
+        assertThat(restart.getStatusCounts()).containsOnly(entry(204, 2L), entry(404, 1L));
+        assertThat(restart.getErrorCodeCounts()).isEqualTo(Collections.singletonMap("ERR_NGROK_404", 1L));
+        assertThat(restart.getResponseBytes()).isPositive();
+        assertThat(metrics.getRequestCounts()).containsOnly(entry("POST /tunnel_sessions/{id}/restart", 3L));
+    }
+
+    @Test
+    public void testHistogramPercentilesAreWithinPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(500_000_000L, 516_000_000L);
+        assertThat(histogram.getValueAtPercentile(99)).isBetween(990_000_000L, 1_000_000_000L);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1_000_000_000L);
+        assertThat(histogram.getMeanNanos()).isEqualTo(500_500_000.0);
+    }
+}
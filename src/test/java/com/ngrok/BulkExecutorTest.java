@@ -0,0 +1,79 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkExecutorTest {
+    @Test
+    public void testResultsAndFailuresAreCollectedByIndex() {
+        final List<BulkExecutor.Progress> reports = new ArrayList<>();
+        final BulkExecutor.Result<Integer> result = BulkExecutor.newBuilder()
+            .progressListener(reports::add)
+            .build()
+            .execute(IntStream.range(0, 10).boxed(), i -> {
+                final CompletableFuture<Integer> call = new CompletableFuture<>();
+                if (i % 4 == 0) {
+                    call.completeExceptionally(new IllegalStateException("call " + i + " failed"));
+                } else {
+                    call.complete(i * i);
+                }
+                return call;
+            })
+            .toCompletableFuture().join();
+
+        assertThat(result.getSuccesses()).containsOnlyKeys(1, 2, 3, 5, 6, 7, 9).containsEntry(3, 9);
+        assertThat(result.getFailures()).containsOnlyKeys(0, 4, 8);
+        assertThat(result.getFailures().get(4)).hasMessage("call 4 failed");
+        assertThat(result.isSuccessful()).isFalse();
+        assertThat(result.getProgress().getCompletedCount()).isEqualTo(10);
+        assertThat(reports).last().isSameAs(result.getProgress());
+    }
+
+    @Test
+    public void testConcurrencyIsBoundedAndSubmissionOrderKept() {
+        final List<CompletableFuture<Integer>> calls = IntStream.range(0, 6).mapToObj(i -> new CompletableFuture<Integer>()).collect(Collectors.toList());
+        final AtomicInteger started = new AtomicInteger();
+        final List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        final CompletionStage<BulkExecutor.Result<Integer>> result = BulkExecutor.newBuilder()
+            .maxConcurrency(2)
+            .ordering(BulkExecutor.Ordering.SUBMISSION)
+            .build()
+            .execute(calls.stream().map(call -> (Supplier<CompletionStage<Integer>>) () -> {
+                started.incrementAndGet();
+                return call;
+            }), new BulkExecutor.Listener<Integer>() {
+                @Override
+                public void onSuccess(final int index, final Integer value) {
+                    delivered.add(index);
+                }
+
+                @Override
+                public void onFailure(final int index, final Throwable error) {
+                    delivered.add(index);
+                }
+            });
+
+        assertThat(started).hasValue(2);
+        calls.get(1).complete(1);
+        assertThat(started).hasValue(3);
+        assertThat(delivered).isEmpty();
+        calls.get(0).complete(0);
+        assertThat(delivered).containsExactly(0, 1);
+        for (int i = 5; i >= 2; i--) {
+            calls.get(i).complete(i);
+        }
+        assertThat(result.toCompletableFuture().join().getSuccesses()).hasSize(6);
+        assertThat(delivered).containsExactly(0, 1, 2, 3, 4, 5);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.ReservedDomain;
+import com.ngrok.definitions.ReservedDomainCertJob;
+import com.ngrok.definitions.ReservedDomainCertPolicy;
+import com.ngrok.definitions.ReservedDomainCertStatus;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CertificateTrackerTest extends TestBase {
+    private static final OffsetDateTime NOW = OffsetDateTime.now();
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    private static ReservedDomain domain(final String id, final Optional<Ref> certificate, final Optional<ReservedDomainCertJob> job) {
+        return new ReservedDomain(
+            id,
+            URI.create("https://api.ngrok.com/reserved_domains/" + id),
+            NOW,
+            "",
+            "",
+            id + ".example.com",
+            "us",
+            Optional.empty(),
+            certificate,
+            Optional.of(new ReservedDomainCertPolicy("letsencrypt", "ecdsa")),
+            Optional.of(new ReservedDomainCertStatus(Optional.empty(), job)),
+            Optional.empty()
+        );
+    }
+
+    private void stubDomain(final String id, final String state, final String nextState, final ReservedDomain domain) throws JsonProcessingException {
+        wireMock.stubFor(
+            get(urlPathEqualTo("/reserved_domains/" + id))
+                .inScenario(id).whenScenarioStateIs(state).willSetStateTo(nextState)
+                .willReturn(ok(MAPPER.writeValueAsString(domain)).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+    }
+
+    @BeforeEach
+    public void stubDomains() throws JsonProcessingException {
+        wireMock.resetAll();
+        final ReservedDomainCertJob retrying = new ReservedDomainCertJob(Optional.of("INTERNAL_ERROR"), "retrying", NOW, Optional.of(NOW));
+        stubDomain("rd_1", Scenario.STARTED, "retrying", domain("rd_1", Optional.empty(), Optional.empty()));
+        stubDomain("rd_1", "retrying", "issued", domain("rd_1", Optional.empty(), Optional.of(retrying)));
+        stubDomain("rd_1", "issued", "issued", domain("rd_1", Optional.of(new Ref("cert_1", URI.create("https://api.ngrok.com/tls_certificates/cert_1"))), Optional.empty()));
+        final ReservedDomainCertJob dnsError = new ReservedDomainCertJob(Optional.of("DNS_ERROR"), "CNAME record missing", NOW, Optional.empty());
+        stubDomain("rd_2", Scenario.STARTED, Scenario.STARTED, domain("rd_2", Optional.empty(), Optional.of(dnsError)));
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    @Test
+    public void testDomainsCompleteWhenIssuedOrFailed() throws Exception {
+        try (final CertificateTracker tracker = ngrok.certificateTracker()
+            .minDelay(Duration.ofMillis(10))
+            .maxDelay(Duration.ofMillis(50))
+            .build()) {
+            final CompletableFuture<ReservedDomain> issued = tracker.track("rd_1").toCompletableFuture();
+            final CompletableFuture<ReservedDomain> failed = tracker.track("rd_2").toCompletableFuture();
+
+            assertThat(tracker.track("rd_1")).isSameAs(issued);
+            assertThat(issued.get(5, TimeUnit.SECONDS).getCertificate()).map(Ref::getId).contains("cert_1");
+            assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(CertificateProvisioningException.class)
+                .hasMessageContaining("CNAME record missing");
+            assertThat(tracker.getPendingCount()).isZero();
+            wireMock.verify(3, getRequestedFor(urlPathEqualTo("/reserved_domains/rd_1")));
+            wireMock.verify(1, getRequestedFor(urlPathEqualTo("/reserved_domains/rd_2")));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CidrSetTest {
+    @Test
+    public void testAdjacentAndOverlappingCidrsAreMerged() {
+        final CidrSet cidrs = new CidrSet();
+        cidrs.add("10.0.0.0/25");
+        cidrs.add("10.0.0.128/25");
+        cidrs.add("10.0.0.7");
+        cidrs.add("10.0.1.0/24");
+        cidrs.add("192.168.1.9/24");
+        cidrs.add("2001:db8::/33");
+        cidrs.add("2001:db8:8000::/33");
+
+        assertThat(cidrs.getRangeCount()).isEqualTo(3);
+        assertThat(cidrs.toCidrs()).containsExactly("10.0.0.0/23", "192.168.1.0/24", "2001:db8:0:0:0:0:0:0/32");
+    }
+
+    @Test
+    public void testRangesAreSplitIntoAlignedCidrs() {
+        final CidrSet cidrs = new CidrSet();
+        cidrs.add("10.0.0.1");
+        cidrs.add("10.0.0.2/31");
+        cidrs.add("10.0.0.4/30");
+
+        assertThat(cidrs.toCidrs()).containsExactly("10.0.0.1/32", "10.0.0.2/31", "10.0.0.4/30");
+    }
+
+    @Test
+    public void testFeedsSkipCommentsAndReportInvalidLines() throws IOException {
+        final CidrSet cidrs = new CidrSet();
+        final List<Long> invalidLines = new ArrayList<>();
+        final long added = cidrs.addAll(
+            new StringReader("# blocklist\n\n1.2.3.4 ; SBL1\n  1.2.3.5\tsomething\nnot-an-ip\n1.2.3.6/31\n"),
+            (lineNumber, error) -> invalidLines.add(lineNumber)
+        );
+
+        assertThat(added).isEqualTo(3);
+        assertThat(invalidLines).containsExactly(5L);
+        assertThat(cidrs.toCidrs()).containsExactly("1.2.3.4/30");
+    }
+
+    @Test
+    public void testCanonicalClearsHostBits() {
+        assertThat(CidrSet.canonical("10.1.2.3/8")).isEqualTo("10.0.0.0/8");
+        assertThat(CidrSet.canonical("2001:db8::1/32")).isEqualTo("2001:db8:0:0:0:0:0:0/32");
+    }
+}
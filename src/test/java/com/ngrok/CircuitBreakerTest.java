@@ -0,0 +1,95 @@
+package com.ngrok;
+
+import com.ngrok.definitions.EndpointCircuitBreaker;
+import com.ngrok.definitions.NgrokApiError;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest extends TestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    @Test
+    public void testFailingEndpointFamilyOpensItsCircuitOnly() throws InterruptedException {
+        wireMock.stubFor(delete(urlPathMatching("/edges/https/.*")).willReturn(aResponse().withStatus(503)));
+        wireMock.stubFor(post(urlPathEqualTo("/tunnel_sessions/ts_1/restart")).willReturn(noContent()));
+        final List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+        final CircuitBreaker breaker = CircuitBreaker.newBuilder()
+            .volumeThreshold(2)
+            .errorThresholdPercentage(0.5)
+            .trippedDuration(Duration.ofMinutes(1))
+            .listener((template, from, to) -> transitions.add(template + " " + from + " " + to))
+            .build();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .circuitBreaker(breaker)
+            .build());
+
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_1").blockingCall()).isInstanceOf(NgrokApiError.class);
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_2").blockingCall()).isInstanceOf(NgrokApiError.class);
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_3").blockingCall())
+            .isInstanceOf(CircuitOpenException.class)
+            .satisfies(e -> assertThat(((CircuitOpenException) e).getEndpointTemplate()).isEqualTo("/edges/https/{id}"));
+        ngrok.tunnelSessions().restart("ts_1").blockingCall();
+
+        wireMock.verify(2, deleteRequestedFor(urlPathMatching("/edges/https/.*")));
+        assertThat(breaker.getState("/edges/https/{id}")).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getState("/tunnel_sessions/{id}/restart")).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly("/edges/https/{id} CLOSED OPEN");
+    }
+
+    @Test
+    public void testUnsetModuleSettingsKeepTheDefaults() throws InterruptedException {
+        wireMock.stubFor(delete(urlPathMatching("/edges/https/.*")).willReturn(aResponse().withStatus(503)));
+        final CircuitBreaker breaker = CircuitBreaker.newBuilder()
+            .settings(EndpointCircuitBreaker.newBuilder()
+                .volumeThreshold(2)
+                .errorThresholdPercentage(0.5)
+                .build())
+            .build();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .circuitBreaker(breaker)
+            .build());
+
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_1").blockingCall()).isInstanceOf(NgrokApiError.class);
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_2").blockingCall()).isInstanceOf(NgrokApiError.class);
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_3").blockingCall())
+            .isInstanceOf(CircuitOpenException.class)
+            .satisfies(e -> assertThat(((CircuitOpenException) e).getRetryAfter()).isPositive());
+
+        wireMock.verify(2, deleteRequestedFor(urlPathMatching("/edges/https/.*")));
+    }
+
+    @Test
+    public void testSuccessfulTrialClosesTheCircuit() throws InterruptedException {
+        wireMock.stubFor(delete(urlPathEqualTo("/edges/https/edghts_1")).willReturn(aResponse().withStatus(503)));
+        wireMock.stubFor(delete(urlPathEqualTo("/edges/https/edghts_2")).willReturn(noContent()));
+        final List<CircuitBreaker.State> states = Collections.synchronizedList(new ArrayList<>());
+        final CircuitBreaker breaker = CircuitBreaker.newBuilder()
+            .volumeThreshold(1)
+            .trippedDuration(Duration.ofMillis(100))
+            .listener((template, from, to) -> states.add(to))
+            .build();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .circuitBreaker(breaker)
+            .build());
+
+        assertThatThrownBy(() -> ngrok.edges().https().delete("edghts_1").blockingCall()).isInstanceOf(NgrokApiError.class);
+        Thread.sleep(200);
+        ngrok.edges().https().delete("edghts_2").blockingCall();
+
+        assertThat(states).containsExactly(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED);
+    }
+}
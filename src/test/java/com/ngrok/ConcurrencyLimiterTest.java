@@ -0,0 +1,78 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyLimiterTest {
+    @Test
+    public void testQueuesThenRejects() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+            .algorithm(new ConcurrencyLimiter.Aimd(1, 1, 1, 0.5, Duration.ofSeconds(1)))
+            .maxQueueSize(1)
+            .build();
+
+        final CompletableFuture<ConcurrencyLimiter.Permit> first = limiter.acquire().toCompletableFuture();
+        final CompletableFuture<ConcurrencyLimiter.Permit> second = limiter.acquire().toCompletableFuture();
+        final CompletableFuture<ConcurrencyLimiter.Permit> third = limiter.acquire().toCompletableFuture();
+
+        assertThat(first).isCompleted();
+        assertThat(second).isNotDone();
+        assertThat(third).hasFailedWithThrowableThat().isInstanceOf(RequestRejectedException.class);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getQueueDepth()).isEqualTo(1);
+        assertThat(limiter.getRejectionCount()).isEqualTo(1);
+
+        first.join().release(false);
+
+        assertThat(second).isCompleted();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getQueueDepth()).isZero();
+    }
+
+    @Test
+    public void testCancelledWaitersLeaveTheQueue() {
+        final ConcurrencyLimiter.Aimd aimd = new ConcurrencyLimiter.Aimd(1, 1, 20, 0.5, Duration.ofSeconds(1));
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.newBuilder()
+            .algorithm(aimd)
+            .maxQueueSize(1)
+            .build();
+
+        final CompletableFuture<ConcurrencyLimiter.Permit> first = limiter.acquire().toCompletableFuture();
+        final CompletableFuture<ConcurrencyLimiter.Permit> second = limiter.acquire().toCompletableFuture();
+        second.cancel(false);
+        final CompletableFuture<ConcurrencyLimiter.Permit> third = limiter.acquire().toCompletableFuture();
+
+        assertThat(third).isNotDone();
+        assertThat(limiter.getQueueDepth()).isEqualTo(1);
+        assertThat(limiter.getRejectionCount()).isZero();
+
+        first.join().abandon();
+
+        assertThat(third).isCompleted();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getQueueDepth()).isZero();
+        assertThat(aimd.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAimdGrowsAndBacksOff() {
+        final ConcurrencyLimiter.Aimd aimd = new ConcurrencyLimiter.Aimd(10, 1, 20, 0.5, Duration.ofSeconds(1));
+
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(10), 10, false);
+        assertThat(aimd.getLimit()).isEqualTo(11);
+
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1, false);
+        assertThat(aimd.getLimit()).isEqualTo(11);
+
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(10), 11, true);
+        assertThat(aimd.getLimit()).isEqualTo(5);
+
+        aimd.onSample(TimeUnit.SECONDS.toNanos(2), 5, false);
+        assertThat(aimd.getLimit()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.ListType;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DeadlineTest extends TestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private static String tunnels(final String id, final Optional<URI> nextPageUri) throws JsonProcessingException {
+        final Tunnel tunnel = new Tunnel(
+            id,
+            URI.create("https://" + id + ".ngrok.io"),
+            OffsetDateTime.parse("2022-01-01T00:00:00Z"),
+            "",
+            "https",
+            "us",
+            new Ref("ts_1", URI.create("https://api.ngrok.com/tunnel_sessions/ts_1")),
+            Optional.empty(),
+            Collections.emptyMap(),
+            Optional.empty(),
+            "http://localhost:80"
+        );
+        return MAPPER.writeValueAsString(new TunnelList(Collections.singletonList(tunnel), URI.create("https://api.ngrok.com/tunnels"), nextPageUri));
+    }
+
+    @Test
+    public void testDeadlineCoversEveryPageOfAList() throws JsonProcessingException {
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels")).willReturn(
+            ok(tunnels("tn_1", Optional.of(wireMock.getBaseUri().resolve("/tunnels/page_2"))))
+                .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+        ));
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/page_2")).willReturn(
+            ok(tunnels("tn_2", Optional.empty()))
+                .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                .withFixedDelay(5000)
+        ));
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+        final List<String> seen = Collections.synchronizedList(new ArrayList<>());
+
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<Void> all = ngrok.withDeadline(Deadline.after(Duration.ofMillis(500)))
+            .forEach(ListType.TUNNEL_LIST, tunnel -> seen.add(tunnel.getId())).toCompletableFuture();
+
+        assertThatThrownBy(all::join).hasCauseInstanceOf(DeadlineExceededException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofSeconds(4));
+        assertThat(seen).containsExactly("tn_1");
+    }
+
+    @Test
+    public void testExpiredDeadlineSendsNothing() {
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+
+        assertThatThrownBy(() -> ngrok.withDeadline(Deadline.after(Duration.ZERO)).tunnels().get("tn_1").blockingCall())
+            .isInstanceOf(DeadlineExceededException.class);
+        wireMock.verify(0, getRequestedFor(anyUrl()));
+    }
+}
@@ -0,0 +1,198 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.ApiKey;
+import com.ngrok.definitions.ApiKeyList;
+import com.ngrok.definitions.NgrokApiError;
+import com.ngrok.definitions.Page;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DefaultNgrokApiClientTest extends ApiKeyTestBase {
+    private static final RetryPolicy FAST_RETRIES = RetryPolicy.newBuilder()
+        .maxAttempts(3)
+        .baseDelay(Duration.ofMillis(1))
+        .maxDelay(Duration.ofMillis(20))
+        .build();
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok(final RetryPolicy retryPolicy) {
+        return new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .retryPolicy(retryPolicy)
+            .build());
+    }
+
+    @BeforeEach
+    public void stubFlakyApiKeys() throws JsonProcessingException {
+        wireMock.resetAll();
+
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys/" + API_KEY.getId()))
+                .inScenario("flaky get")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("recovered")
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys/" + API_KEY.getId()))
+                .inScenario("flaky get")
+                .whenScenarioStateIs("recovered")
+                .willReturn(ok(MAPPER.writeValueAsString(API_KEY_NO_TOKEN))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                )
+        );
+
+        wireMock.stubFor(
+            post(urlPathEqualTo("/api_keys"))
+                .willReturn(aResponse().withStatus(503))
+        );
+
+        wireMock.stubFor(
+            delete(urlPathEqualTo("/api_keys/" + API_KEY.getId()))
+                .willReturn(aResponse().withStatus(429).withHeader(HttpHeaderNames.RETRY_AFTER.toString(), "3600"))
+        );
+    }
+
+    @Test
+    public void testIdempotentRequestIsRetried() throws InterruptedException {
+        final ApiKey apiKey = ngrok(FAST_RETRIES).apiKeys().get(API_KEY.getId()).blockingCall();
+
+        assertApiKeyFieldsNoToken(apiKey);
+        wireMock.verify(2, getRequestedFor(urlPathEqualTo("/api_keys/" + API_KEY.getId())));
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNotRetriedByDefault() {
+        final NgrokApiError error = assertThrows(NgrokApiError.class, () ->
+            ngrok(FAST_RETRIES).apiKeys().create().blockingCall()
+        );
+
+        assertThat(error.getHttpStatusCode()).isEqualTo(503);
+        wireMock.verify(1, postRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsRetriedOnOptIn() {
+        final RetryPolicy retryPolicy = RetryPolicy.newBuilder()
+            .maxAttempts(3)
+            .baseDelay(Duration.ofMillis(1))
+            .maxDelay(Duration.ofMillis(20))
+            .retryNonIdempotent(true)
+            .build();
+
+        assertThrows(NgrokApiError.class, () -> ngrok(retryPolicy).apiKeys().create().blockingCall());
+        wireMock.verify(3, postRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+
+    @Test
+    public void testRetryAfterBeyondMaxDelayFailsFast() {
+        final NgrokApiError error = assertThrows(NgrokApiError.class, () ->
+            ngrok(FAST_RETRIES).apiKeys().delete(API_KEY.getId()).blockingCall()
+        );
+
+        assertThat(error.getHttpStatusCode()).isEqualTo(429);
+        wireMock.verify(1, deleteRequestedFor(urlPathEqualTo("/api_keys/" + API_KEY.getId())));
+    }
+
+    @Test
+    public void testRetryBudgetCapsRetries() {
+        final RetryPolicy retryPolicy = RetryPolicy.newBuilder()
+            .maxAttempts(3)
+            .baseDelay(Duration.ofMillis(1))
+            .maxDelay(Duration.ofMillis(20))
+            .retryNonIdempotent(true)
+            .budget(0, 1)
+            .build();
+
+        assertThrows(NgrokApiError.class, () -> ngrok(retryPolicy).apiKeys().create().blockingCall());
+        wireMock.verify(2, postRequestedFor(urlPathEqualTo("/api_keys")));
+        assertThat(retryPolicy.getAvailableRetries()).isZero();
+    }
+
+    @Test
+    public void testConcurrentGetsAreCoalesced() throws JsonProcessingException {
+        final ApiKeyList apiKeyList = new ApiKeyList(
+            Collections.singletonList(API_KEY_NO_TOKEN),
+            URI.create("https://api.ngrok.com/api_keys"),
+            Optional.empty()
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys"))
+                .willReturn(ok(MAPPER.writeValueAsString(apiKeyList))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                    .withFixedDelay(200)
+                )
+        );
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .coalesceGets(true)
+            .build());
+
+        final CompletableFuture<Page<ApiKeyList>> first = ngrok.apiKeys().list().call().toCompletableFuture();
+        final CompletableFuture<Page<ApiKeyList>> second = ngrok.apiKeys().list().call().toCompletableFuture();
+
+        assertThat(first.join().getPage().getKeys()).extracting(ApiKey::getId).containsExactly(API_KEY.getId());
+        assertThat(second.join().getPage().getKeys()).extracting(ApiKey::getId).containsExactly(API_KEY.getId());
+        assertThat(first.join().getPage().getKeys()).isNotSameAs(second.join().getPage().getKeys());
+        wireMock.verify(1, getRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+
+    @Test
+    public void testGetsAreCachedUntilInvalidated() throws JsonProcessingException, InterruptedException {
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys/cached"))
+                .willReturn(ok(MAPPER.writeValueAsString(API_KEY_NO_TOKEN))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                )
+        );
+        wireMock.stubFor(
+            patch(urlPathEqualTo("/api_keys/cached"))
+                .willReturn(ok(MAPPER.writeValueAsString(API_KEY_NO_TOKEN))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                )
+        );
+        final ResponseCache cache = ResponseCache.newBuilder().defaultTtl(Duration.ofMinutes(1)).build();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .responseCache(cache)
+            .build());
+
+        final ApiKey first = ngrok.apiKeys().get("cached").blockingCall();
+        final ApiKey second = ngrok.apiKeys().get("cached").blockingCall();
+        assertThat(second).isNotSameAs(first);
+        wireMock.verify(1, getRequestedFor(urlPathEqualTo("/api_keys/cached")));
+
+        ngrok.apiKeys().update("cached").description("changed").blockingCall();
+        ngrok.apiKeys().get("cached").blockingCall();
+        wireMock.verify(2, getRequestedFor(urlPathEqualTo("/api_keys/cached")));
+
+        assertThat(cache.getStats().getHitCount()).isEqualTo(1);
+        assertThat(cache.getStats().getMissCount()).isEqualTo(2);
+        assertThat(cache.getStats().getInvalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertThat(RetryPolicy.parseRetryAfter("120")).contains(Duration.ofSeconds(120));
+        assertThat(RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT")).contains(Duration.ZERO);
+        assertThat(RetryPolicy.parseRetryAfter("soon")).isEmpty();
+        assertThat(RetryPolicy.parseRetryAfter(null)).isEmpty();
+    }
+}
@@ -0,0 +1,18 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EndpointTemplatesTest {
+    @Test
+    public void testTemplateOf() {
+        assertThat(EndpointTemplates.templateOf("/tunnels")).isEqualTo("/tunnels");
+        assertThat(EndpointTemplates.templateOf("/tunnel_sessions/ts_123/restart")).isEqualTo("/tunnel_sessions/{id}/restart");
+        assertThat(EndpointTemplates.templateOf("/edges/https/edghts_1/routes/edghtsrt_2/ip_restriction"))
+            .isEqualTo("/edges/https/{id}/routes/{id}/ip_restriction");
+        assertThat(EndpointTemplates.templateOf("/event_subscriptions/esb_1/sources/api_key_created.v0"))
+            .isEqualTo("/event_subscriptions/{id}/sources/{id}");
+        assertThat(EndpointTemplates.templateOf("/api_keys?limit=10")).isEqualTo("/api_keys");
+    }
+}
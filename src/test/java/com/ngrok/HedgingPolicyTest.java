@@ -0,0 +1,98 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.Tunnel;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HedgingPolicyTest extends TestBase {
+    private static final Tunnel TUNNEL = new Tunnel(
+        "tn_1",
+        URI.create("https://tn_1.ngrok.io"),
+        OffsetDateTime.parse("2022-01-01T00:00:00Z"),
+        "",
+        "https",
+        "us",
+        new Ref("ts_1", URI.create("https://api.ngrok.com/tunnel_sessions/ts_1")),
+        Optional.empty(),
+        Collections.emptyMap(),
+        Optional.empty(),
+        "http://localhost:80"
+    );
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    @Test
+    public void testSlowRequestIsHedgedAndTheFirstResponseWins() throws JsonProcessingException, InterruptedException {
+        final String body = MAPPER.writeValueAsString(TUNNEL);
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1"))
+            .inScenario("slow").whenScenarioStateIs(Scenario.STARTED).willSetStateTo("slow")
+            .willReturn(ok(body).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")));
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1"))
+            .inScenario("slow").whenScenarioStateIs("slow").willSetStateTo("fast")
+            .willReturn(ok(body).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json").withFixedDelay(5000)));
+        wireMock.stubFor(get(urlPathEqualTo("/tunnels/tn_1"))
+            .inScenario("slow").whenScenarioStateIs("fast")
+            .willReturn(ok(body).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")));
+        final HedgingPolicy hedging = HedgingPolicy.newBuilder()
+            .minSamples(1)
+            .minDelay(Duration.ofMillis(50))
+            .maxDelay(Duration.ofMillis(200))
+            .build();
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .hedgingPolicy(hedging)
+            .build());
+
+        assertThat(ngrok.tunnels().get("tn_1").blockingCall()).isEqualTo(TUNNEL);
+        final long startNanos = System.nanoTime();
+        assertThat(ngrok.tunnels().get("tn_1").blockingCall()).isEqualTo(TUNNEL);
+
+        assertThat(System.nanoTime() - startNanos).isLessThan(TimeUnit.SECONDS.toNanos(3));
+        assertThat(hedging.getHedgeCount()).isEqualTo(1);
+        assertThat(hedging.getHedgeWinCount()).isEqualTo(1);
+        wireMock.verify(3, getRequestedFor(urlPathEqualTo("/tunnels/tn_1")));
+    }
+
+    @Test
+    public void testDelayFollowsLatencyAndBudgetBoundsHedges() {
+        final HedgingPolicy hedging = HedgingPolicy.newBuilder()
+            .percentile(50)
+            .minSamples(2)
+            .minDelay(Duration.ofMillis(1))
+            .maxDelay(Duration.ofSeconds(1))
+            .budget(0.5, 1)
+            .build();
+
+        assertThat(hedging.newRequest("/tunnels/{id}")).isEqualTo(-1);
+        hedging.record("/tunnels/{id}", TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(hedging.newRequest("/tunnels/{id}")).isEqualTo(-1);
+        hedging.record("/tunnels/{id}", TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(hedging.newRequest("/tunnels/{id}")).isBetween(TimeUnit.MILLISECONDS.toNanos(97), TimeUnit.MILLISECONDS.toNanos(100));
+        hedging.record("/tunnels/{id}", TimeUnit.MINUTES.toNanos(1));
+        hedging.record("/tunnels/{id}", TimeUnit.MINUTES.toNanos(1));
+        assertThat(hedging.newRequest("/endpoints")).isEqualTo(-1);
+
+        assertThat(hedging.withdrawHedge()).isTrue();
+        assertThat(hedging.withdrawHedge()).isFalse();
+        hedging.newRequest("/tunnels/{id}");
+        hedging.newRequest("/tunnels/{id}");
+        assertThat(hedging.withdrawHedge()).isTrue();
+        assertThat(hedging.getHedgeCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,84 @@
+package com.ngrok;
+
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.EndpointBackendMutate;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.Collections;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class HttpsEdgeReconcilerTest extends TestBase {
+    private static final String ROUTE_FIELDS = "\"edge_id\":\"edghts_1\",\"created_at\":\"2022-01-01T00:00:00Z\",\"uri\":\"\",\"description\":\"\",\"metadata\":\"\"";
+    private static final String EDGE = "{\"id\":\"edghts_1\",\"description\":\"\",\"metadata\":\"\",\"created_at\":\"2022-01-01T00:00:00Z\",\"uri\":\"\","
+        + "\"hostports\":[\"app.example.com:443\"],\"routes\":["
+        + "{\"id\":\"edghtsrt_1\",\"match_type\":\"path_prefix\",\"match\":\"/\"," + ROUTE_FIELDS + ","
+        + "\"backend\":{\"enabled\":true,\"backend\":{\"id\":\"bkdtg_1\",\"uri\":\"https://api.ngrok.com/backends/tunnel_group/bkdtg_1\"}},"
+        + "\"compression\":{\"enabled\":true}},"
+        + "{\"id\":\"edghtsrt_2\",\"match_type\":\"path_prefix\",\"match\":\"/old\"," + ROUTE_FIELDS + "}"
+        + "]}";
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    @BeforeEach
+    public void stubEdges() {
+        wireMock.resetAll();
+        wireMock.stubFor(
+            get(urlPathEqualTo("/edges/https"))
+                .willReturn(ok("{\"https_edges\":[" + EDGE + "],\"uri\":\"https://api.ngrok.com/edges/https\"}")
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            post(urlPathEqualTo("/edges/https/edghts_1/routes"))
+                .willReturn(ok("{\"id\":\"edghtsrt_3\",\"match_type\":\"path_prefix\",\"match\":\"/new\"," + ROUTE_FIELDS + "}")
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(delete(urlPathEqualTo("/edges/https/edghts_1/routes/edghtsrt_1/compression")).willReturn(noContent()));
+        wireMock.stubFor(delete(urlPathEqualTo("/edges/https/edghts_1/routes/edghtsrt_2")).willReturn(noContent()));
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    private HttpsEdgeReconciler.CallBuilder reconcile() {
+        return ngrok.reconcileHttpsEdges().edge(HttpsEdgeReconciler.Edge.newBuilder()
+            .hostports(Collections.singletonList("app.example.com:443"))
+            .route(HttpsEdgeReconciler.Route.newBuilder("path_prefix", "/")
+                .backend(EndpointBackendMutate.newBuilder().enabled(true).backendId("bkdtg_1").build())
+                .build())
+            .route(HttpsEdgeReconciler.Route.newBuilder("path_prefix", "/new").build())
+            .build());
+    }
+
+    @Test
+    public void testPlanOnlyHoldsChanges() {
+        final HttpsEdgeReconciler.Plan plan = reconcile().plan().toCompletableFuture().join();
+
+        assertThat(plan.getChanges()).extracting(HttpsEdgeReconciler.Change::getKind, change -> change.getModule().orElse(""))
+            .containsExactly(
+                tuple(HttpsEdgeReconciler.Change.Kind.DELETE_ROUTE_MODULE, "compression"),
+                tuple(HttpsEdgeReconciler.Change.Kind.CREATE_ROUTE, ""),
+                tuple(HttpsEdgeReconciler.Change.Kind.DELETE_ROUTE, "")
+            );
+    }
+
+    @Test
+    public void testChangesAreApplied() throws InterruptedException {
+        final HttpsEdgeReconciler.Result result = reconcile().blockingCall();
+
+        assertThat(result.isSuccessful()).isTrue();
+        wireMock.verify(postRequestedFor(urlPathEqualTo("/edges/https/edghts_1/routes"))
+            .withRequestBody(matchingJsonPath("$.match", equalTo("/new"))));
+        wireMock.verify(deleteRequestedFor(urlPathEqualTo("/edges/https/edghts_1/routes/edghtsrt_1/compression")));
+        wireMock.verify(deleteRequestedFor(urlPathEqualTo("/edges/https/edghts_1/routes/edghtsrt_2")));
+        wireMock.verify(0, putRequestedFor(urlPathMatching("/edges/https/.*")));
+    }
+}
@@ -0,0 +1,83 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IpPolicyIndexTest {
+    private IpPolicyIndex index;
+
+    @BeforeEach
+    public void buildIndex() {
+        index = new IpPolicyIndex();
+        index.add("ipr_1", "ipp_a", "0.0.0.0/0", "deny");
+        index.add("ipr_2", "ipp_a", "10.0.0.0/8", "allow");
+        index.add("ipr_3", "ipp_a", "10.1.0.0/16", "deny");
+        index.add("ipr_4", "ipp_b", "10.1.2.0/24", "allow");
+        index.add("ipr_5", "ipp_a", "2001:db8::/32", "allow");
+    }
+
+    private IpPolicyIndex.Decision decide(final IpPolicyIndex.Selection selection, final String address) throws UnknownHostException {
+        return index.decide(selection, InetAddress.getByName(address));
+    }
+
+    @Test
+    public void testMostSpecificRuleDecides() throws UnknownHostException {
+        final IpPolicyIndex.Selection a = index.select(Collections.singletonList("ipp_a"));
+        final IpPolicyIndex.Selection ab = index.select(Arrays.asList("ipp_a", "ipp_b"));
+
+        assertThat(decide(a, "8.8.8.8")).isEqualTo(IpPolicyIndex.Decision.DENY);
+        assertThat(decide(a, "10.2.0.1")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThat(decide(a, "10.1.2.3")).isEqualTo(IpPolicyIndex.Decision.DENY);
+        assertThat(decide(ab, "10.1.2.3")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThat(decide(a, "2001:db8::1")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThat(decide(a, "2001:db9::1")).isEqualTo(IpPolicyIndex.Decision.NO_MATCH);
+        assertThat(decide(index.select(Collections.singletonList("ipp_c")), "10.1.2.3")).isEqualTo(IpPolicyIndex.Decision.NO_MATCH);
+    }
+
+    @Test
+    public void testDenyWinsOnTheSamePrefix() throws UnknownHostException {
+        index.add("ipr_6", "ipp_b", "10.1.0.0/16", "allow");
+
+        assertThat(decide(index.select(Arrays.asList("ipp_a", "ipp_b")), "10.1.9.9")).isEqualTo(IpPolicyIndex.Decision.DENY);
+    }
+
+    @Test
+    public void testRemovedRulesNoLongerMatch() throws UnknownHostException {
+        final IpPolicyIndex.Selection a = index.select(Collections.singletonList("ipp_a"));
+
+        assertThat(index.remove("ipr_3")).isTrue();
+        assertThat(index.remove("ipr_3")).isFalse();
+        assertThat(decide(a, "10.1.2.3")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        index.remove("ipr_1");
+        assertThat(decide(a, "8.8.8.8")).isEqualTo(IpPolicyIndex.Decision.NO_MATCH);
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testHostNamesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> index.add("ipr_7", "ipp_a", "example.com/8", "allow"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("ipr_7", "ipp_a", "10.0.0.0/33", "allow"));
+        assertThrows(IllegalArgumentException.class, () -> index.add("ipr_7", "ipp_a", "10.0.0.0/8", "maybe"));
+    }
+
+    @Test
+    public void testIpv4MappedCidrsMatchIpv4Addresses() throws UnknownHostException {
+        index.add("ipr_6", "ipp_b", "::ffff:192.168.0.0/112", "allow");
+        final IpPolicyIndex.Selection b = index.select(Collections.singletonList("ipp_b"));
+
+        assertThat(decide(b, "192.168.5.5")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThat(decide(b, "::ffff:192.168.5.5")).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThat(decide(b, "192.169.0.1")).isEqualTo(IpPolicyIndex.Decision.NO_MATCH);
+        final byte[] mapped = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 192, (byte) 168, 5, 5};
+        assertThat(index.decide(b, mapped)).isEqualTo(IpPolicyIndex.Decision.ALLOW);
+        assertThrows(IllegalArgumentException.class, () -> index.add("ipr_7", "ipp_b", "::ffff:10.0.0.0/64", "allow"));
+    }
+}
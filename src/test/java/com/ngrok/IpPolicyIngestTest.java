@@ -0,0 +1,101 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.IpPolicyRule;
+import com.ngrok.definitions.IpPolicyRuleList;
+import com.ngrok.definitions.Ref;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class IpPolicyIngestTest extends TestBase {
+    private static final Ref IP_POLICY = new Ref("ipp_1", URI.create("https://api.ngrok.com/ip_policies/ipp_1"));
+    private static final Ref OTHER_IP_POLICY = new Ref("ipp_2", URI.create("https://api.ngrok.com/ip_policies/ipp_2"));
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    private static IpPolicyRule rule(final String id, final Ref ipPolicy, final String cidr, final String action) {
+        return new IpPolicyRule(id, URI.create("https://api.ngrok.com/ip_policy_rules/" + id), OffsetDateTime.now(), "", "", cidr, ipPolicy, action);
+    }
+
+    @BeforeEach
+    public void stubRules() throws JsonProcessingException {
+        wireMock.resetAll();
+        wireMock.stubFor(
+            get(urlPathEqualTo("/ip_policy_rules"))
+                .willReturn(ok(MAPPER.writeValueAsString(new IpPolicyRuleList(
+                    Arrays.asList(
+                        rule("ipr_kept", IP_POLICY, "10.0.0.0/23", "deny"),
+                        rule("ipr_stale", IP_POLICY, "172.16.0.0/12", "deny"),
+                        rule("ipr_allow", IP_POLICY, "8.8.8.8/32", "allow"),
+                        rule("ipr_other", OTHER_IP_POLICY, "172.16.0.0/12", "deny")
+                    ),
+                    URI.create("https://api.ngrok.com/ip_policy_rules"),
+                    Optional.empty()
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            post(urlPathEqualTo("/ip_policy_rules"))
+                .withRequestBody(matchingJsonPath("$.cidr", equalTo("192.168.0.0/24")))
+                .willReturn(ok(MAPPER.writeValueAsString(rule("ipr_new", IP_POLICY, "192.168.0.0/24", "deny")))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            post(urlPathEqualTo("/ip_policy_rules"))
+                .withRequestBody(matchingJsonPath("$.cidr", equalTo("192.168.2.0/24")))
+                .willReturn(aResponse().withStatus(400))
+        );
+        wireMock.stubFor(delete(urlPathEqualTo("/ip_policy_rules/ipr_stale")).willReturn(noContent()));
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    @Test
+    public void testOnlyTheDifferenceIsApplied() throws InterruptedException {
+        final IpPolicyIngest.Result result = ngrok.ipPolicyIngest(
+            IP_POLICY.getId(),
+            new StringReader("10.0.0.0/24\n10.0.1.0/24\n192.168.0.0/24\n192.168.2.7/24\nbogus\n")
+        ).maxConcurrency(2).deleteOnIncompleteFeed(true).blockingCall();
+
+        assertThat(result.getCidrCount()).isEqualTo(4);
+        assertThat(result.getRuleCount()).isEqualTo(3);
+        assertThat(result.getUnchangedCount()).isEqualTo(1);
+        assertThat(result.getCreatedCount()).isEqualTo(1);
+        assertThat(result.getDeletedCount()).isEqualTo(1);
+        assertThat(result.getFailures()).extracting(IpPolicyIngest.Failure::getOperation, IpPolicyIngest.Failure::getSubject)
+            .containsExactlyInAnyOrder(
+                tuple(IpPolicyIngest.Operation.PARSE, "5"),
+                tuple(IpPolicyIngest.Operation.CREATE, "192.168.2.0/24")
+            );
+        wireMock.verify(2, postRequestedFor(urlPathEqualTo("/ip_policy_rules")));
+        wireMock.verify(1, deleteRequestedFor(urlPathMatching("/ip_policy_rules/.*")));
+    }
+
+    @Test
+    public void testIncompleteFeedKeepsStaleRules() throws InterruptedException {
+        final IpPolicyIngest.Result garbled = ngrok.ipPolicyIngest(IP_POLICY.getId(), new StringReader("10.0.0.0/23\nbogus\n")).blockingCall();
+        final IpPolicyIngest.Result empty = ngrok.ipPolicyIngest(IP_POLICY.getId(), new StringReader("")).blockingCall();
+
+        assertThat(garbled.getDeletedCount()).isZero();
+        assertThat(garbled.getKeptCount()).isEqualTo(1);
+        assertThat(empty.getDeletedCount()).isZero();
+        assertThat(empty.getKeptCount()).isEqualTo(2);
+        wireMock.verify(0, deleteRequestedFor(urlPathMatching("/ip_policy_rules/.*")));
+    }
+}
@@ -0,0 +1,54 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ngrok.definitions.ApiKey;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ListItemParserTest extends ApiKeyTestBase {
+    private static final String PAGE_START = "{\"uri\":\"https://api.ngrok.com/api_keys\",\"keys\":[";
+
+    private ListItemParser<ApiKey> parser(final List<ApiKey> received) throws IOException {
+        final ListItemParser<ApiKey> parser = new ListItemParser<>(MAPPER.getFactory(), MAPPER.readerFor(ApiKey.class), "keys", received::add);
+        parser.begin();
+        return parser;
+    }
+
+    @Test
+    public void testItemsAreHandedOverAsTheyClose() throws IOException {
+        final List<ApiKey> received = new ArrayList<>();
+        final ListItemParser<ApiKey> parser = parser(received);
+        final byte[] page = (PAGE_START + MAPPER.writeValueAsString(API_KEY) + "," + MAPPER.writeValueAsString(API_KEY_NO_TOKEN)
+            + "],\"next_page_uri\":\"https://api.ngrok.com/api_keys?before_id=abc\"}").getBytes(StandardCharsets.UTF_8);
+
+        final int firstItemEnd = PAGE_START.length() + MAPPER.writeValueAsString(API_KEY).length();
+        parser.feed(Arrays.copyOfRange(page, 0, firstItemEnd - 1));
+        assertThat(received).isEmpty();
+        parser.feed(Arrays.copyOfRange(page, firstItemEnd - 1, firstItemEnd));
+        assertThat(received).hasSize(1);
+        parser.feed(Arrays.copyOfRange(page, firstItemEnd, page.length));
+        parser.finish();
+
+        assertThat(received).extracting(ApiKey::getToken).containsExactly(API_KEY.getToken(), API_KEY_NO_TOKEN.getToken());
+        assertThat(parser.getItemCount()).isEqualTo(2);
+        assertThat(parser.getNextPageUri()).contains(URI.create("https://api.ngrok.com/api_keys?before_id=abc"));
+    }
+
+    @Test
+    public void testTruncatedPageFails() throws IOException {
+        final ListItemParser<ApiKey> parser = parser(new ArrayList<>());
+        parser.feed((PAGE_START + MAPPER.writeValueAsString(API_KEY)).getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(JsonProcessingException.class, parser::finish);
+        assertThat(parser.getNextPageUri()).isEmpty();
+    }
+}
@@ -0,0 +1,97 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProvisioningPlanTest {
+    @Test
+    public void testStepsStartOnceTheirDependenciesSucceed() {
+        final CompletableFuture<String> policyCall = new CompletableFuture<>();
+        final ProvisioningPlan.Builder builder = ProvisioningPlan.newBuilder();
+        final ProvisioningPlan.Step<String> ca = builder.step("ca", results -> CompletableFuture.completedFuture("ca_1"));
+        final ProvisioningPlan.Step<String> policy = builder.step("policy", results -> policyCall);
+        final ProvisioningPlan.Step<String> edge = builder.step("edge",
+            results -> CompletableFuture.completedFuture(results.get(ca) + "+" + results.get(policy)),
+            ca, policy);
+
+        final CompletionStage<ProvisioningPlan.Outcome> run = builder.build().run();
+        assertThat(run.toCompletableFuture()).isNotDone();
+        policyCall.complete("ipp_1");
+        final ProvisioningPlan.Outcome outcome = run.toCompletableFuture().join();
+
+        assertThat(outcome.isSuccessful()).isTrue();
+        assertThat(outcome.get(edge)).contains("ca_1+ipp_1");
+        assertThat(outcome.getDurations()).containsOnlyKeys("ca", "policy", "edge");
+        assertThat(outcome.getCriticalPath()).containsExactly("policy", "edge");
+    }
+
+    @Test
+    public void testFailureSkipsDependentsOnly() {
+        final ProvisioningPlan.Builder builder = ProvisioningPlan.newBuilder();
+        final ProvisioningPlan.Step<String> policy = builder.step("policy", results -> failed("policy failed"));
+        builder.step("rule", results -> CompletableFuture.completedFuture("ipr_1"), policy);
+        builder.step("ca", results -> CompletableFuture.completedFuture("ca_1"));
+
+        final ProvisioningPlan.Outcome outcome = builder.build().run().toCompletableFuture().join();
+
+        assertThat(outcome.isSuccessful()).isFalse();
+        assertThat(outcome.getFailures().get("policy")).hasMessage("policy failed");
+        assertThat(outcome.getStatuses())
+            .containsEntry("policy", ProvisioningPlan.Status.FAILED)
+            .containsEntry("rule", ProvisioningPlan.Status.SKIPPED)
+            .containsEntry("ca", ProvisioningPlan.Status.SUCCEEDED);
+    }
+
+    @Test
+    public void testRollbackUndoesSucceededStepsInReverseOrder() {
+        final List<String> undone = Collections.synchronizedList(new ArrayList<>());
+        final ProvisioningPlan.Builder builder = ProvisioningPlan.newBuilder().rollbackOnFailure(true);
+        final ProvisioningPlan.Step<String> ca = builder.step("ca",
+            results -> CompletableFuture.completedFuture("ca_1"),
+            id -> undo(undone, id));
+        final ProvisioningPlan.Step<String> policy = builder.step("policy",
+            results -> CompletableFuture.completedFuture("ipp_1"),
+            id -> undo(undone, id),
+            ca);
+        final ProvisioningPlan.Step<String> edge = builder.step("edge", results -> failed("edge failed"), policy);
+        builder.step("route", results -> CompletableFuture.completedFuture("edghtsrt_1"), edge);
+
+        final ProvisioningPlan.Outcome outcome = builder.build().run().toCompletableFuture().join();
+
+        assertThat(undone).containsExactly("ipp_1", "ca_1");
+        assertThat(outcome.getStatuses())
+            .containsEntry("ca", ProvisioningPlan.Status.ROLLED_BACK)
+            .containsEntry("policy", ProvisioningPlan.Status.ROLLED_BACK)
+            .containsEntry("edge", ProvisioningPlan.Status.FAILED)
+            .containsEntry("route", ProvisioningPlan.Status.SKIPPED);
+        assertThat(outcome.get(ca)).isEmpty();
+    }
+
+    @Test
+    public void testStepsOfAnotherPlanAreRejected() {
+        final ProvisioningPlan.Step<String> foreign = ProvisioningPlan.newBuilder()
+            .step("ca", results -> CompletableFuture.completedFuture("ca_1"));
+
+        assertThatThrownBy(() -> ProvisioningPlan.newBuilder().step("edge", results -> CompletableFuture.completedFuture("edghts_1"), foreign))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static CompletionStage<String> failed(final String message) {
+        final CompletableFuture<String> call = new CompletableFuture<>();
+        call.completeExceptionally(new IllegalStateException(message));
+        return call;
+    }
+
+    private static CompletionStage<Void> undo(final List<String> undone, final String id) {
+        undone.add(id);
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ngrok;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RateLimiterTest {
+    @Test
+    public void testBurstIsAvailableImmediately() {
+        final RateLimiter limiter = RateLimiter.newBuilder().limit(1, 3).build();
+
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET))
+            .isGreaterThan(TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void testWeightsUseMorePermits() {
+        final RateLimiter limiter = RateLimiter.newBuilder()
+            .limit(1, 2)
+            .weight(NgrokApiClient.HttpMethod.POST, 2)
+            .build();
+
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.POST)).isZero();
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET))
+            .isGreaterThan(TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void testMaxWaitRejects() {
+        final RateLimiter limiter = RateLimiter.newBuilder()
+            .limit(1, 1)
+            .maxWait(Duration.ofMillis(100))
+            .build();
+
+        assertThat(limiter.reserve("key", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThrows(RequestRejectedException.class, () -> limiter.reserve("key", NgrokApiClient.HttpMethod.GET));
+    }
+
+    @Test
+    public void testApiKeysHaveSeparateBuckets() {
+        final RateLimiter limiter = RateLimiter.newBuilder().limitPerApiKey(1, 1).build();
+
+        assertThat(limiter.reserve("first", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThat(limiter.reserve("second", NgrokApiClient.HttpMethod.GET)).isZero();
+        assertThat(limiter.reserve("first", NgrokApiClient.HttpMethod.GET)).isPositive();
+    }
+}
@@ -0,0 +1,106 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class ResourceWatcherTest extends TestBase {
+    private static final OffsetDateTime STARTED_AT = OffsetDateTime.parse("2022-01-01T00:00:00Z");
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private static Tunnel tunnel(final String id, final String label) {
+        return new Tunnel(
+            id,
+            URI.create("https://" + id + ".ngrok.io"),
+            STARTED_AT,
+            "",
+            "https",
+            "us",
+            new Ref("ts_1", URI.create("https://api.ngrok.com/tunnel_sessions/ts_1")),
+            Optional.empty(),
+            Collections.singletonMap("app", label),
+            Optional.empty(),
+            "http://localhost:80"
+        );
+    }
+
+    private static String tunnels(final Tunnel... tunnels) throws JsonProcessingException {
+        return MAPPER.writeValueAsString(new TunnelList(Arrays.asList(tunnels), URI.create("https://api.ngrok.com/tunnels"), Optional.empty()));
+    }
+
+    @BeforeEach
+    public void stubTunnels() throws JsonProcessingException {
+        wireMock.resetAll();
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .inScenario("churn").whenScenarioStateIs(Scenario.STARTED).willSetStateTo("changed")
+                .willReturn(ok(tunnels(tunnel("tn_1", "api"), tunnel("tn_2", "web")))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .inScenario("churn").whenScenarioStateIs("changed")
+                .willReturn(ok(tunnels(tunnel("tn_2", "www"), tunnel("tn_3", "api")))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+    }
+
+    @Test
+    public void testChangesAreReportedAndQuietListsArePolledLessOften() throws InterruptedException {
+        final Ngrok ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+        final BlockingQueue<List<ResourceWatcher.Event<Tunnel>>> batches = new LinkedBlockingQueue<>();
+
+        try (final ResourceWatcher<Tunnel> watcher = ngrok.watchTunnels()
+            .minInterval(Duration.ofMillis(10))
+            .maxInterval(Duration.ofMillis(40))
+            .listener(batches::add)
+            .build()) {
+            watcher.start();
+
+            assertThat(batches.poll(5, TimeUnit.SECONDS))
+                .extracting(ResourceWatcher.Event::getType, ResourceWatcher.Event::getId)
+                .containsExactlyInAnyOrder(
+                    tuple(ResourceWatcher.ChangeType.ADDED, "tn_1"),
+                    tuple(ResourceWatcher.ChangeType.ADDED, "tn_2")
+                );
+            assertThat(batches.poll(5, TimeUnit.SECONDS))
+                .extracting(ResourceWatcher.Event::getType, ResourceWatcher.Event::getId)
+                .containsExactlyInAnyOrder(
+                    tuple(ResourceWatcher.ChangeType.REMOVED, "tn_1"),
+                    tuple(ResourceWatcher.ChangeType.CHANGED, "tn_2"),
+                    tuple(ResourceWatcher.ChangeType.ADDED, "tn_3")
+                );
+
+            wireMock.verify(moreThanOrExactly(2), getRequestedFor(urlPathEqualTo("/tunnels")));
+            Thread.sleep(500);
+            assertThat(watcher.getInterval()).isEqualTo(Duration.ofMillis(40));
+            assertThat(batches).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.ngrok;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.definitions.Ref;
+import com.ngrok.definitions.Tunnel;
+import com.ngrok.definitions.TunnelList;
+import com.ngrok.definitions.TunnelSession;
+import com.ngrok.definitions.TunnelSessionList;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TunnelSessionRolloutTest extends TestBase {
+    private static final Ref CREDENTIAL = new Ref("cr_1", URI.create("https://api.ngrok.com/credentials/cr_1"));
+
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    private static TunnelSession session(final String id, final String region, final String ip) {
+        return new TunnelSession("3.0.3", CREDENTIAL, id, ip, "", "linux", region, OffsetDateTime.now(), "ngrok/v2", URI.create("https://api.ngrok.com/tunnel_sessions/" + id));
+    }
+
+    private static String sessions(final TunnelSession... sessions) throws JsonProcessingException {
+        return MAPPER.writeValueAsString(new TunnelSessionList(Arrays.asList(sessions), URI.create("https://api.ngrok.com/tunnel_sessions"), Optional.empty()));
+    }
+
+    @BeforeEach
+    public void stubSessions() throws JsonProcessingException {
+        wireMock.resetAll();
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnel_sessions"))
+                .inScenario("restart").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(ok(sessions(session("ts_1", "us", "10.0.0.1"), session("ts_2", "us", "10.0.0.2"), session("ts_3", "eu", "10.0.0.3")))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnel_sessions"))
+                .inScenario("restart").whenScenarioStateIs("restarted")
+                .willReturn(ok(sessions(session("ts_1", "us", "10.0.0.1"), session("ts_3", "eu", "10.0.0.3"), session("ts_4", "us", "10.0.0.2")))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/tunnels"))
+                .willReturn(ok(MAPPER.writeValueAsString(new TunnelList(
+                    Collections.singletonList(new Tunnel(
+                        "tn_1", URI.create("https://example.ngrok.io"), OffsetDateTime.now(), "", "https", "us",
+                        new Ref("ts_4", URI.create("https://api.ngrok.com/tunnel_sessions/ts_4")),
+                        Optional.empty(), Collections.emptyMap(), Optional.empty(), "http://localhost:80"
+                    )),
+                    URI.create("https://api.ngrok.com/tunnels"),
+                    Optional.empty()
+                ))).withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json"))
+        );
+        wireMock.stubFor(post(urlPathEqualTo("/tunnel_sessions/ts_1/restart")).willReturn(aResponse().withStatus(400)));
+        wireMock.stubFor(
+            post(urlPathEqualTo("/tunnel_sessions/ts_2/restart"))
+                .inScenario("restart").willSetStateTo("restarted")
+                .willReturn(noContent())
+        );
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    @Test
+    public void testRolloutStopsOnceTheErrorRateIsCrossed() throws InterruptedException {
+        final TunnelSessionRollout.Result result = ngrok.tunnelSessionRollout(TunnelSessionRollout.Operation.RESTART)
+            .region("us")
+            .batchSize(1)
+            .maxErrorRate(0.4)
+            .blockingCall();
+
+        assertThat(result.getSelectedCount()).isEqualTo(2);
+        assertThat(result.getWaveCount()).isEqualTo(1);
+        assertThat(result.getFailures()).containsOnlyKeys("ts_1");
+        assertThat(result.getSkipped()).containsExactly("ts_2");
+        assertThat(result.isStopped()).isTrue();
+        wireMock.verify(0, postRequestedFor(urlPathEqualTo("/tunnel_sessions/ts_2/restart")));
+    }
+
+    @Test
+    public void testRestartsAreConfirmedByNewSessionsWithTunnels() throws InterruptedException {
+        final TunnelSessionRollout.Result result = ngrok.tunnelSessionRollout(TunnelSessionRollout.Operation.RESTART)
+            .filter(session -> session.getId().equals("ts_2"))
+            .confirmReconnect(Duration.ofSeconds(5), Duration.ofMillis(10))
+            .blockingCall();
+
+        assertThat(result.getSucceeded()).containsExactly("ts_2");
+        assertThat(result.getFailures()).isEmpty();
+        assertThat(result.isStopped()).isFalse();
+        wireMock.verify(getRequestedFor(urlPathEqualTo("/tunnels")));
+    }
+}
@@ -0,0 +1,143 @@
+package com.ngrok.definitions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.linecorp.armeria.common.HttpHeaderNames;
+import com.ngrok.ApiKeyTestBase;
+import com.ngrok.DefaultNgrokApiClient;
+import com.ngrok.Ngrok;
+import de.mkammerer.wiremock.WireMockExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PageTest extends ApiKeyTestBase {
+    @RegisterExtension
+    final WireMockExtension wireMock = new WireMockExtension();
+
+    private Ngrok ngrok;
+
+    private ApiKey apiKeyWithId(final String id) {
+        return new ApiKey(id, API_KEY.getUri(), API_KEY.getDescription(), API_KEY.getMetadata(), API_KEY.getCreatedAt(), Optional.empty());
+    }
+
+    private void stubPage(final String beforeId, final String keyId, final Optional<String> nextBeforeId) throws JsonProcessingException {
+        final ApiKeyList apiKeyList = new ApiKeyList(
+            Collections.singletonList(apiKeyWithId(keyId)),
+            URI.create("https://api.ngrok.com/api_keys"),
+            nextBeforeId.map(id -> wireMock.getBaseUri().resolve("/api_keys?before_id=" + id))
+        );
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys"))
+                .withQueryParam("before_id", beforeId == null ? absent() : equalTo(beforeId))
+                .willReturn(ok(MAPPER.writeValueAsString(apiKeyList))
+                    .withHeader(HttpHeaderNames.CONTENT_TYPE.toString(), "application/json")
+                )
+        );
+    }
+
+    @BeforeEach
+    public void stubPages() throws JsonProcessingException {
+        wireMock.resetAll();
+        stubPage(null, "ak_1", Optional.of("ak_1"));
+        stubPage("ak_1", "ak_2", Optional.of("ak_2"));
+        stubPage("ak_2", "ak_3", Optional.empty());
+        ngrok = new Ngrok(DefaultNgrokApiClient.newBuilder(FAKE_API_SECRET)
+            .baseUri(wireMock.getBaseUri())
+            .build());
+    }
+
+    @Test
+    public void testStreamFollowsEveryPage() throws InterruptedException {
+        try (final Stream<ApiKey> apiKeys = ngrok.apiKeys().list().blockingCall().stream(ApiKeyList::getKeys, 2)) {
+            assertThat(apiKeys.map(ApiKey::getId).collect(Collectors.toList())).containsExactly("ak_1", "ak_2", "ak_3");
+        }
+        wireMock.verify(3, getRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+
+    @Test
+    public void testIteratorWithoutPrefetchFetchesOnDemand() throws InterruptedException {
+        final Iterator<ApiKey> apiKeys = ngrok.apiKeys().list().blockingCall().iterator(ApiKeyList::getKeys, 0);
+
+        assertThat(apiKeys.next().getId()).isEqualTo("ak_1");
+        wireMock.verify(1, getRequestedFor(urlPathEqualTo("/api_keys")));
+        assertThat(apiKeys.next().getId()).isEqualTo("ak_2");
+        assertThat(apiKeys.next().getId()).isEqualTo("ak_3");
+        assertThat(apiKeys.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testIteratorSurfacesFailedPage() throws InterruptedException {
+        wireMock.stubFor(
+            get(urlPathEqualTo("/api_keys"))
+                .withQueryParam("before_id", equalTo("ak_1"))
+                .willReturn(aResponse().withStatus(400))
+        );
+        final Iterator<ApiKey> apiKeys = ngrok.apiKeys().list().blockingCall().iterator(ApiKeyList::getKeys);
+
+        assertThat(apiKeys.next().getId()).isEqualTo("ak_1");
+        assertThrows(NgrokApiError.class, apiKeys::hasNext);
+        assertThat(apiKeys.hasNext()).isFalse();
+    }
+
+    @Test
+    public void testPublisherFetchesPagesOnDemand() throws InterruptedException {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<Subscription> subscribed = new CompletableFuture<>();
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+        ngrok.apiKeys().list().blockingCall().publisher(ApiKeyList::getKeys).subscribe(new Subscriber<ApiKey>() {
+            @Override
+            public void onSubscribe(final Subscription subscription) {
+                subscribed.complete(subscription);
+            }
+
+            @Override
+            public void onNext(final ApiKey apiKey) {
+                received.add(apiKey.getId());
+            }
+
+            @Override
+            public void onError(final Throwable t) {
+                completed.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+
+        subscribed.join().request(1);
+        assertThat(received).containsExactly("ak_1");
+        wireMock.verify(1, getRequestedFor(urlPathEqualTo("/api_keys")));
+
+        subscribed.join().request(Long.MAX_VALUE);
+        completed.join();
+        assertThat(received).containsExactly("ak_1", "ak_2", "ak_3");
+        wireMock.verify(3, getRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+
+    @Test
+    public void testForEachReadsEveryPage() {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        ngrok.forEach(ListType.API_KEY_LIST, apiKey -> received.add(apiKey.getId())).toCompletableFuture().join();
+
+        assertThat(received).containsExactly("ak_1", "ak_2", "ak_3");
+        wireMock.verify(3, getRequestedFor(urlPathEqualTo("/api_keys")));
+    }
+}